@@ -0,0 +1,122 @@
+package com.sinosafe.macaw.database.connector.redis.perf;
+
+import java.util.Random;
+
+/**
+ * TODO 压测的key分布：均匀、Zipfian、热点
+ *
+ * next()返回[0, keyCount)之间的key编号，实现均为无状态或只读状态，可被多个线程共享。
+ *
+ */
+public abstract class LoadKeyDistribution {
+
+	protected final long keyCount;
+
+	protected LoadKeyDistribution(long keyCount) {
+		if (keyCount <= 0) {
+			throw new IllegalArgumentException("keyCount must be positive");
+		}
+		this.keyCount = keyCount;
+	}
+
+	public abstract long next(Random random);
+
+	/**
+	 * 按名称创建：uniform、zipfian、hotspot
+	 */
+	public static LoadKeyDistribution create(String name, long keyCount, double zipfTheta, double hotFraction,
+			double hotOpFraction) {
+		if ("uniform".equalsIgnoreCase(name)) {
+			return uniform(keyCount);
+		}
+		if ("zipfian".equalsIgnoreCase(name)) {
+			return zipfian(keyCount, zipfTheta);
+		}
+		if ("hotspot".equalsIgnoreCase(name)) {
+			return hotspot(keyCount, hotFraction, hotOpFraction);
+		}
+		throw new IllegalArgumentException("Unknown distribution " + name);
+	}
+
+	public static LoadKeyDistribution uniform(long keyCount) {
+		return new LoadKeyDistribution(keyCount) {
+			@Override
+			public long next(Random random) {
+				return (long) (random.nextDouble() * this.keyCount);
+			}
+		};
+	}
+
+	/**
+	 * Zipfian分布，编号越小越热，theta越接近1越倾斜(YCSB默认0.99)
+	 */
+	public static LoadKeyDistribution zipfian(long keyCount, double theta) {
+		return new Zipfian(keyCount, theta);
+	}
+
+	/**
+	 * 热点分布：hotOpFraction比例的请求落在前hotFraction比例的key上，其余均匀落在剩余key上
+	 */
+	public static LoadKeyDistribution hotspot(long keyCount, final double hotFraction, final double hotOpFraction) {
+		return new LoadKeyDistribution(keyCount) {
+
+			private final long hotKeys = Math.max(1, (long) (this.keyCount * hotFraction));
+
+			@Override
+			public long next(Random random) {
+				if (random.nextDouble() < hotOpFraction || hotKeys >= this.keyCount) {
+					return (long) (random.nextDouble() * hotKeys);
+				}
+				return hotKeys + (long) (random.nextDouble() * (this.keyCount - hotKeys));
+			}
+		};
+	}
+
+	/**
+	 * Gray等人的Zipfian生成算法(与YCSB ZipfianGenerator相同)，初始化时计算一次zeta，O(keyCount)
+	 */
+	private static final class Zipfian extends LoadKeyDistribution {
+
+		private final double theta;
+
+		private final double alpha;
+
+		private final double zetan;
+
+		private final double eta;
+
+		Zipfian(long keyCount, double theta) {
+			super(keyCount);
+			if (theta <= 0 || theta >= 1) {
+				throw new IllegalArgumentException("theta must be in (0, 1)");
+			}
+			this.theta = theta;
+			this.alpha = 1.0 / (1.0 - theta);
+			this.zetan = zeta(keyCount, theta);
+			double zeta2 = zeta(2, theta);
+			this.eta = (1 - Math.pow(2.0 / keyCount, 1 - theta)) / (1 - zeta2 / zetan);
+		}
+
+		private static double zeta(long n, double theta) {
+			double sum = 0;
+			for (long i = 1; i <= n; i++) {
+				sum += 1 / Math.pow(i, theta);
+			}
+			return sum;
+		}
+
+		@Override
+		public long next(Random random) {
+			double u = random.nextDouble();
+			double uz = u * zetan;
+			if (uz < 1.0) {
+				return 0;
+			}
+			if (uz < 1.0 + Math.pow(0.5, theta)) {
+				return Math.min(1, keyCount - 1);
+			}
+			long value = (long) (keyCount * Math.pow(eta * u - eta + 1, alpha));
+			return Math.min(value, keyCount - 1);
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package com.sinosafe.macaw.database.connector.redis.perf;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * TODO 依次以1、8、64个线程运行RedisClientUtilBenchmark，开启GC分析，结果输出为JSON
+ *
+ * 使用方法：java -cp target/benchmarks.jar com.sinosafe.macaw.database.connector.redis.perf.PerfMain [JMH参数]
+ * 例如只跑get相关方法：... PerfMain "RedisClientUtilBenchmark.(jedisGet|get)$"
+ *
+ */
+public class PerfMain {
+
+	private static final int[] THREADS = { 1, 8, 64 };
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		for (int threads : THREADS) {
+			ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine).threads(threads)
+					.addProfiler(GCProfiler.class).resultFormat(ResultFormatType.JSON)
+					.result("redis-utils-perf-t" + threads + ".json");
+			if (commandLine.getIncludes().isEmpty()) {
+				options.include(RedisClientUtilBenchmark.class.getSimpleName());
+			}
+			new Runner(options.build()).run();
+		}
+	}
+}
@@ -0,0 +1,409 @@
+package com.sinosafe.macaw.database.connector.redis.perf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sinosafe.macaw.database.connector.redis.RedisClientUtil;
+import com.sinosafe.macaw.database.connector.redis.RedisCodec;
+import com.sinosafe.macaw.database.connector.redis.RedisCodecs;
+import com.sinosafe.macaw.database.connector.redis.RedisPoolUtil;
+import com.sinosafe.macaw.database.connector.redis.RedisRecordCodec;
+
+import redis.clients.jedis.JedisCluster;
+
+/**
+ * TODO RedisClientUtil 每个公开方法的JMH基准测试，运行在进程内的RespStubServer上
+ *
+ * 以jedis*开头的方法直接调用JedisCluster作为基线，与对应的RedisClientUtil方法相减即为工具类额外的开销。
+ * 配合-prof gc查看gc.alloc.rate.norm(每次调用分配的字节数，包含桩服务器线程的分配)，用-t 1/8/64测试并发。
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class RedisClientUtilBenchmark {
+
+	/** 批量操作的key数量 */
+	public static final int BATCH_SIZE = 100;
+
+	private static final String STRING_KEY = "bench:string";
+
+	private static final String HASH_KEY = "bench:hash";
+
+	private static final String LIST_KEY = "bench:list";
+
+	private static final String COUNTER_KEY = "bench:counter";
+
+	private static final String QUEUE_KEY = "bench:queue";
+
+	private static final String RECORD_KEY = "bench:record";
+
+	private static final String JSON_KEY = "bench:json";
+
+	private static final RedisCodec<Profile> RECORD_CODEC = RedisRecordCodec.builder(Profile::new)
+			.field(Profile::getId, Profile::setId, RedisCodecs.LONG)
+			.field(Profile::getName, Profile::setName, RedisCodecs.STRING)
+			.field(Profile::getScore, Profile::setScore, RedisCodecs.DOUBLE)
+			.field(Profile::getTags, Profile::setTags, RedisCodecs.list(RedisCodecs.STRING)).build();
+
+	private static final RedisCodec<Profile> JSON_CODEC = RedisCodecs.json(Profile.class);
+
+	private RespStubServer server;
+
+	private RedisClientUtil client;
+
+	private JedisCluster cluster;
+
+	private String value;
+
+	private Map<String, String> hash;
+
+	private List<String> hashFields;
+
+	private List<String> stringKeys;
+
+	private List<String> hashKeys;
+
+	private List<String> pushValues;
+
+	private Profile profile;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		RespStubStore store = new RespStubStore();
+		RespStubScripts.registerDefaults(store);
+		server = new RespStubServer(0, store);
+		RedisPoolUtil.init(server.getAddress(), null, 2000);
+		client = RedisClientUtil.getInstance();
+		cluster = RedisPoolUtil.getJedisPool();
+
+		char[] chars = new char[256];
+		Arrays.fill(chars, 'v');
+		value = new String(chars);
+		hash = new HashMap<String, String>();
+		hashFields = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			hash.put("field" + i, value.substring(0, 32));
+			hashFields.add("field" + i);
+		}
+		stringKeys = new ArrayList<String>(BATCH_SIZE);
+		hashKeys = new ArrayList<String>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			stringKeys.add(STRING_KEY + ":" + i);
+			hashKeys.add(HASH_KEY + ":" + i);
+			client.set(STRING_KEY + ":" + i, 0, value);
+			client.setMapOnRedis(HASH_KEY + ":" + i, hash, 0);
+		}
+		pushValues = Arrays.asList("a", "b");
+		client.set(STRING_KEY, 0, value);
+		client.setMapOnRedis(HASH_KEY, hash, 0);
+		List<String> list = new ArrayList<String>();
+		for (int i = 0; i < 100; i++) {
+			list.add("item" + i);
+		}
+		client.lpush(LIST_KEY, list);
+		profile = new Profile();
+		profile.setId(1234567L);
+		profile.setName("张三 zhangsan");
+		profile.setScore(98.5);
+		profile.setTags(Arrays.asList("vip", "auto", "health"));
+		client.set(RECORD_KEY, profile, 0, RECORD_CODEC);
+		client.set(JSON_KEY, profile, 0, JSON_CODEC);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		cluster.close();
+		server.close();
+	}
+
+	// ---------------------------------------------------------------- 基线
+
+	@Benchmark
+	public String jedisGet() {
+		return cluster.get(STRING_KEY);
+	}
+
+	@Benchmark
+	public String jedisSet() {
+		return cluster.set(STRING_KEY, value);
+	}
+
+	@Benchmark
+	public Map<String, String> jedisHgetAll() {
+		return cluster.hgetAll(HASH_KEY);
+	}
+
+	@Benchmark
+	public String jedisHget() {
+		return cluster.hget(HASH_KEY, "field1");
+	}
+
+	// ---------------------------------------------------------------- 字符串
+
+	@Benchmark
+	public boolean set() {
+		return client.set(STRING_KEY, 0, value);
+	}
+
+	@Benchmark
+	public boolean setWithExpire() {
+		return client.set(STRING_KEY, 3600, value);
+	}
+
+	@Benchmark
+	public String get() {
+		return client.get(STRING_KEY);
+	}
+
+	@Benchmark
+	public boolean exists() {
+		return client.exists(STRING_KEY);
+	}
+
+	@Benchmark
+	public long ttl() {
+		return client.ttl(STRING_KEY);
+	}
+
+	@Benchmark
+	public void setExpire() {
+		client.setExpire(STRING_KEY, 3600);
+	}
+
+	@Benchmark
+	public void del() {
+		client.del("bench:missing");
+	}
+
+	@Benchmark
+	public long incr() {
+		return client.incr(COUNTER_KEY);
+	}
+
+	@Benchmark
+	public long incrBy() {
+		return client.incr(COUNTER_KEY, 5);
+	}
+
+	@Benchmark
+	public long decr() {
+		return client.decr(COUNTER_KEY);
+	}
+
+	// ---------------------------------------------------------------- 哈希
+
+	@Benchmark
+	public boolean setMapOnRedis() {
+		return client.setMapOnRedis(HASH_KEY, hash, 0);
+	}
+
+	@Benchmark
+	public boolean setMapOnRedisWithExpire() {
+		return client.setMapOnRedis(HASH_KEY, hash, 3600);
+	}
+
+	@Benchmark
+	public Map<String, String> getRedisMap() {
+		return client.getRedisMap(HASH_KEY);
+	}
+
+	@Benchmark
+	public Map<String, String> getRedisMapFields() {
+		return client.getRedisMap(HASH_KEY, hashFields);
+	}
+
+	@Benchmark
+	public String getRedisMapValue() {
+		return client.getRedisMapValue(HASH_KEY, "field1");
+	}
+
+	@Benchmark
+	public boolean hexists() {
+		return client.hexists(HASH_KEY, "field1");
+	}
+
+	@Benchmark
+	public long hdel() {
+		return client.hdel(HASH_KEY, "missing");
+	}
+
+	@Benchmark
+	public boolean updateUserdebug() {
+		return client.updateUserdebug(HASH_KEY, hash);
+	}
+
+	@Benchmark
+	public long hIncrCounter() {
+		return client.hIncrCounter(COUNTER_KEY + ":hash", "count", 1);
+	}
+
+	// ---------------------------------------------------------------- 列表
+
+	@Benchmark
+	public long llen() {
+		return client.llen(LIST_KEY);
+	}
+
+	@Benchmark
+	public List<String> lrange() {
+		return client.lrange(LIST_KEY, 9);
+	}
+
+	@Benchmark
+	public List<String> rpoplpush() {
+		return client.rpoplpush(LIST_KEY, 2);
+	}
+
+	@Benchmark
+	public long lrem() {
+		return client.lrem(LIST_KEY, "missing");
+	}
+
+	@Benchmark
+	public String lpushRpop() {
+		client.lpush(QUEUE_KEY, pushValues);
+		client.rpop(QUEUE_KEY);
+		return client.rpop(QUEUE_KEY);
+	}
+
+	@Benchmark
+	public String rpushRpop() {
+		client.rpush(QUEUE_KEY, pushValues);
+		client.rpop(QUEUE_KEY);
+		return client.rpop(QUEUE_KEY);
+	}
+
+	/**
+	 * 已废弃的brpop，保留作为RedisQueueConsumer的对照
+	 */
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public String lpushBrpop() {
+		client.lpush(QUEUE_KEY + ":blocking", pushValues);
+		client.brpop(QUEUE_KEY + ":blocking");
+		return client.brpop(QUEUE_KEY + ":blocking");
+	}
+
+	// ---------------------------------------------------------------- 编解码
+
+	@Benchmark
+	public byte[] encodeRecord() {
+		return RedisCodecs.encode(RECORD_CODEC, profile);
+	}
+
+	@Benchmark
+	public byte[] encodeJson() {
+		return RedisCodecs.encode(JSON_CODEC, profile);
+	}
+
+	@Benchmark
+	public boolean setRecord() {
+		return client.set(RECORD_KEY, profile, 0, RECORD_CODEC);
+	}
+
+	@Benchmark
+	public Profile getRecord() {
+		return client.get(RECORD_KEY, RECORD_CODEC);
+	}
+
+	@Benchmark
+	public boolean setJson() {
+		return client.set(JSON_KEY, profile, 0, JSON_CODEC);
+	}
+
+	@Benchmark
+	public Profile getJson() {
+		return client.get(JSON_KEY, JSON_CODEC);
+	}
+
+	// ---------------------------------------------------------------- 批量
+
+	@Benchmark
+	public List<String> mget() {
+		return client.mget(stringKeys);
+	}
+
+	@Benchmark
+	public List<Map<String, String>> getRedisMaps() {
+		return client.getRedisMaps(hashKeys);
+	}
+
+	@Benchmark
+	public int getLoop() {
+		int found = 0;
+		for (String key : stringKeys) {
+			if (null != client.get(key)) {
+				found++;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * 编解码基准使用的对象
+	 */
+	public static class Profile {
+
+		private long id;
+
+		private String name;
+
+		private double score;
+
+		private List<String> tags;
+
+		public long getId() {
+			return id;
+		}
+
+		public void setId(long id) {
+			this.id = id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public double getScore() {
+			return score;
+		}
+
+		public void setScore(double score) {
+			this.score = score;
+		}
+
+		public List<String> getTags() {
+			return tags;
+		}
+
+		public void setTags(List<String> tags) {
+			this.tags = tags;
+		}
+	}
+}
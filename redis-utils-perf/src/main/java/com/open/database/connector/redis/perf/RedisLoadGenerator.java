@@ -0,0 +1,536 @@
+package com.sinosafe.macaw.database.connector.redis.perf;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.Deflater;
+
+import com.sinosafe.macaw.database.connector.redis.RedisBatchWriter;
+import com.sinosafe.macaw.database.connector.redis.RedisCircuitBreaker;
+import com.sinosafe.macaw.database.connector.redis.RedisCircuitStats;
+import com.sinosafe.macaw.database.connector.redis.RedisClientUtil;
+import com.sinosafe.macaw.database.connector.redis.RedisCompressor;
+import com.sinosafe.macaw.database.connector.redis.RedisHedgedReads;
+import com.sinosafe.macaw.database.connector.redis.RedisHotKeyDetector;
+import com.sinosafe.macaw.database.connector.redis.RedisKeyStats;
+import com.sinosafe.macaw.database.connector.redis.RedisLatencyHistogram;
+import com.sinosafe.macaw.database.connector.redis.RedisPoolConfig;
+import com.sinosafe.macaw.database.connector.redis.RedisPoolManager;
+import com.sinosafe.macaw.database.connector.redis.RedisPoolStats;
+import com.sinosafe.macaw.database.connector.redis.RedisPoolUtil;
+import com.sinosafe.macaw.database.connector.redis.RedisReadPreference;
+import com.sinosafe.macaw.database.connector.redis.RedisReplicaRouter;
+import com.sinosafe.macaw.database.connector.redis.RedisReplicaStats;
+import com.sinosafe.macaw.database.connector.redis.RedisSingleFlight;
+
+/**
+ * TODO 端到端压测工具：通过RedisPoolUtil.init初始化，用RedisClientUtil按配置的命令比例、key分布和value大小施压
+ *
+ * 未指定--hosts时在本机启动RespStubCluster作为目标集群。指定--rate时按固定速率(开环)发起请求，
+ * 响应时间从计划发起时间开始计算，已修正协调遗漏(coordinated omission)；未指定--rate时为闭环压测，只能得到服务时间。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.sinosafe.macaw.database.connector.redis.perf.RedisLoadGenerator \
+ *     --nodes=3 --threads=32 --rate=20000 --duration=60 --mix=get:70,set:20,hget:5,incr:5 \
+ *     --distribution=zipfian --keys=100000 --value-size=512
+ * </pre>
+ *
+ * 参数：
+ * <ul>
+ * <li>--hosts：目标集群host:port列表，逗号分隔，不指定时使用内置集群</li>
+ * <li>--password、--timeout(毫秒，默认2000)</li>
+ * <li>--nodes：内置集群节点数，默认3；--replicas：内置集群每个master的replica数，默认0；--node-delay-us：内置集群每个请求的额外延迟</li>
+ * <li>--threads：压测线程数，默认16</li>
+ * <li>--rate：总目标每秒请求数，0表示闭环，默认0</li>
+ * <li>--duration、--warmup：压测和预热时长(秒)，默认30、5</li>
+ * <li>--mix：命令比例，可用命令见Operation，默认get:60,set:20,hget:5,hset:5,lpush:3,rpop:2,incr:5</li>
+ * <li>--keys：key数量，默认10000；--distribution：uniform/zipfian/hotspot，默认uniform</li>
+ * <li>--zipf-theta(默认0.99)；--hot-fraction、--hot-op-fraction(默认0.2、0.8)</li>
+ * <li>--value-size：字符串value字节数，默认256；--fields：哈希field数，默认10；--ttl：写入的超时秒数，默认0</li>
+ * <li>--batch：mget的key数量，默认20</li>
+ * <li>--migrate-after：内置集群在第N秒迁移最热key所在的slot，用于验证ASK/MOVED，默认不迁移</li>
+ * <li>--compress-threshold：超过该字节数的value压缩后写入，默认不压缩</li>
+ * <li>--single-flight：1表示开启读请求合并，默认0</li>
+ * <li>--hot-keys：大于0时开启热点key检测，报告中输出前N个热点key、热点slot和大key，默认0</li>
+ * <li>--read-preference：master/replica_preferred/nearest，指定时开启replica读路由，默认不开启</li>
+ * <li>--circuit-breaker：1表示开启按节点的熔断和并发隔离，默认0；--max-concurrent-calls：每个节点的最大并发命令数</li>
+ * <li>--deadline-ms：每个请求的截止时间(毫秒)，默认不限</li>
+ * <li>--hedge：1表示开启对冲读取，需要同时指定--read-preference，默认0；--slow-node-delay-us：内置集群第一个master的额外延迟</li>
+ * <li>--pool.xxx：连接池配置，xxx见RedisPoolConfig，例如--pool.maxTotal=16 --pool.maxWaitMillis=500</li>
+ * </ul>
+ *
+ */
+public class RedisLoadGenerator {
+
+	/**
+	 * 压测命令
+	 */
+	enum Operation {
+		GET, SET, HGET, HGETALL, HSET, LPUSH, RPOP, LRANGE, INCR, MGET
+	}
+
+	private static final Operation[] OPERATIONS = Operation.values();
+
+	private final Map<String, String> options;
+
+	private final RedisClientUtil client = RedisClientUtil.getInstance();
+
+	private final Operation[] schedule;
+
+	private final LoadKeyDistribution distribution;
+
+	private final int ttl;
+
+	private final int batch;
+
+	private final long deadlineMillis;
+
+	private final String value;
+
+	private final Map<String, String> hash;
+
+	private final RedisLatencyHistogram[] responseTimes = new RedisLatencyHistogram[OPERATIONS.length];
+
+	private final RedisLatencyHistogram[] serviceTimes = new RedisLatencyHistogram[OPERATIONS.length];
+
+	private final AtomicLongArray errors = new AtomicLongArray(OPERATIONS.length);
+
+	RedisLoadGenerator(Map<String, String> options) {
+		this.options = options;
+		this.schedule = parseMix(option("mix", "get:60,set:20,hget:5,hset:5,lpush:3,rpop:2,incr:5"));
+		this.distribution = LoadKeyDistribution.create(option("distribution", "uniform"), longOption("keys", 10000),
+				Double.parseDouble(option("zipf-theta", "0.99")), Double.parseDouble(option("hot-fraction", "0.2")),
+				Double.parseDouble(option("hot-op-fraction", "0.8")));
+		this.ttl = (int) longOption("ttl", 0);
+		this.batch = (int) longOption("batch", 20);
+		this.deadlineMillis = longOption("deadline-ms", 0);
+		char[] chars = new char[(int) longOption("value-size", 256)];
+		Arrays.fill(chars, 'v');
+		this.value = new String(chars);
+		this.hash = new HashMap<String, String>();
+		int fields = (int) longOption("fields", 10);
+		for (int i = 0; i < fields; i++) {
+			hash.put("f" + i, value.substring(0, Math.min(32, value.length())));
+		}
+		for (int i = 0; i < OPERATIONS.length; i++) {
+			responseTimes[i] = new RedisLatencyHistogram();
+			serviceTimes[i] = new RedisLatencyHistogram();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = parseOptions(args);
+		RedisLoadGenerator generator = new RedisLoadGenerator(options);
+		RespStubCluster cluster = null;
+		String hosts = options.get("hosts");
+		if (null == hosts) {
+			cluster = new RespStubCluster((int) generator.longOption("nodes", 3),
+					(int) generator.longOption("replicas", 0));
+			long delay = generator.longOption("node-delay-us", 0);
+			for (RespStubServer node : cluster.getNodes()) {
+				node.setResponseDelayMicros(delay);
+			}
+			for (RespStubServer node : cluster.getReplicas()) {
+				node.setResponseDelayMicros(delay);
+			}
+			long slowDelay = generator.longOption("slow-node-delay-us", 0);
+			if (slowDelay > 0) {
+				cluster.getNodes().get(0).setResponseDelayMicros(slowDelay);
+			}
+			hosts = cluster.getAddresses();
+			System.out.println("Embedded cluster started: " + hosts);
+		}
+		// --pool.maxTotal=16 等以pool.开头的参数作为连接池配置
+		Properties poolProperties = new Properties();
+		for (Map.Entry<String, String> entry : options.entrySet()) {
+			if (entry.getKey().startsWith("pool.")) {
+				poolProperties.setProperty(entry.getKey().substring("pool.".length()), entry.getValue());
+			}
+		}
+		long initStart = System.nanoTime();
+		RedisPoolUtil.init(hosts, options.get("password"), (int) generator.longOption("timeout", 2000),
+				RedisPoolConfig.fromProperties(poolProperties));
+		System.out.println("RedisPoolUtil.init: " + (System.nanoTime() - initStart) / 1000000 + " ms, ready="
+				+ RedisPoolUtil.isReady());
+		long compressThreshold = generator.longOption("compress-threshold", 0);
+		if (compressThreshold > 0) {
+			RedisClientUtil.getInstance().setCompressor(new RedisCompressor((int) compressThreshold, Deflater.BEST_SPEED));
+		}
+		if (generator.longOption("single-flight", 0) > 0) {
+			RedisClientUtil.getInstance().setSingleFlight(new RedisSingleFlight());
+		}
+		if (generator.longOption("hot-keys", 0) > 0) {
+			RedisClientUtil.getInstance().setHotKeyDetector(new RedisHotKeyDetector());
+		}
+		if (null != options.get("read-preference")) {
+			RedisClientUtil.getInstance().setReplicaRouter(
+					new RedisReplicaRouter(RedisReadPreference.valueOf(options.get("read-preference").toUpperCase())));
+		}
+		if (generator.longOption("circuit-breaker", 0) > 0) {
+			RedisCircuitBreaker breaker = new RedisCircuitBreaker();
+			long maxConcurrentCalls = generator.longOption("max-concurrent-calls", 0);
+			if (maxConcurrentCalls > 0) {
+				breaker.setMaxConcurrentCalls((int) maxConcurrentCalls);
+			}
+			RedisClientUtil.getInstance().setCircuitBreaker(breaker);
+		}
+		if (generator.longOption("hedge", 0) > 0) {
+			RedisClientUtil.getInstance().setHedgedReads(new RedisHedgedReads());
+		}
+		try {
+			generator.preload();
+			generator.run(cluster);
+			generator.report(System.out);
+		} finally {
+			RedisPoolUtil.getJedisPool().close();
+			if (null != cluster) {
+				cluster.close();
+			}
+		}
+	}
+
+	static Map<String, String> parseOptions(String[] args) {
+		Map<String, String> options = new LinkedHashMap<String, String>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (!arg.startsWith("--")) {
+				throw new IllegalArgumentException("Unexpected argument " + arg);
+			}
+			int eq = arg.indexOf('=');
+			if (eq > 0) {
+				options.put(arg.substring(2, eq), arg.substring(eq + 1));
+			} else if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+				options.put(arg.substring(2), args[++i]);
+			} else {
+				options.put(arg.substring(2), "true");
+			}
+		}
+		return options;
+	}
+
+	private String option(String name, String defaultValue) {
+		String current = options.get(name);
+		return null == current ? defaultValue : current;
+	}
+
+	private long longOption(String name, long defaultValue) {
+		return Long.parseLong(option(name, String.valueOf(defaultValue)));
+	}
+
+	/**
+	 * 把比例展开为1000个槽位的调度表，每次请求随机取一个槽位
+	 */
+	static Operation[] parseMix(String mix) {
+		Map<Operation, Integer> weights = new LinkedHashMap<Operation, Integer>();
+		int total = 0;
+		for (String part : mix.split(",")) {
+			String[] pair = part.trim().split(":");
+			int weight = Integer.parseInt(pair[1].trim());
+			weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), weight);
+			total += weight;
+		}
+		if (total <= 0) {
+			throw new IllegalArgumentException("mix has no positive weight: " + mix);
+		}
+		List<Operation> slots = new ArrayList<Operation>();
+		for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+			long count = Math.round(entry.getValue() * 1000.0 / total);
+			for (long i = 0; i < count; i++) {
+				slots.add(entry.getKey());
+			}
+		}
+		return slots.toArray(new Operation[slots.size()]);
+	}
+
+	/**
+	 * 预先写入字符串和哈希，使读请求能命中
+	 */
+	void preload() {
+		long keys = longOption("keys", 10000);
+		long start = System.nanoTime();
+		RedisBatchWriter writer = new RedisBatchWriter(500, 10);
+		try {
+			for (long i = 0; i < keys; i++) {
+				writer.set(stringKey(i), ttl, value);
+				writer.setMapOnRedis(hashKey(i), hash, ttl);
+			}
+			writer.flush();
+		} finally {
+			writer.close();
+		}
+		System.out.printf("Preloaded %d keys in %d ms, failed writes: %d%n", keys * 2,
+				TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), writer.getFailedCount());
+	}
+
+	void run(final RespStubCluster cluster) throws InterruptedException {
+		int threads = (int) longOption("threads", 16);
+		long rate = longOption("rate", 0);
+		final long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * threads / rate : 0;
+		final long begin = System.nanoTime();
+		final long measureFrom = begin + TimeUnit.SECONDS.toNanos(longOption("warmup", 5));
+		final long end = measureFrom + TimeUnit.SECONDS.toNanos(longOption("duration", 30));
+		final CountDownLatch done = new CountDownLatch(threads);
+		System.out.printf("Running %d threads, %s, warmup %ds, duration %ds%n", threads,
+				rate > 0 ? "target " + rate + " ops/s" : "closed loop", longOption("warmup", 5),
+				longOption("duration", 30));
+		for (int t = 0; t < threads; t++) {
+			// 各线程错开起始时间，避免同时发起请求
+			final long offset = intervalNanos * t / threads;
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						work(begin + offset, intervalNanos, measureFrom, end);
+					} finally {
+						done.countDown();
+					}
+				}
+			}, "redis-load-" + t);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		long migrateAfter = longOption("migrate-after", -1);
+		if (null != cluster && migrateAfter >= 0 && cluster.getNodes().size() > 1) {
+			if (!done.await(migrateAfter, TimeUnit.SECONDS)) {
+				migrateHottestSlot(cluster);
+			}
+		}
+		done.await();
+	}
+
+	private void work(long start, long intervalNanos, long measureFrom, long end) {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		long intended = start;
+		while (true) {
+			if (intervalNanos > 0) {
+				long now;
+				while ((now = System.nanoTime()) < intended) {
+					LockSupport.parkNanos(intended - now);
+				}
+			} else {
+				intended = System.nanoTime();
+			}
+			if (intended >= end) {
+				return;
+			}
+			Operation operation = schedule[random.nextInt(schedule.length)];
+			long key = distribution.next(random);
+			long serviceStart = System.nanoTime();
+			boolean failed = false;
+			try {
+				if (deadlineMillis > 0) {
+					client.withTimeout(deadlineMillis, () -> {
+						execute(operation, key, random);
+						return null;
+					});
+				} else {
+					execute(operation, key, random);
+				}
+			} catch (RuntimeException e) {
+				failed = true;
+			}
+			long finished = System.nanoTime();
+			if (intended >= measureFrom) {
+				int index = operation.ordinal();
+				serviceTimes[index].record((finished - serviceStart) / 1000);
+				responseTimes[index].record((finished - intended) / 1000);
+				if (failed) {
+					errors.incrementAndGet(index);
+				}
+			}
+			if (intervalNanos > 0) {
+				intended += intervalNanos;
+			}
+		}
+	}
+
+	private void execute(Operation operation, long key, ThreadLocalRandom random) {
+		switch (operation) {
+		case GET:
+			client.get(stringKey(key));
+			break;
+		case SET:
+			if (!client.set(stringKey(key), ttl, value)) {
+				throw new IllegalStateException("set failed");
+			}
+			break;
+		case HGET:
+			client.getRedisMapValue(hashKey(key), "f" + random.nextInt(Math.max(1, hash.size())));
+			break;
+		case HGETALL:
+			client.getRedisMap(hashKey(key));
+			break;
+		case HSET:
+			client.setMapOnRedis(hashKey(key), hash, ttl);
+			break;
+		case LPUSH:
+			client.lpush(listKey(key), Arrays.asList(value));
+			break;
+		case RPOP:
+			client.rpop(listKey(key));
+			break;
+		case LRANGE:
+			client.lrange(listKey(key), 9);
+			break;
+		case INCR:
+			client.incr("load:c:" + key);
+			break;
+		case MGET:
+			List<String> keys = new ArrayList<String>(batch);
+			for (int i = 0; i < batch; i++) {
+				keys.add(stringKey(distribution.next(random)));
+			}
+			client.mget(keys);
+			break;
+		default:
+			throw new IllegalArgumentException(operation.name());
+		}
+	}
+
+	private static String stringKey(long key) {
+		return "load:s:" + key;
+	}
+
+	private static String hashKey(long key) {
+		return "load:h:" + key;
+	}
+
+	private static String listKey(long key) {
+		return "load:l:" + (key % 100);
+	}
+
+	private void migrateHottestSlot(RespStubCluster cluster) throws InterruptedException {
+		int slot = RespStubCluster.getSlot(stringKey(0));
+		RespStubServer source = cluster.getOwner(slot);
+		List<RespStubServer> nodes = cluster.getNodes();
+		RespStubServer target = nodes.get((nodes.indexOf(source) + 1) % nodes.size());
+		System.out.printf("Migrating slot %d from %s to %s%n", slot, source.getAddress(), target.getAddress());
+		cluster.migrateSlot(slot, target);
+		Thread.sleep(1000);
+		cluster.finishMigration(slot);
+		System.out.printf("Slot %d migrated%n", slot);
+	}
+
+	void report(PrintStream out) {
+		boolean corrected = longOption("rate", 0) > 0;
+		double seconds = longOption("duration", 30);
+		out.println();
+		out.println(corrected ? "Response time (from intended start, coordinated-omission corrected), us"
+				: "Response time (closed loop, NOT corrected for coordinated omission), us");
+		out.printf("%-8s %10s %8s %10s %8s %8s %8s %8s %8s %10s%n", "op", "count", "errors", "ops/s", "p50", "p90",
+				"p99", "p999", "max", "svc p99");
+		RedisLatencyHistogram.Snapshot totalResponse = null;
+		RedisLatencyHistogram.Snapshot totalService = null;
+		long totalErrors = 0;
+		for (Operation operation : OPERATIONS) {
+			int index = operation.ordinal();
+			RedisLatencyHistogram.Snapshot response = responseTimes[index].snapshot();
+			RedisLatencyHistogram.Snapshot service = serviceTimes[index].snapshot();
+			if (0 == response.getCount()) {
+				continue;
+			}
+			totalResponse = null == totalResponse ? response : totalResponse.merge(response);
+			totalService = null == totalService ? service : totalService.merge(service);
+			totalErrors += errors.get(index);
+			printRow(out, operation.name().toLowerCase(), response, service, errors.get(index), seconds);
+		}
+		if (null != totalResponse) {
+			printRow(out, "total", totalResponse, totalService, totalErrors, seconds);
+		}
+		RedisCompressor compressor = RedisClientUtil.getInstance().getCompressor();
+		if (compressor.getCompressedCount() + compressor.getDecompressedCount() > 0) {
+			out.println();
+			out.printf("Compression: %d values, ratio %.3f, compress %d us, %d decompressed in %d us%n",
+					compressor.getCompressedCount(), compressor.getCompressionRatio(), compressor.getCompressMicros(),
+					compressor.getDecompressedCount(), compressor.getDecompressMicros());
+		}
+		RedisSingleFlight singleFlight = RedisClientUtil.getInstance().getSingleFlight();
+		if (null != singleFlight) {
+			out.println();
+			out.printf("Single-flight: %d executed, %d coalesced (%.1f%%)%n", singleFlight.getExecutedCount(),
+					singleFlight.getCoalescedCount(), singleFlight.getCoalescedRatio() * 100);
+		}
+		RedisHotKeyDetector detector = RedisClientUtil.getInstance().getHotKeyDetector();
+		if (null != detector) {
+			int limit = (int) longOption("hot-keys", 0);
+			out.println();
+			out.printf("Hot keys (sampled %d)%n", detector.getSampledCount());
+			printKeyStats(out, detector.getHotKeys(), limit);
+			out.println("Hot slots");
+			printKeyStats(out, detector.getHotSlots(), limit);
+			out.println("Big keys");
+			printKeyStats(out, detector.getBigKeys(), limit);
+		}
+		RedisReplicaRouter router = RedisClientUtil.getInstance().getReplicaRouter();
+		if (null != router) {
+			out.println();
+			out.printf("Replica routing %s: %d replica reads, %d master reads, %d fallbacks%n",
+					router.getReadPreference(), router.getReplicaReadCount(), router.getMasterReadCount(),
+					router.getFallbackCount());
+			for (RedisReplicaStats replica : router.getReplicas()) {
+				out.printf("  %-22s master %-22s lag %6d B %3d s  latency %6d us  %-9s reads %d%n", replica.getNode(),
+						replica.getMaster(), replica.getLagOffset(), replica.getLagSeconds(),
+						replica.getLatencyMicros(), replica.isAvailable() ? "available" : "excluded",
+						replica.getReadCount());
+			}
+		}
+		RedisCircuitBreaker breaker = RedisClientUtil.getInstance().getCircuitBreaker();
+		if (null != breaker) {
+			out.println();
+			out.printf("Circuit breaker: %d trips, %d rejected, %d bulkhead rejected (max %d per node)%n",
+					breaker.getTripCount(), breaker.getRejectedCount(), breaker.getBulkheadRejectedCount(),
+					breaker.getMaxConcurrentCalls());
+			for (RedisCircuitStats node : breaker.getNodes()) {
+				out.printf("  %-22s read %-9s write %-9s rejected %d bulkhead %d%n", node.getNode(),
+						node.getReadState(), node.getWriteState(), node.getRejectedCount(),
+						node.getBulkheadRejectedCount());
+			}
+		}
+		RedisHedgedReads hedgedReads = RedisClientUtil.getInstance().getHedgedReads();
+		if (null != hedgedReads) {
+			out.println();
+			out.printf("Hedged reads: %d requests, %d hedges, %d hedge wins, delays(us) %s%n",
+					hedgedReads.getRequestCount(), hedgedReads.getHedgeCount(), hedgedReads.getHedgeWinCount(),
+					hedgedReads.getHedgeDelays());
+		}
+		RedisPoolManager poolManager = RedisPoolUtil.getPoolManager();
+		if (null != poolManager) {
+			out.println();
+			out.printf("Connection pools (exhausted %d)%n", poolManager.getExhaustedCount());
+			out.printf("%-22s %6s %6s %7s %7s %7s %6s %9s %9s %8s%n", "node", "active", "idle", "waiters", "minIdle",
+					"maxIdle", "peak", "wait avg", "wait max", "created");
+			for (RedisPoolStats pool : poolManager.getPoolStats()) {
+				out.printf("%-22s %6d %6d %7d %7d %7d %6d %9d %9d %8d%n", pool.getNode(), pool.getActive(),
+						pool.getIdle(), pool.getWaiters(), pool.getMinIdle(), pool.getMaxIdle(), pool.getPeakDemand(),
+						pool.getMeanBorrowWaitMillis(), pool.getMaxBorrowWaitMillis(), pool.getCreatedCount());
+			}
+		}
+	}
+
+	private static void printRow(PrintStream out, String name, RedisLatencyHistogram.Snapshot response,
+			RedisLatencyHistogram.Snapshot service, long errors, double seconds) {
+		out.printf("%-8s %10d %8d %10.0f %8d %8d %8d %8d %8d %10d%n", name, response.getCount(), errors,
+				response.getCount() / seconds, response.getValueAtPercentile(50), response.getValueAtPercentile(90),
+				response.getValueAtPercentile(99), response.getValueAtPercentile(99.9), response.getMax(),
+				service.getValueAtPercentile(99));
+	}
+
+	private static void printKeyStats(PrintStream out, List<RedisKeyStats> stats, int limit) {
+		for (RedisKeyStats item : stats.subList(0, Math.min(limit, stats.size()))) {
+			out.printf("  %-24s slot %5d  count %8d  size %8d  %s%n", null == item.getKey() ? "-" : item.getKey(),
+					item.getSlot(), item.getCount(), item.getSize(), null == item.getCommand() ? "" : item.getCommand());
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package com.sinosafe.macaw.database.connector.redis.perf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import redis.clients.util.JedisClusterCRC16;
+
+/**
+ * TODO 进程内的多节点RESP集群，代替真实的redis cluster进行压测和容量规划
+ *
+ * 16384个slot平均分配给各节点，每个节点有独立的RespStubStore。访问不属于本节点的slot返回MOVED；
+ * 迁移中的slot在源节点上key不存在时返回ASK，目标节点只接受ASKING之后的请求，与redis cluster的重定向语义一致。
+ * 每个master可以带replica：replica与master共享RespStubStore(数据无延迟)，READONLY连接上的读命令由replica执行，
+ * 其余返回MOVED到master；复制延迟通过RespStubServer.setReplicationLag()模拟，在master的INFO replication中体现。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RespStubCluster cluster = new RespStubCluster(3);
+ * RedisPoolUtil.init(cluster.getAddresses(), null, 2000);
+ * ...
+ * cluster.migrateSlot(slot, cluster.getNodes().get(1));
+ * cluster.finishMigration(slot);
+ * </pre>
+ *
+ */
+public class RespStubCluster implements Closeable {
+
+	public static final int SLOT_COUNT = 16384;
+
+	private final List<RespStubServer> nodes;
+
+	private final List<RespStubServer> replicas;
+
+	private final AtomicReferenceArray<RespStubServer> owners = new AtomicReferenceArray<RespStubServer>(SLOT_COUNT);
+
+	/** 迁移中的slot的目标节点，未迁移为null */
+	private final AtomicReferenceArray<RespStubServer> migrating = new AtomicReferenceArray<RespStubServer>(
+			SLOT_COUNT);
+
+	/**
+	 * 启动nodeCount个节点，slot平均分配
+	 */
+	public RespStubCluster(int nodeCount) throws IOException {
+		this(nodeCount, 0);
+	}
+
+	/**
+	 * 启动nodeCount个master节点，每个master带replicasPerMaster个replica，slot平均分配给master
+	 */
+	public RespStubCluster(int nodeCount, int replicasPerMaster) throws IOException {
+		if (nodeCount <= 0) {
+			throw new IllegalArgumentException("nodeCount must be positive");
+		}
+		if (replicasPerMaster < 0) {
+			throw new IllegalArgumentException("replicasPerMaster must not be negative");
+		}
+		List<RespStubServer> servers = new ArrayList<RespStubServer>(nodeCount);
+		List<RespStubServer> slaves = new ArrayList<RespStubServer>(nodeCount * replicasPerMaster);
+		try {
+			for (int i = 0; i < nodeCount; i++) {
+				RespStubStore store = new RespStubStore();
+				RespStubScripts.registerDefaults(store);
+				RespStubServer master = new RespStubServer(0, store);
+				servers.add(master);
+				for (int j = 0; j < replicasPerMaster; j++) {
+					RespStubServer replica = new RespStubServer(0, store);
+					replica.replicaOf(master);
+					slaves.add(replica);
+				}
+			}
+		} catch (IOException e) {
+			for (RespStubServer server : servers) {
+				server.close();
+			}
+			for (RespStubServer server : slaves) {
+				server.close();
+			}
+			throw e;
+		}
+		this.nodes = Collections.unmodifiableList(servers);
+		this.replicas = Collections.unmodifiableList(slaves);
+		for (int slot = 0; slot < SLOT_COUNT; slot++) {
+			owners.set(slot, servers.get((int) ((long) slot * nodeCount / SLOT_COUNT)));
+		}
+		for (RespStubServer server : servers) {
+			server.joinCluster(this);
+		}
+		for (RespStubServer server : slaves) {
+			server.joinCluster(this);
+		}
+	}
+
+	/**
+	 * master节点
+	 */
+	public List<RespStubServer> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * 所有replica节点
+	 */
+	public List<RespStubServer> getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * master的replica节点
+	 */
+	public List<RespStubServer> getReplicas(RespStubServer master) {
+		List<RespStubServer> result = new ArrayList<RespStubServer>();
+		for (RespStubServer replica : replicas) {
+			if (replica.getMaster() == master) {
+				result.add(replica);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 所有节点的host:port，逗号分隔，可直接作为RedisPoolUtil.init()的redisHost
+	 */
+	public String getAddresses() {
+		StringBuilder builder = new StringBuilder();
+		for (RespStubServer node : nodes) {
+			if (builder.length() > 0) {
+				builder.append(',');
+			}
+			builder.append(node.getAddress());
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * key的slot，key按RespStubServer的约定为ISO-8859-1解码的字符串，ASCII key与客户端计算结果一致
+	 */
+	public static int getSlot(String key) {
+		return JedisClusterCRC16.getSlot(key.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	public RespStubServer getOwner(int slot) {
+		return owners.get(slot);
+	}
+
+	/**
+	 * slot正在迁移时返回目标节点，否则返回null
+	 */
+	public RespStubServer getMigrationTarget(int slot) {
+		return migrating.get(slot);
+	}
+
+	/**
+	 * 开始迁移slot：之后源节点上不存在的key返回ASK，目标节点在ASKING后接受该slot的请求
+	 */
+	public void migrateSlot(int slot, RespStubServer target) {
+		if (!nodes.contains(target)) {
+			throw new IllegalArgumentException("target is not a node of this cluster");
+		}
+		if (getOwner(slot) != target) {
+			migrating.set(slot, target);
+		}
+	}
+
+	/**
+	 * 完成迁移：把该slot剩余的key移动到目标节点并变更归属，之后源节点返回MOVED
+	 */
+	public void finishMigration(int slot) {
+		RespStubServer target = migrating.get(slot);
+		if (null == target) {
+			return;
+		}
+		RespStubServer source = getOwner(slot);
+		RespStubStore sourceStore = source.getStore();
+		synchronized (sourceStore) {
+			for (String key : sourceStore.keys()) {
+				if (getSlot(key) == slot) {
+					sourceStore.moveTo(key, target.getStore());
+				}
+			}
+			owners.set(slot, target);
+			migrating.set(slot, null);
+		}
+	}
+
+	/**
+	 * 直接变更slot归属并搬迁数据
+	 */
+	public void moveSlot(int slot, RespStubServer target) {
+		migrateSlot(slot, target);
+		finishMigration(slot);
+	}
+
+	/**
+	 * CLUSTER SLOTS的回复：连续归属同一节点的slot合并为一个区间，master之后是它的replica
+	 */
+	List<Object> clusterSlots() {
+		List<Object> ranges = new ArrayList<Object>();
+		int start = 0;
+		for (int slot = 1; slot <= SLOT_COUNT; slot++) {
+			if (SLOT_COUNT == slot || owners.get(slot) != owners.get(start)) {
+				RespStubServer owner = owners.get(start);
+				List<Object> range = new ArrayList<Object>();
+				range.add((long) start);
+				range.add((long) slot - 1);
+				range.add(nodeInfo(owner));
+				for (RespStubServer replica : getReplicas(owner)) {
+					range.add(nodeInfo(replica));
+				}
+				ranges.add(range);
+				start = slot;
+			}
+		}
+		return ranges;
+	}
+
+	private static List<Object> nodeInfo(RespStubServer server) {
+		return Arrays.<Object> asList(server.getHost(), (long) server.getPort(), server.getNodeId());
+	}
+
+	@Override
+	public void close() {
+		for (RespStubServer node : nodes) {
+			node.close();
+		}
+		for (RespStubServer node : replicas) {
+			node.close();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.sinosafe.macaw.database.connector.redis.perf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sinosafe.macaw.database.connector.redis.RedisScriptRegistry;
+import com.sinosafe.macaw.database.connector.redis.perf.RespStubStore.Script;
+
+/**
+ * TODO RedisScriptRegistry中内置脚本的Java实现，供RespStubStore执行EVALSHA
+ *
+ */
+public class RespStubScripts {
+
+	private RespStubScripts() {
+	}
+
+	/**
+	 * 注册所有内置脚本
+	 */
+	public static void registerDefaults(RespStubStore store) {
+		store.registerScript(RedisScriptRegistry.HMSET_EXPIRE.getSource(), new Script() {
+			@Override
+			public Object execute(RespStubStore store, List<String> keys, List<String> args) {
+				store.hmset(keys.get(0), args.subList(1, args.size()));
+				store.expire(keys.get(0), Long.parseLong(args.get(0)) * 1000);
+				return RespStubStore.Status.OK;
+			}
+		});
+		store.registerScript(RedisScriptRegistry.ROTATE_TAIL.getSource(), new Script() {
+			@Override
+			public Object execute(RespStubStore store, List<String> keys, List<String> args) {
+				String key = keys.get(0);
+				int count = Integer.parseInt(args.get(0));
+				if (store.llen(key) < count) {
+					return null;
+				}
+				List<String> items = new ArrayList<String>(Math.max(0, count));
+				for (int i = 0; i < count; i++) {
+					items.add(store.rpoplpush(key, key));
+				}
+				return items;
+			}
+		});
+		store.registerScript(RedisScriptRegistry.COMPARE_AND_DELETE.getSource(), new Script() {
+			@Override
+			public Object execute(RespStubStore store, List<String> keys, List<String> args) {
+				return args.get(0).equals(store.getString(keys.get(0))) ? store.del(keys.get(0)) : 0L;
+			}
+		});
+		// 可靠队列：存根没有zset，截止时间zset用id -> 毫秒的hash模拟
+		store.registerScript(RedisScriptRegistry.QUEUE_POP.getSource(), new Script() {
+			@Override
+			public Object execute(RespStubStore store, List<String> keys, List<String> args) {
+				int count = Integer.parseInt(args.get(0));
+				List<String> result = new ArrayList<String>();
+				for (int i = 0; i < count; i++) {
+					String message = store.pop(keys.get(1), false);
+					if (null == message) {
+						message = store.pop(keys.get(0), false);
+					}
+					if (null == message) {
+						break;
+					}
+					String id = String.valueOf(store.execute("INCR", new String[] { keys.get(4) }));
+					store.execute("HSET", new String[] { keys.get(2), id, message });
+					store.execute("HSET", new String[] { keys.get(3), id, args.get(1) });
+					result.add(id);
+					result.add(message);
+				}
+				return result;
+			}
+		});
+		store.registerScript(RedisScriptRegistry.QUEUE_ACK.getSource(), new Script() {
+			@Override
+			public Object execute(RespStubStore store, List<String> keys, List<String> args) {
+				long acked = 0;
+				for (String id : args) {
+					store.execute("HDEL", new String[] { keys.get(3), id });
+					acked += (Long) store.execute("HDEL", new String[] { keys.get(2), id });
+				}
+				return acked;
+			}
+		});
+		store.registerScript(RedisScriptRegistry.QUEUE_NACK.getSource(), new Script() {
+			@Override
+			public Object execute(RespStubStore store, List<String> keys, List<String> args) {
+				long requeued = 0;
+				for (String id : args) {
+					requeued += requeue(store, keys, id, "LPUSH");
+				}
+				return requeued;
+			}
+		});
+		store.registerScript(RedisScriptRegistry.QUEUE_TOUCH.getSource(), new Script() {
+			@Override
+			public Object execute(RespStubStore store, List<String> keys, List<String> args) {
+				List<String> touched = new ArrayList<String>();
+				for (String id : args.subList(1, args.size())) {
+					if (null != store.hget(keys.get(3), id)) {
+						store.execute("HSET", new String[] { keys.get(3), id, args.get(0) });
+						touched.add(id);
+					}
+				}
+				return touched;
+			}
+		});
+		store.registerScript(RedisScriptRegistry.QUEUE_REQUEUE_EXPIRED.getSource(), new Script() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Object execute(RespStubStore store, List<String> keys, List<String> args) {
+				long now = Long.parseLong(args.get(0));
+				int limit = Integer.parseInt(args.get(1));
+				List<String> deadlines = (List<String>) store.execute("HGETALL", new String[] { keys.get(3) });
+				List<String> ids = new ArrayList<String>();
+				for (int i = 0; i + 1 < deadlines.size() && ids.size() < limit; i += 2) {
+					if (Long.parseLong(deadlines.get(i + 1)) <= now) {
+						ids.add(deadlines.get(i));
+					}
+				}
+				for (String id : ids) {
+					requeue(store, keys, id, "RPUSH");
+				}
+				return (long) ids.size();
+			}
+		});
+	}
+
+	private static long requeue(RespStubStore store, List<String> keys, String id, String push) {
+		String message = store.hget(keys.get(2), id);
+		store.execute("HDEL", new String[] { keys.get(3), id });
+		if (null == message) {
+			return 0L;
+		}
+		store.execute("HDEL", new String[] { keys.get(2), id });
+		store.execute(push, new String[] { keys.get(0), message });
+		return 1L;
+	}
+}
@@ -0,0 +1,587 @@
+package com.sinosafe.macaw.database.connector.redis.perf;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TODO 进程内的RESP协议桩服务器，用于压测和本地验证，不依赖真实的redis
+ *
+ * 每个连接一个守护线程，请求按RESP数组解析后交给RespStubStore执行；批量请求(pipeline)在读空输入缓冲后才flush。
+ * 参数和回复按ISO-8859-1逐字节转换为String，二进制value(RedisCodec编码)可以原样存取。
+ * 以cluster模式对外提供服务：单独使用时CLUSTER SLOTS返回本节点负责全部16384个slot，使JedisCluster可以直接连接；
+ * 加入RespStubCluster后按集群的slot归属返回拓扑，并对不属于本节点的key返回MOVED/ASK。
+ * 作为replica时只在READONLY连接上执行master所负责slot的读命令，INFO replication返回复制状态。
+ *
+ */
+public class RespStubServer implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RespStubServer.class);
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	/** 已在execute中自行回复，不需要再回复 */
+	private static final Object NO_REPLY = new Object();
+
+	/** replica在READONLY连接上可以执行的命令 */
+	private static final Set<String> READ_COMMANDS = new HashSet<String>(Arrays.asList("GET", "EXISTS", "TTL", "PTTL",
+			"HGET", "HMGET", "HGETALL", "HEXISTS", "HLEN", "HSCAN", "LLEN", "LRANGE", "SMEMBERS", "SCARD", "SSCAN"));
+
+	private final RespStubStore store;
+
+	private final ServerSocket serverSocket;
+
+	private final String nodeId;
+
+	private final Set<Connection> connections = Collections.newSetFromMap(new ConcurrentHashMap<Connection, Boolean>());
+
+	private final ConcurrentHashMap<String, Set<Connection>> subscribers = new ConcurrentHashMap<String, Set<Connection>>();
+
+	private volatile RespStubCluster cluster;
+
+	/** 作为replica时的master，master节点为null */
+	private volatile RespStubServer master;
+
+	/** 复制偏移量，master每执行一条带key的命令加1 */
+	private final AtomicLong replicationOffset = new AtomicLong();
+
+	/** 模拟的复制延迟：落后master的偏移量和距上次确认的秒数 */
+	private volatile long lagOffset;
+
+	private volatile long lagSeconds;
+
+	/** 每个请求回复前的延迟，单位：微秒，用于模拟网络或节点变慢 */
+	private volatile long responseDelayMicros;
+
+	private volatile boolean closed;
+
+	/**
+	 * 在127.0.0.1的随机端口上启动
+	 */
+	public RespStubServer() throws IOException {
+		this(0, new RespStubStore());
+	}
+
+	/**
+	 * @param port
+	 *            监听端口，0表示随机端口
+	 * @param store
+	 *            数据存储
+	 */
+	public RespStubServer(int port, RespStubStore store) throws IOException {
+		this.store = store;
+		this.serverSocket = new ServerSocket();
+		this.serverSocket.setReuseAddress(true);
+		this.serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		this.nodeId = String.format("%040x", SEQUENCE.incrementAndGet());
+		Thread acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "resp-stub-acceptor-" + getPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public String getHost() {
+		return serverSocket.getInetAddress().getHostAddress();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * host:port，可直接作为RedisPoolUtil.init()的redisHost
+	 */
+	public String getAddress() {
+		return getHost() + ":" + getPort();
+	}
+
+	public RespStubStore getStore() {
+		return store;
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	void joinCluster(RespStubCluster cluster) {
+		this.cluster = cluster;
+	}
+
+	void replicaOf(RespStubServer master) {
+		this.master = master;
+	}
+
+	/**
+	 * 作为replica时的master，master节点返回null
+	 */
+	public RespStubServer getMaster() {
+		return master;
+	}
+
+	/**
+	 * 设置replica模拟的复制延迟，在master的INFO replication中体现
+	 *
+	 * @param offset
+	 *            落后master的复制偏移量
+	 * @param seconds
+	 *            距上次确认的秒数
+	 */
+	public void setReplicationLag(long offset, long seconds) {
+		this.lagOffset = offset;
+		this.lagSeconds = seconds;
+	}
+
+	/**
+	 * 设置每个请求回复前的延迟，0表示不延迟
+	 *
+	 * @param responseDelayMicros
+	 *            延迟，单位：微秒
+	 */
+	public void setResponseDelayMicros(long responseDelayMicros) {
+		this.responseDelayMicros = responseDelayMicros;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+		for (Connection connection : connections) {
+			connection.close();
+		}
+	}
+
+	private void accept() {
+		while (!closed) {
+			try {
+				Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				final Connection connection = new Connection(socket);
+				connections.add(connection);
+				Thread thread = new Thread(connection, "resp-stub-" + getPort() + "-" + socket.getPort());
+				thread.setDaemon(true);
+				thread.start();
+			} catch (IOException e) {
+				if (!closed) {
+					logger.warn("RespStubServer accept failed.", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 处理不由RespStubStore负责的命令：集群拓扑和发布订阅，其余命令交给store
+	 *
+	 * @return 回复对象，已自行回复时返回NO_REPLY
+	 */
+	Object execute(Connection connection, String name, String[] args) {
+		boolean asking = connection.asking;
+		connection.asking = false;
+		switch (name) {
+		case "ASKING":
+			connection.asking = true;
+			return RespStubStore.Status.OK;
+		case "READONLY":
+			connection.readonly = true;
+			return RespStubStore.Status.OK;
+		case "READWRITE":
+			connection.readonly = false;
+			return RespStubStore.Status.OK;
+		case "INFO":
+			return info();
+		case "CLUSTER":
+			return cluster(args);
+		case "PUBLISH":
+			return publish(args);
+		case "SUBSCRIBE":
+			for (String channel : args) {
+				Set<Connection> set = subscribers.get(channel);
+				if (null == set) {
+					subscribers.putIfAbsent(channel, new CopyOnWriteArraySet<Connection>());
+					set = subscribers.get(channel);
+				}
+				set.add(connection);
+				connection.channels.add(channel);
+				connection.send(Arrays.<Object> asList("subscribe", channel, (long) connection.channels.size()));
+			}
+			return NO_REPLY;
+		case "UNSUBSCRIBE":
+			List<String> channels = args.length > 0 ? Arrays.asList(args) : new ArrayList<String>(connection.channels);
+			for (String channel : channels) {
+				Set<Connection> set = subscribers.get(channel);
+				if (null != set) {
+					set.remove(connection);
+				}
+				connection.channels.remove(channel);
+				connection.send(Arrays.<Object> asList("unsubscribe", channel, (long) connection.channels.size()));
+			}
+			return NO_REPLY;
+		case "QUIT":
+			connection.send(RespStubStore.Status.OK);
+			connection.flush();
+			connection.close();
+			return NO_REPLY;
+		default:
+			checkSlot(connection, name, args, asking);
+			return store.execute(name, args);
+		}
+	}
+
+	/**
+	 * INFO的回复，只包含replication部分
+	 */
+	private String info() {
+		StringBuilder builder = new StringBuilder("# Replication\r\n");
+		RespStubServer current = master;
+		if (null != current) {
+			builder.append("role:slave\r\nmaster_host:").append(current.getHost()).append("\r\nmaster_port:")
+					.append(current.getPort()).append("\r\nmaster_link_status:up\r\nslave_repl_offset:")
+					.append(current.replicationOffset.get() - lagOffset).append("\r\n");
+			return builder.toString();
+		}
+		long offset = replicationOffset.get();
+		RespStubCluster currentCluster = cluster;
+		List<RespStubServer> replicas = null == currentCluster ? Collections.<RespStubServer> emptyList()
+				: currentCluster.getReplicas(this);
+		builder.append("role:master\r\nconnected_slaves:").append(replicas.size()).append("\r\n");
+		for (int i = 0; i < replicas.size(); i++) {
+			RespStubServer replica = replicas.get(i);
+			builder.append("slave").append(i).append(":ip=").append(replica.getHost()).append(",port=")
+					.append(replica.getPort()).append(",state=online,offset=")
+					.append(offset - replica.lagOffset).append(",lag=").append(replica.lagSeconds)
+					.append("\r\n");
+		}
+		builder.append("master_repl_offset:").append(offset).append("\r\n");
+		return builder.toString();
+	}
+
+	/**
+	 * 集群模式下key不属于本节点时抛出MOVED，slot迁移中且key不在本节点时抛出ASK；
+	 * replica只接受READONLY连接上对其master负责的slot的读命令
+	 */
+	private void checkSlot(Connection connection, String name, String[] args, boolean asking) {
+		RespStubCluster current = cluster;
+		String key = keyOf(name, args);
+		if (null == current || null == key) {
+			return;
+		}
+		int slot = RespStubCluster.getSlot(key);
+		RespStubServer owner = current.getOwner(slot);
+		RespStubServer replicated = master;
+		if (null != replicated) {
+			if (owner != replicated || !connection.readonly || !READ_COMMANDS.contains(name)) {
+				throw new RespStubStore.RespError("MOVED " + slot + " " + owner.getAddress());
+			}
+			return;
+		}
+		replicationOffset.incrementAndGet();
+		if (owner != this) {
+			if (asking && current.getMigrationTarget(slot) == this) {
+				return;
+			}
+			throw new RespStubStore.RespError("MOVED " + slot + " " + owner.getAddress());
+		}
+		RespStubServer target = current.getMigrationTarget(slot);
+		if (null != target && null == store.value(key)) {
+			throw new RespStubStore.RespError("ASK " + slot + " " + target.getAddress());
+		}
+	}
+
+	/**
+	 * 命令的第一个key，没有key的命令返回null
+	 */
+	private static String keyOf(String name, String[] args) {
+		switch (name) {
+		case "PING":
+		case "AUTH":
+		case "SELECT":
+		case "READONLY":
+		case "READWRITE":
+		case "DBSIZE":
+		case "FLUSHALL":
+		case "FLUSHDB":
+		case "SCRIPT":
+		case "SCAN":
+		case "INFO":
+			return null;
+		case "EVAL":
+		case "EVALSHA":
+			return args.length > 2 && !"0".equals(args[1]) ? args[2] : null;
+		default:
+			return args.length > 0 ? args[0] : null;
+		}
+	}
+
+	Object cluster(String[] args) {
+		String sub = args.length > 0 ? args[0].toUpperCase() : "";
+		if ("SLOTS".equals(sub)) {
+			List<Object> node = Arrays.<Object> asList(getHost(), (long) getPort(), nodeId);
+			List<Object> range = Arrays.<Object> asList(0L, 16383L, node);
+			RespStubCluster current = cluster;
+			return null == current ? Collections.<Object> singletonList(range) : current.clusterSlots();
+		}
+		if ("NODES".equals(sub)) {
+			return nodeId + " " + getAddress() + "@" + (getPort() + 10000) + " myself,master - 0 0 1 connected 0-16383\n";
+		}
+		if ("INFO".equals(sub)) {
+			return "cluster_state:ok\r\ncluster_slots_assigned:16384\r\ncluster_known_nodes:1\r\n";
+		}
+		throw new RespStubStore.RespError("ERR unknown subcommand '" + sub + "'");
+	}
+
+	private long publish(String[] args) {
+		if (args.length < 2) {
+			throw new RespStubStore.RespError("ERR wrong number of arguments");
+		}
+		Set<Connection> set = subscribers.get(args[0]);
+		if (null == set) {
+			return 0L;
+		}
+		List<Object> message = Arrays.<Object> asList("message", args[0], args[1]);
+		for (Connection connection : set) {
+			connection.send(message);
+			connection.flush();
+		}
+		return set.size();
+	}
+
+	/**
+	 * 客户端连接
+	 */
+	class Connection implements Runnable {
+
+		private final Socket socket;
+
+		private final InputStream in;
+
+		private final OutputStream out;
+
+		final Set<String> channels = new CopyOnWriteArraySet<String>();
+
+		/** 上一条命令是ASKING */
+		boolean asking;
+
+		/** 执行过READONLY */
+		boolean readonly;
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			this.in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+			this.out = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024);
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!closed) {
+					String[] command = readCommand();
+					if (null == command) {
+						break;
+					}
+					String name = command[0].toUpperCase();
+					String[] args = Arrays.copyOfRange(command, 1, command.length);
+					try {
+						Object reply = execute(this, name, args);
+						long delay = responseDelayMicros;
+						if (delay > 0) {
+							TimeUnit.MICROSECONDS.sleep(delay);
+						}
+						if (NO_REPLY != reply) {
+							send(reply);
+						}
+					} catch (RespStubStore.RespError e) {
+						send(e);
+					} catch (RuntimeException e) {
+						send(new RespStubStore.RespError("ERR " + e));
+					}
+					if (0 == in.available()) {
+						flush();
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (EOFException e) {
+				// 客户端关闭连接
+			} catch (SocketException e) {
+				// 连接被重置或服务器关闭
+			} catch (IOException e) {
+				if (!closed) {
+					logger.warn("RespStubServer connection failed.", e);
+				}
+			} finally {
+				close();
+			}
+		}
+
+		void close() {
+			connections.remove(this);
+			for (String channel : channels) {
+				Set<Connection> set = subscribers.get(channel);
+				if (null != set) {
+					set.remove(this);
+				}
+			}
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+
+		synchronized void send(Object reply) {
+			try {
+				write(reply);
+			} catch (IOException e) {
+				close();
+			}
+		}
+
+		synchronized void flush() {
+			try {
+				out.flush();
+			} catch (IOException e) {
+				close();
+			}
+		}
+
+		private String[] readCommand() throws IOException {
+			int first = in.read();
+			if (first < 0) {
+				return null;
+			}
+			if ('*' != first) {
+				// inline命令，仅用于telnet调试
+				String line = (char) first + readLine();
+				return line.trim().split("\\s+");
+			}
+			int count = (int) readLong();
+			String[] command = new String[count];
+			for (int i = 0; i < count; i++) {
+				if ('$' != in.read()) {
+					throw new IOException("Protocol error: expected '$'");
+				}
+				int length = (int) readLong();
+				byte[] bytes = new byte[length];
+				int read = 0;
+				while (read < length) {
+					int n = in.read(bytes, read, length - read);
+					if (n < 0) {
+						throw new EOFException();
+					}
+					read += n;
+				}
+				in.read();
+				in.read();
+				command[i] = new String(bytes, StandardCharsets.ISO_8859_1);
+			}
+			return command;
+		}
+
+		private long readLong() throws IOException {
+			long value = 0;
+			boolean negative = false;
+			int b = in.read();
+			if ('-' == b) {
+				negative = true;
+				b = in.read();
+			}
+			while ('\r' != b) {
+				if (b < 0) {
+					throw new EOFException();
+				}
+				value = value * 10 + (b - '0');
+				b = in.read();
+			}
+			in.read();
+			return negative ? -value : value;
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder builder = new StringBuilder();
+			int b;
+			while ((b = in.read()) != '\n') {
+				if (b < 0) {
+					throw new EOFException();
+				}
+				if ('\r' != b) {
+					builder.append((char) b);
+				}
+			}
+			return builder.toString();
+		}
+
+		private void write(Object reply) throws IOException {
+			if (null == reply) {
+				out.write('$');
+				writeNumber(-1);
+			} else if (reply instanceof RespStubStore.Status) {
+				out.write('+');
+				out.write(((RespStubStore.Status) reply).text.getBytes(StandardCharsets.ISO_8859_1));
+				out.write(CRLF);
+			} else if (reply instanceof RespStubStore.RespError) {
+				out.write('-');
+				out.write(((RespStubStore.RespError) reply).getMessage().getBytes(StandardCharsets.ISO_8859_1));
+				out.write(CRLF);
+			} else if (reply instanceof Long) {
+				out.write(':');
+				writeNumber((Long) reply);
+			} else if (reply instanceof String) {
+				byte[] bytes = ((String) reply).getBytes(StandardCharsets.ISO_8859_1);
+				out.write('$');
+				writeNumber(bytes.length);
+				out.write(bytes);
+				out.write(CRLF);
+			} else if (reply instanceof List) {
+				List<?> list = (List<?>) reply;
+				out.write('*');
+				writeNumber(list.size());
+				for (Object item : list) {
+					write(item);
+				}
+			} else if (RespStubStore.NIL_ARRAY == reply) {
+				out.write('*');
+				writeNumber(-1);
+			} else {
+				throw new IllegalArgumentException("Unsupported reply " + reply);
+			}
+		}
+
+		private void writeNumber(long value) throws IOException {
+			out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+			out.write(CRLF);
+		}
+	}
+}
@@ -0,0 +1,886 @@
+package com.sinosafe.macaw.database.connector.redis.perf;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * TODO 压测用的内存数据存储，实现RedisClientUtil用到的字符串、哈希、列表、集合、SCAN、过期和脚本命令
+ *
+ * 只追求语义正确和足够轻量，不追求与redis完全一致；脚本不执行Lua，而是按脚本SHA1查找注册的Java实现。
+ *
+ */
+public class RespStubStore {
+
+	/** 简单字符串回复，例如+OK */
+	public static final class Status {
+
+		public static final Status OK = new Status("OK");
+
+		public static final Status PONG = new Status("PONG");
+
+		final String text;
+
+		public Status(String text) {
+			this.text = text;
+		}
+	}
+
+	/** 错误回复，例如-ERR ... */
+	public static class RespError extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public RespError(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	/** nil多条回复(*-1)，用于BRPOP超时等 */
+	public static final Object NIL_ARRAY = new Object();
+
+	/**
+	 * 脚本的Java实现
+	 */
+	public interface Script {
+
+		Object execute(RespStubStore store, List<String> keys, List<String> args);
+	}
+
+	private static final RespError WRONG_TYPE = new RespError(
+			"WRONGTYPE Operation against a key holding the wrong kind of value");
+
+	private final ConcurrentMap<String, Object> data = new ConcurrentHashMap<String, Object>();
+
+	private final ConcurrentMap<String, Long> expires = new ConcurrentHashMap<String, Long>();
+
+	private final ConcurrentMap<String, String> scriptSources = new ConcurrentHashMap<String, String>();
+
+	private final ConcurrentMap<String, Script> scriptHandlers = new ConcurrentHashMap<String, Script>();
+
+	/**
+	 * 注册脚本的Java实现，EVALSHA/EVAL按脚本SHA1匹配
+	 */
+	public void registerScript(String source, Script script) {
+		scriptHandlers.put(sha1(source), script);
+	}
+
+	public int size() {
+		return data.size();
+	}
+
+	public void clear() {
+		data.clear();
+		expires.clear();
+	}
+
+	/**
+	 * 当前所有key(快照)
+	 */
+	public List<String> keys() {
+		return new ArrayList<String>(data.keySet());
+	}
+
+	/**
+	 * 将key连同值和过期时间移动到另一个存储，用于模拟slot迁移
+	 */
+	public void moveTo(String key, RespStubStore target) {
+		Object value = data.remove(key);
+		Long expireAt = expires.remove(key);
+		if (null != value) {
+			target.data.put(key, value);
+			if (null != expireAt) {
+				target.expires.put(key, expireAt);
+			}
+		}
+	}
+
+	/**
+	 * 执行一条命令，返回回复对象：Status、Long、String、null、List、NIL_ARRAY，错误以RespError抛出
+	 */
+	public Object execute(String name, String[] args) {
+		switch (name) {
+		case "PING":
+			return Status.PONG;
+		case "AUTH":
+		case "SELECT":
+		case "READONLY":
+		case "READWRITE":
+			return Status.OK;
+		case "DBSIZE":
+			return (long) data.size();
+		case "FLUSHALL":
+		case "FLUSHDB":
+			clear();
+			return Status.OK;
+		case "GET":
+			return getString(arg(args, 0));
+		case "SET":
+			return set(args);
+		case "SETEX":
+			checkArgs(args, 3);
+			put(args[0], args[2], Long.parseLong(args[1]) * 1000);
+			return Status.OK;
+		case "PSETEX":
+			checkArgs(args, 3);
+			put(args[0], args[2], Long.parseLong(args[1]));
+			return Status.OK;
+		case "DEL":
+			return del(args);
+		case "EXISTS":
+			return exists(args);
+		case "EXPIRE":
+			checkArgs(args, 2);
+			return expire(args[0], Long.parseLong(args[1]) * 1000);
+		case "PEXPIRE":
+			checkArgs(args, 2);
+			return expire(args[0], Long.parseLong(args[1]));
+		case "TTL":
+			return ttl(arg(args, 0), 1000);
+		case "PTTL":
+			return ttl(arg(args, 0), 1);
+		case "INCR":
+			return incrBy(arg(args, 0), 1);
+		case "INCRBY":
+			checkArgs(args, 2);
+			return incrBy(args[0], Long.parseLong(args[1]));
+		case "DECR":
+			return incrBy(arg(args, 0), -1);
+		case "DECRBY":
+			checkArgs(args, 2);
+			return incrBy(args[0], -Long.parseLong(args[1]));
+		case "HSET":
+			return hset(args);
+		case "HMSET":
+			hset(args);
+			return Status.OK;
+		case "HGET":
+			checkArgs(args, 2);
+			return hget(args[0], args[1]);
+		case "HMGET":
+			return hmget(args);
+		case "HGETALL":
+			return hgetAll(arg(args, 0));
+		case "HDEL":
+			return hdel(args);
+		case "HEXISTS":
+			checkArgs(args, 2);
+			return null == hget(args[0], args[1]) ? 0L : 1L;
+		case "HINCRBY":
+			checkArgs(args, 3);
+			return hincrBy(args[0], args[1], Long.parseLong(args[2]));
+		case "HLEN":
+			return hlen(arg(args, 0));
+		case "LPUSH":
+			return push(args, true);
+		case "RPUSH":
+			return push(args, false);
+		case "LPOP":
+			return pop(arg(args, 0), true);
+		case "RPOP":
+			return pop(arg(args, 0), false);
+		case "BRPOP":
+			return brpop(args);
+		case "RPOPLPUSH":
+			checkArgs(args, 2);
+			return rpoplpush(args[0], args[1]);
+		case "BRPOPLPUSH":
+			checkArgs(args, 3);
+			return brpoplpush(args[0], args[1], Long.parseLong(args[2]));
+		case "LLEN":
+			return llen(arg(args, 0));
+		case "LRANGE":
+			checkArgs(args, 3);
+			return lrange(args[0], Long.parseLong(args[1]), Long.parseLong(args[2]));
+		case "LREM":
+			checkArgs(args, 3);
+			return lrem(args[0], Long.parseLong(args[1]), args[2]);
+		case "SADD":
+			return sadd(args);
+		case "SREM":
+			return srem(args);
+		case "SMEMBERS":
+			return smembers(arg(args, 0));
+		case "SCARD":
+			return scard(arg(args, 0));
+		case "SCAN":
+			return scan(keys(), args, 0);
+		case "HSCAN":
+			return hscan(args);
+		case "SSCAN":
+			return sscan(args);
+		case "SCRIPT":
+			return script(args);
+		case "EVALSHA":
+			checkArgs(args, 2);
+			return eval(args[0], args);
+		case "EVAL":
+			checkArgs(args, 2);
+			scriptSources.putIfAbsent(sha1(args[0]), args[0]);
+			return eval(sha1(args[0]), args);
+		default:
+			throw new RespError("ERR unknown command '" + name + "'");
+		}
+	}
+
+	private static String arg(String[] args, int index) {
+		checkArgs(args, index + 1);
+		return args[index];
+	}
+
+	private static void checkArgs(String[] args, int min) {
+		if (args.length < min) {
+			throw new RespError("ERR wrong number of arguments");
+		}
+	}
+
+	/**
+	 * 读取key的值，已过期的key会被删除
+	 */
+	Object value(String key) {
+		Long expireAt = expires.get(key);
+		if (null != expireAt && expireAt <= System.currentTimeMillis()) {
+			expires.remove(key, expireAt);
+			data.remove(key);
+			return null;
+		}
+		return data.get(key);
+	}
+
+	public String getString(String key) {
+		Object value = value(key);
+		if (null != value && !(value instanceof String)) {
+			throw WRONG_TYPE;
+		}
+		return (String) value;
+	}
+
+	/**
+	 * 写入字符串，ttlMillis小于等于0表示不过期
+	 */
+	public void put(String key, String value, long ttlMillis) {
+		data.put(key, value);
+		if (ttlMillis > 0) {
+			expires.put(key, System.currentTimeMillis() + ttlMillis);
+		} else {
+			expires.remove(key);
+		}
+	}
+
+	private Object set(String[] args) {
+		checkArgs(args, 2);
+		long ttl = 0;
+		boolean nx = false;
+		boolean xx = false;
+		for (int i = 2; i < args.length; i++) {
+			String option = args[i].toUpperCase();
+			if ("NX".equals(option)) {
+				nx = true;
+			} else if ("XX".equals(option)) {
+				xx = true;
+			} else if ("EX".equals(option) && i + 1 < args.length) {
+				ttl = Long.parseLong(args[++i]) * 1000;
+			} else if ("PX".equals(option) && i + 1 < args.length) {
+				ttl = Long.parseLong(args[++i]);
+			} else {
+				throw new RespError("ERR syntax error");
+			}
+		}
+		synchronized (this) {
+			boolean exists = null != value(args[0]);
+			if ((nx && exists) || (xx && !exists)) {
+				return null;
+			}
+			put(args[0], args[1], ttl);
+		}
+		return Status.OK;
+	}
+
+	public long del(String... keys) {
+		long removed = 0;
+		for (String key : keys) {
+			if (null != value(key)) {
+				removed++;
+			}
+			data.remove(key);
+			expires.remove(key);
+		}
+		return removed;
+	}
+
+	private long exists(String[] keys) {
+		long count = 0;
+		for (String key : keys) {
+			if (null != value(key)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public long expire(String key, long ttlMillis) {
+		if (null == value(key)) {
+			return 0L;
+		}
+		if (ttlMillis <= 0) {
+			del(key);
+		} else {
+			expires.put(key, System.currentTimeMillis() + ttlMillis);
+		}
+		return 1L;
+	}
+
+	private long ttl(String key, long unit) {
+		if (null == value(key)) {
+			return -2L;
+		}
+		Long expireAt = expires.get(key);
+		if (null == expireAt) {
+			return -1L;
+		}
+		long remaining = expireAt - System.currentTimeMillis();
+		return Math.max(0, (remaining + unit - 1) / unit);
+	}
+
+	private synchronized long incrBy(String key, long delta) {
+		String current = getString(key);
+		long value;
+		try {
+			value = (null == current ? 0 : Long.parseLong(current)) + delta;
+		} catch (NumberFormatException e) {
+			throw new RespError("ERR value is not an integer or out of range");
+		}
+		data.put(key, String.valueOf(value));
+		return value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, String> hash(String key, boolean create) {
+		Object value = value(key);
+		if (null == value) {
+			if (!create) {
+				return null;
+			}
+			Map<String, String> created = new LinkedHashMap<String, String>();
+			value = data.putIfAbsent(key, created);
+			if (null == value) {
+				return created;
+			}
+		}
+		if (!(value instanceof Map)) {
+			throw WRONG_TYPE;
+		}
+		return (Map<String, String>) value;
+	}
+
+	private long hset(String[] args) {
+		if (args.length < 3 || 0 == args.length % 2) {
+			throw new RespError("ERR wrong number of arguments");
+		}
+		Map<String, String> hash = hash(args[0], true);
+		long added = 0;
+		synchronized (hash) {
+			for (int i = 1; i < args.length; i += 2) {
+				if (null == hash.put(args[i], args[i + 1])) {
+					added++;
+				}
+			}
+		}
+		return added;
+	}
+
+	public String hget(String key, String field) {
+		Map<String, String> hash = hash(key, false);
+		if (null == hash) {
+			return null;
+		}
+		synchronized (hash) {
+			return hash.get(field);
+		}
+	}
+
+	private List<String> hmget(String[] args) {
+		checkArgs(args, 2);
+		Map<String, String> hash = hash(args[0], false);
+		List<String> values = new ArrayList<String>(args.length - 1);
+		for (int i = 1; i < args.length; i++) {
+			if (null == hash) {
+				values.add(null);
+			} else {
+				synchronized (hash) {
+					values.add(hash.get(args[i]));
+				}
+			}
+		}
+		return values;
+	}
+
+	private List<String> hgetAll(String key) {
+		Map<String, String> hash = hash(key, false);
+		if (null == hash) {
+			return new ArrayList<String>(0);
+		}
+		synchronized (hash) {
+			List<String> values = new ArrayList<String>(hash.size() * 2);
+			for (Map.Entry<String, String> entry : hash.entrySet()) {
+				values.add(entry.getKey());
+				values.add(entry.getValue());
+			}
+			return values;
+		}
+	}
+
+	private long hdel(String[] args) {
+		checkArgs(args, 2);
+		Map<String, String> hash = hash(args[0], false);
+		if (null == hash) {
+			return 0L;
+		}
+		long removed = 0;
+		synchronized (hash) {
+			for (int i = 1; i < args.length; i++) {
+				if (null != hash.remove(args[i])) {
+					removed++;
+				}
+			}
+			if (hash.isEmpty()) {
+				data.remove(args[0], hash);
+			}
+		}
+		return removed;
+	}
+
+	private long hincrBy(String key, String field, long delta) {
+		Map<String, String> hash = hash(key, true);
+		synchronized (hash) {
+			String current = hash.get(field);
+			long value;
+			try {
+				value = (null == current ? 0 : Long.parseLong(current)) + delta;
+			} catch (NumberFormatException e) {
+				throw new RespError("ERR hash value is not an integer");
+			}
+			hash.put(field, String.valueOf(value));
+			return value;
+		}
+	}
+
+	private long hlen(String key) {
+		Map<String, String> hash = hash(key, false);
+		if (null == hash) {
+			return 0L;
+		}
+		synchronized (hash) {
+			return hash.size();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private LinkedList<String> list(String key, boolean create) {
+		Object value = value(key);
+		if (null == value) {
+			if (!create) {
+				return null;
+			}
+			LinkedList<String> created = new LinkedList<String>();
+			value = data.putIfAbsent(key, created);
+			if (null == value) {
+				return created;
+			}
+		}
+		if (!(value instanceof LinkedList)) {
+			throw WRONG_TYPE;
+		}
+		return (LinkedList<String>) value;
+	}
+
+	private long push(String[] args, boolean left) {
+		checkArgs(args, 2);
+		LinkedList<String> list = list(args[0], true);
+		synchronized (list) {
+			for (int i = 1; i < args.length; i++) {
+				if (left) {
+					list.addFirst(args[i]);
+				} else {
+					list.addLast(args[i]);
+				}
+			}
+			return list.size();
+		}
+	}
+
+	public String pop(String key, boolean left) {
+		LinkedList<String> list = list(key, false);
+		if (null == list) {
+			return null;
+		}
+		synchronized (list) {
+			String value = list.isEmpty() ? null : left ? list.removeFirst() : list.removeLast();
+			if (list.isEmpty()) {
+				data.remove(key, list);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * 不阻塞：所有列表都为空时直接返回nil
+	 */
+	private Object brpop(String[] args) {
+		checkArgs(args, 2);
+		for (int i = 0; i < args.length - 1; i++) {
+			String value = pop(args[i], false);
+			if (null != value) {
+				return Arrays.asList(args[i], value);
+			}
+		}
+		return NIL_ARRAY;
+	}
+
+	/**
+	 * 供脚本实现调用的RPOPLPUSH
+	 */
+	public synchronized String rpoplpush(String source, String destination) {
+		String value = pop(source, false);
+		if (null != value) {
+			LinkedList<String> list = list(destination, true);
+			synchronized (list) {
+				list.addFirst(value);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * 轮询RPOPLPUSH直到取到数据或超时，超时返回nil；timeout为0时一直等待
+	 */
+	private String brpoplpush(String source, String destination, long timeoutSeconds) {
+		long deadline = 0 == timeoutSeconds ? Long.MAX_VALUE : System.currentTimeMillis() + timeoutSeconds * 1000;
+		while (true) {
+			String value = rpoplpush(source, destination);
+			if (null != value || System.currentTimeMillis() >= deadline) {
+				return value;
+			}
+			try {
+				Thread.sleep(5);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+		}
+	}
+
+	public long llen(String key) {
+		LinkedList<String> list = list(key, false);
+		if (null == list) {
+			return 0L;
+		}
+		synchronized (list) {
+			return list.size();
+		}
+	}
+
+	public List<String> lrange(String key, long start, long stop) {
+		LinkedList<String> list = list(key, false);
+		if (null == list) {
+			return new ArrayList<String>(0);
+		}
+		synchronized (list) {
+			int size = list.size();
+			int from = (int) (start < 0 ? Math.max(0, size + start) : Math.min(start, size));
+			int to = (int) (stop < 0 ? size + stop : Math.min(stop, size - 1));
+			if (from > to) {
+				return new ArrayList<String>(0);
+			}
+			return new ArrayList<String>(list.subList(from, to + 1));
+		}
+	}
+
+	private long lrem(String key, long count, String value) {
+		LinkedList<String> list = list(key, false);
+		if (null == list) {
+			return 0L;
+		}
+		long removed = 0;
+		synchronized (list) {
+			Iterator<String> iterator = count < 0 ? list.descendingIterator() : list.iterator();
+			long limit = 0 == count ? Long.MAX_VALUE : Math.abs(count);
+			while (iterator.hasNext() && removed < limit) {
+				if (value.equals(iterator.next())) {
+					iterator.remove();
+					removed++;
+				}
+			}
+			if (list.isEmpty()) {
+				data.remove(key, list);
+			}
+		}
+		return removed;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<String> set(String key, boolean create) {
+		Object value = value(key);
+		if (null == value) {
+			if (!create) {
+				return null;
+			}
+			Set<String> created = new LinkedHashSet<String>();
+			value = data.putIfAbsent(key, created);
+			if (null == value) {
+				return created;
+			}
+		}
+		if (!(value instanceof Set)) {
+			throw WRONG_TYPE;
+		}
+		return (Set<String>) value;
+	}
+
+	private long sadd(String[] args) {
+		checkArgs(args, 2);
+		Set<String> set = set(args[0], true);
+		long added = 0;
+		synchronized (set) {
+			for (int i = 1; i < args.length; i++) {
+				if (set.add(args[i])) {
+					added++;
+				}
+			}
+		}
+		return added;
+	}
+
+	private long srem(String[] args) {
+		checkArgs(args, 2);
+		Set<String> set = set(args[0], false);
+		if (null == set) {
+			return 0L;
+		}
+		long removed = 0;
+		synchronized (set) {
+			for (int i = 1; i < args.length; i++) {
+				if (set.remove(args[i])) {
+					removed++;
+				}
+			}
+			if (set.isEmpty()) {
+				data.remove(args[0], set);
+			}
+		}
+		return removed;
+	}
+
+	private List<String> smembers(String key) {
+		Set<String> set = set(key, false);
+		if (null == set) {
+			return new ArrayList<String>(0);
+		}
+		synchronized (set) {
+			return new ArrayList<String>(set);
+		}
+	}
+
+	private long scard(String key) {
+		Set<String> set = set(key, false);
+		if (null == set) {
+			return 0L;
+		}
+		synchronized (set) {
+			return set.size();
+		}
+	}
+
+	private Object hscan(String[] args) {
+		checkArgs(args, 2);
+		Map<String, String> hash = hash(args[0], false);
+		final Map<String, String> snapshot = new LinkedHashMap<String, String>();
+		if (null != hash) {
+			synchronized (hash) {
+				snapshot.putAll(hash);
+			}
+		}
+		List<Object> reply = scan(snapshot.keySet(), args, 1);
+		@SuppressWarnings("unchecked")
+		List<String> fields = (List<String>) reply.get(1);
+		List<String> entries = new ArrayList<String>(fields.size() * 2);
+		for (String field : fields) {
+			entries.add(field);
+			entries.add(snapshot.get(field));
+		}
+		reply.set(1, entries);
+		return reply;
+	}
+
+	private Object sscan(String[] args) {
+		checkArgs(args, 2);
+		return scan(smembers(args[0]), args, 1);
+	}
+
+	/**
+	 * SCAN/HSCAN/SSCAN的公共实现：按hashCode排序，游标为下一页的起始hash，
+	 * 与redis一样保证迭代期间一直存在的元素至少返回一次，同hash的元素总在同一页返回
+	 *
+	 * @param offset
+	 *            游标参数在args中的位置
+	 * @return [下一个游标, 本页元素]
+	 */
+	private static List<Object> scan(Collection<String> items, String[] args, int offset) {
+		long cursor = Long.parseLong(arg(args, offset));
+		int count = 10;
+		Pattern match = null;
+		for (int i = offset + 1; i + 1 < args.length; i += 2) {
+			String option = args[i].toUpperCase();
+			if ("COUNT".equals(option)) {
+				count = Math.max(1, Integer.parseInt(args[i + 1]));
+			} else if ("MATCH".equals(option)) {
+				match = glob(args[i + 1]);
+			} else {
+				throw new RespError("ERR syntax error");
+			}
+		}
+		List<String> sorted = new ArrayList<String>();
+		for (String item : items) {
+			if (position(item) >= cursor) {
+				sorted.add(item);
+			}
+		}
+		sorted.sort(Comparator.comparingLong(RespStubStore::position));
+		List<String> page = new ArrayList<String>();
+		long next = 0;
+		for (int i = 0; i < sorted.size(); i++) {
+			long position = position(sorted.get(i));
+			if (i >= count && position != position(sorted.get(i - 1))) {
+				next = position;
+				break;
+			}
+			if (null == match || match.matcher(sorted.get(i)).matches()) {
+				page.add(sorted.get(i));
+			}
+		}
+		List<Object> reply = new ArrayList<Object>(2);
+		reply.add(String.valueOf(next));
+		reply.add(page);
+		return reply;
+	}
+
+	/**
+	 * 元素在SCAN中的位置，从1开始，0保留为结束游标
+	 */
+	private static long position(String item) {
+		return (item.hashCode() & 0xFFFFFFFFL) + 1;
+	}
+
+	/**
+	 * redis的glob模式(* ? [...] \)转为正则
+	 */
+	static Pattern glob(String pattern) {
+		StringBuilder regex = new StringBuilder(pattern.length() + 8);
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if ('*' == c) {
+				regex.append(".*");
+			} else if ('?' == c) {
+				regex.append('.');
+			} else if ('[' == c) {
+				int end = pattern.indexOf(']', i + 1);
+				if (end < 0) {
+					regex.append("\\[");
+				} else {
+					regex.append('[');
+					for (int j = i + 1; j < end; j++) {
+						char member = pattern.charAt(j);
+						if ('[' == member || '&' == member || '\\' == member) {
+							regex.append('\\');
+						}
+						regex.append(member);
+					}
+					regex.append(']');
+					i = end;
+				}
+			} else if ('\\' == c && i + 1 < pattern.length()) {
+				regex.append(Pattern.quote(String.valueOf(pattern.charAt(++i))));
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
+
+	private Object script(String[] args) {
+		String sub = arg(args, 0).toUpperCase();
+		if ("LOAD".equals(sub)) {
+			String source = arg(args, 1);
+			String sha = sha1(source);
+			scriptSources.put(sha, source);
+			return sha;
+		}
+		if ("EXISTS".equals(sub)) {
+			List<Long> exists = new ArrayList<Long>(args.length - 1);
+			for (int i = 1; i < args.length; i++) {
+				exists.add(scriptSources.containsKey(args[i].toLowerCase()) ? 1L : 0L);
+			}
+			return exists;
+		}
+		if ("FLUSH".equals(sub)) {
+			scriptSources.clear();
+			return Status.OK;
+		}
+		throw new RespError("ERR unknown subcommand '" + sub + "'");
+	}
+
+	private Object eval(String sha, String[] args) {
+		sha = sha.toLowerCase();
+		if (!scriptSources.containsKey(sha)) {
+			throw new RespError("NOSCRIPT No matching script. Please use EVAL.");
+		}
+		Script script = scriptHandlers.get(sha);
+		if (null == script) {
+			throw new RespError("ERR stub has no implementation for script " + sha);
+		}
+		int numKeys = Integer.parseInt(args[1]);
+		List<String> keys = Arrays.asList(args).subList(2, 2 + numKeys);
+		List<String> scriptArgs = Arrays.asList(args).subList(2 + numKeys, args.length);
+		synchronized (this) {
+			return script.execute(this, keys, scriptArgs);
+		}
+	}
+
+	/**
+	 * 供脚本实现调用的HMSET
+	 */
+	public void hmset(String key, List<String> fieldsAndValues) {
+		String[] args = new String[fieldsAndValues.size() + 1];
+		args[0] = key;
+		for (int i = 0; i < fieldsAndValues.size(); i++) {
+			args[i + 1] = fieldsAndValues.get(i);
+		}
+		hset(args);
+	}
+
+	static String sha1(String source) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+			StringBuilder builder = new StringBuilder(40);
+			for (byte b : digest) {
+				builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return builder.toString();
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
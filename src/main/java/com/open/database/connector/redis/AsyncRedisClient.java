@@ -0,0 +1,369 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TODO redis 异步访问客户端
+ *
+ * 与RedisClientUtil方法一一对应，返回CompletableFuture，便于并发发起多个互不依赖的查询并组合结果。
+ * JDK 21及以上使用虚拟线程执行，并通过信号量限制同时访问redis的数量；低版本JDK使用有界线程池，
+ * 排队已满时返回的Future以RejectedExecutionException失败。
+ * brpop会长时间占用连接和并发名额，不提供异步版本。
+ * 发起调用的线程通过RedisClientUtil.withDeadline()设置的截止时间和withReadPreference()设置的读策略会带到执行线程上。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * AsyncRedisClient async = AsyncRedisClient.getInstance();
+ * CompletableFuture&lt;String&gt; user = async.get(userKey);
+ * CompletableFuture&lt;Map&lt;String, String&gt;&gt; profile = async.getRedisMap(profileKey);
+ * user.thenCombine(profile, ...);
+ * </pre>
+ *
+ */
+public class AsyncRedisClient implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncRedisClient.class);
+
+	/** 默认最大并发数 */
+	public static final int DEFAULT_MAX_CONCURRENCY = 256;
+
+	private volatile static AsyncRedisClient instance;
+
+	private final RedisClientUtil client;
+
+	private final ExecutorService executor;
+
+	/** 虚拟线程模式下限制并发访问redis的数量，线程池模式下为null */
+	private final Semaphore permits;
+
+	public static AsyncRedisClient getInstance() {
+		if (null == instance) {
+			synchronized (AsyncRedisClient.class) {
+				if (null == instance) {
+					instance = new AsyncRedisClient(DEFAULT_MAX_CONCURRENCY);
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @param maxConcurrency
+	 *            同时访问redis的最大请求数
+	 */
+	public AsyncRedisClient(int maxConcurrency) {
+		this(RedisClientUtil.getInstance(), maxConcurrency);
+	}
+
+	/**
+	 * @param client
+	 *            执行命令的客户端，例如RedisClientUtil.getInstance(name)
+	 * @param maxConcurrency
+	 *            同时访问redis的最大请求数
+	 */
+	public AsyncRedisClient(RedisClientUtil client, int maxConcurrency) {
+		if (maxConcurrency <= 0) {
+			throw new IllegalArgumentException("maxConcurrency must be positive");
+		}
+		this.client = client;
+		ExecutorService virtual = newVirtualThreadExecutor();
+		if (null != virtual) {
+			this.executor = virtual;
+			this.permits = new Semaphore(maxConcurrency);
+			logger.info("AsyncRedisClient 使用虚拟线程执行，maxConcurrency:{}", maxConcurrency);
+		} else {
+			this.executor = new ThreadPoolExecutor(maxConcurrency, maxConcurrency, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(maxConcurrency * 16), new RedisThreadFactory("redis-async"),
+					new ThreadPoolExecutor.AbortPolicy());
+			((ThreadPoolExecutor) this.executor).allowCoreThreadTimeOut(true);
+			this.permits = null;
+			logger.info("AsyncRedisClient 使用线程池执行，maxConcurrency:{}", maxConcurrency);
+		}
+	}
+
+	/**
+	 * JDK 21及以上返回虚拟线程执行器，否则返回null
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (Exception e) {
+			logger.warn("AsyncRedisClient 创建虚拟线程执行器失败，改用线程池。", e);
+			return null;
+		}
+	}
+
+	/**
+	 * 是否运行在虚拟线程上
+	 */
+	public boolean isVirtualThreads() {
+		return null != permits;
+	}
+
+	/**
+	 * 关闭执行器，已提交的请求会继续执行完成
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	private <T> CompletableFuture<T> submit(final Supplier<T> command) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		final RedisDeadline deadline = client.currentDeadline();
+		final RedisReadPreference preference = client.currentReadPreference();
+		final Supplier<T> call = null == deadline ? command : () -> client.withDeadline(deadline, command);
+		try {
+			executor.execute(() -> {
+				boolean acquired = false;
+				try {
+					if (null != permits) {
+						permits.acquire();
+						acquired = true;
+					}
+					future.complete(null == preference ? call.get() : client.withReadPreference(preference, call));
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				} finally {
+					if (acquired) {
+						permits.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * @see RedisClientUtil#set(String, int, String)
+	 */
+	public CompletableFuture<Boolean> set(String key, int seconds, String value) {
+		return submit(() -> client.set(key, seconds, value));
+	}
+
+	/**
+	 * @see RedisClientUtil#get(String)
+	 */
+	public CompletableFuture<String> get(String key) {
+		return submit(() -> client.get(key));
+	}
+
+	/**
+	 * @see RedisClientUtil#set(String, Object, int, RedisCodec)
+	 */
+	public <T> CompletableFuture<Boolean> set(String key, T value, int seconds, RedisCodec<T> codec) {
+		return submit(() -> client.set(key, value, seconds, codec));
+	}
+
+	/**
+	 * @see RedisClientUtil#get(String, RedisCodec)
+	 */
+	public <T> CompletableFuture<T> get(String key, RedisCodec<T> codec) {
+		return submit(() -> client.get(key, codec));
+	}
+
+	/**
+	 * @see RedisClientUtil#mget(Collection)
+	 */
+	public CompletableFuture<List<String>> mget(Collection<String> keys) {
+		return submit(() -> client.mget(keys));
+	}
+
+	/**
+	 * @see RedisClientUtil#mget(Collection, RedisCodec)
+	 */
+	public <T> CompletableFuture<List<T>> mget(Collection<String> keys, RedisCodec<T> codec) {
+		return submit(() -> client.mget(keys, codec));
+	}
+
+	/**
+	 * @see RedisClientUtil#setMapOnRedis(String, Map, int)
+	 */
+	public CompletableFuture<Boolean> setMapOnRedis(String key, Map<String, String> redisMap, int seconds) {
+		return submit(() -> client.setMapOnRedis(key, redisMap, seconds));
+	}
+
+	/**
+	 * @see RedisClientUtil#getRedisMap(String)
+	 */
+	public CompletableFuture<Map<String, String>> getRedisMap(String key) {
+		return submit(() -> client.getRedisMap(key));
+	}
+
+	/**
+	 * @see RedisClientUtil#getRedisMaps(Collection)
+	 */
+	public CompletableFuture<List<Map<String, String>>> getRedisMaps(Collection<String> keys) {
+		return submit(() -> client.getRedisMaps(keys));
+	}
+
+	/**
+	 * @see RedisClientUtil#getRedisMap(String, List)
+	 */
+	public CompletableFuture<Map<String, String>> getRedisMap(String key, List<String> mapKeys) {
+		return submit(() -> client.getRedisMap(key, mapKeys));
+	}
+
+	/**
+	 * HMGET，与getRedisMap(String, List)相同
+	 *
+	 * @see RedisClientUtil#getRedisMap(String, List)
+	 */
+	public CompletableFuture<Map<String, String>> hmget(String key, List<String> mapKeys) {
+		return getRedisMap(key, mapKeys);
+	}
+
+	/**
+	 * @see RedisClientUtil#getRedisMapValue(String, String)
+	 */
+	public CompletableFuture<String> getRedisMapValue(String key, String mapKey) {
+		return submit(() -> client.getRedisMapValue(key, mapKey));
+	}
+
+	/**
+	 * @see RedisClientUtil#setExpire(String, int)
+	 */
+	public CompletableFuture<Void> setExpire(String key, int seconds) {
+		return submit(() -> {
+			client.setExpire(key, seconds);
+			return null;
+		});
+	}
+
+	/**
+	 * @see RedisClientUtil#del(String)
+	 */
+	public CompletableFuture<Void> del(String key) {
+		return submit(() -> {
+			client.del(key);
+			return null;
+		});
+	}
+
+	/**
+	 * @see RedisClientUtil#incr(String)
+	 */
+	public CompletableFuture<Long> incr(String key) {
+		return submit(() -> client.incr(key));
+	}
+
+	/**
+	 * @see RedisClientUtil#incr(String, long)
+	 */
+	public CompletableFuture<Long> incr(String key, long num) {
+		return submit(() -> client.incr(key, num));
+	}
+
+	/**
+	 * @see RedisClientUtil#decr(String)
+	 */
+	public CompletableFuture<Long> decr(String key) {
+		return submit(() -> client.decr(key));
+	}
+
+	/**
+	 * @see RedisClientUtil#hIncrCounter(String, String, long)
+	 */
+	public CompletableFuture<Long> hIncrCounter(String key, String field, long i) {
+		return submit(() -> client.hIncrCounter(key, field, i));
+	}
+
+	/**
+	 * @see RedisClientUtil#rpoplpush(String, int)
+	 */
+	public CompletableFuture<List<String>> rpoplpush(String key, int num) {
+		return submit(() -> client.rpoplpush(key, num));
+	}
+
+	/**
+	 * @see RedisClientUtil#llen(String)
+	 */
+	public CompletableFuture<Long> llen(String redisKey) {
+		return submit(() -> client.llen(redisKey));
+	}
+
+	/**
+	 * @see RedisClientUtil#lpush(String, List)
+	 */
+	public CompletableFuture<Long> lpush(String key, List<String> list) {
+		return submit(() -> client.lpush(key, list));
+	}
+
+	/**
+	 * @see RedisClientUtil#rpush(String, List)
+	 */
+	public CompletableFuture<Long> rpush(String key, List<String> list) {
+		return submit(() -> client.rpush(key, list));
+	}
+
+	/**
+	 * @see RedisClientUtil#lrem(String, String)
+	 */
+	public CompletableFuture<Long> lrem(String key, String value) {
+		return submit(() -> client.lrem(key, value));
+	}
+
+	/**
+	 * @see RedisClientUtil#rpop(String)
+	 */
+	public CompletableFuture<String> rpop(String key) {
+		return submit(() -> client.rpop(key));
+	}
+
+	/**
+	 * @see RedisClientUtil#lrange(String, int)
+	 */
+	public CompletableFuture<List<String>> lrange(String key, int endNum) {
+		return submit(() -> client.lrange(key, endNum));
+	}
+
+	/**
+	 * @see RedisClientUtil#hdel(String, String)
+	 */
+	public CompletableFuture<Long> hdel(String redisKey, String cardNum) {
+		return submit(() -> client.hdel(redisKey, cardNum));
+	}
+
+	/**
+	 * @see RedisClientUtil#ttl(String)
+	 */
+	public CompletableFuture<Long> ttl(String redisKey) {
+		return submit(() -> client.ttl(redisKey));
+	}
+
+	/**
+	 * @see RedisClientUtil#hexists(String, String)
+	 */
+	public CompletableFuture<Boolean> hexists(String redisKey, String cardNum) {
+		return submit(() -> client.hexists(redisKey, cardNum));
+	}
+
+	/**
+	 * @see RedisClientUtil#exists(String)
+	 */
+	public CompletableFuture<Boolean> exists(String redisKey) {
+		return submit(() -> client.exists(redisKey));
+	}
+}
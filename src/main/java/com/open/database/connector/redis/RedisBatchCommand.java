@@ -0,0 +1,340 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * TODO 可批量执行的单key命令
+ *
+ * 同一个命令需要同时提供pipeline方式和单连接方式两种实现：正常情况下随节点pipeline一起发送，
+ * 遇到ASK重定向时使用单连接方式在目标节点上执行。
+ *
+ * @param <T>
+ *            命令返回值类型
+ */
+public abstract class RedisBatchCommand<T> {
+
+	private final String key;
+
+	protected RedisBatchCommand(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * 命令所操作的redis键，用于计算slot
+	 *
+	 * @return
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * 将命令追加到节点的pipeline中
+	 *
+	 * @param pipeline
+	 * @return
+	 */
+	public abstract Response<T> queue(Pipeline pipeline);
+
+	/**
+	 * 在单个连接上直接执行命令
+	 *
+	 * @param jedis
+	 * @return
+	 */
+	public abstract T execute(Jedis jedis);
+
+	/**
+	 * 判断命令的返回结果是否表示执行成功，默认只要不是异常即认为成功
+	 *
+	 * @param reply
+	 *            命令的返回结果
+	 * @return
+	 */
+	public boolean isSuccess(Object reply) {
+		return !(reply instanceof Exception);
+	}
+
+	/**
+	 * GET命令
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static RedisBatchCommand<String> get(final String key) {
+		return new RedisBatchCommand<String>(key) {
+			@Override
+			public Response<String> queue(Pipeline pipeline) {
+				return pipeline.get(key);
+			}
+
+			@Override
+			public String execute(Jedis jedis) {
+				return jedis.get(key);
+			}
+		};
+	}
+
+	/**
+	 * 二进制GET命令，用于RedisCodec编码的值
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static RedisBatchCommand<byte[]> getBytes(final String key) {
+		final byte[] rawKey = SafeEncoder.encode(key);
+		return new RedisBatchCommand<byte[]>(key) {
+			@Override
+			public Response<byte[]> queue(Pipeline pipeline) {
+				return pipeline.get(rawKey);
+			}
+
+			@Override
+			public byte[] execute(Jedis jedis) {
+				return jedis.get(rawKey);
+			}
+		};
+	}
+
+	/**
+	 * HGETALL命令
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static RedisBatchCommand<Map<String, String>> hgetAll(final String key) {
+		return new RedisBatchCommand<Map<String, String>>(key) {
+			@Override
+			public Response<Map<String, String>> queue(Pipeline pipeline) {
+				return pipeline.hgetAll(key);
+			}
+
+			@Override
+			public Map<String, String> execute(Jedis jedis) {
+				return jedis.hgetAll(key);
+			}
+		};
+	}
+
+	/**
+	 * 二进制HGETALL命令，用于读取可能被压缩的hash
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static RedisBatchCommand<Map<byte[], byte[]>> hgetAllBytes(final String key) {
+		final byte[] rawKey = SafeEncoder.encode(key);
+		return new RedisBatchCommand<Map<byte[], byte[]>>(key) {
+			@Override
+			public Response<Map<byte[], byte[]>> queue(Pipeline pipeline) {
+				return pipeline.hgetAll(rawKey);
+			}
+
+			@Override
+			public Map<byte[], byte[]> execute(Jedis jedis) {
+				return jedis.hgetAll(rawKey);
+			}
+		};
+	}
+
+	/**
+	 * SET命令，返回OK时为成功
+	 *
+	 * @param key
+	 * @param value
+	 * @return
+	 */
+	public static RedisBatchCommand<String> set(final String key, final String value) {
+		return new RedisBatchCommand<String>(key) {
+			@Override
+			public Response<String> queue(Pipeline pipeline) {
+				return pipeline.set(key, value);
+			}
+
+			@Override
+			public String execute(Jedis jedis) {
+				return jedis.set(key, value);
+			}
+
+			@Override
+			public boolean isSuccess(Object reply) {
+				return "OK".equals(reply);
+			}
+		};
+	}
+
+	/**
+	 * SETEX命令，写入并设置超时时间，一次往返且原子执行，返回OK时为成功
+	 *
+	 * @param key
+	 * @param seconds
+	 * @param value
+	 * @return
+	 */
+	public static RedisBatchCommand<String> setex(final String key, final int seconds, final String value) {
+		return new RedisBatchCommand<String>(key) {
+			@Override
+			public Response<String> queue(Pipeline pipeline) {
+				return pipeline.setex(key, seconds, value);
+			}
+
+			@Override
+			public String execute(Jedis jedis) {
+				return jedis.setex(key, seconds, value);
+			}
+
+			@Override
+			public boolean isSuccess(Object reply) {
+				return "OK".equals(reply);
+			}
+		};
+	}
+
+	/**
+	 * HMSET命令，返回OK时为成功
+	 *
+	 * @param key
+	 * @param hash
+	 * @return
+	 */
+	public static RedisBatchCommand<String> hmset(final String key, final Map<String, String> hash) {
+		return new RedisBatchCommand<String>(key) {
+			@Override
+			public Response<String> queue(Pipeline pipeline) {
+				return pipeline.hmset(key, hash);
+			}
+
+			@Override
+			public String execute(Jedis jedis) {
+				return jedis.hmset(key, hash);
+			}
+
+			@Override
+			public boolean isSuccess(Object reply) {
+				return "OK".equals(reply);
+			}
+		};
+	}
+
+	/**
+	 * 通过RedisScriptRegistry.HMSET_EXPIRE脚本写入hash并设置超时时间，返回OK时为成功。
+	 * pipeline中返回NOSCRIPT时由RedisClusterPipeline改用execute()加载脚本后重试。
+	 *
+	 * @param key
+	 * @param hash
+	 * @param seconds
+	 * @return
+	 */
+	public static RedisBatchCommand<String> hmsetExpire(final String key, final Map<String, String> hash,
+			final int seconds) {
+		final List<String> keys = Collections.singletonList(key);
+		final List<String> args = RedisScriptRegistry.hmsetExpireArgs(seconds, hash);
+		return new RedisBatchCommand<String>(key) {
+			@Override
+			public Response<String> queue(Pipeline pipeline) {
+				return pipeline.evalsha(RedisScriptRegistry.HMSET_EXPIRE.getSha1(), keys, args);
+			}
+
+			@Override
+			public String execute(Jedis jedis) {
+				return (String) RedisScriptRegistry.evalsha(jedis, RedisScriptRegistry.HMSET_EXPIRE, keys, args);
+			}
+
+			@Override
+			public boolean isSuccess(Object reply) {
+				return "OK".equals(reply);
+			}
+		};
+	}
+
+	/**
+	 * EXPIRE命令
+	 *
+	 * @param key
+	 * @param seconds
+	 * @return
+	 */
+	public static RedisBatchCommand<Long> expire(final String key, final int seconds) {
+		return new RedisBatchCommand<Long>(key) {
+			@Override
+			public Response<Long> queue(Pipeline pipeline) {
+				return pipeline.expire(key, seconds);
+			}
+
+			@Override
+			public Long execute(Jedis jedis) {
+				return jedis.expire(key, seconds);
+			}
+		};
+	}
+
+	/**
+	 * DEL命令
+	 *
+	 * @param key
+	 * @return
+	 */
+	public static RedisBatchCommand<Long> del(final String key) {
+		return new RedisBatchCommand<Long>(key) {
+			@Override
+			public Response<Long> queue(Pipeline pipeline) {
+				return pipeline.del(key);
+			}
+
+			@Override
+			public Long execute(Jedis jedis) {
+				return jedis.del(key);
+			}
+		};
+	}
+
+	/**
+	 * INCRBY命令
+	 *
+	 * @param key
+	 * @param delta
+	 * @return
+	 */
+	public static RedisBatchCommand<Long> incrBy(final String key, final long delta) {
+		return new RedisBatchCommand<Long>(key) {
+			@Override
+			public Response<Long> queue(Pipeline pipeline) {
+				return pipeline.incrBy(key, delta);
+			}
+
+			@Override
+			public Long execute(Jedis jedis) {
+				return jedis.incrBy(key, delta);
+			}
+		};
+	}
+
+	/**
+	 * HINCRBY命令
+	 *
+	 * @param key
+	 * @param field
+	 * @param delta
+	 * @return
+	 */
+	public static RedisBatchCommand<Long> hincrBy(final String key, final String field, final long delta) {
+		return new RedisBatchCommand<Long>(key) {
+			@Override
+			public Response<Long> queue(Pipeline pipeline) {
+				return pipeline.hincrBy(key, field, delta);
+			}
+
+			@Override
+			public Long execute(Jedis jedis) {
+				return jedis.hincrBy(key, field, delta);
+			}
+		};
+	}
+}
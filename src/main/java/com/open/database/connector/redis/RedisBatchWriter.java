@@ -0,0 +1,411 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * TODO redis 批量写入工具类
+ *
+ * 写操作按key的slot所属节点分桶，单个节点的桶达到batchSize或距离上次刷新超过flushIntervalMillis时，
+ * 整桶通过一个pipeline发送。每个写操作返回一个Future，完成时为该key是否写入成功；close()之后的写操作返回
+ * 以IllegalStateException失败的Future。集群对应的RedisClientUtil开启了近端缓存时，写入后与单key写操作一样
+ * 失效并广播该key。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisBatchWriter writer = new RedisBatchWriter(500, 100);
+ * try {
+ * 	for (...) {
+ * 		writer.set(key, 3600, value);
+ * 	}
+ * } finally {
+ * 	writer.close();
+ * }
+ * </pre>
+ *
+ */
+public class RedisBatchWriter implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisBatchWriter.class);
+
+	private static final AtomicInteger WRITER_INDEX = new AtomicInteger();
+
+	private final RedisClusterContext context;
+
+	private final int batchSize;
+
+	private final ConcurrentMap<JedisPool, Bucket> buckets = new ConcurrentHashMap<JedisPool, Bucket>();
+
+	private final ThreadPoolExecutor flushExecutor;
+
+	private final ScheduledExecutorService timer;
+
+	private final AtomicLong succeeded = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong batches = new AtomicLong();
+
+	/** 写入和异步刷新持有读锁，close()持有写锁设置closed，关闭后不会再有写操作进入桶或提交到线程池 */
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+	private volatile boolean closed;
+
+	/**
+	 * @param batchSize
+	 *            单个节点累计多少个写操作后触发一次pipeline刷新
+	 * @param flushIntervalMillis
+	 *            定时刷新的间隔，单位：毫秒，保证写操作不会在桶中停留过久
+	 */
+	public RedisBatchWriter(int batchSize, long flushIntervalMillis) {
+		this(batchSize, flushIntervalMillis, Math.max(4, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * @param batchSize
+	 *            单个节点累计多少个写操作后触发一次pipeline刷新
+	 * @param flushIntervalMillis
+	 *            定时刷新的间隔，单位：毫秒
+	 * @param flushThreads
+	 *            并行刷新的线程数，刷新积压超过flushThreads * 4批时由写入线程自己刷新，形成背压
+	 */
+	public RedisBatchWriter(int batchSize, long flushIntervalMillis, int flushThreads) {
+		this(RedisClusterContext.getDefault(), batchSize, flushIntervalMillis, flushThreads);
+	}
+
+	/**
+	 * @param context
+	 *            写入的集群
+	 * @param batchSize
+	 *            单个节点累计多少个写操作后触发一次pipeline刷新
+	 * @param flushIntervalMillis
+	 *            定时刷新的间隔，单位：毫秒
+	 * @param flushThreads
+	 *            并行刷新的线程数
+	 */
+	public RedisBatchWriter(RedisClusterContext context, int batchSize, long flushIntervalMillis, int flushThreads) {
+		if (batchSize <= 0 || flushIntervalMillis <= 0 || flushThreads <= 0) {
+			throw new IllegalArgumentException("batchSize, flushIntervalMillis and flushThreads must be positive");
+		}
+		this.context = context;
+		this.batchSize = batchSize;
+		final String name = "redis-batch-writer-" + WRITER_INDEX.incrementAndGet();
+		this.flushExecutor = new ThreadPoolExecutor(flushThreads, flushThreads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(flushThreads * 4), new RedisThreadFactory(name),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		this.timer = Executors.newSingleThreadScheduledExecutor(new RedisThreadFactory(name + "-timer"));
+		this.timer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flushAsync();
+				} catch (Exception e) {
+					logger.error("RedisBatchWriter timer flush is failed.Exception:", e);
+				}
+			}
+		}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 对应RedisClientUtil.set()
+	 *
+	 * @param key
+	 *            存放到redis的Key值
+	 * @param seconds
+	 *            超时时间，单位：秒，0表示不过期
+	 * @param value
+	 *            需要存放到redis的值
+	 * @return 写入结果
+	 */
+	public CompletableFuture<Boolean> set(String key, int seconds, String value) {
+		List<RedisBatchCommand<?>> commands = new ArrayList<RedisBatchCommand<?>>(1);
+		if (seconds > 0) {
+			commands.add(RedisBatchCommand.setex(key, seconds, value));
+		} else {
+			commands.add(RedisBatchCommand.set(key, value));
+		}
+		return add(key, commands);
+	}
+
+	/**
+	 * 对应RedisClientUtil.setMapOnRedis()
+	 *
+	 * @param key
+	 *            存放到redis的Key值
+	 * @param redisMap
+	 *            需要缓存到redis的map
+	 * @param seconds
+	 *            超时时间，单位：秒，0表示不过期
+	 * @return 写入结果
+	 */
+	public CompletableFuture<Boolean> setMapOnRedis(String key, Map<String, String> redisMap, int seconds) {
+		List<RedisBatchCommand<?>> commands = new ArrayList<RedisBatchCommand<?>>(1);
+		if (seconds > 0 && !redisMap.isEmpty()) {
+			commands.add(RedisBatchCommand.hmsetExpire(key, redisMap, seconds));
+		} else {
+			commands.add(RedisBatchCommand.hmset(key, redisMap));
+		}
+		return add(key, commands);
+	}
+
+	/**
+	 * 对应RedisClientUtil.setExpire()
+	 *
+	 * @param key
+	 * @param seconds
+	 * @return 写入结果
+	 */
+	public CompletableFuture<Boolean> setExpire(String key, int seconds) {
+		List<RedisBatchCommand<?>> commands = new ArrayList<RedisBatchCommand<?>>(1);
+		commands.add(RedisBatchCommand.expire(key, seconds));
+		return add(key, commands);
+	}
+
+	/**
+	 * 对应RedisClientUtil.del()
+	 *
+	 * @param key
+	 * @return 写入结果
+	 */
+	public CompletableFuture<Boolean> del(String key) {
+		List<RedisBatchCommand<?>> commands = new ArrayList<RedisBatchCommand<?>>(1);
+		commands.add(RedisBatchCommand.del(key));
+		return add(key, commands);
+	}
+
+	/**
+	 * 异步刷新所有节点桶中的写操作
+	 */
+	public void flushAsync() {
+		closeLock.readLock().lock();
+		try {
+			if (closed) {
+				// close()已同步刷新
+				return;
+			}
+			for (Bucket bucket : buckets.values()) {
+				final List<PendingWrite> writes = bucket.drain();
+				if (!writes.isEmpty()) {
+					submit(writes);
+				}
+			}
+		} finally {
+			closeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 在当前线程同步刷新所有节点桶中的写操作，返回时桶中的写操作均已完成
+	 */
+	public void flush() {
+		List<PendingWrite> writes = new ArrayList<PendingWrite>();
+		for (Bucket bucket : buckets.values()) {
+			writes.addAll(bucket.drain());
+		}
+		if (!writes.isEmpty()) {
+			write(writes);
+		}
+	}
+
+	/**
+	 * 刷新剩余写操作并释放线程
+	 */
+	@Override
+	public void close() {
+		closeLock.writeLock().lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		} finally {
+			closeLock.writeLock().unlock();
+		}
+		timer.shutdown();
+		try {
+			// 等待正在执行的定时刷新结束，避免其提交到已关闭的线程池
+			timer.awaitTermination(1, TimeUnit.MINUTES);
+			flush();
+			flushExecutor.shutdown();
+			if (!flushExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+				logger.warn("RedisBatchWriter.close() 等待刷新超时，仍有写操作未完成。");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 写入成功的key数量
+	 */
+	public long getSucceededCount() {
+		return succeeded.get();
+	}
+
+	/**
+	 * 写入失败的key数量
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * 已发送的pipeline批次数
+	 */
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	private CompletableFuture<Boolean> add(String key, List<RedisBatchCommand<?>> commands) {
+		PendingWrite write = new PendingWrite(key, commands);
+		closeLock.readLock().lock();
+		try {
+			if (closed) {
+				failed.incrementAndGet();
+				write.future.completeExceptionally(new IllegalStateException("RedisBatchWriter is closed"));
+				return write.future;
+			}
+			JedisPool pool = RedisClusterRouter.getKeyPool(context.getJedisCluster(), key);
+			Bucket bucket = buckets.get(pool);
+			if (null == bucket) {
+				Bucket created = new Bucket();
+				bucket = buckets.putIfAbsent(pool, created);
+				if (null == bucket) {
+					bucket = created;
+				}
+			}
+			List<PendingWrite> full = bucket.add(write, batchSize);
+			if (null != full) {
+				submit(full);
+			}
+		} finally {
+			closeLock.readLock().unlock();
+		}
+		return write.future;
+	}
+
+	private void submit(final List<PendingWrite> writes) {
+		flushExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				write(writes);
+			}
+		});
+	}
+
+	/**
+	 * 将一批写操作展开成命令后执行，再按写操作汇总结果
+	 */
+	private void write(List<PendingWrite> writes) {
+		List<RedisBatchCommand<?>> commands = new ArrayList<RedisBatchCommand<?>>(writes.size() * 2);
+		for (PendingWrite write : writes) {
+			commands.addAll(write.commands);
+		}
+		batches.incrementAndGet();
+		List<Object> replies;
+		JedisCluster cluster = context.getJedisCluster();
+		try {
+			replies = RedisClusterPipeline.execute(cluster, commands);
+		} catch (Exception e) {
+			logger.error("RedisBatchWriter.write() is failed.Exception:", e);
+			for (PendingWrite write : writes) {
+				failed.incrementAndGet();
+				write.future.completeExceptionally(e);
+			}
+			return;
+		}
+		RedisNearCache nearCache = RedisClientUtil.nearCacheOf(context);
+		int index = 0;
+		for (PendingWrite write : writes) {
+			boolean success = true;
+			boolean applied = false;
+			for (RedisBatchCommand<?> command : write.commands) {
+				Object reply = replies.get(index++);
+				if (!command.isSuccess(reply)) {
+					success = false;
+				}
+				if (reply instanceof Exception) {
+					logger.warn("RedisBatchWriter.write() key:{} 写入失败:{}", write.key, reply);
+				} else {
+					applied = true;
+				}
+			}
+			if (applied && null != nearCache) {
+				nearCache.publishInvalidation(cluster, write.key);
+			}
+			if (success) {
+				succeeded.incrementAndGet();
+			} else {
+				failed.incrementAndGet();
+			}
+			write.future.complete(success);
+		}
+	}
+
+	/**
+	 * 单个写操作，由一个或多个同key命令组成
+	 */
+	private static class PendingWrite {
+
+		private final String key;
+
+		private final List<RedisBatchCommand<?>> commands;
+
+		private final CompletableFuture<Boolean> future = new CompletableFuture<Boolean>();
+
+		PendingWrite(String key, List<RedisBatchCommand<?>> commands) {
+			this.key = key;
+			this.commands = commands;
+		}
+	}
+
+	/**
+	 * 单个节点的写操作桶
+	 */
+	private static class Bucket {
+
+		private List<PendingWrite> writes = new ArrayList<PendingWrite>();
+
+		/**
+		 * 加入写操作，达到batchSize时返回整桶并重置
+		 */
+		synchronized List<PendingWrite> add(PendingWrite write, int batchSize) {
+			writes.add(write);
+			if (writes.size() >= batchSize) {
+				return drain();
+			}
+			return null;
+		}
+
+		synchronized List<PendingWrite> drain() {
+			if (writes.isEmpty()) {
+				return Collections.emptyList();
+			}
+			List<PendingWrite> drained = writes;
+			writes = new ArrayList<PendingWrite>();
+			return drained;
+		}
+	}
+}
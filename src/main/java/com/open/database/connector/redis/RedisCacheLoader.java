@@ -0,0 +1,534 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * TODO cache-aside 方式的缓存加载，带击穿保护
+ *
+ * getOrLoad()先读redis，不存在时执行loader并写入redis，同时处理热点key过期瞬间的缓存击穿：
+ * <ul>
+ * <li>分布式锁：SET key:lock token NX PX加锁，COMPARE_AND_DELETE脚本解锁，整个集群同一个key只有一个实例执行loader，
+ * 其他实例等待并读取它写入的值；同一进程内的并发未命中先在本地合并</li>
+ * <li>提前刷新(XFetch)：值中记录上次加载耗时delta和逻辑过期时间，每次命中时以 now - delta * beta * ln(random) &gt;= expiry
+ * 的概率在后台提前刷新，越接近过期、加载越慢，提前刷新的概率越大，热点key通常在过期前就已刷新</li>
+ * <li>过期时间抖动：实际超时时间在ttl上随机增加ttlJitter比例，避免同时写入的key同时过期</li>
+ * <li>过期后返回旧值(stale-while-revalidate)：staleSeconds大于0时redis中的key多保留staleSeconds，
+ * 逻辑过期后的读取先返回旧值并在后台刷新</li>
+ * </ul>
+ *
+ * redis中存放的是带头部(版本、delta、逻辑过期时间)的编码值，只能通过getOrLoad()读取；loader返回null时不缓存。
+ * 通过RedisClientUtil.setCacheLoader设置后访问该客户端的集群，未设置时访问默认集群；读写和加解锁与该客户端的其他命令一样
+ * 经过熔断器(setCircuitBreaker)并受当前线程的截止时间(withDeadline)限制。
+ *
+ */
+public class RedisCacheLoader implements RedisCacheLoaderMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisCacheLoader.class);
+
+	/** JMX注册名 */
+	public static final String OBJECT_NAME = "com.sinosafe.macaw.database.connector.redis:type=RedisCacheLoader";
+
+	/** 锁的key后缀，带{hashtag}的key加锁后仍在同一slot */
+	public static final String LOCK_SUFFIX = ":lock";
+
+	static final int FORMAT_VERSION = 1;
+
+	private static final ThreadPoolExecutor refresher = new ThreadPoolExecutor(1,
+			Math.max(2, Runtime.getRuntime().availableProcessors()), 60L, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(1024), new RedisThreadFactory("redis-cache-refresh"));
+
+	static {
+		refresher.allowCoreThreadTimeOut(true);
+	}
+
+	private volatile long lockMillis = 10000;
+
+	private volatile long lockWaitMillis = 3000;
+
+	private volatile double beta = 1.0;
+
+	private volatile double ttlJitter = 0.1;
+
+	private volatile int staleSeconds;
+
+	private final RedisSingleFlight misses = new RedisSingleFlight();
+
+	/** 本实例正在后台刷新的key，避免重复提交 */
+	private final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private final LongAdder hitCount = new LongAdder();
+
+	private final LongAdder missCount = new LongAdder();
+
+	private final LongAdder staleCount = new LongAdder();
+
+	private final LongAdder earlyRefreshCount = new LongAdder();
+
+	private final LongAdder loadCount = new LongAdder();
+
+	private final LongAdder lockWaitCount = new LongAdder();
+
+	private final LongAdder lockTimeoutCount = new LongAdder();
+
+	/** 所属客户端，为null时使用RedisClientUtil.getInstance() */
+	private volatile RedisClientUtil client;
+
+	private ObjectName registeredName;
+
+	/**
+	 * 注册JMX
+	 */
+	public synchronized void start() {
+		start(RedisClusterContext.getDefault());
+	}
+
+	/**
+	 * 以context集群的命名空间注册JMX，非默认集群的注册名追加",cluster=名称"
+	 */
+	public synchronized void start(RedisClusterContext context) {
+		if (null != registeredName) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName(context.objectName(OBJECT_NAME));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (Exception e) {
+			logger.warn("RedisCacheLoader 注册JMX失败。", e);
+		}
+	}
+
+	/**
+	 * 注销JMX
+	 */
+	@Override
+	public synchronized void close() {
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisCacheLoader 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+	}
+
+	/**
+	 * 读取缓存，不存在时加载并写入。 时间复杂度：O(1)
+	 *
+	 * @param key
+	 *            redis键
+	 * @param seconds
+	 *            缓存时间，单位：秒，实际会增加ttlJitter比例的随机抖动
+	 * @param codec
+	 *            编解码器
+	 * @param loader
+	 *            从数据源加载，返回null时不缓存
+	 * @return 缓存的值或加载的值
+	 */
+	public <T> T getOrLoad(String key, int seconds, RedisCodec<T> codec, Supplier<T> loader) {
+		if (seconds <= 0) {
+			throw new IllegalArgumentException("seconds must be positive");
+		}
+		CacheEntry<T> entry = read(key, codec);
+		if (null != entry) {
+			long now = System.currentTimeMillis();
+			if (now < entry.expiresAt) {
+				hitCount.increment();
+				// XFetch：-ln(random)服从指数分布，越接近过期越可能提前刷新
+				double random = 1.0 - ThreadLocalRandom.current().nextDouble();
+				if (now - entry.delta * beta * Math.log(random) >= entry.expiresAt
+						&& refreshAsync(key, seconds, codec, loader)) {
+					earlyRefreshCount.increment();
+				}
+				return entry.value;
+			}
+			if (staleSeconds > 0) {
+				staleCount.increment();
+				refreshAsync(key, seconds, codec, loader);
+				return entry.value;
+			}
+		}
+		missCount.increment();
+		// 同一进程内的并发未命中只有一个线程参与加锁和加载，共享编码后的结果，各自解码
+		byte[] data = misses.execute("getOrLoad", key, null, () -> loadWithLock(key, seconds, codec, loader), null);
+		CacheEntry<T> loaded = decode(codec, data);
+		return null == loaded ? null : loaded.value;
+	}
+
+	/**
+	 * 加锁后加载；锁被其他实例持有时等待其写入，超时后不加锁直接加载
+	 *
+	 * @return 编码后的值，loader返回null时为null
+	 */
+	private <T> byte[] loadWithLock(String key, int seconds, RedisCodec<T> codec, Supplier<T> loader) {
+		String token = tryLock(key);
+		if (null != token) {
+			try {
+				// 加锁前其他实例可能刚写入
+				byte[] data = readBytes(key);
+				if (isFresh(codec, data)) {
+					return data;
+				}
+				return load(key, seconds, codec, loader);
+			} finally {
+				unlock(key, token);
+			}
+		}
+		lockWaitCount.increment();
+		long deadline = System.currentTimeMillis() + lockWaitMillis;
+		long sleep = 10;
+		while (System.currentTimeMillis() < deadline) {
+			try {
+				Thread.sleep(sleep);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new JedisException("getOrLoad interrupted while waiting for " + key, e);
+			}
+			sleep = Math.min(sleep * 2, 100);
+			byte[] data = readBytes(key);
+			if (isFresh(codec, data)) {
+				return data;
+			}
+			// 持有锁的实例异常退出或锁已过期
+			token = tryLock(key);
+			if (null != token) {
+				try {
+					return load(key, seconds, codec, loader);
+				} finally {
+					unlock(key, token);
+				}
+			}
+		}
+		lockTimeoutCount.increment();
+		logger.warn("RedisCacheLoader.getOrLoad() key:{} 等待其他实例加载超时({}ms)，直接加载。", key, lockWaitMillis);
+		return load(key, seconds, codec, loader);
+	}
+
+	/**
+	 * 后台刷新，本实例已在刷新该key或线程池已满时跳过
+	 *
+	 * @return 是否提交了刷新任务
+	 */
+	private <T> boolean refreshAsync(final String key, final int seconds, final RedisCodec<T> codec,
+			final Supplier<T> loader) {
+		if (!refreshing.add(key)) {
+			return false;
+		}
+		try {
+			refresher.execute(() -> {
+				try {
+					String token = tryLock(key);
+					if (null == token) {
+						// 其他实例正在加载
+						return;
+					}
+					try {
+						load(key, seconds, codec, loader);
+					} finally {
+						unlock(key, token);
+					}
+				} catch (RuntimeException e) {
+					logger.error("RedisCacheLoader.refreshAsync() key:{} 后台刷新失败。Exception:", key, e);
+				} finally {
+					refreshing.remove(key);
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			refreshing.remove(key);
+			logger.warn("RedisCacheLoader.refreshAsync() key:{} 刷新线程池已满，跳过本次刷新。", key);
+			return false;
+		}
+	}
+
+	/**
+	 * 绑定到client，读写client的集群并使用client的压缩配置
+	 */
+	void bind(RedisClientUtil client) {
+		this.client = client;
+	}
+
+	private RedisClientUtil client() {
+		RedisClientUtil current = client;
+		return null == current ? RedisClientUtil.getInstance() : current;
+	}
+
+	/**
+	 * 执行loader并写入redis
+	 */
+	private <T> byte[] load(String key, int seconds, RedisCodec<T> codec, Supplier<T> loader) {
+		loadCount.increment();
+		long start = System.currentTimeMillis();
+		T value = loader.get();
+		if (null == value) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		long ttlMillis = seconds * 1000L;
+		ttlMillis += (long) (ttlMillis * ttlJitter * ThreadLocalRandom.current().nextDouble());
+		CacheEntry<T> entry = new CacheEntry<T>(Math.max(1, now - start), now + ttlMillis, value);
+		byte[] data = RedisCodecs.encode(new EntryCodec<T>(codec), entry);
+		// redis中多保留staleSeconds，用于过期后返回旧值
+		int physicalSeconds = (int) ((ttlMillis + 999) / 1000) + staleSeconds;
+		RedisClientUtil client = client();
+		long trace = RedisCommandTracer.start();
+		try {
+			byte[] compressed = client.getCompressor().compress(data);
+			client.call("getOrLoad.set", key,
+					() -> client.cluster().setex(SafeEncoder.encode(key), physicalSeconds, compressed));
+		} catch (RuntimeException e) {
+			throw client.failed("getOrLoad.set", key, trace, e);
+		}
+		RedisCommandTracer.success(client.getContext().getName(), "getOrLoad.set", key, trace);
+		return data;
+	}
+
+	private <T> CacheEntry<T> read(String key, RedisCodec<T> codec) {
+		return decode(codec, readBytes(key));
+	}
+
+	private byte[] readBytes(String key) {
+		RedisClientUtil client = client();
+		long trace = RedisCommandTracer.start();
+		byte[] data = null;
+		try {
+			data = client.getCompressor()
+					.decompress(client.call("getOrLoad.get", key, () -> client.cluster().get(SafeEncoder.encode(key))));
+		} catch (RuntimeException e) {
+			throw client.failed("getOrLoad.get", key, trace, e);
+		}
+		RedisCommandTracer.success(client.getContext().getName(), "getOrLoad.get", key, trace);
+		return data;
+	}
+
+	private static <T> CacheEntry<T> decode(RedisCodec<T> codec, byte[] data) {
+		return RedisCodecs.decode(new EntryCodec<T>(codec), data);
+	}
+
+	private static <T> boolean isFresh(RedisCodec<T> codec, byte[] data) {
+		CacheEntry<T> entry = decode(codec, data);
+		return null != entry && System.currentTimeMillis() < entry.expiresAt;
+	}
+
+	/**
+	 * SET key:lock token NX PX lockMillis
+	 *
+	 * @return 加锁成功时返回令牌，否则返回null
+	 */
+	private String tryLock(String key) {
+		String lockKey = key + LOCK_SUFFIX;
+		String token = UUID.randomUUID().toString();
+		RedisClientUtil client = client();
+		long trace = RedisCommandTracer.start();
+		String result = null;
+		try {
+			result = client.call("getOrLoad.lock", lockKey,
+					() -> client.cluster().set(lockKey, token, "NX", "PX", lockMillis));
+		} catch (RuntimeException e) {
+			throw client.failed("getOrLoad.lock", lockKey, trace, e);
+		}
+		RedisCommandTracer.success(client.getContext().getName(), "getOrLoad.lock", lockKey, trace, result);
+		return "OK".equalsIgnoreCase(result) ? token : null;
+	}
+
+	/**
+	 * 只删除自己持有的锁，锁已过期被其他实例持有时不做处理
+	 */
+	private void unlock(String key, String token) {
+		String lockKey = key + LOCK_SUFFIX;
+		RedisClientUtil client = client();
+		long trace = RedisCommandTracer.start();
+		try {
+			client.call("getOrLoad.unlock", lockKey,
+					() -> RedisScriptRegistry.evalsha(client.cluster(), RedisScriptRegistry.COMPARE_AND_DELETE,
+							Collections.singletonList(lockKey), Collections.singletonList(token)));
+		} catch (RuntimeException e) {
+			// failed已记录错误日志，解锁失败时锁会在lockMillis后自动过期
+			client.failed("getOrLoad.unlock", lockKey, trace, e);
+			return;
+		}
+		RedisCommandTracer.success(client.getContext().getName(), "getOrLoad.unlock", lockKey, trace);
+	}
+
+	/**
+	 * 锁的过期时间，单位：毫秒，需大于loader的最长耗时，默认10000
+	 */
+	public void setLockMillis(long lockMillis) {
+		this.lockMillis = lockMillis;
+	}
+
+	public long getLockMillis() {
+		return lockMillis;
+	}
+
+	/**
+	 * 锁被其他实例持有时的最长等待时间，单位：毫秒，超时后直接加载，默认3000
+	 */
+	public void setLockWaitMillis(long lockWaitMillis) {
+		this.lockWaitMillis = lockWaitMillis;
+	}
+
+	public long getLockWaitMillis() {
+		return lockWaitMillis;
+	}
+
+	/**
+	 * XFetch的beta，越大越早刷新，0表示不提前刷新，默认1.0
+	 */
+	public void setBeta(double beta) {
+		this.beta = beta;
+	}
+
+	public double getBeta() {
+		return beta;
+	}
+
+	/**
+	 * 过期时间随机增加的最大比例，默认0.1即增加0~10%
+	 */
+	public void setTtlJitter(double ttlJitter) {
+		this.ttlJitter = ttlJitter;
+	}
+
+	public double getTtlJitter() {
+		return ttlJitter;
+	}
+
+	/**
+	 * 过期后仍可返回旧值的时间，单位：秒，0表示不返回旧值，默认0
+	 */
+	public void setStaleSeconds(int staleSeconds) {
+		this.staleSeconds = staleSeconds;
+	}
+
+	public int getStaleSeconds() {
+		return staleSeconds;
+	}
+
+	@Override
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	@Override
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	@Override
+	public long getStaleCount() {
+		return staleCount.sum();
+	}
+
+	@Override
+	public long getEarlyRefreshCount() {
+		return earlyRefreshCount.sum();
+	}
+
+	@Override
+	public long getLoadCount() {
+		return loadCount.sum();
+	}
+
+	@Override
+	public long getLockWaitCount() {
+		return lockWaitCount.sum();
+	}
+
+	@Override
+	public long getLockTimeoutCount() {
+		return lockTimeoutCount.sum();
+	}
+
+	@Override
+	public void reset() {
+		hitCount.reset();
+		missCount.reset();
+		staleCount.reset();
+		earlyRefreshCount.reset();
+		loadCount.reset();
+		lockWaitCount.reset();
+		lockTimeoutCount.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "RedisCacheLoader [hit=" + hitCount.sum() + ", miss=" + missCount.sum() + ", stale=" + staleCount.sum()
+				+ ", earlyRefresh=" + earlyRefreshCount.sum() + ", load=" + loadCount.sum() + "]";
+	}
+
+	/**
+	 * 缓存的值及其加载耗时、逻辑过期时间
+	 */
+	static final class CacheEntry<T> {
+
+		final long delta;
+
+		final long expiresAt;
+
+		final T value;
+
+		CacheEntry(long delta, long expiresAt, T value) {
+			this.delta = delta;
+			this.expiresAt = expiresAt;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * 版本(1字节) | delta(varint) | 逻辑过期时间(8字节) | 值
+	 */
+	static final class EntryCodec<T> implements RedisCodec<CacheEntry<T>> {
+
+		private final RedisCodec<T> codec;
+
+		EntryCodec(RedisCodec<T> codec) {
+			this.codec = codec;
+		}
+
+		@Override
+		public void encode(CacheEntry<T> entry, RedisCodecOutput out) {
+			out.writeByte(FORMAT_VERSION);
+			out.writeVarLong(entry.delta);
+			out.writeLong(entry.expiresAt);
+			codec.encode(entry.value, out);
+		}
+
+		@Override
+		public CacheEntry<T> decode(RedisCodecInput in) {
+			int version = in.readByte();
+			if (FORMAT_VERSION != version) {
+				throw new JedisException("Unsupported cache entry version " + version);
+			}
+			long delta = in.readVarLong();
+			long expiresAt = in.readLong();
+			return new CacheEntry<T>(delta, expiresAt, codec.decode(in));
+		}
+	}
+}
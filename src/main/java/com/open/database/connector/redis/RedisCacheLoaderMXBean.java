@@ -0,0 +1,45 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO 缓存加载统计的JMX接口，注册名为RedisCacheLoader.OBJECT_NAME
+ *
+ */
+public interface RedisCacheLoaderMXBean {
+
+	/**
+	 * 命中未过期值的次数
+	 */
+	long getHitCount();
+
+	/**
+	 * 未命中(不存在或已过期且不允许返回旧值)的次数
+	 */
+	long getMissCount();
+
+	/**
+	 * 返回已过期旧值并在后台刷新的次数
+	 */
+	long getStaleCount();
+
+	/**
+	 * 过期前提前刷新(XFetch)的次数
+	 */
+	long getEarlyRefreshCount();
+
+	/**
+	 * 本实例执行loader的次数
+	 */
+	long getLoadCount();
+
+	/**
+	 * 锁被其他实例持有、等待其加载结果的次数
+	 */
+	long getLockWaitCount();
+
+	/**
+	 * 等待超时后不加锁直接执行loader的次数
+	 */
+	long getLockTimeoutCount();
+
+	void reset();
+}
@@ -0,0 +1,48 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * TODO 命令被RedisCircuitBreaker拒绝：节点熔断或并发调用数已满，命令没有发送到redis
+ *
+ * 继承JedisConnectionException，原有按连接异常处理的调用方不受影响。为了快速失败不填充调用栈。
+ *
+ */
+public class RedisCallRejectedException extends JedisConnectionException {
+
+	private static final long serialVersionUID = 1L;
+
+	public enum Reason {
+		/** 节点熔断 */
+		CIRCUIT_OPEN,
+		/** 节点并发调用数达到上限 */
+		BULKHEAD_FULL
+	}
+
+	private final Reason reason;
+
+	private final String node;
+
+	public RedisCallRejectedException(Reason reason, String node, String command) {
+		super("RedisClientUtil." + command + "() rejected, node " + node
+				+ (Reason.CIRCUIT_OPEN == reason ? " circuit open" : " too many concurrent calls"));
+		this.reason = reason;
+		this.node = node;
+	}
+
+	public Reason getReason() {
+		return reason;
+	}
+
+	/**
+	 * 被拒绝的节点 host:port
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
@@ -0,0 +1,574 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisClusterInfoCache;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisClusterException;
+import redis.clients.jedis.exceptions.JedisClusterMaxRedirectionsException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * TODO redis cluster 按节点的熔断和并发隔离
+ *
+ * 节点变慢或不可用时，每个调用都要等满socket超时或连接池的maxWaitMillis，请求线程逐渐全部堵在这个节点上。
+ * 开启后RedisClientUtil的单key命令按key所属的master节点分别统计，读命令和写命令各一个熔断器：
+ * <ul>
+ * <li>最近windowSeconds秒内调用不少于minimumCalls次，且连接失败率达到failureRateThreshold%或耗时超过slowCallMillis的
+ * 慢调用率达到slowCallRateThreshold%时熔断(OPEN)，之后的命令不再访问该节点，直接抛出RedisCallRejectedException，
+ * 读命令注册了降级(setFallback)时返回降级结果</li>
+ * <li>熔断openMillis后进入半开(HALF_OPEN)，同时放行最多halfOpenCalls个探测命令，连续halfOpenCalls次成功后恢复(CLOSED)，
+ * 任一探测失败或超时则重新熔断</li>
+ * <li>每个节点同时执行的命令数不超过maxConcurrentCalls(默认为连接池maxTotal)，超过时直接拒绝而不是排队等待连接，
+ * 一个慢节点最多占用maxConcurrentCalls个线程</li>
+ * </ul>
+ * 只有连接异常、连接池用尽、超时和集群不可用计为失败，WRONGTYPE等命令错误说明节点正常响应，计为成功。
+ * 节点不再负责任何slot(下线、故障转移后变为replica)后，其熔断状态在出现新节点或查询getNodes()时清除。
+ * mget、getRedisMaps、scanCluster等跨节点的批量命令不经过熔断，getOrLoad的加载锁也不经过熔断。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisCircuitBreaker breaker = new RedisCircuitBreaker();
+ * breaker.setFallback("get", (key, field, cause) -&gt; null);
+ * RedisClientUtil.getInstance().setCircuitBreaker(breaker);
+ * </pre>
+ *
+ */
+public class RedisCircuitBreaker implements RedisCircuitBreakerMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisCircuitBreaker.class);
+
+	/** JMX注册名 */
+	public static final String OBJECT_NAME = "com.sinosafe.macaw.database.connector.redis:type=RedisCircuitBreaker";
+
+	/** 读命令，与RedisClientUtil的方法名一致，其余命令按写命令统计 */
+	static final Set<String> READ_COMMANDS = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList("get",
+			"getRedisMap", "getRedisMapValue", "exists", "ttl", "hexists", "llen", "lrange")));
+
+	public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+
+	public static final long DEFAULT_SLOW_CALL_MILLIS = 1000;
+
+	public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 80;
+
+	public static final int DEFAULT_MINIMUM_CALLS = 20;
+
+	public static final int DEFAULT_WINDOW_SECONDS = 10;
+
+	public static final long DEFAULT_OPEN_MILLIS = 5000;
+
+	public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+	private static final int CLOSED = 0;
+
+	private static final int OPEN = 1;
+
+	private static final int HALF_OPEN = 2;
+
+	private static final String[] STATE_NAMES = { "CLOSED", "OPEN", "HALF_OPEN" };
+
+	/** acquire()的返回值：拒绝 */
+	private static final int REJECTED = -1;
+
+	/** acquire()的返回值：正常放行，大于0时为半开状态的探测命令 */
+	private static final int PERMITTED = 0;
+
+	private volatile int failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+
+	private volatile long slowCallMillis = DEFAULT_SLOW_CALL_MILLIS;
+
+	private volatile int slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+
+	private volatile int minimumCalls = DEFAULT_MINIMUM_CALLS;
+
+	private volatile int windowSeconds = DEFAULT_WINDOW_SECONDS;
+
+	private volatile long openMillis = DEFAULT_OPEN_MILLIS;
+
+	private volatile int halfOpenCalls = DEFAULT_HALF_OPEN_CALLS;
+
+	/** 小于等于0时在start()中取连接池的maxTotal */
+	private volatile int maxConcurrentCalls;
+
+	private volatile JedisCluster cluster;
+
+	private volatile JedisClusterInfoCache cache;
+
+	/** 按master节点连接池区分 */
+	private final ConcurrentMap<JedisPool, Node> nodes = new ConcurrentHashMap<JedisPool, Node>();
+
+	private final ConcurrentMap<String, RedisFallback<?>> fallbacks = new ConcurrentHashMap<String, RedisFallback<?>>();
+
+	private final LongAdder rejected = new LongAdder();
+
+	private final LongAdder bulkheadRejected = new LongAdder();
+
+	private final LongAdder fallbackCount = new LongAdder();
+
+	private final LongAdder trips = new LongAdder();
+
+	private ObjectName registeredName;
+
+	/**
+	 * 开始统计并注册JMX，由RedisClientUtil.setCircuitBreaker调用
+	 */
+	public synchronized void start(RedisClusterContext context) {
+		this.cluster = context.getJedisCluster();
+		this.cache = RedisClusterRouter.getClusterInfoCache(cluster);
+		if (maxConcurrentCalls <= 0) {
+			RedisPoolConfig config = context.getPoolConfig();
+			maxConcurrentCalls = null == config ? RedisPoolConfig.fromProperties(null).getMaxTotal()
+					: config.getMaxTotal();
+		}
+		try {
+			ObjectName name = new ObjectName(context.objectName(OBJECT_NAME));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (Exception e) {
+			logger.warn("RedisCircuitBreaker 注册JMX失败。", e);
+		}
+	}
+
+	/**
+	 * 注销JMX
+	 */
+	@Override
+	public synchronized void close() {
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisCircuitBreaker 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+	}
+
+	/**
+	 * 注册读命令被拒绝时的降级，传入null取消
+	 *
+	 * @param command
+	 *            读命令，RedisClientUtil的方法名：get、getRedisMap、getRedisMapValue、exists、ttl、hexists、llen、lrange
+	 * @param fallback
+	 *            降级，返回值类型与对应方法一致
+	 */
+	public void setFallback(String command, RedisFallback<?> fallback) {
+		if (!READ_COMMANDS.contains(command)) {
+			throw new IllegalArgumentException("fallback is only supported for read commands " + READ_COMMANDS);
+		}
+		if (null == fallback) {
+			fallbacks.remove(command);
+		} else {
+			fallbacks.put(command, fallback);
+		}
+	}
+
+	/**
+	 * 在key所属节点的熔断器和并发隔离下执行命令
+	 *
+	 * @param command
+	 *            命令名称，与RedisClientUtil的方法名一致
+	 * @param key
+	 *            redis键，决定节点
+	 * @param call
+	 *            访问redis
+	 * @return call的结果
+	 * @throws RedisCallRejectedException
+	 *             节点熔断或并发数已满
+	 */
+	<T> T execute(String command, String key, Supplier<T> call) {
+		Node node = node(key);
+		Breaker breaker = READ_COMMANDS.contains(command) ? node.read : node.write;
+		int permit = breaker.acquire();
+		if (REJECTED == permit) {
+			node.rejected.increment();
+			rejected.increment();
+			throw new RedisCallRejectedException(RedisCallRejectedException.Reason.CIRCUIT_OPEN, node.name, command);
+		}
+		if (node.inFlight.incrementAndGet() > maxConcurrentCalls) {
+			node.inFlight.decrementAndGet();
+			breaker.release(permit);
+			node.bulkheadRejected.increment();
+			bulkheadRejected.increment();
+			throw new RedisCallRejectedException(RedisCallRejectedException.Reason.BULKHEAD_FULL, node.name, command);
+		}
+		long start = System.nanoTime();
+		boolean failure = false;
+		try {
+			return call.get();
+		} catch (RuntimeException e) {
+			failure = isFailure(e);
+			throw e;
+		} finally {
+			node.inFlight.decrementAndGet();
+			breaker.complete(permit, System.nanoTime() - start, failure);
+		}
+	}
+
+	/**
+	 * 命令被拒绝时返回注册的降级结果，没有注册降级时抛出原异常
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T fallback(String command, String key, String field, RedisCallRejectedException cause) {
+		RedisFallback<?> fallback = fallbacks.get(command);
+		if (null == fallback) {
+			throw cause;
+		}
+		fallbackCount.increment();
+		return (T) fallback.fallback(key, field, cause);
+	}
+
+	/**
+	 * 连接异常、连接池用尽、超时、多次重定向仍失败和集群不可用计为失败
+	 */
+	static boolean isFailure(RuntimeException e) {
+		return e instanceof JedisConnectionException || e instanceof JedisClusterMaxRedirectionsException
+				|| e instanceof JedisClusterException || RedisPoolExhaustedException.isExhausted(e);
+	}
+
+	private Node node(String key) {
+		JedisPool pool = cache.getSlotPool(RedisClusterRouter.getSlot(key));
+		if (null == pool) {
+			pool = RedisClusterRouter.getKeyPool(cluster, key);
+		}
+		Node node = nodes.get(pool);
+		if (null == node) {
+			HostAndPort address = RedisClusterRouter.getPoolNode(cluster, pool);
+			Node created = new Node(null == address ? String.valueOf(pool) : RedisClusterRouter.getNodeKey(address));
+			node = nodes.putIfAbsent(pool, created);
+			if (null == node) {
+				node = created;
+				// 出现新节点说明拓扑有变化
+				prune();
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * 删除已不负责任何slot的节点，slot迁移或故障转移进行中(有slot未分配)时不处理
+	 */
+	private void prune() {
+		Set<JedisPool> masters = RedisClusterRouter.collectSlotPools(cache);
+		if (null != masters) {
+			nodes.keySet().retainAll(masters);
+		}
+	}
+
+	@Override
+	public int getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	@Override
+	public void setFailureRateThreshold(int failureRateThreshold) {
+		if (failureRateThreshold <= 0 || failureRateThreshold > 100) {
+			throw new IllegalArgumentException("failureRateThreshold must be in (0, 100]");
+		}
+		this.failureRateThreshold = failureRateThreshold;
+	}
+
+	@Override
+	public long getSlowCallMillis() {
+		return slowCallMillis;
+	}
+
+	@Override
+	public void setSlowCallMillis(long slowCallMillis) {
+		if (slowCallMillis <= 0) {
+			throw new IllegalArgumentException("slowCallMillis must be positive");
+		}
+		this.slowCallMillis = slowCallMillis;
+	}
+
+	@Override
+	public int getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+	@Override
+	public void setSlowCallRateThreshold(int slowCallRateThreshold) {
+		if (slowCallRateThreshold <= 0 || slowCallRateThreshold > 100) {
+			throw new IllegalArgumentException("slowCallRateThreshold must be in (0, 100]");
+		}
+		this.slowCallRateThreshold = slowCallRateThreshold;
+	}
+
+	@Override
+	public int getMinimumCalls() {
+		return minimumCalls;
+	}
+
+	@Override
+	public void setMinimumCalls(int minimumCalls) {
+		if (minimumCalls <= 0) {
+			throw new IllegalArgumentException("minimumCalls must be positive");
+		}
+		this.minimumCalls = minimumCalls;
+	}
+
+	@Override
+	public int getWindowSeconds() {
+		return windowSeconds;
+	}
+
+	@Override
+	public void setWindowSeconds(int windowSeconds) {
+		if (windowSeconds <= 0 || windowSeconds >= RedisThroughputCounter.WINDOW_SECONDS) {
+			throw new IllegalArgumentException("windowSeconds must be in (0, " + RedisThroughputCounter.WINDOW_SECONDS
+					+ ")");
+		}
+		this.windowSeconds = windowSeconds;
+	}
+
+	@Override
+	public long getOpenMillis() {
+		return openMillis;
+	}
+
+	@Override
+	public void setOpenMillis(long openMillis) {
+		if (openMillis <= 0) {
+			throw new IllegalArgumentException("openMillis must be positive");
+		}
+		this.openMillis = openMillis;
+	}
+
+	@Override
+	public int getHalfOpenCalls() {
+		return halfOpenCalls;
+	}
+
+	@Override
+	public void setHalfOpenCalls(int halfOpenCalls) {
+		if (halfOpenCalls <= 0) {
+			throw new IllegalArgumentException("halfOpenCalls must be positive");
+		}
+		this.halfOpenCalls = halfOpenCalls;
+	}
+
+	@Override
+	public int getMaxConcurrentCalls() {
+		return maxConcurrentCalls;
+	}
+
+	@Override
+	public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+		if (maxConcurrentCalls <= 0) {
+			throw new IllegalArgumentException("maxConcurrentCalls must be positive");
+		}
+		this.maxConcurrentCalls = maxConcurrentCalls;
+	}
+
+	@Override
+	public List<RedisCircuitStats> getNodes() {
+		if (null != cache) {
+			prune();
+		}
+		List<RedisCircuitStats> stats = new ArrayList<RedisCircuitStats>(nodes.size());
+		for (Node node : nodes.values()) {
+			stats.add(new RedisCircuitStats(node.name, STATE_NAMES[node.read.state.get()],
+					STATE_NAMES[node.write.state.get()], node.inFlight.get(), node.rejected.sum(),
+					node.bulkheadRejected.sum()));
+		}
+		return stats;
+	}
+
+	@Override
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	@Override
+	public long getBulkheadRejectedCount() {
+		return bulkheadRejected.sum();
+	}
+
+	@Override
+	public long getFallbackCount() {
+		return fallbackCount.sum();
+	}
+
+	@Override
+	public long getTripCount() {
+		return trips.sum();
+	}
+
+	/**
+	 * 清零计数，不改变熔断状态
+	 */
+	@Override
+	public void reset() {
+		rejected.reset();
+		bulkheadRejected.reset();
+		fallbackCount.reset();
+		trips.reset();
+		for (Node node : nodes.values()) {
+			node.rejected.reset();
+			node.bulkheadRejected.reset();
+		}
+	}
+
+	/**
+	 * 一个master节点的熔断器和并发数
+	 */
+	private final class Node {
+
+		final String name;
+
+		final Breaker read;
+
+		final Breaker write;
+
+		final AtomicInteger inFlight = new AtomicInteger();
+
+		final LongAdder rejected = new LongAdder();
+
+		final LongAdder bulkheadRejected = new LongAdder();
+
+		Node(String name) {
+			this.name = name;
+			this.read = new Breaker(name + " read");
+			this.write = new Breaker(name + " write");
+		}
+	}
+
+	/**
+	 * 熔断器：CLOSED -&gt; OPEN -&gt; HALF_OPEN -&gt; CLOSED或OPEN
+	 */
+	private final class Breaker {
+
+		final String name;
+
+		final AtomicInteger state = new AtomicInteger(CLOSED);
+
+		/** 每次熔断加一，过期的探测命令结果不影响新一轮半开 */
+		final AtomicInteger generation = new AtomicInteger(1);
+
+		/** 正在执行的探测命令数 */
+		final AtomicInteger probes = new AtomicInteger();
+
+		final AtomicInteger probeSuccesses = new AtomicInteger();
+
+		volatile long openedAt;
+
+		final RedisThroughputCounter calls = new RedisThroughputCounter();
+
+		final RedisThroughputCounter failures = new RedisThroughputCounter();
+
+		final RedisThroughputCounter slowCalls = new RedisThroughputCounter();
+
+		Breaker(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * 返回REJECTED、PERMITTED或探测命令所属的generation
+		 */
+		int acquire() {
+			int current = state.get();
+			if (CLOSED == current) {
+				return PERMITTED;
+			}
+			if (OPEN == current) {
+				if (System.currentTimeMillis() - openedAt < openMillis) {
+					return REJECTED;
+				}
+				state.compareAndSet(OPEN, HALF_OPEN);
+			}
+			int ticket = generation.get();
+			if (HALF_OPEN != state.get()) {
+				return CLOSED == state.get() ? PERMITTED : REJECTED;
+			}
+			if (probes.incrementAndGet() > halfOpenCalls) {
+				probes.decrementAndGet();
+				return REJECTED;
+			}
+			return ticket;
+		}
+
+		/**
+		 * 放行后没有执行
+		 */
+		void release(int permit) {
+			if (permit > PERMITTED) {
+				probes.decrementAndGet();
+			}
+		}
+
+		void complete(int permit, long elapsedNanos, boolean failure) {
+			boolean slow = elapsedNanos > slowCallMillis * 1000000L;
+			if (permit > PERMITTED) {
+				probes.decrementAndGet();
+				if (permit != generation.get()) {
+					return;
+				}
+				if (failure || slow) {
+					trip(HALF_OPEN, failure ? "探测失败" : "探测超时");
+				} else if (probeSuccesses.incrementAndGet() >= halfOpenCalls && state.compareAndSet(HALF_OPEN, CLOSED)) {
+					calls.reset();
+					failures.reset();
+					slowCalls.reset();
+					logger.info("RedisCircuitBreaker {} 恢复。", name);
+				}
+				return;
+			}
+			calls.increment();
+			if (failure) {
+				failures.increment();
+			}
+			if (slow) {
+				slowCalls.increment();
+			}
+			if ((failure || slow) && CLOSED == state.get()) {
+				int window = windowSeconds;
+				long total = calls.getCount(window);
+				if (total < minimumCalls) {
+					return;
+				}
+				long failed = failures.getCount(window);
+				long slowed = slowCalls.getCount(window);
+				if (failed * 100 >= total * failureRateThreshold) {
+					trip(CLOSED, "失败率" + failed * 100 / total + "%");
+				} else if (slowed * 100 >= total * slowCallRateThreshold) {
+					trip(CLOSED, "慢调用率" + slowed * 100 / total + "%");
+				}
+			}
+		}
+
+		private void trip(int expected, String reason) {
+			openedAt = System.currentTimeMillis();
+			if (state.compareAndSet(expected, OPEN)) {
+				generation.incrementAndGet();
+				probeSuccesses.set(0);
+				trips.increment();
+				logger.warn("RedisCircuitBreaker {} 熔断，{}，{}ms后探测。", name, reason, openMillis);
+			}
+		}
+	}
+}
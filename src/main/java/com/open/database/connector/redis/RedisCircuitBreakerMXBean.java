@@ -0,0 +1,93 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.List;
+
+/**
+ * TODO 熔断和并发隔离的JMX接口，注册名为RedisCircuitBreaker.OBJECT_NAME
+ *
+ */
+public interface RedisCircuitBreakerMXBean {
+
+	/**
+	 * 触发熔断的失败率(%)
+	 */
+	int getFailureRateThreshold();
+
+	void setFailureRateThreshold(int failureRateThreshold);
+
+	/**
+	 * 超过该耗时的命令计为慢调用，单位：毫秒
+	 */
+	long getSlowCallMillis();
+
+	void setSlowCallMillis(long slowCallMillis);
+
+	/**
+	 * 触发熔断的慢调用率(%)
+	 */
+	int getSlowCallRateThreshold();
+
+	void setSlowCallRateThreshold(int slowCallRateThreshold);
+
+	/**
+	 * 统计窗口内至少有多少次调用才计算失败率
+	 */
+	int getMinimumCalls();
+
+	void setMinimumCalls(int minimumCalls);
+
+	/**
+	 * 统计窗口，单位：秒
+	 */
+	int getWindowSeconds();
+
+	void setWindowSeconds(int windowSeconds);
+
+	/**
+	 * 熔断后多久进入半开状态放行探测请求，单位：毫秒
+	 */
+	long getOpenMillis();
+
+	void setOpenMillis(long openMillis);
+
+	/**
+	 * 半开状态连续成功多少次后恢复，也是同时放行的探测请求数
+	 */
+	int getHalfOpenCalls();
+
+	void setHalfOpenCalls(int halfOpenCalls);
+
+	/**
+	 * 每个节点同时执行的最大命令数
+	 */
+	int getMaxConcurrentCalls();
+
+	void setMaxConcurrentCalls(int maxConcurrentCalls);
+
+	/**
+	 * 各节点的熔断状态和并发数
+	 */
+	List<RedisCircuitStats> getNodes();
+
+	/**
+	 * 熔断拒绝的命令数
+	 */
+	long getRejectedCount();
+
+	/**
+	 * 并发数达到上限拒绝的命令数
+	 */
+	long getBulkheadRejectedCount();
+
+	/**
+	 * 返回降级结果的次数
+	 */
+	long getFallbackCount();
+
+	/**
+	 * 进入熔断状态的次数
+	 */
+	long getTripCount();
+
+	void reset();
+}
@@ -0,0 +1,84 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * TODO 节点熔断和并发隔离状态快照
+ *
+ * 同时作为JMX MXBean的返回类型。
+ *
+ */
+public class RedisCircuitStats {
+
+	private final String node;
+
+	private final String readState;
+
+	private final String writeState;
+
+	private final int inFlight;
+
+	private final long rejectedCount;
+
+	private final long bulkheadRejectedCount;
+
+	@ConstructorProperties({ "node", "readState", "writeState", "inFlight", "rejectedCount", "bulkheadRejectedCount" })
+	public RedisCircuitStats(String node, String readState, String writeState, int inFlight, long rejectedCount,
+			long bulkheadRejectedCount) {
+		this.node = node;
+		this.readState = readState;
+		this.writeState = writeState;
+		this.inFlight = inFlight;
+		this.rejectedCount = rejectedCount;
+		this.bulkheadRejectedCount = bulkheadRejectedCount;
+	}
+
+	/**
+	 * master节点 host:port
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	/**
+	 * 读命令的熔断状态：CLOSED、OPEN、HALF_OPEN
+	 */
+	public String getReadState() {
+		return readState;
+	}
+
+	/**
+	 * 写命令的熔断状态：CLOSED、OPEN、HALF_OPEN
+	 */
+	public String getWriteState() {
+		return writeState;
+	}
+
+	/**
+	 * 正在执行的命令数
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * 熔断拒绝的命令数
+	 */
+	public long getRejectedCount() {
+		return rejectedCount;
+	}
+
+	/**
+	 * 并发数达到上限拒绝的命令数
+	 */
+	public long getBulkheadRejectedCount() {
+		return bulkheadRejectedCount;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisCircuitStats [node=" + node + ", readState=" + readState + ", writeState=" + writeState
+				+ ", inFlight=" + inFlight + ", rejectedCount=" + rejectedCount + ", bulkheadRejectedCount="
+				+ bulkheadRejectedCount + "]";
+	}
+}
@@ -1,18 +1,28 @@
 package com.sinosafe.macaw.database.connector.redis;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.alibaba.fastjson.JSONObject;
-
+import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.util.SafeEncoder;
 
 /**
  * TODO redis 访问客户端方法工具类 方法汇总
@@ -25,18 +35,505 @@ public class RedisClientUtil {
 
 	private volatile static RedisClientUtil instance;
 
+	private static final ConcurrentMap<String, RedisClientUtil> INSTANCES = new ConcurrentHashMap<String, RedisClientUtil>();
+
+	/**
+	 * 默认集群(RedisPoolUtil.init初始化的集群)的客户端
+	 */
 	public static RedisClientUtil getInstance() {
 		if (null == instance) {
 			synchronized (RedisClientUtil.class) {
 				if(null==instance){
-					instance = new RedisClientUtil();
+					instance = getInstance(RedisClusterContext.DEFAULT_NAME);
 				}
 			}
 		}
 		return instance;
 	}
 
-	private RedisClientUtil() {
+	/**
+	 * 指定名称集群的客户端，集群通过RedisConfigInit或RedisClusterContext.getInstance(name).init()初始化。
+	 * 每个客户端的近端缓存、熔断、replica路由等配置互相独立，可以按业务分别设置：
+	 *
+	 * <pre>
+	 * RedisClientUtil sessions = RedisClientUtil.getInstance("session");
+	 * RedisClientUtil counters = RedisClientUtil.getInstance("counter");
+	 * </pre>
+	 *
+	 * spring中可以通过factory-method定义为bean：
+	 *
+	 * <pre>
+	 * &lt;bean id="sessionRedis" class="...RedisClientUtil" factory-method="getInstance"&gt;
+	 * 	&lt;constructor-arg value="session" /&gt;
+	 * &lt;/bean&gt;
+	 * </pre>
+	 *
+	 * @param name
+	 *            集群名称，见RedisClusterContext
+	 */
+	public static RedisClientUtil getInstance(String name) {
+		RedisClientUtil client = INSTANCES.get(name);
+		if (null == client) {
+			RedisClusterContext context = RedisClusterContext.getInstance(name);
+			client = INSTANCES.computeIfAbsent(name, n -> new RedisClientUtil(context));
+		}
+		return client;
+	}
+
+	/** 访问的集群 */
+	private final RedisClusterContext context;
+
+	/** 集群名称，命令跟踪和统计按集群区分 */
+	private final String clusterName;
+
+	private volatile RedisNearCache nearCache;
+
+	private volatile RedisCompressor compressor = RedisCompressor.decompressOnly();
+
+	private volatile RedisSingleFlight singleFlight;
+
+	private volatile RedisCacheLoader cacheLoader = new RedisCacheLoader();
+
+	private volatile RedisHotKeyDetector hotKeyDetector;
+
+	private volatile RedisReplicaRouter replicaRouter;
+
+	private volatile RedisCircuitBreaker circuitBreaker;
+
+	private volatile RedisHedgedReads hedgedReads;
+
+	/** withReadPreference设置的当前线程读策略，未设置时使用replicaRouter的默认策略 */
+	private static final ThreadLocal<RedisReadPreference> READ_PREFERENCE = new ThreadLocal<RedisReadPreference>();
+
+	/** withDeadline设置的当前线程截止时间，未设置时只受连接超时限制 */
+	private static final ThreadLocal<RedisDeadline> DEADLINE = new ThreadLocal<RedisDeadline>();
+
+	private RedisClientUtil(RedisClusterContext context) {
+		this.context = context;
+		this.clusterName = context.getName();
+		cacheLoader.bind(this);
+	}
+
+	/**
+	 * 客户端访问的集群
+	 */
+	public RedisClusterContext getContext() {
+		return context;
+	}
+
+	/**
+	 * 集群连接实例，集群未初始化时返回null
+	 */
+	JedisCluster cluster() {
+		return context.getJedisCluster();
+	}
+
+	/**
+	 * 设置进程内近端缓存，get、getRedisMap、getRedisMapValue优先从近端缓存读取；传入null关闭近端缓存。
+	 *
+	 * @param nearCache
+	 *            近端缓存
+	 */
+	public synchronized void setNearCache(RedisNearCache nearCache) {
+		RedisNearCache old = this.nearCache;
+		if (null != nearCache) {
+			nearCache.start(cluster());
+		}
+		this.nearCache = nearCache;
+		if (null != old && old != nearCache) {
+			old.close();
+		}
+	}
+
+	/**
+	 * 当前的近端缓存，未开启时为null
+	 */
+	public RedisNearCache getNearCache() {
+		return nearCache;
+	}
+
+	/**
+	 * 设置value压缩，set、setMapOnRedis、updateUserdebug和编解码器写入的value超过阈值时压缩；传入null关闭压缩。
+	 * 无论是否开启，读取时都会识别并解压其他实例写入的压缩值。
+	 *
+	 * @param compressor
+	 *            压缩器
+	 */
+	public synchronized void setCompressor(RedisCompressor compressor) {
+		this.compressor = null == compressor ? RedisCompressor.decompressOnly() : compressor;
+	}
+
+	/**
+	 * 当前的压缩器，未开启压缩时为只解压的实例
+	 */
+	public RedisCompressor getCompressor() {
+		return compressor;
+	}
+
+	/**
+	 * 设置读请求合并，get、getRedisMap、getRedisMapValue相同key的并发请求共享一次redis访问；传入null关闭合并。
+	 *
+	 * @param singleFlight
+	 *            读请求合并
+	 */
+	public synchronized void setSingleFlight(RedisSingleFlight singleFlight) {
+		this.singleFlight = singleFlight;
+	}
+
+	/**
+	 * 当前的读请求合并，未开启时为null
+	 */
+	public RedisSingleFlight getSingleFlight() {
+		return singleFlight;
+	}
+
+	/**
+	 * 设置getOrLoad使用的缓存加载器，用于调整锁、提前刷新、过期抖动和旧值返回的参数；传入null恢复默认配置。
+	 *
+	 * @param cacheLoader
+	 *            缓存加载器
+	 */
+	public synchronized void setCacheLoader(RedisCacheLoader cacheLoader) {
+		RedisCacheLoader loader = null == cacheLoader ? new RedisCacheLoader() : cacheLoader;
+		loader.bind(this);
+		this.cacheLoader = loader;
+	}
+
+	/**
+	 * 当前getOrLoad使用的缓存加载器
+	 */
+	public RedisCacheLoader getCacheLoader() {
+		return cacheLoader;
+	}
+
+	/**
+	 * 设置热点key和大key检测，设置后立即开始统计所有命令；传入null关闭检测。
+	 *
+	 * @param hotKeyDetector
+	 *            热点key检测
+	 */
+	public synchronized void setHotKeyDetector(RedisHotKeyDetector hotKeyDetector) {
+		RedisHotKeyDetector old = this.hotKeyDetector;
+		if (null != hotKeyDetector) {
+			hotKeyDetector.start(context);
+		}
+		this.hotKeyDetector = hotKeyDetector;
+		if (null != old && old != hotKeyDetector) {
+			old.close();
+		}
+	}
+
+	/**
+	 * 当前的热点key检测，未开启时为null
+	 */
+	public RedisHotKeyDetector getHotKeyDetector() {
+		return hotKeyDetector;
+	}
+
+	/**
+	 * 设置replica读路由，get、getRedisMap、getRedisMapValue、exists、ttl、llen、lrange按读策略读replica；传入null全部读master。
+	 *
+	 * @param replicaRouter
+	 *            replica读路由
+	 */
+	public synchronized void setReplicaRouter(RedisReplicaRouter replicaRouter) {
+		RedisReplicaRouter old = this.replicaRouter;
+		if (null != replicaRouter) {
+			replicaRouter.start(context);
+		}
+		this.replicaRouter = replicaRouter;
+		if (null != old && old != replicaRouter) {
+			old.close();
+		}
+	}
+
+	/**
+	 * 当前的replica读路由，未开启时为null
+	 */
+	public RedisReplicaRouter getReplicaRouter() {
+		return replicaRouter;
+	}
+
+	/**
+	 * 设置按节点的熔断和并发隔离，单key命令在节点熔断或并发数已满时快速失败或返回降级结果；传入null关闭。
+	 *
+	 * @param circuitBreaker
+	 *            熔断和并发隔离
+	 */
+	public synchronized void setCircuitBreaker(RedisCircuitBreaker circuitBreaker) {
+		RedisCircuitBreaker old = this.circuitBreaker;
+		if (null != circuitBreaker) {
+			circuitBreaker.start(context);
+		}
+		this.circuitBreaker = circuitBreaker;
+		if (null != old && old != circuitBreaker) {
+			old.close();
+		}
+	}
+
+	/**
+	 * 当前的熔断和并发隔离，未开启时为null
+	 */
+	public RedisCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	/**
+	 * 设置对冲读取，开启replica读路由时get、getRedisMap、getRedisMapValue、exists、ttl、llen、lrange超过对冲延迟未返回时
+	 * 向另一个节点再读一次，取先返回的结果；传入null关闭。
+	 *
+	 * @param hedgedReads
+	 *            对冲读取
+	 */
+	public synchronized void setHedgedReads(RedisHedgedReads hedgedReads) {
+		RedisHedgedReads old = this.hedgedReads;
+		if (null != hedgedReads) {
+			hedgedReads.start(context);
+		}
+		this.hedgedReads = hedgedReads;
+		if (null != old && old != hedgedReads) {
+			old.close();
+		}
+	}
+
+	/**
+	 * 当前的对冲读取，未开启时为null
+	 */
+	public RedisHedgedReads getHedgedReads() {
+		return hedgedReads;
+	}
+
+	/**
+	 * 在当前线程以指定的读策略执行reads中的读取，例如写入后需要立即读到自己写入的数据时使用MASTER：
+	 *
+	 * <pre>
+	 * util.set(key, 60, value);
+	 * String current = util.withReadPreference(RedisReadPreference.MASTER, () -&gt; util.get(key));
+	 * </pre>
+	 *
+	 * 读策略为MASTER时get、getRedisMap、getRedisMapValue不读近端缓存，也不合并到其他线程正在进行的读取，直接读master。
+	 *
+	 * @param preference
+	 *            读策略
+	 * @param reads
+	 *            读取
+	 * @return reads的结果
+	 */
+	public <T> T withReadPreference(RedisReadPreference preference, Supplier<T> reads) {
+		RedisReadPreference previous = READ_PREFERENCE.get();
+		READ_PREFERENCE.set(preference);
+		try {
+			return reads.get();
+		} finally {
+			if (null == previous) {
+				READ_PREFERENCE.remove();
+			} else {
+				READ_PREFERENCE.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * 在当前线程以指定的截止时间执行calls中的redis访问，截止时间内没有得到响应时抛出RedisDeadlineExceededException：
+	 *
+	 * <pre>
+	 * RedisDeadline deadline = RedisDeadline.afterMillis(50);
+	 * String value = util.withDeadline(deadline, () -&gt; util.get(key));
+	 * </pre>
+	 *
+	 * 嵌套调用时使用较早的截止时间。Jedis的超时是连接级别的，因此有截止时间的命令在执行器线程上执行，超时后命令仍会在后台执行完成，
+	 * 写命令是否生效不确定。开启读请求合并时，合并到其他线程的请求在当前线程的截止时间到达时停止等待并抛出RedisDeadlineExceededException，
+	 * 首个请求的读取不受影响，继续执行完成；首个请求因它自己的截止时间失败时，等待中的请求重新发起读取。
+	 *
+	 * @param deadline
+	 *            截止时间
+	 * @param calls
+	 *            redis访问
+	 * @return calls的结果
+	 */
+	public <T> T withDeadline(RedisDeadline deadline, Supplier<T> calls) {
+		RedisDeadline previous = DEADLINE.get();
+		DEADLINE.set(deadline.earlier(previous));
+		try {
+			return calls.get();
+		} finally {
+			if (null == previous) {
+				DEADLINE.remove();
+			} else {
+				DEADLINE.set(previous);
+			}
+		}
+	}
+
+	/**
+	 * 从现在起timeoutMillis毫秒内执行calls中的redis访问，见withDeadline
+	 */
+	public <T> T withTimeout(long timeoutMillis, Supplier<T> calls) {
+		return withDeadline(RedisDeadline.afterMillis(timeoutMillis), calls);
+	}
+
+	/**
+	 * 当前线程的截止时间，未设置时为null
+	 */
+	RedisDeadline currentDeadline() {
+		return DEADLINE.get();
+	}
+
+	/**
+	 * 当前线程通过withReadPreference设置的读策略，未设置时为null
+	 */
+	RedisReadPreference currentReadPreference() {
+		return READ_PREFERENCE.get();
+	}
+
+	/**
+	 * 当前线程通过withReadPreference显式指定读master，此时不使用近端缓存和读请求合并
+	 */
+	private static boolean readsMaster() {
+		return RedisReadPreference.MASTER == READ_PREFERENCE.get();
+	}
+
+	/**
+	 * 开启replica读路由时按读策略选择节点，否则读master；开启对冲读取时超过对冲延迟再读另一个节点
+	 */
+	private <T> T read(String command, String key, Function<Jedis, T> replicaRead, Supplier<T> masterRead) {
+		RedisReplicaRouter router = replicaRouter;
+		if (null == router) {
+			return call(command, key, masterRead);
+		}
+		// 读策略和截止时间保存在当前线程，需要在提交到执行器之前取出
+		RedisReadPreference explicit = READ_PREFERENCE.get();
+		RedisReadPreference preference = null == explicit ? router.getPreference() : explicit;
+		Supplier<T> primary = guard(command, key, () -> router.execute(preference, key, replicaRead, masterRead));
+		RedisDeadline deadline = DEADLINE.get();
+		RedisHedgedReads hedging = hedgedReads;
+		if (null == hedging || RedisReadPreference.MASTER == explicit) {
+			return timed(primary, deadline);
+		}
+		Supplier<T> hedge = RedisReadPreference.MASTER == preference ? guard(command, key,
+				() -> router.execute(RedisReadPreference.REPLICA_PREFERRED, key, replicaRead, masterRead))
+				: guard(command, key, masterRead);
+		return hedging.execute(command, primary, hedge, deadline);
+	}
+
+	/**
+	 * 开启熔断时在key所属节点的熔断器和并发隔离下执行，当前线程设置了截止时间时在截止时间内执行
+	 */
+	<T> T call(String command, String key, Supplier<T> call) {
+		return timed(guard(command, key, call), DEADLINE.get());
+	}
+
+	/**
+	 * 开启熔断时包装为在key所属节点的熔断器和并发隔离下执行
+	 */
+	private <T> Supplier<T> guard(String command, String key, Supplier<T> call) {
+		RedisCircuitBreaker breaker = circuitBreaker;
+		return null == breaker ? call : () -> breaker.execute(command, key, call);
+	}
+
+	/**
+	 * deadline不为null时在截止时间内执行
+	 */
+	private <T> T timed(Supplier<T> call, RedisDeadline deadline) {
+		return null == deadline ? call.get() : RedisDeadlineExecutor.execute(call, deadline);
+	}
+
+	/**
+	 * 读命令被熔断拒绝且注册了降级时返回降级结果，否则抛出error
+	 */
+	private <T> T fallback(String command, String key, String field, RuntimeException error) {
+		RedisCircuitBreaker breaker = circuitBreaker;
+		if (null == breaker || !(error instanceof RedisCallRejectedException)) {
+			throw error;
+		}
+		return breaker.fallback(command, key, field, (RedisCallRejectedException) error);
+	}
+
+	/**
+	 * 开启热点key检测时逐个记录批量读取的key
+	 */
+	private void recordKeys(String command, Collection<String> keys) {
+		RedisHotKeyDetector detector = hotKeyDetector;
+		if (null != detector) {
+			detector.recordKeys(command, keys);
+		}
+	}
+
+	/**
+	 * 开启热点key检测时上报value大小
+	 */
+	private void recordSize(String command, String key, long size) {
+		RedisHotKeyDetector detector = hotKeyDetector;
+		if (null != detector) {
+			detector.recordSize(command, key, size);
+		}
+	}
+
+	/**
+	 * redis返回的value解压后按UTF-8转为字符串
+	 */
+	private String decodeString(byte[] data) {
+		return null == data ? null : SafeEncoder.encode(compressor.decompress(data));
+	}
+
+	/**
+	 * 有value需要压缩时返回二进制的hash，否则返回null按字符串写入
+	 */
+	private Map<byte[], byte[]> compressHash(Map<String, String> hash) {
+		RedisCompressor current = compressor;
+		boolean compress = false;
+		for (String value : hash.values()) {
+			if (current.mayCompress(value)) {
+				compress = true;
+				break;
+			}
+		}
+		if (!compress) {
+			return null;
+		}
+		Map<byte[], byte[]> binary = new LinkedHashMap<byte[], byte[]>(hash.size() * 4 / 3 + 1);
+		for (Map.Entry<String, String> entry : hash.entrySet()) {
+			byte[] value = SafeEncoder.encode(entry.getValue());
+			binary.put(SafeEncoder.encode(entry.getKey()),
+					current.mayCompress(entry.getValue()) ? current.compress(value) : value);
+		}
+		return binary;
+	}
+
+	private Map<String, String> decodeHash(Map<byte[], byte[]> binary) {
+		Map<String, String> hash = new HashMap<String, String>(binary.size() * 4 / 3 + 1);
+		for (Map.Entry<byte[], byte[]> entry : binary.entrySet()) {
+			hash.put(SafeEncoder.encode(entry.getKey()), decodeString(entry.getValue()));
+		}
+		return hash;
+	}
+
+	/**
+	 * 集群对应客户端当前的近端缓存，客户端未创建或未开启近端缓存时为null。
+	 * 供RedisBatchWriter等不经过RedisClientUtil的写入方在写入后失效近端缓存。
+	 */
+	static RedisNearCache nearCacheOf(RedisClusterContext context) {
+		RedisClientUtil client = INSTANCES.get(context.getName());
+		return null == client ? null : client.nearCache;
+	}
+
+	/**
+	 * 写操作后使近端缓存失效并广播给其他实例
+	 */
+	private void invalidateNearCache(JedisCluster jedis, String key) {
+		RedisNearCache cache = nearCache;
+		if (null != cache) {
+			cache.publishInvalidation(jedis, key);
+		}
+	}
+
+	/**
+	 * 记录失败的命令，连接池用尽时转换为RedisPoolExhaustedException
+	 */
+	RuntimeException failed(String command, String key, long trace, RuntimeException e) {
+		RuntimeException error = RedisPoolExhaustedException.translate(e, context.getPoolManager());
+		RedisCommandTracer.failure(clusterName, command, key, trace, error);
+		return error;
 	}
 
 	/**
@@ -52,34 +549,35 @@ public class RedisClientUtil {
 	 */
 
 	public boolean set(String key, int seconds, String value) {
-		logger.debug("RedisClientUtil.set() key:" + key + ",seconds:" + seconds + ",value:" + value);
-		long startTime = System.currentTimeMillis();
+		long trace = RedisCommandTracer.start();
 		String result = null;
-		boolean isFlag = false;
-		// 初始化redis对象
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			result = jedis.set(key, value);
-			// 如果超时时间大于零，则需要设置超时时长，否则永久存在
-			if (seconds > 0) {
-				jedis.expire(key, seconds);
-			}
-			if (!StringUtils.isEmpty(result) && "OK".equals(result.toUpperCase(Locale.getDefault()))) {
-				logger.debug("RedisClientUtil.set() key:" + key + ",存放到redis的成功。");
-				isFlag = true;
-			} else {
-				logger.warn("RedisClientUtil.set() key:" + key + ",存放到redis的失败。");
-			}
-		} catch (Exception ex) {
-			logger.error("RedisClientUtil.set() is failed.Exception:", ex);
-
+			JedisCluster jedis = cluster();
+			RedisCompressor current = compressor;
+			result = call("set", key, () -> {
+				// 如果超时时间大于零，则写入时同时设置超时时长(SET EX)，否则永久存在
+				if (current.mayCompress(value)) {
+					byte[] data = current.compress(SafeEncoder.encode(value));
+					if (seconds > 0) {
+						return jedis.setex(SafeEncoder.encode(key), seconds, data);
+					}
+					return jedis.set(SafeEncoder.encode(key), data);
+				} else if (seconds > 0) {
+					return jedis.setex(key, seconds, value);
+				}
+				return jedis.set(key, value);
+			});
+			invalidateNearCache(jedis, key);
+		} catch (RuntimeException e) {
+			failed("set", key, trace, e);
+			return false;
+		}
+		RedisCommandTracer.success(clusterName, "set", key, trace, value);
+		if ("OK".equalsIgnoreCase(result)) {
+			return true;
 		}
-		logger.debug("RedisClientUtil.set() key：" + key + ",value：" + value + "，所消耗的时间："
-				+ (System.currentTimeMillis() - startTime) + "ms");
-		return isFlag;
+		logger.warn("RedisClientUtil.set() key:{},存放到redis的失败。", key);
+		return false;
 	}
 
 	/**
@@ -91,25 +589,143 @@ public class RedisClientUtil {
 	 */
 
 	public String get(String key) {
-		logger.debug("RedisClientUtil.get() key:" + key);
-		long startTime = System.currentTimeMillis();
-		// 初始化redis对象
-		JedisCluster jedis = null;
+		boolean master = readsMaster();
+		RedisNearCache cache = master ? null : nearCache;
+		long cacheVersion = 0;
+		if (null != cache) {
+			Object cached = cache.getString(key);
+			if (RedisNearCache.MISS != cached) {
+				return (String) cached;
+			}
+			cacheVersion = cache.version(key);
+		}
+		RedisSingleFlight flight = master ? null : singleFlight;
+		String redisValue;
+		try {
+			redisValue = null == flight ? loadString(key)
+					: flight.execute("get", key, null, () -> loadString(key), null, DEADLINE.get());
+		} catch (RedisCallRejectedException e) {
+			return fallback("get", key, null, e);
+		}
+		if (null != cache) {
+			cache.putString(key, redisValue, cacheVersion);
+		}
+		return redisValue;
+	}
+
+	private String loadString(String key) {
+		long trace = RedisCommandTracer.start();
+		byte[] data = null;
 		String redisValue = null;
-		// 是否Redis连接异常
+		try {
+			final byte[] redisKey = SafeEncoder.encode(key);
+			data = read("get", key, jedis -> jedis.get(redisKey), () -> cluster().get(redisKey));
+			redisValue = decodeString(data);
+		} catch (RuntimeException e) {
+			throw failed("get", key, trace, e);
+		}
+		RedisCommandTracer.success(clusterName, "get", key, trace, redisValue);
+		if (null != data) {
+			recordSize("get", key, data.length);
+		}
+		return redisValue;
+	}
 
+	/**
+	 * 将对象编码后存放到redis。 时间复杂度：O(1)
+	 * 
+	 * @param key
+	 *            存放到redis的Key值，唯一，不唯一会被覆盖
+	 * @param value
+	 *            需要存放到redis的对象
+	 * @param seconds
+	 *            超时时间，单位：秒，小于等于0时永久存在
+	 * @param codec
+	 *            编解码器，见RedisCodecs、RedisRecordCodec
+	 * @return 相应结果
+	 */
+
+	public <T> boolean set(String key, T value, int seconds, RedisCodec<T> codec) {
+		long trace = RedisCommandTracer.start();
+		String result = null;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			redisValue = jedis.get(key);
-			logger.debug("RedisClientUtil.get() key:" + key + ",从redis获取的value：" + redisValue);
-		} catch (Exception ex) {
-			logger.error("RedisClientUtil.get() is failed. Exception:", ex);
-			throw ex;
+			byte[] data = compressor.compress(RedisCodecs.encode(codec, value));
+			JedisCluster jedis = cluster();
+			result = call("set", key, () -> seconds > 0 ? jedis.setex(SafeEncoder.encode(key), seconds, data)
+					: jedis.set(SafeEncoder.encode(key), data));
+			invalidateNearCache(jedis, key);
+		} catch (RuntimeException e) {
+			failed("set", key, trace, e);
+			return false;
 		}
-		logger.debug("RedisClientUtil.get() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "set", key, trace, value);
+		if ("OK".equalsIgnoreCase(result)) {
+			return true;
+		}
+		logger.warn("RedisClientUtil.set() key:{},存放到redis的失败。", key);
+		return false;
+	}
+
+	/**
+	 * 通过唯一Key值从redis里面获取值并解码为对象，不经过近端缓存。 时间复杂度：O(1)
+	 * 
+	 * @param key
+	 *            redis唯一的key值
+	 * @param codec
+	 *            编解码器，需与写入时一致
+	 * @return 相应查询结果，key不存在时为null
+	 */
+
+	public <T> T get(String key, RedisCodec<T> codec) {
+		long trace = RedisCommandTracer.start();
+		T redisValue = null;
+		try {
+			byte[] data = call("get", key, () -> cluster().get(SafeEncoder.encode(key)));
+			redisValue = RedisCodecs.decode(codec, compressor.decompress(data));
+		} catch (RuntimeException e) {
+			throw failed("get", key, trace, e);
+		}
+		RedisCommandTracer.success(clusterName, "get", key, trace, redisValue);
 		return redisValue;
 	}
 
+	/**
+	 * 读取缓存，不存在或已过期时执行loader加载并写入，同一个key在整个集群同时只有一个实例执行loader，详见RedisCacheLoader。
+	 * 时间复杂度：O(1)
+	 *
+	 * <pre>
+	 * String name = RedisClientUtil.getInstance().getOrLoad("user:name:" + id, 600, () -&gt; userDao.getName(id));
+	 * </pre>
+	 *
+	 * @param key
+	 *            redis唯一的key值，只能通过getOrLoad读取
+	 * @param seconds
+	 *            缓存时间，单位：秒
+	 * @param loader
+	 *            从数据源加载，返回null时不缓存
+	 * @return 缓存的值或加载的值
+	 */
+	public String getOrLoad(String key, int seconds, Supplier<String> loader) {
+		return cacheLoader.getOrLoad(key, seconds, RedisCodecs.TEXT, loader);
+	}
+
+	/**
+	 * 读取缓存并解码为对象，不存在或已过期时执行loader加载并写入，详见RedisCacheLoader。 时间复杂度：O(1)
+	 *
+	 * @param key
+	 *            redis唯一的key值，只能通过getOrLoad读取
+	 * @param seconds
+	 *            缓存时间，单位：秒
+	 * @param codec
+	 *            编解码器，见RedisCodecs、RedisRecordCodec
+	 * @param loader
+	 *            从数据源加载，返回null时不缓存
+	 * @return 缓存的值或加载的值
+	 */
+	public <T> T getOrLoad(String key, int seconds, RedisCodec<T> codec, Supplier<T> loader) {
+		return cacheLoader.getOrLoad(key, seconds, codec, loader);
+	}
+
 	/**
 	 * 将对象设置到redis服务器中，例如可以存入DTO或是Map对象。 时间复杂度：O(1)
 	 * 
@@ -122,52 +738,46 @@ public class RedisClientUtil {
 	 */
 	public boolean setMapOnRedis(String key, Map<String, String> redisMap, int seconds) {
 		if (null == redisMap) {
-			logger.warn(
-					"RedisClientUtil.setMapOnRedis() key：" + key + "，redisMap is null" + "，需要缓存到redis的map为空，load到redis中。");
+			logger.warn("RedisClientUtil.setMapOnRedis() key：{}，redisMap is null，需要缓存到redis的map为空，load到redis中。", key);
 			return false;
 		}
-		String redisStr = redisMap.toString();
-		if (redisStr.length() > 500) {
-			redisStr = redisStr.substring(0, 500) + "....";
-		}
-		long startTime = System.currentTimeMillis();
-		boolean returnReslut = false;
-		String result = "";
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
+		long trace = RedisCommandTracer.start();
+		String result = null;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			// 如果设置的超时时间为0时，说明是持久化到redis中，需要自己手动回收，如果非0则到达时间后就会销毁回收
-			if (0 == seconds) {
-				result = jedis.hmset(key, redisMap);
-			} else {
-				result = jedis.hmset(key, redisMap);
-				// 设置超时时间
-				jedis.expire(key, seconds);
-			}
-			// 设置到
-			if (!StringUtils.isEmpty(result) && "OK".equals(result.toUpperCase(Locale.getDefault()))) {
-				logger.debug("RedisClientUtil.setMapOnRedis() 将redisMap:" + JSONObject.toJSONString(redisMap) + "，key："
-						+ key + ",设置到redis服务器中成功。");
-				returnReslut = true;
-			} else {
-				logger.debug("RedisClientUtil.setMapOnRedis() 将objValue:" + JSONObject.toJSONString(redisMap) + "，key："
-						+ key + "，设置到redis服务器中失败。");
-			}
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.setMapOnRedis() is failed. Exception:", e);
-			throw e;
+			JedisCluster jedis = cluster();
+			Map<byte[], byte[]> binary = compressHash(redisMap);
+			result = call("setMapOnRedis", key, () -> {
+				// 如果设置的超时时间为0时，说明是持久化到redis中，需要自己手动回收，如果非0则到达时间后就会销毁回收
+				if (null != binary && 0 == seconds) {
+					return jedis.hmset(SafeEncoder.encode(key), binary);
+				} else if (null != binary) {
+					Object reply = RedisScriptRegistry.evalsha(jedis, RedisScriptRegistry.HMSET_EXPIRE,
+							SafeEncoder.encode(key), RedisScriptRegistry.hmsetExpireBinaryArgs(seconds, binary));
+					return reply instanceof byte[] ? SafeEncoder.encode((byte[]) reply) : (String) reply;
+				} else if (0 == seconds || redisMap.isEmpty()) {
+					return jedis.hmset(key, redisMap);
+				}
+				// 通过脚本一次往返原子的写入并设置超时时间
+				return (String) RedisScriptRegistry.evalsha(jedis, RedisScriptRegistry.HMSET_EXPIRE,
+						Collections.singletonList(key), RedisScriptRegistry.hmsetExpireArgs(seconds, redisMap));
+			});
+			invalidateNearCache(jedis, key);
+		} catch (RuntimeException e) {
+			throw failed("setMapOnRedis", key, trace, e);
+		}
+		RedisCommandTracer.success(clusterName, "setMapOnRedis", key, trace, redisMap);
+		recordSize("setMapOnRedis", key, redisMap.size());
+		if ("OK".equalsIgnoreCase(result)) {
+			return true;
 		}
-		logger.debug("RedisClientUtil.setMapOnRedis() key：" + key + ",redisMap：" + JSONObject.toJSONString(redisMap)
-				+ "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
-		return returnReslut;
+		logger.debug("RedisClientUtil.setMapOnRedis() key：{}，设置到redis服务器中失败。", key);
+		return false;
 	}
 
 	/**
 	 * 将对象从redis服务器中获取； 时间复杂度：O(N)， N 为哈希表的大小。
 	 * 
-	 * 注：当存放map的size越大的时候，不建议使用该方法，会影响到性能，如果size比较小也就是小于10的话，可以使用该方法。
+	 * 注：当存放map的size越大的时候，不建议使用该方法，会影响到性能，如果size比较小也就是小于10的话，可以使用该方法；大哈希表使用hscan(key, pageSize)按页遍历。
 	 * 
 	 * @param key
 	 *            存放到redis中的唯一key值
@@ -176,25 +786,158 @@ public class RedisClientUtil {
 	 */
 
 	public Map<String, String> getRedisMap(String key) {
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.getRedisMap() key:" + key);
-		Map<String, String> redisMap = null;
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
+		boolean master = readsMaster();
+		RedisNearCache cache = master ? null : nearCache;
+		long cacheVersion = 0;
+		if (null != cache) {
+			Map<String, String> cached = cache.getHash(key);
+			if (null != cached) {
+				return cached;
+			}
+			cacheVersion = cache.version(key);
+		}
+		RedisSingleFlight flight = master ? null : singleFlight;
+		Map<String, String> redisMap;
+		try {
+			redisMap = null == flight ? loadHash(key)
+					: flight.execute("getRedisMap", key, null, () -> loadHash(key), HashMap::new,
+							DEADLINE.get());
+		} catch (RedisCallRejectedException e) {
+			return fallback("getRedisMap", key, null, e);
+		}
+		if (null != cache) {
+			cache.putHash(key, redisMap, cacheVersion);
+		}
+		return redisMap;
+	}
 
+	private Map<String, String> loadHash(String key) {
+		long trace = RedisCommandTracer.start();
+		Map<String, String> redisMap = null;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			redisMap = jedis.hgetAll(key);
-			logger.debug("RedisClientUtil.getRedisMap() key:" + key + ",redis get value");
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.getRedisMap() is failed.Exception:", e);
-			throw e;
+			final byte[] redisKey = SafeEncoder.encode(key);
+			redisMap = decodeHash(read("getRedisMap", key, jedis -> jedis.hgetAll(redisKey),
+					() -> cluster().hgetAll(redisKey)));
+		} catch (RuntimeException e) {
+			throw failed("getRedisMap", key, trace, e);
 		}
-		logger.debug(
-				"RedisClientUtil.getRedisMap() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "getRedisMap", key, trace);
+		recordSize("getRedisMap", key, redisMap.size());
 		return redisMap;
 	}
 
+	/**
+	 * 批量通过Key值从redis里面获取值，按slot所属节点分组后各节点一次pipeline并行获取。 时间复杂度：O(N)， N 为key的数量。
+	 *
+	 * @param keys
+	 *            redis唯一的key值列表
+	 * @return 与keys顺序一致的查询结果，key不存在时对应位置为null
+	 */
+
+	public List<String> mget(Collection<String> keys) {
+		List<String> redisValues = new ArrayList<String>();
+		if (null == keys || keys.isEmpty()) {
+			return redisValues;
+		}
+		long trace = RedisCommandTracer.start();
+		List<RedisBatchCommand<byte[]>> commands = new ArrayList<RedisBatchCommand<byte[]>>(keys.size());
+		for (String key : keys) {
+			commands.add(RedisBatchCommand.getBytes(key));
+		}
+		try {
+			List<Object> results = timed(() -> RedisClusterPipeline.execute(cluster(), commands),
+					DEADLINE.get());
+			for (Object result : results) {
+				redisValues.add(decodeString((byte[]) checkBatchResult(result)));
+			}
+		} catch (RuntimeException e) {
+			throw failed("mget", null, trace, e);
+		}
+		RedisCommandTracer.success(clusterName, "mget", null, trace, keys);
+		recordKeys("mget", keys);
+		return redisValues;
+	}
+
+	/**
+	 * 批量通过Key值获取值并解码为对象，按slot所属节点分组后各节点一次pipeline并行获取。 时间复杂度：O(N)， N 为key的数量。
+	 *
+	 * @param keys
+	 *            redis唯一的key值列表
+	 * @param codec
+	 *            编解码器，需与写入时一致
+	 * @return 与keys顺序一致的查询结果，key不存在时对应位置为null
+	 */
+
+	public <T> List<T> mget(Collection<String> keys, RedisCodec<T> codec) {
+		List<T> redisValues = new ArrayList<T>();
+		if (null == keys || keys.isEmpty()) {
+			return redisValues;
+		}
+		long trace = RedisCommandTracer.start();
+		List<RedisBatchCommand<byte[]>> commands = new ArrayList<RedisBatchCommand<byte[]>>(keys.size());
+		for (String key : keys) {
+			commands.add(RedisBatchCommand.getBytes(key));
+		}
+		try {
+			List<Object> results = timed(() -> RedisClusterPipeline.execute(cluster(), commands),
+					DEADLINE.get());
+			for (Object result : results) {
+				redisValues.add(RedisCodecs.decode(codec, compressor.decompress((byte[]) checkBatchResult(result))));
+			}
+		} catch (RuntimeException e) {
+			throw failed("mget", null, trace, e);
+		}
+		RedisCommandTracer.success(clusterName, "mget", null, trace, keys);
+		recordKeys("mget", keys);
+		return redisValues;
+	}
+
+	/**
+	 * 批量将对象从redis服务器中获取，按slot所属节点分组后各节点一次pipeline并行获取。 时间复杂度：O(N)， N 为所有哈希表大小之和。
+	 *
+	 * 注：与getRedisMap(String)一样，使用的是hgetAll，不建议用于size较大的map。
+	 *
+	 * @param keys
+	 *            存放到redis中的唯一key值列表
+	 * @return 与keys顺序一致的查询结果，key不存在时对应位置为空map
+	 */
+
+	@SuppressWarnings("unchecked")
+	public List<Map<String, String>> getRedisMaps(Collection<String> keys) {
+		List<Map<String, String>> redisMaps = new ArrayList<Map<String, String>>();
+		if (null == keys || keys.isEmpty()) {
+			return redisMaps;
+		}
+		long trace = RedisCommandTracer.start();
+		List<RedisBatchCommand<Map<byte[], byte[]>>> commands = new ArrayList<RedisBatchCommand<Map<byte[], byte[]>>>(
+				keys.size());
+		for (String key : keys) {
+			commands.add(RedisBatchCommand.hgetAllBytes(key));
+		}
+		try {
+			List<Object> results = timed(() -> RedisClusterPipeline.execute(cluster(), commands),
+					DEADLINE.get());
+			for (Object result : results) {
+				redisMaps.add(decodeHash((Map<byte[], byte[]>) checkBatchResult(result)));
+			}
+		} catch (RuntimeException e) {
+			throw failed("getRedisMaps", null, trace, e);
+		}
+		RedisCommandTracer.success(clusterName, "getRedisMaps", null, trace, keys);
+		recordKeys("getRedisMaps", keys);
+		return redisMaps;
+	}
+
+	/**
+	 * 批量结果中单个命令失败时，与单key方法保持一致直接抛出异常
+	 */
+	private Object checkBatchResult(Object result) {
+		if (result instanceof JedisException) {
+			throw (JedisException) result;
+		}
+		return result;
+	}
+
 	/**
 	 * 将对象从redis取出自己想要的数据 时间复杂度：O(N)， N 为给定域的数量。
 	 * 
@@ -210,40 +953,36 @@ public class RedisClientUtil {
 	 */
 
 	public Map<String, String> getRedisMap(String key, List<String> mapKeys) {
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.getRedisMap() key:" + key + ",mapKeys" + mapKeys);
+		if (null == mapKeys || mapKeys.isEmpty()) {
+			logger.warn("RedisClientUtil.getRedisMap() key:{},redis map value is null", key);
+			return null;
+		}
+		long trace = RedisCommandTracer.start();
 		Map<String, String> redisMap = null;
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
-		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			if (null != mapKeys && !mapKeys.isEmpty()) {
-				int size = mapKeys.size();
-				List<String> redisList = jedis.hmget(key, (String[]) mapKeys.toArray(new String[size]));
-				if (null != redisList && !redisList.isEmpty()) {
-					int redisSize = redisList.size();
-					redisMap = new HashMap<String, String>();
-					if (redisSize == size) {
-						String redisValues = "";
-						for (int i = 0; i < size; i++) {
-							redisValues = redisList.get(i);
-							if (StringUtils.isNotEmpty(redisValues)) {
-								redisMap.put(mapKeys.get(i), redisList.get(i));
-							}
+		try {
+			int size = mapKeys.size();
+			byte[][] fields = new byte[size][];
+			for (int i = 0; i < size; i++) {
+				fields[i] = SafeEncoder.encode(mapKeys.get(i));
+			}
+			final byte[] redisKey = SafeEncoder.encode(key);
+			List<byte[]> redisList = read("getRedisMap", key, jedis -> jedis.hmget(redisKey, fields),
+					() -> cluster().hmget(redisKey, fields));
+			if (null != redisList && !redisList.isEmpty()) {
+				redisMap = new HashMap<String, String>();
+				if (redisList.size() == size) {
+					for (int i = 0; i < size; i++) {
+						String redisValue = decodeString(redisList.get(i));
+						if (StringUtils.isNotEmpty(redisValue)) {
+							redisMap.put(mapKeys.get(i), redisValue);
 						}
 					}
 				}
-			} else {
-				logger.warn("RedisClientUtil.getRedisMap() key:" + key + ",redis map value is null");
 			}
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.getRedisMap() is failed.Exception:", e);
-			throw e;
-
+		} catch (RuntimeException e) {
+			return fallback("getRedisMap", key, null, failed("getRedisMap", key, trace, e));
 		}
-		logger.debug("RedisClientUtil.getRedisMap() key：" + key + ",mapKeys" + mapKeys + "，所消耗的时间："
-				+ (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "getRedisMap", key, trace, mapKeys);
 		return redisMap;
 	}
 
@@ -259,22 +998,43 @@ public class RedisClientUtil {
 	 */
 
 	public String getRedisMapValue(String key, String mapKey) {
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.getRedisMapValue() key:" + key + ",mapKey:" + mapKey);
-		String mapValue = null;
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
+		boolean master = readsMaster();
+		RedisNearCache cache = master ? null : nearCache;
+		long cacheVersion = 0;
+		if (null != cache) {
+			Object cached = cache.getField(key, mapKey);
+			if (RedisNearCache.MISS != cached) {
+				return (String) cached;
+			}
+			cacheVersion = cache.version(key);
+		}
+		RedisSingleFlight flight = master ? null : singleFlight;
+		String mapValue;
+		try {
+			mapValue = null == flight ? loadField(key, mapKey)
+					: flight.execute("getRedisMapValue", key, mapKey, () -> loadField(key, mapKey), null,
+							DEADLINE.get());
+		} catch (RedisCallRejectedException e) {
+			return fallback("getRedisMapValue", key, mapKey, e);
+		}
+		if (null != cache) {
+			cache.putField(key, mapKey, mapValue, cacheVersion);
+		}
+		return mapValue;
+	}
 
+	private String loadField(String key, String mapKey) {
+		long trace = RedisCommandTracer.start();
+		String mapValue = null;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			mapValue = jedis.hget(key, mapKey);
-			logger.debug("RedisClientUtil.getRedisMapValue() key:" + key + ",redis get value");
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.getRedisMapValue() is failed.Exception:", e);
-			throw e;
+			final byte[] redisKey = SafeEncoder.encode(key);
+			final byte[] field = SafeEncoder.encode(mapKey);
+			mapValue = decodeString(read("getRedisMapValue", key, jedis -> jedis.hget(redisKey, field),
+					() -> cluster().hget(redisKey, field)));
+		} catch (RuntimeException e) {
+			throw failed("getRedisMapValue", key, trace, e);
 		}
-		logger.debug("RedisClientUtil.getRedisMapValue() key：" + key + "，所消耗的时间："
-				+ (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "getRedisMapValue", key, trace, mapKey);
 		return mapValue;
 	}
 
@@ -289,20 +1049,13 @@ public class RedisClientUtil {
 	 */
 
 	public void setExpire(String key, int seconds) {
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.setExpire() key:" + key + ",seconds:" + seconds);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
+		long trace = RedisCommandTracer.start();
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			jedis.expire(key, seconds);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.setExpire() is failed.Exception:", e);
-			throw e;
+			call("setExpire", key, () -> cluster().expire(key, seconds));
+		} catch (RuntimeException e) {
+			throw failed("setExpire", key, trace, e);
 		}
-		logger.debug(
-				"RedisClientUtil.setExpire() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "setExpire", key, trace);
 	}
 
 	/**
@@ -310,19 +1063,109 @@ public class RedisClientUtil {
 	 */
 
 	public void del(String key) {
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.del() key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
+		long trace = RedisCommandTracer.start();
+		try {
+			JedisCluster jedis = cluster();
+			call("del", key, () -> jedis.del(key));
+			invalidateNearCache(jedis, key);
+		} catch (RuntimeException e) {
+			throw failed("del", key, trace, e);
+		}
+		RedisCommandTracer.success(clusterName, "del", key, trace);
+	}
 
+	/**
+	 * 并行扫描集群所有master节点上匹配pattern的key。 时间复杂度：O(N)， N 为集群key的总数，单次SCAN只扫描COUNT个左右。
+	 *
+	 * @param pattern
+	 *            key的匹配模式，同redis SCAN的MATCH，例如"session:*"，null表示全部key
+	 * @param count
+	 *            每次SCAN建议返回的key个数(COUNT)
+	 * @return 合并各节点结果的迭代器，未遍历完时必须close()，详见RedisClusterScanner
+	 */
+	public RedisClusterScanner scanCluster(String pattern, int count) {
+		long trace = RedisCommandTracer.start();
+		RedisClusterScanner scanner = null;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			jedis.del(key);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.del() is failed.Exception:", e);
-			throw e;
+			scanner = new RedisClusterScanner(cluster(), pattern, count);
+		} catch (RuntimeException e) {
+			throw failed("scanCluster", pattern, trace, e);
 		}
-		logger.debug("RedisClientUtil.del() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "scanCluster", pattern, trace);
+		return scanner;
+	}
+
+	/**
+	 * 并行扫描集群所有master节点上匹配pattern的key，对每个key执行action生成的命令，每count个key一批通过pipeline执行。
+	 * 单个命令失败时继续处理后续key，全部处理完后抛出异常。
+	 *
+	 * <pre>
+	 * // 删除
+	 * RedisClientUtil.getInstance().scanCluster("tmp:*", 1000, RedisBatchCommand::del);
+	 * // 重置过期时间
+	 * RedisClientUtil.getInstance().scanCluster("session:*", 1000, key -&gt; RedisBatchCommand.expire(key, 1800));
+	 * </pre>
+	 *
+	 * @param pattern
+	 *            key的匹配模式，null表示全部key
+	 * @param count
+	 *            每次SCAN建议返回的key个数，同时也是每批执行的命令个数
+	 * @param action
+	 *            根据key生成要执行的命令，返回null表示跳过该key
+	 * @return 执行成功的命令个数
+	 */
+	public long scanCluster(String pattern, int count, Function<String, RedisBatchCommand<?>> action) {
+		JedisCluster jedis = cluster();
+		List<RedisBatchCommand<?>> batch = new ArrayList<RedisBatchCommand<?>>(count);
+		long[] outcome = new long[2];
+		JedisException error = null;
+		try (RedisClusterScanner scanner = scanCluster(pattern, count)) {
+			while (scanner.hasNext()) {
+				RedisBatchCommand<?> command = action.apply(scanner.next());
+				if (null != command) {
+					batch.add(command);
+				}
+				if (batch.size() >= count || (!batch.isEmpty() && !scanner.hasNext())) {
+					JedisException failure = executeScanBatch(jedis, batch, outcome);
+					error = null == error ? failure : error;
+					batch.clear();
+				}
+			}
+		}
+		if (null != error) {
+			throw new JedisException("scanCluster pattern:" + pattern + " " + outcome[1] + " commands failed", error);
+		}
+		return outcome[0];
+	}
+
+	/**
+	 * 执行一批扫描得到的命令，outcome[0]累加成功数、outcome[1]累加失败数，返回第一个失败原因
+	 */
+	private JedisException executeScanBatch(JedisCluster jedis, List<RedisBatchCommand<?>> batch, long[] outcome) {
+		long trace = RedisCommandTracer.start();
+		List<Object> replies = null;
+		try {
+			replies = RedisClusterPipeline.execute(jedis, batch);
+		} catch (RuntimeException e) {
+			throw failed("scanCluster", batch.get(0).getKey(), trace, e);
+		}
+		RedisCommandTracer.success(clusterName, "scanCluster", batch.get(0).getKey(), trace);
+		JedisException error = null;
+		for (int i = 0; i < replies.size(); i++) {
+			Object reply = replies.get(i);
+			RedisBatchCommand<?> command = batch.get(i);
+			if (reply instanceof JedisException) {
+				outcome[1]++;
+				if (null == error) {
+					error = (JedisException) reply;
+				}
+				logger.warn("RedisClientUtil.scanCluster() key:{} 命令执行失败:{}", command.getKey(), reply);
+			} else {
+				outcome[0]++;
+				invalidateNearCache(jedis, command.getKey());
+			}
+		}
+		return error;
 	}
 
 	/**
@@ -332,80 +1175,56 @@ public class RedisClientUtil {
 	 */
 
 	public long incr(String key) {
-		Long userNum = 0l;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.incr() key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
+		long trace = RedisCommandTracer.start();
+		long userNum = 0l;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			userNum = jedis.incr(key);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.incr() is failed.Exception:", e);
-			throw e;
+			JedisCluster jedis = cluster();
+			userNum = call("incr", key, () -> jedis.incr(key));
+			invalidateNearCache(jedis, key);
+		} catch (RuntimeException e) {
+			throw failed("incr", key, trace, e);
 		}
-		logger.debug("RedisClientUtil.incr() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "incr", key, trace);
 		return userNum;
 	}
 
 	public long incr(String key, long num) {
-		Long userNum = 0l;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.incr() key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
+		long trace = RedisCommandTracer.start();
+		long userNum = 0l;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			userNum = jedis.incrBy(key, num);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.incr() is failed.Exception:", e);
-			throw e;
+			JedisCluster jedis = cluster();
+			userNum = call("incr", key, () -> jedis.incrBy(key, num));
+			invalidateNearCache(jedis, key);
+		} catch (RuntimeException e) {
+			throw failed("incr", key, trace, e);
 		}
-		logger.debug("RedisClientUtil.incr() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "incr", key, trace);
 		return userNum;
 	}
 
 	/**
-	 * 获取卡方法，从右获取N张卡，然后将获取的卡再放到左边 时间复杂度：O(1)。
+	 * 获取卡方法，从右获取N张卡，然后将获取的卡再放到左边 时间复杂度：O(N)，N为num。
+	 * 
+	 * 通过RedisScriptRegistry.ROTATE_TAIL脚本一次往返原子执行，并发调用不会拿到重复的卡，进程中途退出也不会丢卡。
 	 * 
 	 * @param key
 	 *            redis键
 	 * @param num
-	 *            按照该值进行排序
-	 * @param cardNum
-	 *            卡号
+	 *            获取的卡数
+	 * @return 获取的卡，先从右边取出的在前；列表中的卡少于num时返回null
 	 */
+	@SuppressWarnings("unchecked")
 	public List<String> rpoplpush(String key, int num) {
+		long trace = RedisCommandTracer.start();
 		List<String> list = null;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.rpoplpush() key:" + key + ",num:" + num);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			// 获取列表中的总数
-			long llen = jedis.llen(key);
-			if (num <= llen) {
-				list = new ArrayList<String>(50);
-				// 先从右边获取两张卡，获取并且移除掉这两张卡
-				for (int i = 0; i < num; i++) {
-					list.add(jedis.rpop(key));
-				}
-				if (!list.isEmpty()) {
-					int size = list.size();
-					// 将从右边获取的两张卡从新放到左边去
-					jedis.lpush(key, (String[]) list.toArray(new String[size]));
-				}
-			}
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.rpoplpush() is failed.Exception:", e);
-			throw e;
+			list = call("rpoplpush", key, () -> (List<String>) RedisScriptRegistry.evalsha(cluster(),
+					RedisScriptRegistry.ROTATE_TAIL, Collections.singletonList(key),
+					Collections.singletonList(String.valueOf(num))));
+		} catch (RuntimeException e) {
+			throw failed("rpoplpush", key, trace, e);
 		}
-		logger.debug(
-				"RedisClientUtil.rpoplpush() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "rpoplpush", key, trace, list);
 		return list;
 	}
 
@@ -416,22 +1235,15 @@ public class RedisClientUtil {
 	 * @return
 	 */
 	public long llen(String redisKey) {
+		long trace = RedisCommandTracer.start();
 		long llen = 0;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.llen() redisKey:" + redisKey);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
 			// 获取列表中的总数
-			llen = jedis.llen(redisKey);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.llen() is failed.Exception:", e);
-			throw e;
+			llen = read("llen", redisKey, jedis -> jedis.llen(redisKey), () -> cluster().llen(redisKey));
+		} catch (RuntimeException e) {
+			return fallback("llen", redisKey, null, failed("llen", redisKey, trace, e));
 		}
-		logger.debug("RedisClientUtil.llen() redisKey：" + redisKey + "，所消耗的时间：" + (System.currentTimeMillis() - startTime)
-				+ "ms");
+		RedisCommandTracer.success(clusterName, "llen", redisKey, trace);
 		return llen;
 	}
 
@@ -444,23 +1256,18 @@ public class RedisClientUtil {
 	 *            插入的列表
 	 */
 	public long lpush(String key, List<String> list) {
-		Long result = 0l;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.lpush() key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
+		if (null == list || list.isEmpty()) {
+			return 0l;
+		}
+		long trace = RedisCommandTracer.start();
+		long result = 0l;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			if (null != list && !list.isEmpty()) {
-				int size = list.size();
-				result = jedis.lpush(key, (String[]) list.toArray(new String[size]));
-			}
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.lpush() is failed.Exception:", e);
-			throw e;
+			result = call("lpush", key,
+					() -> cluster().lpush(key, list.toArray(new String[list.size()])));
+		} catch (RuntimeException e) {
+			throw failed("lpush", key, trace, e);
 		}
-		logger.debug("RedisClientUtil.lpush() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "lpush", key, trace, list);
 		return result;
 	}
 
@@ -471,23 +1278,18 @@ public class RedisClientUtil {
 	 *            redis键
 	 */
 	public long rpush(String key, List<String> list) {
-		Long result = 0l;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.rpush() key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
+		if (null == list || list.isEmpty()) {
+			return 0l;
+		}
+		long trace = RedisCommandTracer.start();
+		long result = 0l;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			if (null != list && !list.isEmpty()) {
-				int size = list.size();
-				result = jedis.lpush(key, (String[]) list.toArray(new String[size]));
-			}
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.rpush() is failed.Exception:", e);
-			throw e;
+			result = call("rpush", key,
+					() -> cluster().lpush(key, list.toArray(new String[list.size()])));
+		} catch (RuntimeException e) {
+			throw failed("rpush", key, trace, e);
 		}
-		logger.debug("RedisClientUtil.rpush() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "rpush", key, trace, list);
 		return result;
 	}
 
@@ -500,20 +1302,14 @@ public class RedisClientUtil {
 	 *            需要移除的值
 	 */
 	public long lrem(String key, String value) {
+		long trace = RedisCommandTracer.start();
 		long result = 0l;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.lrem() key:" + key + ",value:" + value);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			result = jedis.lrem(key, 0, value);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.lrem() is failed.Exception:", e);
-			throw e;
+			result = call("lrem", key, () -> cluster().lrem(key, 0, value));
+		} catch (RuntimeException e) {
+			throw failed("lrem", key, trace, e);
 		}
-		logger.debug("RedisClientUtil.lrem() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "lrem", key, trace, value);
 		return result;
 	}
 
@@ -524,73 +1320,147 @@ public class RedisClientUtil {
 	 * @return
 	 */
 	public String rpop(String key) {
+		long trace = RedisCommandTracer.start();
 		String result = null;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.rpop() key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			result = jedis.rpop(key);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.rpop() is failed.Exception:", e);
-			throw e;
+			result = call("rpop", key, () -> cluster().rpop(key));
+		} catch (RuntimeException e) {
+			throw failed("rpop", key, trace, e);
 		}
-		logger.debug("RedisClientUtil.rpop() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "rpop", key, trace, result);
 		return result;
 	}
 
 	/**
-	 * 从右边获取数据并且剔除掉该数据。 时间复杂度：O(1)
+	 * 从右边获取数据并且剔除掉该数据，队列为空时最多阻塞等待60秒。 时间复杂度：O(1)
 	 * 
 	 * @param key
-	 * @return
+	 * @return 取出的数据，等待超时返回null
+	 * @deprecated 阻塞期间占用业务连接池的连接，取出后进程退出会丢失消息，使用RedisQueueConsumer
 	 */
+	@Deprecated
 	public String brpop(String key) {
+		long trace = RedisCommandTracer.start();
 		List<String> result = null;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.brpop() key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			result = jedis.brpop(60, key);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.brpop() is failed.Exception:", e);
-			throw e;
+			result = call("brpop", key, () -> cluster().brpop(60, key));
+		} catch (RuntimeException e) {
+			throw failed("brpop", key, trace, e);
 		}
-		logger.debug("RedisClientUtil.rpop() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
-		return result.get(0);
+		RedisCommandTracer.success(clusterName, "brpop", key, trace, result);
+		// 返回[key, value]，超时返回空
+		return null == result || result.size() < 2 ? null : result.get(1);
 	}
 
 	/**
 	 * 通过key获取存在该key中的所有列表数据。 时间复杂度：O(S+N)， S 为偏移量 start ， N 为指定区间内元素的数量。
 	 * 
 	 * @param key
+	 * 注：结果一次性加载到内存，大列表使用lrangeIterator(key, pageSize)按页遍历。
+	 *
 	 * @param endNum
 	 *            获取的个数
 	 * @return
 	 */
 	public List<String> lrange(String key, int endNum) {
+		long trace = RedisCommandTracer.start();
 		List<String> list = null;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.lrange() key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
 			// 获取存放到redis的列表所有数据
-			list = jedis.lrange(key, 0, endNum);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.lrange() is failed.Exception:", e);
-			throw e;
+			list = read("lrange", key, jedis -> jedis.lrange(key, 0, endNum),
+					() -> cluster().lrange(key, 0, endNum));
+		} catch (RuntimeException e) {
+			return fallback("lrange", key, null, failed("lrange", key, trace, e));
 		}
-		logger.debug("RedisClientUtil.lrange() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "lrange", key, trace);
+		recordSize("lrange", key, list.size());
 		return list;
 	}
 
+	/**
+	 * 按页遍历列表，每页一次LRANGE，用于代替大列表的lrange(key, -1)。 时间复杂度：每页O(S+P)， S 为页的起始偏移量， P 为页大小。
+	 *
+	 * <pre>
+	 * RedisScanIterator&lt;String&gt; it = RedisClientUtil.getInstance().lrangeIterator(key, 500);
+	 * while (it.hasNext()) { ... }
+	 * </pre>
+	 *
+	 * @param key
+	 * @param pageSize
+	 *            每页元素个数，默认可使用RedisScanIterator.DEFAULT_PAGE_SIZE
+	 * @return 懒加载的迭代器，stream()可转为Stream
+	 */
+	public RedisScanIterator<String> lrangeIterator(final String key, int pageSize) {
+		final int size = RedisScanIterator.checkPageSize(pageSize);
+		return new RedisScanIterator<String>(cursor -> {
+			long start = Long.parseLong(cursor);
+			long trace = RedisCommandTracer.start();
+			List<String> page = null;
+			try {
+				page = call("lrange", key, () -> cluster().lrange(key, start, start + size - 1));
+			} catch (RuntimeException e) {
+				throw failed("lrange", key, trace, e);
+			}
+			RedisCommandTracer.success(clusterName, "lrange", key, trace);
+			String next = page.size() < size ? ScanParams.SCAN_POINTER_START : String.valueOf(start + size);
+			return new ScanResult<String>(next, page);
+		});
+	}
+
+	/**
+	 * 使用HSCAN按页遍历哈希表，用于代替大哈希表的getRedisMap(key)，压缩的value会自动解压；不经过近端缓存。
+	 * 时间复杂度：每页O(P)， P 为页大小。
+	 *
+	 * @param key
+	 * @param pageSize
+	 *            每页建议的字段个数(HSCAN的COUNT)，小哈希表redis会一次返回全部字段
+	 * @return 懒加载的迭代器，同一字段可能返回多次，详见RedisScanIterator
+	 */
+	public RedisScanIterator<Map.Entry<String, String>> hscan(final String key, int pageSize) {
+		final ScanParams params = new ScanParams().count(RedisScanIterator.checkPageSize(pageSize));
+		final byte[] binaryKey = SafeEncoder.encode(key);
+		return new RedisScanIterator<Map.Entry<String, String>>(cursor -> {
+			long trace = RedisCommandTracer.start();
+			ScanResult<Map.Entry<byte[], byte[]>> result = null;
+			try {
+				result = call("hscan", key,
+						() -> cluster().hscan(binaryKey, SafeEncoder.encode(cursor), params));
+			} catch (RuntimeException e) {
+				throw failed("hscan", key, trace, e);
+			}
+			RedisCommandTracer.success(clusterName, "hscan", key, trace);
+			List<Map.Entry<String, String>> page = new ArrayList<Map.Entry<String, String>>(result.getResult().size());
+			for (Map.Entry<byte[], byte[]> entry : result.getResult()) {
+				page.add(new AbstractMap.SimpleImmutableEntry<String, String>(SafeEncoder.encode(entry.getKey()),
+						decodeString(entry.getValue())));
+			}
+			return new ScanResult<Map.Entry<String, String>>(result.getCursorAsBytes(), page);
+		});
+	}
+
+	/**
+	 * 使用SSCAN按页遍历集合成员，用于代替大集合的SMEMBERS。 时间复杂度：每页O(P)， P 为页大小。
+	 *
+	 * @param key
+	 * @param pageSize
+	 *            每页建议的成员个数(SSCAN的COUNT)
+	 * @return 懒加载的迭代器，同一成员可能返回多次，详见RedisScanIterator
+	 */
+	public RedisScanIterator<String> sscan(final String key, int pageSize) {
+		final ScanParams params = new ScanParams().count(RedisScanIterator.checkPageSize(pageSize));
+		return new RedisScanIterator<String>(cursor -> {
+			long trace = RedisCommandTracer.start();
+			ScanResult<String> result = null;
+			try {
+				result = call("sscan", key, () -> cluster().sscan(key, cursor, params));
+			} catch (RuntimeException e) {
+				throw failed("sscan", key, trace, e);
+			}
+			RedisCommandTracer.success(clusterName, "sscan", key, trace);
+			return result;
+		});
+	}
+
 	/**
 	 * 根据运营商和卡号进行删除过期数据 时间复杂度：O(1)
 	 * 
@@ -600,22 +1470,16 @@ public class RedisClientUtil {
 	 *            卡号
 	 */
 	public long hdel(String redisKey, String cardNum) {
-		logger.debug("RedisClientUtil.hdel() redisKey:" + redisKey + ",cardNum:" + cardNum);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
-		long startTime = System.currentTimeMillis();
+		long trace = RedisCommandTracer.start();
 		long result = 0;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			// 获取存放到redis的列表所有数据
-			result = jedis.hdel(redisKey, cardNum);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.hdel() is failed.Exception:", e);
-			throw e;
+			JedisCluster jedis = cluster();
+			result = call("hdel", redisKey, () -> jedis.hdel(redisKey, cardNum));
+			invalidateNearCache(jedis, redisKey);
+		} catch (RuntimeException e) {
+			throw failed("hdel", redisKey, trace, e);
 		}
-		logger.debug(
-				"RedisClientUtil.hdel() key：" + redisKey + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "hdel", redisKey, trace, cardNum);
 		return result;
 	}
 
@@ -627,22 +1491,14 @@ public class RedisClientUtil {
 	 */
 
 	public long ttl(String redisKey) {
-		logger.debug("RedisClientUtil.ttl() redisKey:" + redisKey);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
-		long startTime = System.currentTimeMillis();
+		long trace = RedisCommandTracer.start();
 		long result = 0;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			// 获取存放到redis的列表所有数据
-			result = jedis.ttl(redisKey);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.ttl() is failed.Exception:", e);
-			throw e;
+			result = read("ttl", redisKey, jedis -> jedis.ttl(redisKey), () -> cluster().ttl(redisKey));
+		} catch (RuntimeException e) {
+			return fallback("ttl", redisKey, null, failed("ttl", redisKey, trace, e));
 		}
-		logger.debug(
-				"RedisClientUtil.ttl() key：" + redisKey + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "ttl", redisKey, trace);
 		return result;
 	}
 
@@ -656,65 +1512,56 @@ public class RedisClientUtil {
 	 * @return 存在：true，不存在：fasle。
 	 */
 	public boolean hexists(String redisKey, String cardNum) {
-		logger.debug("RedisClientUtil.hexists() redisKey:" + redisKey + ",cardNum:" + cardNum);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
-		long startTime = System.currentTimeMillis();
+		long trace = RedisCommandTracer.start();
 		boolean result = false;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			// 获取存放到redis的列表所有数据
-			result = jedis.hexists(redisKey, cardNum);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.hexists() is failed.Exception:", e);
-			throw e;
+			result = call("hexists", redisKey, () -> cluster().hexists(redisKey, cardNum));
+		} catch (RuntimeException e) {
+			return fallback("hexists", redisKey, cardNum, failed("hexists", redisKey, trace, e));
 		}
-		logger.debug("RedisClientUtil.hexists() key：" + redisKey + "，所消耗的时间：" + (System.currentTimeMillis() - startTime)
-				+ "ms");
+		RedisCommandTracer.success(clusterName, "hexists", redisKey, trace, cardNum);
 		return result;
 	}
 
 	public boolean updateUserdebug(String redisKey, Map<String, String> param) {
-		logger.debug("RedisClientUtil.updateUserdebug() redisKey:" + redisKey + ",param:" + param);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
-		long startTime = System.currentTimeMillis();
+		long trace = RedisCommandTracer.start();
 		boolean result = false;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
+			JedisCluster jedis = cluster();
 			// 更新redis的数据
-			jedis.hmset(redisKey, param);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.updateUserdebug() is failed.Exception:", e);
-			throw e;
+			Map<byte[], byte[]> binary = compressHash(param);
+			call("updateUserdebug", redisKey, () -> null != binary ? jedis.hmset(SafeEncoder.encode(redisKey), binary)
+					: jedis.hmset(redisKey, param));
+			invalidateNearCache(jedis, redisKey);
+		} catch (RuntimeException e) {
+			throw failed("updateUserdebug", redisKey, trace, e);
 		}
-		logger.debug("RedisClientUtil.updateUserdebug() key：" + redisKey + "，所消耗的时间："
-				+ (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "updateUserdebug", redisKey, trace, param);
 		return result;
 	}
 
+	/**
+	 * 哈希表中的计数器加i，field不存在时从0开始计数。 时间复杂度：O(1)
+	 * 
+	 * 高频计数可使用RedisCounterAggregator在本地合并后批量写入。
+	 * 
+	 * @param key
+	 * @param field
+	 * @param i
+	 * @return 加上i之后的值
+	 */
 	public long hIncrCounter(String key, String field, long i) {
-		long startTime = System.currentTimeMillis();
+		long trace = RedisCommandTracer.start();
 		long l = 0;
-		logger.debug("RedisClientUtil.hIncrCounter key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			boolean numStr = jedis.hexists(key, field);
-			if (!numStr) {// 如果为空的话，初始化计数器
-				jedis.hset(key, field, "0");
-			}
-			l = jedis.hincrBy(key, field, i);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.hIncrCounter is failed.Exception:", e);
-			throw e;
+			JedisCluster jedis = cluster();
+			// HINCRBY在field不存在时按0处理，无需先hexists、hset初始化
+			l = call("hIncrCounter", key, () -> jedis.hincrBy(key, field, i));
+			invalidateNearCache(jedis, key);
+		} catch (RuntimeException e) {
+			throw failed("hIncrCounter", key, trace, e);
 		}
-		logger.debug("RedisClientUtil.hIncrCounter key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime)
-				+ "ms");
+		RedisCommandTracer.success(clusterName, "hIncrCounter", key, trace);
 		return l;
 	}
 
@@ -726,21 +1573,15 @@ public class RedisClientUtil {
 	 */
 
 	public boolean exists(String redisKey) {
-		logger.debug("RedisClientUtil.exists() redisKey:" + redisKey);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-		long startTime = System.currentTimeMillis();
+		long trace = RedisCommandTracer.start();
 		boolean result = false;
 		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			// 获取存放到redis的列表所有数据
-			result = jedis.exists(redisKey);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.exists() is failed.Exception:", e);
-			throw e;
+			result = read("exists", redisKey, jedis -> jedis.exists(redisKey),
+					() -> cluster().exists(redisKey));
+		} catch (RuntimeException e) {
+			return fallback("exists", redisKey, null, failed("exists", redisKey, trace, e));
 		}
-		logger.debug(
-				"RedisClientUtil.exists() key：" + redisKey + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		RedisCommandTracer.success(clusterName, "exists", redisKey, trace);
 		return result;
 	}
 
@@ -751,19 +1592,16 @@ public class RedisClientUtil {
 	 */
 
 	public long decr(String key) {
-		Long userNum = 0l;
-		long startTime = System.currentTimeMillis();
-		logger.debug("RedisClientUtil.decr() key:" + key);
-		JedisCluster jedis = null;
-		// 是否Redis连接异常
-		try {
-			jedis = RedisPoolUtil.getJedisPool();
-			userNum = jedis.decr(key);
-		} catch (Exception e) {
-			logger.error("RedisClientUtil.decr() is failed.Exception:", e);
-			throw e;
-		}
-		logger.debug("RedisClientUtil.decr() key：" + key + "，所消耗的时间：" + (System.currentTimeMillis() - startTime) + "ms");
+		long trace = RedisCommandTracer.start();
+		long userNum = 0l;
+		try {
+			JedisCluster jedis = cluster();
+			userNum = call("decr", key, () -> jedis.decr(key));
+			invalidateNearCache(jedis, key);
+		} catch (RuntimeException e) {
+			throw failed("decr", key, trace, e);
+		}
+		RedisCommandTracer.success(clusterName, "decr", key, trace);
 		return userNum;
 	}
 
@@ -0,0 +1,249 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisCluster;
+
+/**
+ * TODO 一个redis集群的连接和连接池，按名称区分
+ *
+ * 每个名称对应独立的JedisCluster、节点连接池、超时和JMX命名空间，不同业务(如会话缓存、计数器、队列)可以使用不同的集群，
+ * 或在同一集群上使用各自的连接池，一个业务的突发流量不会占满其他业务的连接。
+ * 名称为DEFAULT_NAME的默认集群即RedisPoolUtil和RedisClientUtil.getInstance()使用的集群；
+ * 其他集群的JMX注册名追加",cluster=名称"。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisClusterContext.getInstance("session").init("10.0.0.1:7000,10.0.0.2:7000", password, 2000, new RedisPoolConfig());
+ * RedisClientUtil sessions = RedisClientUtil.getInstance("session");
+ * </pre>
+ *
+ */
+public class RedisClusterContext implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisClusterContext.class);
+
+	/** 默认集群的名称 */
+	public static final String DEFAULT_NAME = "default";
+
+	/** 名称可用于JMX注册名，只允许字母、数字、'_'、'-'和'.' */
+	private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_.-]+");
+
+	private static final ConcurrentMap<String, RedisClusterContext> CONTEXTS = new ConcurrentHashMap<String, RedisClusterContext>();
+
+	private final String name;
+
+	private volatile JedisCluster jedisCluster;
+
+	private volatile RedisPoolManager poolManager;
+
+	/** 拓扑已建立且连接池预热完成 */
+	private volatile boolean ready;
+
+	/** init的参数，replica连接池等按相同的配置建立连接 */
+	private volatile String password;
+
+	private volatile int timeout;
+
+	private volatile RedisPoolConfig config;
+
+	private RedisClusterContext(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * 默认集群
+	 */
+	public static RedisClusterContext getDefault() {
+		return getInstance(DEFAULT_NAME);
+	}
+
+	/**
+	 * 按名称获取集群，不存在时创建一个未初始化的集群，需要调用init后才能访问redis
+	 *
+	 * @param name
+	 *            集群名称，只允许字母、数字、'_'、'-'和'.'
+	 */
+	public static RedisClusterContext getInstance(String name) {
+		RedisClusterContext context = CONTEXTS.get(name);
+		if (null != context) {
+			return context;
+		}
+		if (null == name || !NAME_PATTERN.matcher(name).matches()) {
+			throw new IllegalArgumentException("Invalid redis cluster name: " + name);
+		}
+		return CONTEXTS.computeIfAbsent(name, RedisClusterContext::new);
+	}
+
+	/**
+	 * 已创建的全部集群
+	 */
+	public static Collection<RedisClusterContext> getInstances() {
+		return new ArrayList<RedisClusterContext>(CONTEXTS.values());
+	}
+
+	/**
+	 * 建立集群连接和连接池，已初始化时先关闭原有的连接池
+	 *
+	 * @param redisHost
+	 *            节点列表 host:port,host:port
+	 * @param passWord
+	 *            密码
+	 * @param timeOut
+	 *            连接和读写超时，单位：毫秒
+	 * @param poolConfig
+	 *            每个节点的连接池配置
+	 */
+	public synchronized void init(String redisHost, String passWord, int timeOut, RedisPoolConfig poolConfig) {
+		close();
+		password = passWord;
+		timeout = timeOut;
+		config = poolConfig;
+		long start = System.nanoTime();
+		Set<HostAndPort> jedisClusterNodes = new LinkedHashSet<HostAndPort>();
+		// 使用多节点sharding初始化数据
+		String[] hostArray = redisHost.split(",");
+		for (String host : hostArray) {
+			String[] tmpArray = host.split(":");
+			if (tmpArray.length != 2) {
+				logger.error("node address error !", host.length() - 1);
+			}
+			HostAndPort jedisShardInfo = new HostAndPort(tmpArray[0], Integer.parseInt(tmpArray[1]));
+			jedisClusterNodes.add(jedisShardInfo);
+		}
+		// JedisCluster逐个尝试种子节点直到拿到拓扑，可达的节点排在前面，不可达的种子节点不再拖慢启动
+		Set<HostAndPort> reachable = new LinkedHashSet<HostAndPort>();
+		jedisClusterNodes = RedisPoolWarmer.probeSeeds(jedisClusterNodes, timeOut, reachable);
+		long probed = System.nanoTime();
+		final JedisCluster cluster;
+		try {
+			cluster = new JedisCluster(jedisClusterNodes, timeOut, timeOut, RedisPoolUtil.DEFAULT_REDIRECTIONS, passWord,
+					poolConfig.toJedisPoolConfig());
+			jedisCluster = cluster;
+			logger.debug("init jedisPool is ->" + jedisCluster + " cluster ->" + name + " poolConfig ->" + poolConfig);
+			poolManager = new RedisPoolManager(cluster, poolConfig, objectName(RedisPoolManager.OBJECT_NAME));
+			poolManager.start();
+		} catch (Exception e) {
+			logger.error("系统级严重错误 init redis pool error cluster:" + name + " cause by ->", e);
+			throw new RuntimeException(e);
+		}
+		long connected = System.nanoTime();
+		// 预热失败不影响init返回，首次请求时按需建立连接
+		RedisPoolWarmer.Result warmup = null;
+		try {
+			warmup = RedisPoolWarmer.warm(cluster,
+					Math.min(poolConfig.getWarmupConnections(), poolConfig.getMaxIdle()),
+					poolConfig.getWarmupTimeoutMillis(), result -> {
+						if (cluster != jedisCluster) {
+							return;
+						}
+						// 每个master节点至少建立了一个连接才算就绪
+						if (0 == result.unreachable.get()) {
+							ready = true;
+						} else {
+							logger.warn("RedisClusterContext.init() cluster:{} 预热完成，{}/{}个master节点无法建立连接，未就绪。",
+									name, result.unreachable.get(), result.nodes);
+						}
+					});
+		} catch (RuntimeException e) {
+			logger.warn("RedisClusterContext.init() cluster:{} 连接池预热失败。", name, e);
+		}
+		logger.info(
+				"RedisClusterContext.init() cluster:{} 完成，耗时{}ms：种子节点探测{}ms({}/{}可达)，建立拓扑{}ms，预热{}ms({}个master节点，{}个连接，失败{}个{})。",
+				name, (System.nanoTime() - start) / 1000000, (probed - start) / 1000000, reachable.size(),
+				jedisClusterNodes.size(), (connected - probed) / 1000000,
+				null == warmup ? 0 : warmup.elapsedMillis, null == warmup ? 0 : warmup.nodes,
+				null == warmup ? 0 : warmup.warmed.get(), null == warmup ? 0 : warmup.failed.get(),
+				null == warmup || warmup.finished ? "" : "，未完成，后台继续");
+	}
+
+	/**
+	 * 关闭连接池，之后可以重新init
+	 */
+	@Override
+	public synchronized void close() {
+		ready = false;
+		if (null != poolManager) {
+			poolManager.close();
+			poolManager = null;
+		}
+		if (null != jedisCluster) {
+			try {
+				jedisCluster.close();
+			} catch (IOException e) {
+				logger.error("close jedispool err cluster:" + name + " cause by ->", e);
+			}
+			jedisCluster = null;
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isDefault() {
+		return DEFAULT_NAME.equals(name);
+	}
+
+	/**
+	 * 集群连接实例，未初始化时返回null
+	 */
+	public JedisCluster getJedisCluster() {
+		return jedisCluster;
+	}
+
+	/**
+	 * 连接池管理器，未初始化时返回null
+	 */
+	public RedisPoolManager getPoolManager() {
+		return poolManager;
+	}
+
+	/**
+	 * 拓扑已建立且全部master节点的连接池已预热，每个节点至少建立了一个连接(预热超时时在后台完成后变为true)，
+	 * 可用于readiness检查
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	String getPassword() {
+		return password;
+	}
+
+	int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * init使用的连接池配置，未初始化时返回null
+	 */
+	RedisPoolConfig getPoolConfig() {
+		return config;
+	}
+
+	/**
+	 * 本集群组件的JMX注册名，默认集群使用objectName本身，其他集群追加",cluster=名称"
+	 */
+	String objectName(String objectName) {
+		return isDefault() ? objectName : objectName + ",cluster=" + name;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisClusterContext [name=" + name + ", ready=" + ready + "]";
+	}
+}
@@ -0,0 +1,254 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisClusterMaxRedirectionsException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+/**
+ * TODO cluster 模式下的批量pipeline执行器
+ *
+ * 按key的slot所属节点对命令分组，每个节点的命令通过一个pipeline一次发送，多个节点之间并行执行；
+ * 结果按照输入顺序返回。MOVED重定向刷新slot缓存后整批重新分组重试，ASK重定向在目标节点上带ASKING单独执行，
+ * 返回NOSCRIPT的脚本命令在原节点上单独执行（由命令加载脚本）。
+ * 只有在取连接或建立连接时失败(命令尚未发出)才刷新slot缓存后重试，重试次数用完时返回NotSentException；
+ * 命令发出后的连接异常(如读超时)无法确认redis是否已执行，直接作为该命令的结果返回，不重放INCRBY、LPUSH等非幂等命令。
+ *
+ */
+public class RedisClusterPipeline {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisClusterPipeline.class);
+
+	/** 最大重定向次数，与RedisPoolUtil初始化JedisCluster时保持一致 */
+	private static final int MAX_REDIRECTIONS = RedisPoolUtil.DEFAULT_REDIRECTIONS;
+
+	private static final int POOL_SIZE = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 60L,
+			TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1024), new RedisThreadFactory("redis-pipeline"),
+			new ThreadPoolExecutor.CallerRunsPolicy());
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	private RedisClusterPipeline() {
+	}
+
+	/**
+	 * 批量执行命令
+	 *
+	 * @param cluster
+	 *            cluster 连接实例
+	 * @param commands
+	 *            需要执行的命令列表
+	 * @return 与commands顺序一致的结果列表，单个命令执行失败时对应位置为该命令的JedisException
+	 */
+	public static List<Object> execute(JedisCluster cluster, List<? extends RedisBatchCommand<?>> commands) {
+		int size = commands.size();
+		Object[] results = new Object[size];
+		List<Integer> pending = new ArrayList<Integer>(size);
+		for (int i = 0; i < size; i++) {
+			pending.add(i);
+		}
+		for (int attempt = 0; attempt < MAX_REDIRECTIONS && !pending.isEmpty(); attempt++) {
+			Map<JedisPool, List<Integer>> groups = group(cluster, commands, pending);
+			List<Integer> retry = new ArrayList<Integer>();
+			boolean renew = false;
+			for (Map.Entry<JedisPool, Object[]> entry : executeGroups(commands, groups).entrySet()) {
+				List<Integer> indexes = groups.get(entry.getKey());
+				Object[] replies = entry.getValue();
+				for (int i = 0; i < indexes.size(); i++) {
+					int index = indexes.get(i);
+					Object reply = replies[i];
+					if (reply instanceof JedisMovedDataException) {
+						// slot迁移完成，刷新slot缓存后整批重试
+						renew = true;
+						retry.add(index);
+						results[index] = reply;
+					} else if (reply instanceof NotSentException) {
+						// 节点不可用且命令未发出，刷新slot缓存后重试，重试次数用完时返回原连接异常
+						renew = true;
+						retry.add(index);
+						results[index] = reply;
+					} else if (reply instanceof JedisAskDataException) {
+						results[index] = executeAsking(cluster, commands.get(index), (JedisAskDataException) reply);
+					} else if (reply instanceof JedisNoScriptException) {
+						// 节点上脚本缓存丢失，单独执行时由命令自行加载脚本
+						results[index] = executeSingle(entry.getKey(), commands.get(index));
+					} else {
+						results[index] = reply;
+					}
+				}
+			}
+			if (renew) {
+				RedisClusterRouter.renewSlotCache(cluster);
+			}
+			pending = retry;
+		}
+		for (Integer index : pending) {
+			if (!(results[index] instanceof JedisConnectionException)) {
+				results[index] = new JedisClusterMaxRedirectionsException("Too many Cluster redirections?");
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * 按slot所属节点对命令分组
+	 */
+	private static Map<JedisPool, List<Integer>> group(JedisCluster cluster,
+			List<? extends RedisBatchCommand<?>> commands, List<Integer> indexes) {
+		Map<JedisPool, List<Integer>> groups = new LinkedHashMap<JedisPool, List<Integer>>();
+		for (Integer index : indexes) {
+			JedisPool pool = RedisClusterRouter.getKeyPool(cluster, commands.get(index).getKey());
+			List<Integer> group = groups.get(pool);
+			if (null == group) {
+				group = new ArrayList<Integer>();
+				groups.put(pool, group);
+			}
+			group.add(index);
+		}
+		return groups;
+	}
+
+	/**
+	 * 并行执行各节点的pipeline，当前线程负责第一个节点，其余节点提交到线程池，避免单节点时的线程切换
+	 */
+	private static Map<JedisPool, Object[]> executeGroups(final List<? extends RedisBatchCommand<?>> commands,
+			Map<JedisPool, List<Integer>> groups) {
+		Map<JedisPool, Object[]> replies = new LinkedHashMap<JedisPool, Object[]>();
+		Map<JedisPool, Future<Object[]>> futures = new LinkedHashMap<JedisPool, Future<Object[]>>();
+		JedisPool local = null;
+		for (final Map.Entry<JedisPool, List<Integer>> entry : groups.entrySet()) {
+			if (null == local) {
+				local = entry.getKey();
+				continue;
+			}
+			futures.put(entry.getKey(), executor.submit(new Callable<Object[]>() {
+				@Override
+				public Object[] call() {
+					return executeNode(entry.getKey(), commands, entry.getValue());
+				}
+			}));
+		}
+		if (null != local) {
+			replies.put(local, executeNode(local, commands, groups.get(local)));
+		}
+		for (Map.Entry<JedisPool, Future<Object[]>> entry : futures.entrySet()) {
+			try {
+				replies.put(entry.getKey(), entry.getValue().get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				replies.put(entry.getKey(), fill(groups.get(entry.getKey()).size(), new JedisException(e)));
+			} catch (ExecutionException e) {
+				replies.put(entry.getKey(), fill(groups.get(entry.getKey()).size(), new JedisException(e.getCause())));
+			}
+		}
+		return replies;
+	}
+
+	/**
+	 * 在单个节点上通过pipeline执行一组命令
+	 */
+	private static Object[] executeNode(JedisPool pool, List<? extends RedisBatchCommand<?>> commands,
+			List<Integer> indexes) {
+		int size = indexes.size();
+		Jedis jedis = null;
+		try {
+			try {
+				jedis = pool.getResource();
+			} catch (JedisConnectionException e) {
+				// 建立连接失败，命令未发出，可以安全重试；连接池用尽(JedisException)不重试
+				logger.warn("RedisClusterPipeline.executeNode() get connection is failed. Exception:", e);
+				return fill(size, new NotSentException(e));
+			}
+			Pipeline pipeline = jedis.pipelined();
+			for (Integer index : indexes) {
+				commands.get(index).queue(pipeline);
+			}
+			return pipeline.syncAndReturnAll().toArray(new Object[size]);
+		} catch (JedisException e) {
+			logger.warn("RedisClusterPipeline.executeNode() is failed. Exception:", e);
+			return fill(size, e);
+		} finally {
+			if (null != jedis) {
+				jedis.close();
+			}
+		}
+	}
+
+	/**
+	 * 在指定节点上单独执行命令
+	 */
+	private static Object executeSingle(JedisPool pool, RedisBatchCommand<?> command) {
+		Jedis jedis = null;
+		try {
+			jedis = pool.getResource();
+			return command.execute(jedis);
+		} catch (JedisException e) {
+			return e;
+		} finally {
+			if (null != jedis) {
+				jedis.close();
+			}
+		}
+	}
+
+	/**
+	 * ASK重定向：slot正在迁移，在目标节点上发送ASKING后单独执行该命令
+	 */
+	private static Object executeAsking(JedisCluster cluster, RedisBatchCommand<?> command, JedisAskDataException ask) {
+		Jedis jedis = null;
+		try {
+			jedis = RedisClusterRouter.getNodePool(cluster, ask.getTargetNode()).getResource();
+			jedis.asking();
+			return command.execute(jedis);
+		} catch (JedisException e) {
+			return e;
+		} finally {
+			if (null != jedis) {
+				jedis.close();
+			}
+		}
+	}
+
+	/**
+	 * 命令发出前的连接异常，execute据此判断能否重试；重试次数用完时作为结果返回，调用方可以确认该命令没有执行
+	 */
+	static final class NotSentException extends JedisConnectionException {
+
+		private static final long serialVersionUID = 1L;
+
+		NotSentException(JedisConnectionException cause) {
+			super(cause.getMessage(), cause);
+		}
+	}
+
+	private static Object[] fill(int size, Object value) {
+		Object[] replies = new Object[size];
+		Arrays.fill(replies, value);
+		return replies;
+	}
+}
@@ -0,0 +1,218 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.BinaryJedisCluster;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisClusterConnectionHandler;
+import redis.clients.jedis.JedisClusterInfoCache;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisClusterException;
+import redis.clients.util.JedisClusterCRC16;
+
+/**
+ * TODO cluster 模式下的slot路由工具类
+ *
+ * 直接复用JedisCluster内部维护的slot缓存(JedisClusterInfoCache)，根据key的CRC16 slot定位所属节点的连接池，
+ * 不会额外维护一份集群拓扑。
+ *
+ */
+public class RedisClusterRouter {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisClusterRouter.class);
+
+	private static final Field CONNECTION_HANDLER_FIELD;
+
+	private static final Field CACHE_FIELD;
+
+	static {
+		try {
+			CONNECTION_HANDLER_FIELD = BinaryJedisCluster.class.getDeclaredField("connectionHandler");
+			CONNECTION_HANDLER_FIELD.setAccessible(true);
+			CACHE_FIELD = JedisClusterConnectionHandler.class.getDeclaredField("cache");
+			CACHE_FIELD.setAccessible(true);
+		} catch (Exception e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private RedisClusterRouter() {
+	}
+
+	/**
+	 * 计算key所在的slot，支持{hashtag}。 时间复杂度：O(N)，N为key的长度
+	 *
+	 * @param key
+	 *            redis键
+	 * @return slot编号
+	 */
+	public static int getSlot(String key) {
+		return JedisClusterCRC16.getSlot(key);
+	}
+
+	/**
+	 * 获取JedisCluster内部的连接管理器
+	 *
+	 * @param cluster
+	 * @return
+	 */
+	public static JedisClusterConnectionHandler getConnectionHandler(JedisCluster cluster) {
+		try {
+			return (JedisClusterConnectionHandler) CONNECTION_HANDLER_FIELD.get(cluster);
+		} catch (IllegalAccessException e) {
+			throw new JedisClusterException(e);
+		}
+	}
+
+	/**
+	 * 获取JedisCluster内部的slot缓存
+	 *
+	 * @param cluster
+	 * @return
+	 */
+	public static JedisClusterInfoCache getClusterInfoCache(JedisCluster cluster) {
+		try {
+			return (JedisClusterInfoCache) CACHE_FIELD.get(getConnectionHandler(cluster));
+		} catch (IllegalAccessException e) {
+			throw new JedisClusterException(e);
+		}
+	}
+
+	/**
+	 * 获取slot所属master节点的连接池，缓存中不存在时刷新一次slot缓存后再取。
+	 *
+	 * @param cluster
+	 * @param slot
+	 * @return 节点连接池
+	 */
+	public static JedisPool getSlotPool(JedisCluster cluster, int slot) {
+		JedisClusterInfoCache cache = getClusterInfoCache(cluster);
+		JedisPool pool = cache.getSlotPool(slot);
+		if (null == pool) {
+			logger.warn("RedisClusterRouter.getSlotPool() slot:{} 未找到所属节点，刷新slot缓存。", slot);
+			renewSlotCache(cluster);
+			pool = cache.getSlotPool(slot);
+			if (null == pool) {
+				throw new JedisClusterException("No reachable node in cluster for slot " + slot);
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * 获取key所属master节点的连接池
+	 *
+	 * @param cluster
+	 * @param key
+	 * @return 节点连接池
+	 */
+	public static JedisPool getKeyPool(JedisCluster cluster, String key) {
+		return getSlotPool(cluster, getSlot(key));
+	}
+
+	/**
+	 * 获取key所属master节点的地址
+	 *
+	 * @param cluster
+	 * @param key
+	 * @return 节点地址
+	 */
+	public static HostAndPort getKeyNode(JedisCluster cluster, String key) {
+		HostAndPort node = getPoolNode(cluster, getKeyPool(cluster, key));
+		if (null == node) {
+			throw new JedisClusterException("No node found for key " + key);
+		}
+		return node;
+	}
+
+	/**
+	 * 获取连接池对应的节点地址
+	 *
+	 * @param cluster
+	 * @param pool
+	 *            节点连接池
+	 * @return 节点地址，连接池已不在slot缓存中时返回null
+	 */
+	public static HostAndPort getPoolNode(JedisCluster cluster, JedisPool pool) {
+		for (Map.Entry<String, JedisPool> entry : getClusterInfoCache(cluster).getNodes().entrySet()) {
+			if (entry.getValue() == pool) {
+				return HostAndPort.parseString(entry.getKey());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 获取所有master节点的连接池(按slot缓存去重)，有slot未分配时刷新一次slot缓存
+	 *
+	 * @param cluster
+	 * @return master节点连接池，按slot顺序
+	 */
+	public static List<JedisPool> getMasterPools(JedisCluster cluster) {
+		JedisClusterInfoCache cache = getClusterInfoCache(cluster);
+		Set<JedisPool> pools = collectSlotPools(cache);
+		if (null == pools) {
+			logger.warn("RedisClusterRouter.getMasterPools() 存在未找到所属节点的slot，刷新slot缓存。");
+			renewSlotCache(cluster);
+			pools = collectSlotPools(cache);
+			if (null == pools) {
+				throw new JedisClusterException("Not all slots are covered by the cluster");
+			}
+		}
+		return new ArrayList<JedisPool>(pools);
+	}
+
+	/**
+	 * slot缓存中负责slot的连接池，有slot未分配时返回null
+	 */
+	static Set<JedisPool> collectSlotPools(JedisClusterInfoCache cache) {
+		Set<JedisPool> pools = new LinkedHashSet<JedisPool>();
+		for (int slot = 0; slot < JedisCluster.HASHSLOTS; slot++) {
+			JedisPool pool = cache.getSlotPool(slot);
+			if (null == pool) {
+				return null;
+			}
+			pools.add(pool);
+		}
+		return pools;
+	}
+
+	/**
+	 * 获取指定节点的连接池，不存在则创建（用于ASK重定向到尚未缓存的节点）
+	 *
+	 * @param cluster
+	 * @param node
+	 * @return 节点连接池
+	 */
+	public static JedisPool getNodePool(JedisCluster cluster, HostAndPort node) {
+		return getClusterInfoCache(cluster).setupNodeIfNotExist(node);
+	}
+
+	/**
+	 * 刷新JedisCluster的slot缓存，用于处理MOVED重定向
+	 *
+	 * @param cluster
+	 */
+	public static void renewSlotCache(JedisCluster cluster) {
+		getConnectionHandler(cluster).renewSlotCache();
+	}
+
+	/**
+	 * 节点唯一标识 host:port
+	 *
+	 * @param node
+	 * @return
+	 */
+	public static String getNodeKey(HostAndPort node) {
+		return JedisClusterInfoCache.getNodeKey(node);
+	}
+}
@@ -0,0 +1,185 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * TODO cluster 模式下全集群的key扫描
+ *
+ * JedisCluster不支持跨节点SCAN，这里从slot缓存中找出所有master节点，每个节点一个线程使用各自的游标并行SCAN，
+ * 各节点的结果页放入同一个有界队列合并为一个迭代器；调用方消费慢时队列写满，扫描线程随之阻塞，不会无限堆积在内存中。
+ *
+ * 与redis的SCAN语义一致：扫描期间一直存在的key至少返回一次，可能重复返回。扫描过程中节点故障转移时游标失效，
+ * 迭代器抛出JedisException。
+ *
+ * 未遍历完时必须调用close()(或关闭stream())，否则扫描线程会一直阻塞在队列上：
+ *
+ * <pre>
+ * try (RedisClusterScanner scanner = RedisClientUtil.getInstance().scanCluster("session:*", 1000)) {
+ * 	while (scanner.hasNext()) { ... }
+ * }
+ * </pre>
+ *
+ */
+public class RedisClusterScanner implements Iterator<String>, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisClusterScanner.class);
+
+	/** 每个节点最多预取的页数 */
+	static final int PAGES_PER_NODE = 2;
+
+	/** 扫描线程会阻塞在队列上，不使用RedisClusterPipeline的线程池 */
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L,
+			TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new RedisThreadFactory("redis-cluster-scan"));
+
+	/** 节点扫描结束的标记 */
+	private static final List<String> END = Collections.emptyList();
+
+	private final BlockingQueue<Object> queue;
+
+	private final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+	private int running;
+
+	private Iterator<String> page = Collections.<String> emptyList().iterator();
+
+	private volatile boolean closed;
+
+	/**
+	 * @param cluster
+	 * @param pattern
+	 *            key的匹配模式，同redis SCAN的MATCH，null表示全部key
+	 * @param count
+	 *            每次SCAN建议返回的key个数(COUNT)
+	 */
+	RedisClusterScanner(JedisCluster cluster, String pattern, int count) {
+		final ScanParams params = new ScanParams().count(RedisScanIterator.checkPageSize(count));
+		if (null != pattern) {
+			params.match(pattern);
+		}
+		List<JedisPool> masters = RedisClusterRouter.getMasterPools(cluster);
+		queue = new ArrayBlockingQueue<Object>(masters.size() * PAGES_PER_NODE);
+		running = masters.size();
+		for (final JedisPool pool : masters) {
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					scanNode(pool, params);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * 在单个节点上循环SCAN直到游标回到0，每页放入队列，结束或失败时放入结束标记或异常
+	 */
+	private void scanNode(JedisPool pool, ScanParams params) {
+		Object last = END;
+		Jedis jedis = null;
+		try {
+			jedis = pool.getResource();
+			String cursor = ScanParams.SCAN_POINTER_START;
+			do {
+				ScanResult<String> result = jedis.scan(cursor, params);
+				cursor = result.getStringCursor();
+				if (!result.getResult().isEmpty()) {
+					queue.put(result.getResult());
+				}
+			} while (!closed && !ScanParams.SCAN_POINTER_START.equals(cursor));
+		} catch (InterruptedException e) {
+			return;
+		} catch (RuntimeException e) {
+			logger.warn("RedisClusterScanner.scanNode() is failed. Exception:", e);
+			last = e;
+		} finally {
+			if (null != jedis) {
+				jedis.close();
+			}
+		}
+		try {
+			queue.put(last);
+		} catch (InterruptedException e) {
+			// close()取消，不再需要结束标记
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean hasNext() {
+		while (!page.hasNext() && running > 0 && !closed) {
+			Object item;
+			try {
+				item = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				close();
+				throw new JedisException("Cluster scan interrupted", e);
+			}
+			if (END == item) {
+				running--;
+			} else if (item instanceof RuntimeException) {
+				close();
+				throw new JedisException("Cluster scan failed on a node", (RuntimeException) item);
+			} else {
+				page = ((List<String>) item).iterator();
+			}
+		}
+		return page.hasNext();
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	/**
+	 * 以顺序Stream的方式遍历，关闭Stream时停止扫描
+	 */
+	public Stream<String> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), false)
+				.onClose(this::close);
+	}
+
+	/**
+	 * 停止所有节点的扫描，已遍历完时无需调用
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		for (Future<?> future : futures) {
+			future.cancel(true);
+		}
+		queue.clear();
+		page = Collections.<String> emptyList().iterator();
+	}
+}
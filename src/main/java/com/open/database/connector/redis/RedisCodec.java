@@ -0,0 +1,29 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO redis 值的二进制编解码
+ *
+ * 编码写入可复用的RedisCodecOutput，解码从RedisCodecInput的当前位置读取，编解码器可以相互嵌套(见RedisRecordCodec)。
+ * 常用实现见RedisCodecs，实现类必须是线程安全的。
+ *
+ * @param <T>
+ *            值类型
+ */
+public interface RedisCodec<T> {
+
+	/**
+	 * 将value编码追加到out
+	 *
+	 * @param value
+	 * @param out
+	 */
+	void encode(T value, RedisCodecOutput out);
+
+	/**
+	 * 从in的当前位置解码一个值
+	 *
+	 * @param in
+	 * @return
+	 */
+	T decode(RedisCodecInput in);
+}
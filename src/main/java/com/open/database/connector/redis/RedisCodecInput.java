@@ -0,0 +1,132 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.nio.charset.StandardCharsets;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * TODO 解码用的字节读取器，格式与RedisCodecOutput对应
+ *
+ * 数据不完整或格式错误时抛出JedisDataException。
+ *
+ */
+public final class RedisCodecInput {
+
+	private final byte[] data;
+
+	private int position;
+
+	private final int limit;
+
+	public RedisCodecInput(byte[] data) {
+		this(data, 0, data.length);
+	}
+
+	public RedisCodecInput(byte[] data, int offset, int length) {
+		this.data = data;
+		this.position = offset;
+		this.limit = offset + length;
+	}
+
+	private void require(int length) {
+		if (length < 0 || limit - position < length) {
+			throw new JedisDataException("Corrupted redis value: need " + length + " bytes at " + position
+					+ ", remaining " + (limit - position));
+		}
+	}
+
+	public int readByte() {
+		require(1);
+		return data[position++];
+	}
+
+	public long readVarLong() {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			require(1);
+			byte b = data[position++];
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new JedisDataException("Corrupted redis value: malformed varint at " + position);
+	}
+
+	public long readSignedVarLong() {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	public long readLong() {
+		require(8);
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (data[position++] & 0xFF);
+		}
+		return value;
+	}
+
+	public double readDouble() {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	/**
+	 * 读取RedisCodecOutput.writeString()写入的字符串
+	 */
+	public String readString() {
+		long length = readVarLong();
+		if (0 == length) {
+			return null;
+		}
+		if (length - 1 > Integer.MAX_VALUE) {
+			throw new JedisDataException("Corrupted redis value: string length " + (length - 1));
+		}
+		return readUtf8((int) (length - 1));
+	}
+
+	/**
+	 * 读取length个字节的UTF-8内容
+	 */
+	public String readUtf8(int length) {
+		require(length);
+		String value = new String(data, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	public byte[] readBytes(int length) {
+		require(length);
+		byte[] bytes = new byte[length];
+		System.arraycopy(data, position, bytes, 0, length);
+		position += length;
+		return bytes;
+	}
+
+	/**
+	 * 跳过length个字节
+	 */
+	public void skip(int length) {
+		require(length);
+		position += length;
+	}
+
+	public int remaining() {
+		return limit - position;
+	}
+
+	public boolean hasRemaining() {
+		return position < limit;
+	}
+
+	/**
+	 * 底层数组和当前位置，供需要直接解析字节的编解码器使用
+	 */
+	public byte[] array() {
+		return data;
+	}
+
+	public int position() {
+		return position;
+	}
+}
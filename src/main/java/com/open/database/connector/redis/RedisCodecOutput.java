@@ -0,0 +1,176 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.Arrays;
+
+/**
+ * TODO 编码用的可扩容字节缓冲
+ *
+ * RedisCodecs.encode()按线程复用同一个实例，编码过程中不再为每个字段分配临时对象；
+ * 整数使用varint(LEB128)，有符号整数先做zigzag，字符串直接按UTF-8写入缓冲不经过getBytes()。
+ *
+ */
+public final class RedisCodecOutput {
+
+	private byte[] buffer;
+
+	private int size;
+
+	public RedisCodecOutput() {
+		this(256);
+	}
+
+	public RedisCodecOutput(int initialCapacity) {
+		buffer = new byte[Math.max(16, initialCapacity)];
+	}
+
+	private void ensureCapacity(int extra) {
+		int required = size + extra;
+		if (required > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length << 1));
+		}
+	}
+
+	public void writeByte(int value) {
+		ensureCapacity(1);
+		buffer[size++] = (byte) value;
+	}
+
+	public void writeBytes(byte[] bytes, int offset, int length) {
+		ensureCapacity(length);
+		System.arraycopy(bytes, offset, buffer, size, length);
+		size += length;
+	}
+
+	/**
+	 * 无符号varint，0~127占1个字节，负数固定占10个字节，有符号数使用writeSignedVarLong
+	 */
+	public void writeVarLong(long value) {
+		ensureCapacity(10);
+		while ((value & ~0x7FL) != 0) {
+			buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[size++] = (byte) value;
+	}
+
+	/**
+	 * zigzag编码后的varint，绝对值小的负数同样只占很少的字节
+	 */
+	public void writeSignedVarLong(long value) {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * 固定8个字节，大端
+	 */
+	public void writeLong(long value) {
+		ensureCapacity(8);
+		for (int shift = 56; shift >= 0; shift -= 8) {
+			buffer[size++] = (byte) (value >>> shift);
+		}
+	}
+
+	public void writeDouble(double value) {
+		writeLong(Double.doubleToLongBits(value));
+	}
+
+	/**
+	 * 长度前缀(字节数+1，0表示null)加UTF-8内容
+	 */
+	public void writeString(String value) {
+		if (null == value) {
+			writeVarLong(0);
+			return;
+		}
+		writeVarLong(utf8Length(value) + 1L);
+		writeUtf8(value);
+	}
+
+	/**
+	 * 不带长度前缀的UTF-8内容，只能用于最后一个字段
+	 */
+	public void writeUtf8(String value) {
+		int length = value.length();
+		ensureCapacity(length * 3);
+		byte[] buf = buffer;
+		int pos = size;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				buf[pos++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[pos++] = (byte) (0xC0 | (c >> 6));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+				buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else if (Character.isSurrogate(c)) {
+				// 不成对的代理字符与String.getBytes(UTF_8)一致替换为'?'
+				buf[pos++] = '?';
+			} else {
+				buf[pos++] = (byte) (0xE0 | (c >> 12));
+				buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buf[pos++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		size = pos;
+	}
+
+	static int utf8Length(String value) {
+		int length = value.length();
+		int bytes = 0;
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				bytes++;
+			} else if (c < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(value.charAt(i + 1))) {
+				bytes += 4;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				bytes++;
+			} else {
+				bytes += 3;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * 已写入的字节数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 内部缓冲，有效内容为[0, size())，再次写入后可能失效
+	 */
+	public byte[] array() {
+		return buffer;
+	}
+
+	/**
+	 * 清空内容，保留已分配的缓冲
+	 */
+	public void reset() {
+		size = 0;
+	}
+
+	/**
+	 * 复制出已写入的内容
+	 */
+	public byte[] toByteArray() {
+		return Arrays.copyOf(buffer, size);
+	}
+
+	int capacity() {
+		return buffer.length;
+	}
+}
@@ -0,0 +1,300 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.lang.reflect.Type;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.alibaba.fastjson.JSON;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * TODO 常用的RedisCodec实现和编码入口
+ *
+ * 紧凑二进制编码：整数为varint(有符号数zigzag)，double固定8字节，字符串为长度前缀加UTF-8，可通过list/map/nullable组合，
+ * 对象使用RedisRecordCodec按字段顺序编码。
+ *
+ * TEXT和json()不带长度前缀，写入的内容与RedisClientUtil.set(String)存放的字符串完全一致，可与原有数据互相读取，
+ * 但只能作为最外层编解码器使用，不能嵌套在其他编解码器中。
+ *
+ */
+public final class RedisCodecs {
+
+	/** 超过该大小的线程缓冲在编码后释放，避免偶发的大value长期占用内存 */
+	static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+	private static final ThreadLocal<RedisCodecOutput> OUTPUT = new ThreadLocal<RedisCodecOutput>() {
+		@Override
+		protected RedisCodecOutput initialValue() {
+			return new RedisCodecOutput();
+		}
+	};
+
+	private static final ThreadLocal<CharsetDecoder> UTF8_DECODER = new ThreadLocal<CharsetDecoder>() {
+		@Override
+		protected CharsetDecoder initialValue() {
+			return StandardCharsets.UTF_8.newDecoder();
+		}
+	};
+
+	private RedisCodecs() {
+	}
+
+	/**
+	 * 使用当前线程的缓冲编码，返回redis命令所需的字节数组
+	 *
+	 * @param codec
+	 * @param value
+	 * @return
+	 */
+	public static <T> byte[] encode(RedisCodec<T> codec, T value) {
+		RedisCodecOutput out = OUTPUT.get();
+		out.reset();
+		try {
+			codec.encode(value, out);
+			return out.toByteArray();
+		} finally {
+			if (out.capacity() > MAX_RETAINED_BUFFER) {
+				OUTPUT.remove();
+			}
+		}
+	}
+
+	/**
+	 * 解码redis返回的字节数组，data为null(key不存在)时返回null
+	 *
+	 * @param codec
+	 * @param data
+	 * @return
+	 */
+	public static <T> T decode(RedisCodec<T> codec, byte[] data) {
+		if (null == data) {
+			return null;
+		}
+		return codec.decode(new RedisCodecInput(data));
+	}
+
+	/** 带长度前缀的字符串，可为null */
+	public static final RedisCodec<String> STRING = new RedisCodec<String>() {
+		@Override
+		public void encode(String value, RedisCodecOutput out) {
+			out.writeString(value);
+		}
+
+		@Override
+		public String decode(RedisCodecInput in) {
+			return in.readString();
+		}
+	};
+
+	/** 不带长度前缀的UTF-8字符串，与String方式存放的值兼容，只能作为最外层编解码器 */
+	public static final RedisCodec<String> TEXT = new RedisCodec<String>() {
+		@Override
+		public void encode(String value, RedisCodecOutput out) {
+			out.writeUtf8(value);
+		}
+
+		@Override
+		public String decode(RedisCodecInput in) {
+			return in.readUtf8(in.remaining());
+		}
+	};
+
+	/** zigzag varint，-64~63占1个字节 */
+	public static final RedisCodec<Long> LONG = new RedisCodec<Long>() {
+		@Override
+		public void encode(Long value, RedisCodecOutput out) {
+			out.writeSignedVarLong(value);
+		}
+
+		@Override
+		public Long decode(RedisCodecInput in) {
+			return in.readSignedVarLong();
+		}
+	};
+
+	/** zigzag varint */
+	public static final RedisCodec<Integer> INTEGER = new RedisCodec<Integer>() {
+		@Override
+		public void encode(Integer value, RedisCodecOutput out) {
+			out.writeSignedVarLong(value);
+		}
+
+		@Override
+		public Integer decode(RedisCodecInput in) {
+			long value = in.readSignedVarLong();
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new JedisDataException("Corrupted redis value: " + value + " out of int range");
+			}
+			return (int) value;
+		}
+	};
+
+	/** 固定8字节 */
+	public static final RedisCodec<Double> DOUBLE = new RedisCodec<Double>() {
+		@Override
+		public void encode(Double value, RedisCodecOutput out) {
+			out.writeDouble(value);
+		}
+
+		@Override
+		public Double decode(RedisCodecInput in) {
+			return in.readDouble();
+		}
+	};
+
+	/** 1个字节 */
+	public static final RedisCodec<Boolean> BOOLEAN = new RedisCodec<Boolean>() {
+		@Override
+		public void encode(Boolean value, RedisCodecOutput out) {
+			out.writeByte(value ? 1 : 0);
+		}
+
+		@Override
+		public Boolean decode(RedisCodecInput in) {
+			return 0 != in.readByte();
+		}
+	};
+
+	/** 带长度前缀的字节数组 */
+	public static final RedisCodec<byte[]> BYTES = new RedisCodec<byte[]>() {
+		@Override
+		public void encode(byte[] value, RedisCodecOutput out) {
+			out.writeVarLong(value.length);
+			out.writeBytes(value, 0, value.length);
+		}
+
+		@Override
+		public byte[] decode(RedisCodecInput in) {
+			return in.readBytes(length(in));
+		}
+	};
+
+	/**
+	 * 允许null的编解码器，前置1个字节的标记
+	 *
+	 * @param codec
+	 * @return
+	 */
+	public static <T> RedisCodec<T> nullable(final RedisCodec<T> codec) {
+		return new RedisCodec<T>() {
+			@Override
+			public void encode(T value, RedisCodecOutput out) {
+				if (null == value) {
+					out.writeByte(0);
+				} else {
+					out.writeByte(1);
+					codec.encode(value, out);
+				}
+			}
+
+			@Override
+			public T decode(RedisCodecInput in) {
+				return 0 == in.readByte() ? null : codec.decode(in);
+			}
+		};
+	}
+
+	/**
+	 * 列表：元素个数加逐个元素，元素不能为null(需要时使用nullable包装)
+	 *
+	 * @param element
+	 * @return
+	 */
+	public static <T> RedisCodec<List<T>> list(final RedisCodec<T> element) {
+		return new RedisCodec<List<T>>() {
+			@Override
+			public void encode(List<T> value, RedisCodecOutput out) {
+				out.writeVarLong(value.size());
+				for (T item : value) {
+					element.encode(item, out);
+				}
+			}
+
+			@Override
+			public List<T> decode(RedisCodecInput in) {
+				int size = count(in);
+				List<T> value = new ArrayList<T>(Math.min(size, in.remaining()));
+				for (int i = 0; i < size; i++) {
+					value.add(element.decode(in));
+				}
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * 字符串为key的map，保持迭代顺序
+	 *
+	 * @param valueCodec
+	 * @return
+	 */
+	public static <V> RedisCodec<Map<String, V>> map(final RedisCodec<V> valueCodec) {
+		return new RedisCodec<Map<String, V>>() {
+			@Override
+			public void encode(Map<String, V> value, RedisCodecOutput out) {
+				out.writeVarLong(value.size());
+				for (Map.Entry<String, V> entry : value.entrySet()) {
+					out.writeString(entry.getKey());
+					valueCodec.encode(entry.getValue(), out);
+				}
+			}
+
+			@Override
+			public Map<String, V> decode(RedisCodecInput in) {
+				int size = count(in);
+				Map<String, V> value = new LinkedHashMap<String, V>(Math.min(size, in.remaining()) * 4 / 3 + 1);
+				for (int i = 0; i < size; i++) {
+					String key = in.readString();
+					value.put(key, valueCodec.decode(in));
+				}
+				return value;
+			}
+		};
+	}
+
+	/**
+	 * fastjson编码的对象，与原有以JSON字符串存放的值兼容，只能作为最外层编解码器
+	 *
+	 * @param type
+	 *            对象类型，泛型类型可传入TypeReference.getType()
+	 * @return
+	 */
+	public static <T> RedisCodec<T> json(final Type type) {
+		return new RedisCodec<T>() {
+			@Override
+			public void encode(T value, RedisCodecOutput out) {
+				out.writeUtf8(JSON.toJSONString(value));
+			}
+
+			@Override
+			public T decode(RedisCodecInput in) {
+				int length = in.remaining();
+				T value = JSON.parseObject(in.array(), in.position(), length, UTF8_DECODER.get(), type);
+				in.skip(length);
+				return value;
+			}
+		};
+	}
+
+	private static int count(RedisCodecInput in) {
+		long count = in.readVarLong();
+		if (count > Integer.MAX_VALUE) {
+			throw new JedisDataException("Corrupted redis value: element count " + count);
+		}
+		return (int) count;
+	}
+
+	private static int length(RedisCodecInput in) {
+		long length = in.readVarLong();
+		if (length > in.remaining()) {
+			throw new JedisDataException(
+					"Corrupted redis value: length " + length + " exceeds remaining " + in.remaining());
+		}
+		return (int) length;
+	}
+}
@@ -0,0 +1,35 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO redis 命令执行监听器，通过RedisCommandTracer.addListener()注册
+ *
+ * 在调用线程上同步回调，实现需要保证足够轻量且不抛出异常。
+ * 所有集群的命令都会回调，只关心某个集群时覆盖带cluster参数的onCommand。
+ *
+ */
+public interface RedisCommandListener {
+
+	/**
+	 * 命令执行完成
+	 *
+	 * @param command
+	 *            命令名称，与RedisClientUtil的方法名一致
+	 * @param key
+	 *            redis键，批量命令为null
+	 * @param elapsedNanos
+	 *            执行耗时，单位：纳秒
+	 * @param error
+	 *            执行失败时的异常，成功时为null
+	 */
+	void onCommand(String command, String key, long elapsedNanos, Throwable error);
+
+	/**
+	 * 命令执行完成，默认不区分集群，调用onCommand(command, key, elapsedNanos, error)
+	 *
+	 * @param cluster
+	 *            命令所属集群的名称，见RedisClusterContext
+	 */
+	default void onCommand(String cluster, String command, String key, long elapsedNanos, Throwable error) {
+		onCommand(command, key, elapsedNanos, error);
+	}
+}
@@ -0,0 +1,302 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisClusterInfoCache;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * TODO redis 命令耗时和吞吐量统计
+ *
+ * 作为RedisCommandListener注册到RedisCommandTracer，按命令、节点、执行结果(ok/error/timeout)三个维度
+ * 记录微秒级延迟直方图和按秒滚动的吞吐量，通过JMX(OBJECT_NAME)和snapshot()拉取，便于导出p99/p999到监控系统。
+ * 每个实例只统计一个集群的命令，统计其他集群时使用start(RedisClusterContext.getInstance(name))，JMX注册名追加",cluster=名称"。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisCommandMetrics metrics = new RedisCommandMetrics();
+ * metrics.start();
+ * ...
+ * List&lt;RedisCommandStats&gt; stats = metrics.snapshot();
+ * </pre>
+ *
+ */
+public class RedisCommandMetrics implements RedisCommandListener, RedisCommandMetricsMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisCommandMetrics.class);
+
+	/** JMX注册名 */
+	public static final String OBJECT_NAME = "com.sinosafe.macaw.database.connector.redis:type=RedisCommandMetrics";
+
+	/** 批量命令(涉及多个节点)的节点名 */
+	public static final String MULTI_NODE = "*";
+
+	/** 无法确定所属节点时的节点名 */
+	public static final String UNKNOWN_NODE = "unknown";
+
+	public static final String OUTCOME_OK = "ok";
+
+	public static final String OUTCOME_ERROR = "error";
+
+	public static final String OUTCOME_TIMEOUT = "timeout";
+
+	private static final String[] OUTCOMES = { OUTCOME_OK, OUTCOME_ERROR, OUTCOME_TIMEOUT };
+
+	private final ConcurrentMap<String, ConcurrentMap<String, AtomicReferenceArray<Series>>> series = new ConcurrentHashMap<String, ConcurrentMap<String, AtomicReferenceArray<Series>>>();
+
+	private final RedisThroughputCounter throughput = new RedisThroughputCounter();
+
+	private final LongAdder errors = new LongAdder();
+
+	/** 节点连接池到host:port的映射，slot迁移后按需重建 */
+	private volatile Map<JedisPool, String> nodeNames = Collections.emptyMap();
+
+	/** 统计的集群 */
+	private volatile RedisClusterContext context = RedisClusterContext.getDefault();
+
+	private ObjectName registeredName;
+
+	/**
+	 * 注册到RedisCommandTracer并注册JMX，统计默认集群的命令
+	 */
+	public synchronized void start() {
+		start(RedisClusterContext.getDefault());
+	}
+
+	/**
+	 * 注册到RedisCommandTracer并注册JMX，统计context集群的命令
+	 */
+	public synchronized void start(RedisClusterContext context) {
+		if (null != registeredName) {
+			return;
+		}
+		this.context = context;
+		RedisCommandTracer.addListener(this);
+		try {
+			ObjectName name = new ObjectName(context.objectName(OBJECT_NAME));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (Exception e) {
+			logger.warn("RedisCommandMetrics 注册JMX失败，仅可通过snapshot()获取统计。", e);
+		}
+	}
+
+	/**
+	 * 从RedisCommandTracer移除并注销JMX
+	 */
+	@Override
+	public synchronized void close() {
+		RedisCommandTracer.removeListener(this);
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisCommandMetrics 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+	}
+
+	@Override
+	public void onCommand(String cluster, String command, String key, long elapsedNanos, Throwable error) {
+		if (context.getName().equals(cluster)) {
+			onCommand(command, key, elapsedNanos, error);
+		}
+	}
+
+	@Override
+	public void onCommand(String command, String key, long elapsedNanos, Throwable error) {
+		int outcome = outcomeOf(error);
+		getSeries(command, resolveNode(key), outcome).record(elapsedNanos / 1000);
+		throughput.increment();
+		if (0 != outcome) {
+			errors.increment();
+		}
+	}
+
+	private Series getSeries(String command, String node, int outcome) {
+		ConcurrentMap<String, AtomicReferenceArray<Series>> nodes = series.get(command);
+		if (null == nodes) {
+			ConcurrentMap<String, AtomicReferenceArray<Series>> created = new ConcurrentHashMap<String, AtomicReferenceArray<Series>>();
+			nodes = series.putIfAbsent(command, created);
+			if (null == nodes) {
+				nodes = created;
+			}
+		}
+		AtomicReferenceArray<Series> outcomes = nodes.get(node);
+		if (null == outcomes) {
+			AtomicReferenceArray<Series> created = new AtomicReferenceArray<Series>(OUTCOMES.length);
+			outcomes = nodes.putIfAbsent(node, created);
+			if (null == outcomes) {
+				outcomes = created;
+			}
+		}
+		Series current = outcomes.get(outcome);
+		if (null == current) {
+			// 直方图按需创建，未出现过的执行结果不占内存
+			outcomes.compareAndSet(outcome, null, new Series());
+			current = outcomes.get(outcome);
+		}
+		return current;
+	}
+
+	private static int outcomeOf(Throwable error) {
+		if (null == error) {
+			return 0;
+		}
+		for (Throwable cause = error; null != cause; cause = cause.getCause()) {
+			if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException
+					|| cause instanceof RedisDeadlineExceededException) {
+				return 2;
+			}
+			if (cause == cause.getCause()) {
+				break;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * 根据key所在slot定位节点，key为null(批量命令)时返回MULTI_NODE
+	 */
+	private String resolveNode(String key) {
+		if (null == key) {
+			return MULTI_NODE;
+		}
+		JedisCluster cluster = context.getJedisCluster();
+		if (null == cluster) {
+			return UNKNOWN_NODE;
+		}
+		try {
+			JedisClusterInfoCache cache = RedisClusterRouter.getClusterInfoCache(cluster);
+			JedisPool pool = cache.getSlotPool(RedisClusterRouter.getSlot(key));
+			if (null == pool) {
+				return UNKNOWN_NODE;
+			}
+			String node = nodeNames.get(pool);
+			if (null == node) {
+				Map<JedisPool, String> names = new IdentityHashMap<JedisPool, String>();
+				for (Map.Entry<String, JedisPool> entry : cache.getNodes().entrySet()) {
+					names.put(entry.getValue(), entry.getKey());
+				}
+				nodeNames = names;
+				node = names.get(pool);
+			}
+			return null == node ? UNKNOWN_NODE : node;
+		} catch (RuntimeException e) {
+			return UNKNOWN_NODE;
+		}
+	}
+
+	/**
+	 * 所有命令、节点、执行结果维度的统计快照
+	 */
+	public List<RedisCommandStats> snapshot() {
+		List<RedisCommandStats> stats = new ArrayList<RedisCommandStats>();
+		for (Map.Entry<String, ConcurrentMap<String, AtomicReferenceArray<Series>>> command : series.entrySet()) {
+			for (Map.Entry<String, AtomicReferenceArray<Series>> node : command.getValue().entrySet()) {
+				AtomicReferenceArray<Series> outcomes = node.getValue();
+				for (int i = 0; i < OUTCOMES.length; i++) {
+					Series current = outcomes.get(i);
+					if (null != current) {
+						stats.add(current.toStats(command.getKey(), node.getKey(), OUTCOMES[i]));
+					}
+				}
+			}
+		}
+		return stats;
+	}
+
+	@Override
+	public List<RedisCommandStats> getCommandStats() {
+		return snapshot();
+	}
+
+	@Override
+	public long getTotalCount() {
+		return throughput.getTotal();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	@Override
+	public double getThroughput() {
+		return throughput.getRate(RedisThroughputCounter.WINDOW_SECONDS - 1);
+	}
+
+	@Override
+	public long getLatencyAtPercentile(String command, double percentile) {
+		ConcurrentMap<String, AtomicReferenceArray<Series>> nodes = series.get(command);
+		if (null == nodes) {
+			return 0;
+		}
+		RedisLatencyHistogram.Snapshot merged = null;
+		for (AtomicReferenceArray<Series> outcomes : nodes.values()) {
+			for (int i = 0; i < OUTCOMES.length; i++) {
+				Series current = outcomes.get(i);
+				if (null != current) {
+					RedisLatencyHistogram.Snapshot snapshot = current.histogram.snapshot();
+					merged = null == merged ? snapshot : merged.merge(snapshot);
+				}
+			}
+		}
+		return null == merged ? 0 : merged.getValueAtPercentile(percentile);
+	}
+
+	@Override
+	public void reset() {
+		series.clear();
+		throughput.reset();
+		errors.reset();
+	}
+
+	/**
+	 * 单个命令、节点、执行结果的直方图和吞吐量
+	 */
+	private static final class Series {
+
+		private final RedisLatencyHistogram histogram = new RedisLatencyHistogram();
+
+		private final RedisThroughputCounter throughput = new RedisThroughputCounter();
+
+		void record(long micros) {
+			histogram.record(micros);
+			throughput.increment();
+		}
+
+		RedisCommandStats toStats(String command, String node, String outcome) {
+			RedisLatencyHistogram.Snapshot snapshot = histogram.snapshot();
+			return new RedisCommandStats(command, node, outcome, snapshot.getCount(),
+					throughput.getRate(RedisThroughputCounter.WINDOW_SECONDS - 1), snapshot.getMean(),
+					snapshot.getValueAtPercentile(50), snapshot.getValueAtPercentile(90),
+					snapshot.getValueAtPercentile(99), snapshot.getValueAtPercentile(99.9), snapshot.getMax());
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.List;
+
+/**
+ * TODO redis 命令统计的JMX接口，注册名为RedisCommandMetrics.OBJECT_NAME
+ *
+ */
+public interface RedisCommandMetricsMXBean {
+
+	/**
+	 * 所有命令、节点、执行结果维度的统计快照
+	 */
+	List<RedisCommandStats> getCommandStats();
+
+	/**
+	 * 累计命令总数
+	 */
+	long getTotalCount();
+
+	/**
+	 * 累计失败(含超时)总数
+	 */
+	long getErrorCount();
+
+	/**
+	 * 最近一分钟平均每秒命令数
+	 */
+	double getThroughput();
+
+	/**
+	 * 指定命令所有节点合并后的百分位耗时，单位：微秒
+	 *
+	 * @param command
+	 *            命令名称
+	 * @param percentile
+	 *            百分位，例如99.9
+	 */
+	long getLatencyAtPercentile(String command, double percentile);
+
+	/**
+	 * 清空所有统计
+	 */
+	void reset();
+}
@@ -0,0 +1,117 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * TODO 单个命令在单个节点上某一执行结果的统计快照，耗时单位：微秒
+ *
+ * 同时作为JMX MXBean的返回类型，各getter会映射为CompositeData的属性。
+ *
+ */
+public class RedisCommandStats {
+
+	private final String command;
+
+	private final String node;
+
+	private final String outcome;
+
+	private final long count;
+
+	private final double ratePerSecond;
+
+	private final double mean;
+
+	private final long p50;
+
+	private final long p90;
+
+	private final long p99;
+
+	private final long p999;
+
+	private final long max;
+
+	@ConstructorProperties({ "command", "node", "outcome", "count", "ratePerSecond", "mean", "p50", "p90", "p99",
+			"p999", "max" })
+	public RedisCommandStats(String command, String node, String outcome, long count, double ratePerSecond,
+			double mean, long p50, long p90, long p99, long p999, long max) {
+		this.command = command;
+		this.node = node;
+		this.outcome = outcome;
+		this.count = count;
+		this.ratePerSecond = ratePerSecond;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p90 = p90;
+		this.p99 = p99;
+		this.p999 = p999;
+		this.max = max;
+	}
+
+	/**
+	 * 命令名称，与RedisClientUtil的方法名一致
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * 节点 host:port，批量命令为RedisCommandMetrics.MULTI_NODE
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	/**
+	 * 执行结果：ok、error、timeout
+	 */
+	public String getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * 累计次数
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 最近一分钟平均每秒次数
+	 */
+	public double getRatePerSecond() {
+		return ratePerSecond;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public long getP50() {
+		return p50;
+	}
+
+	public long getP90() {
+		return p90;
+	}
+
+	public long getP99() {
+		return p99;
+	}
+
+	public long getP999() {
+		return p999;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisCommandStats [command=" + command + ", node=" + node + ", outcome=" + outcome + ", count=" + count
+				+ ", ratePerSecond=" + ratePerSecond + ", mean=" + mean + ", p50=" + p50 + ", p90=" + p90 + ", p99="
+				+ p99 + ", p999=" + p999 + ", max=" + max + "]";
+	}
+}
@@ -0,0 +1,212 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TODO redis 命令统一拦截层，集中处理每个命令的调试日志、耗时统计和监听器回调
+ *
+ * 调用方式：
+ *
+ * <pre>
+ * long trace = RedisCommandTracer.start();
+ * try {
+ * 	value = jedis.get(key);
+ * } catch (Exception e) {
+ * 	RedisCommandTracer.failure("get", key, trace, e);
+ * 	throw e;
+ * }
+ * RedisCommandTracer.success("get", key, trace, value);
+ * </pre>
+ *
+ * 未开启DEBUG日志且没有注册监听器时start()返回0，success()直接返回，不计时、不拼接字符串、不分配对象；
+ * 开启DEBUG日志时使用slf4j参数化日志，value只输出前MAX_VALUE_LENGTH个字符。
+ * 被RedisCircuitBreaker拒绝的命令(RedisCallRejectedException)不输出ERROR日志，熔断期间每个命令都会被拒绝，
+ * 由熔断器计数并只在状态变化时记录日志。
+ * 不带cluster参数的方法记为默认集群的命令，其他集群(见RedisClusterContext)的命令使用带cluster参数的方法。
+ *
+ */
+public final class RedisCommandTracer {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisClientUtil.class);
+
+	/** 调试日志中value的最大输出长度 */
+	public static final int MAX_VALUE_LENGTH = 500;
+
+	private static final RedisCommandListener[] EMPTY = new RedisCommandListener[0];
+
+	private static volatile RedisCommandListener[] listeners = EMPTY;
+
+	private RedisCommandTracer() {
+	}
+
+	/**
+	 * 注册监听器
+	 */
+	public static synchronized void addListener(RedisCommandListener listener) {
+		RedisCommandListener[] current = listeners;
+		RedisCommandListener[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = listener;
+		listeners = updated;
+	}
+
+	/**
+	 * 移除监听器
+	 */
+	public static synchronized void removeListener(RedisCommandListener listener) {
+		RedisCommandListener[] current = listeners;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == listener) {
+				RedisCommandListener[] updated = new RedisCommandListener[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				listeners = updated;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 命令开始，需要跟踪时返回开始时间(纳秒，不为0)，不需要跟踪时返回0
+	 */
+	public static long start() {
+		if (0 == listeners.length && !logger.isDebugEnabled()) {
+			return 0L;
+		}
+		long now = System.nanoTime();
+		return 0L == now ? 1L : now;
+	}
+
+	/**
+	 * 命令执行成功，不输出value
+	 */
+	public static void success(String command, String key, long start) {
+		success(RedisClusterContext.DEFAULT_NAME, command, key, start);
+	}
+
+	/**
+	 * 命令执行成功，DEBUG日志中输出截断后的value
+	 */
+	public static void success(String command, String key, long start, Object value) {
+		success(RedisClusterContext.DEFAULT_NAME, command, key, start, value);
+	}
+
+	/**
+	 * 命令执行失败，无论是否开启跟踪都输出ERROR日志(被熔断器拒绝的命令除外)
+	 */
+	public static void failure(String command, String key, long start, Throwable error) {
+		failure(RedisClusterContext.DEFAULT_NAME, command, key, start, error);
+	}
+
+	/**
+	 * cluster集群的命令执行成功，不输出value
+	 */
+	public static void success(String cluster, String command, String key, long start) {
+		if (0L == start) {
+			return;
+		}
+		finish(cluster, command, key, start, null, false);
+	}
+
+	/**
+	 * cluster集群的命令执行成功，DEBUG日志中输出截断后的value
+	 */
+	public static void success(String cluster, String command, String key, long start, Object value) {
+		if (0L == start) {
+			return;
+		}
+		finish(cluster, command, key, start, value, true);
+	}
+
+	/**
+	 * cluster集群的命令执行失败，无论是否开启跟踪都输出ERROR日志(被熔断器拒绝的命令除外)
+	 */
+	public static void failure(String cluster, String command, String key, long start, Throwable error) {
+		if (error instanceof RedisCallRejectedException) {
+			logger.debug("{}.{}() key:{} {}", source(cluster), command, key, error.getMessage());
+		} else {
+			logger.error("{}.{}() key:{} is failed.Exception:", source(cluster), command, key, error);
+		}
+		if (0L == start) {
+			return;
+		}
+		long elapsed = System.nanoTime() - start;
+		notifyListeners(cluster, command, key, elapsed, error);
+	}
+
+	private static void finish(String cluster, String command, String key, long start, Object value,
+			boolean withValue) {
+		long elapsed = System.nanoTime() - start;
+		if (logger.isDebugEnabled()) {
+			if (withValue) {
+				logger.debug("{}.{}() key:{},value:{}，所消耗的时间：{}us", source(cluster), command, key,
+						abbreviate(value), elapsed / 1000);
+			} else {
+				logger.debug("{}.{}() key:{}，所消耗的时间：{}us", source(cluster), command, key, elapsed / 1000);
+			}
+		}
+		notifyListeners(cluster, command, key, elapsed, null);
+	}
+
+	/**
+	 * 日志中的命令来源，默认集群保持原有的"RedisClientUtil"
+	 */
+	private static String source(String cluster) {
+		return RedisClusterContext.DEFAULT_NAME.equals(cluster) ? "RedisClientUtil" : "RedisClientUtil[" + cluster + "]";
+	}
+
+	private static void notifyListeners(String cluster, String command, String key, long elapsed, Throwable error) {
+		for (RedisCommandListener listener : listeners) {
+			try {
+				listener.onCommand(cluster, command, key, elapsed, error);
+			} catch (RuntimeException e) {
+				logger.warn("RedisCommandTracer listener:{} is failed.", listener, e);
+			}
+		}
+	}
+
+	/**
+	 * 输出value的前MAX_VALUE_LENGTH个字符，map和集合逐个元素追加，避免先生成完整的toString
+	 */
+	static String abbreviate(Object value) {
+		if (null == value) {
+			return null;
+		}
+		StringBuilder builder = new StringBuilder(64);
+		if (value instanceof Map) {
+			builder.append('{');
+			Iterator<? extends Map.Entry<?, ?>> iterator = ((Map<?, ?>) value).entrySet().iterator();
+			while (iterator.hasNext() && builder.length() < MAX_VALUE_LENGTH) {
+				Map.Entry<?, ?> entry = iterator.next();
+				builder.append(entry.getKey()).append('=').append(entry.getValue());
+				if (iterator.hasNext()) {
+					builder.append(", ");
+				}
+			}
+			builder.append('}');
+		} else if (value instanceof Collection) {
+			builder.append('[');
+			Iterator<?> iterator = ((Collection<?>) value).iterator();
+			while (iterator.hasNext() && builder.length() < MAX_VALUE_LENGTH) {
+				builder.append(iterator.next());
+				if (iterator.hasNext()) {
+					builder.append(", ");
+				}
+			}
+			builder.append(']');
+		} else {
+			String text = value.toString();
+			builder.append(text, 0, Math.min(text.length(), MAX_VALUE_LENGTH + 1));
+		}
+		if (builder.length() > MAX_VALUE_LENGTH) {
+			builder.setLength(MAX_VALUE_LENGTH);
+			builder.append("....");
+		}
+		return builder.toString();
+	}
+}
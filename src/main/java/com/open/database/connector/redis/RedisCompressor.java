@@ -0,0 +1,353 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * TODO redis value的透明压缩
+ *
+ * 超过threshold字节的value使用Deflater(默认BEST_SPEED)压缩，压缩后的格式为：
+ *
+ * <pre>
+ * 0xFF 'R' 'Z' 0x01 | 原始长度(4字节，大端) | raw deflate数据
+ * </pre>
+ *
+ * 0xFF不会出现在合法的UTF-8文本中，因此读取时只需检查头部即可区分压缩值和原有的未压缩字符串，开启压缩前写入的数据、
+ * 未开启压缩的实例都可以正常读写。压缩收益不足10%时按原样写入；二进制value恰好以该头部开头时不论大小都压缩，保证读取时不会误判。
+ *
+ * Deflater/Inflater按线程复用，避免每次调用分配本地内存。
+ *
+ */
+public class RedisCompressor implements RedisCompressorMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisCompressor.class);
+
+	/** JMX注册名 */
+	public static final String OBJECT_NAME = "com.sinosafe.macaw.database.connector.redis:type=RedisCompressor";
+
+	/** 默认压缩阈值：4KB */
+	public static final int DEFAULT_THRESHOLD = 4096;
+
+	/** 不压缩，只解压读取到的压缩值 */
+	public static final int NEVER = Integer.MAX_VALUE;
+
+	static final byte[] MAGIC = { (byte) 0xFF, 'R', 'Z', 0x01 };
+
+	static final int HEADER_LENGTH = MAGIC.length + 4;
+
+	/** 单个value解压后的最大长度，防止损坏的头部导致分配过大的数组 */
+	static final int MAX_UNCOMPRESSED_LENGTH = 512 * 1024 * 1024;
+
+	private final int threshold;
+
+	private final int level;
+
+	private final ThreadLocal<Deflater> deflater;
+
+	private final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>() {
+		@Override
+		protected Inflater initialValue() {
+			return new Inflater(true);
+		}
+	};
+
+	private final ThreadLocal<byte[]> buffer = new ThreadLocal<byte[]>();
+
+	private final LongAdder compressed = new LongAdder();
+
+	private final LongAdder incompressible = new LongAdder();
+
+	private final LongAdder bytesBefore = new LongAdder();
+
+	private final LongAdder bytesAfter = new LongAdder();
+
+	private final LongAdder compressNanos = new LongAdder();
+
+	private final LongAdder decompressed = new LongAdder();
+
+	private final LongAdder decompressNanos = new LongAdder();
+
+	private ObjectName registeredName;
+
+	/**
+	 * 使用默认阈值和Deflater.BEST_SPEED
+	 */
+	public RedisCompressor() {
+		this(DEFAULT_THRESHOLD, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * @param threshold
+	 *            超过该字节数的value才压缩，NEVER表示不压缩
+	 * @param level
+	 *            Deflater压缩级别，1~9，越大压缩率越高、越慢
+	 */
+	public RedisCompressor(int threshold, final int level) {
+		if (threshold <= HEADER_LENGTH) {
+			throw new IllegalArgumentException("threshold must be greater than " + HEADER_LENGTH);
+		}
+		if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("level must be between 1 and 9");
+		}
+		this.threshold = threshold;
+		this.level = level;
+		this.deflater = new ThreadLocal<Deflater>() {
+			@Override
+			protected Deflater initialValue() {
+				return new Deflater(level, true);
+			}
+		};
+	}
+
+	/**
+	 * 不压缩、只解压读取到的压缩值的实例
+	 */
+	public static RedisCompressor decompressOnly() {
+		return new RedisCompressor(NEVER, Deflater.BEST_SPEED);
+	}
+
+	/**
+	 * 注册JMX
+	 */
+	public synchronized void start() {
+		start(RedisClusterContext.getDefault());
+	}
+
+	/**
+	 * 以context集群的命名空间注册JMX，非默认集群的注册名追加",cluster=名称"
+	 */
+	public synchronized void start(RedisClusterContext context) {
+		if (null != registeredName) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName(context.objectName(OBJECT_NAME));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (Exception e) {
+			logger.warn("RedisCompressor 注册JMX失败。", e);
+		}
+	}
+
+	/**
+	 * 注销JMX
+	 */
+	@Override
+	public synchronized void close() {
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisCompressor 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+	}
+
+	/**
+	 * 字符数已经能确定不会达到阈值时返回false，用于跳过字符串的UTF-8编码
+	 */
+	public boolean mayCompress(String value) {
+		// UTF-8下每个字符最多3个字节(代理对4个字节对应2个字符)
+		return NEVER != threshold && null != value && (long) value.length() * 3 >= threshold;
+	}
+
+	/**
+	 * 超过阈值时压缩，否则(或压缩收益不足时)原样返回，写入任何二进制value前都需要调用
+	 *
+	 * @param raw
+	 * @return
+	 */
+	public byte[] compress(byte[] raw) {
+		boolean ambiguous = isCompressed(raw);
+		if (raw.length < threshold && !ambiguous) {
+			return raw;
+		}
+		long start = System.nanoTime();
+		Deflater deflater = this.deflater.get();
+		// 压缩后超过原长度的90%就不再继续，与头部冲突的value必须压缩，按deflate最坏情况预留空间
+		int limit = ambiguous ? HEADER_LENGTH + raw.length + (raw.length >> 10) + 64 : raw.length - raw.length / 10;
+		byte[] out = buffer.get();
+		if (null == out || out.length < limit) {
+			out = new byte[limit];
+			if (limit <= RedisCodecs.MAX_RETAINED_BUFFER) {
+				buffer.set(out);
+			}
+		}
+		System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+		writeInt(out, MAGIC.length, raw.length);
+		int length = HEADER_LENGTH;
+		try {
+			deflater.setInput(raw);
+			deflater.finish();
+			while (!deflater.finished() && length < limit) {
+				length += deflater.deflate(out, length, limit - length);
+			}
+			boolean finished = deflater.finished();
+			compressNanos.add(System.nanoTime() - start);
+			if (!finished) {
+				incompressible.increment();
+				return raw;
+			}
+		} finally {
+			deflater.reset();
+		}
+		compressed.increment();
+		bytesBefore.add(raw.length);
+		bytesAfter.add(length);
+		return Arrays.copyOf(out, length);
+	}
+
+	/**
+	 * 压缩值解压后返回，未压缩的值原样返回
+	 *
+	 * @param data
+	 *            redis返回的value，可为null
+	 * @return
+	 */
+	public byte[] decompress(byte[] data) {
+		if (!isCompressed(data)) {
+			return data;
+		}
+		long start = System.nanoTime();
+		int length = readInt(data, MAGIC.length);
+		if (length < 0 || length > MAX_UNCOMPRESSED_LENGTH) {
+			throw new JedisDataException("Corrupted compressed redis value: length " + length);
+		}
+		byte[] raw = new byte[length];
+		Inflater inflater = this.inflater.get();
+		try {
+			inflater.setInput(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+			int read = 0;
+			while (read < length && !inflater.finished()) {
+				int n = inflater.inflate(raw, read, length - read);
+				if (0 == n && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				read += n;
+			}
+			if (read != length) {
+				throw new JedisDataException(
+						"Corrupted compressed redis value: expected " + length + " bytes, got " + read);
+			}
+		} catch (DataFormatException e) {
+			throw new JedisDataException("Corrupted compressed redis value", e);
+		} finally {
+			inflater.reset();
+		}
+		decompressed.increment();
+		decompressNanos.add(System.nanoTime() - start);
+		return raw;
+	}
+
+	/**
+	 * 是否带有压缩头部
+	 */
+	public static boolean isCompressed(byte[] data) {
+		if (null == data || data.length < HEADER_LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (data[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16 | (bytes[offset + 2] & 0xFF) << 8
+				| (bytes[offset + 3] & 0xFF);
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	@Override
+	public int getThreshold() {
+		return threshold;
+	}
+
+	@Override
+	public long getCompressedCount() {
+		return compressed.sum();
+	}
+
+	@Override
+	public long getIncompressibleCount() {
+		return incompressible.sum();
+	}
+
+	@Override
+	public long getBytesBeforeCompression() {
+		return bytesBefore.sum();
+	}
+
+	@Override
+	public long getBytesAfterCompression() {
+		return bytesAfter.sum();
+	}
+
+	@Override
+	public double getCompressionRatio() {
+		long before = bytesBefore.sum();
+		return 0 == before ? 1 : (double) bytesAfter.sum() / before;
+	}
+
+	@Override
+	public long getCompressMicros() {
+		return compressNanos.sum() / 1000;
+	}
+
+	@Override
+	public long getDecompressedCount() {
+		return decompressed.sum();
+	}
+
+	@Override
+	public long getDecompressMicros() {
+		return decompressNanos.sum() / 1000;
+	}
+
+	@Override
+	public void reset() {
+		compressed.reset();
+		incompressible.reset();
+		bytesBefore.reset();
+		bytesAfter.reset();
+		compressNanos.reset();
+		decompressed.reset();
+		decompressNanos.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "RedisCompressor [threshold=" + threshold + ", level=" + level + ", compressed=" + compressed.sum()
+				+ ", ratio=" + getCompressionRatio() + "]";
+	}
+}
@@ -0,0 +1,55 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO redis value压缩统计的JMX接口，注册名为RedisCompressor.OBJECT_NAME
+ *
+ */
+public interface RedisCompressorMXBean {
+
+	/**
+	 * 压缩阈值，单位：字节
+	 */
+	int getThreshold();
+
+	/**
+	 * 压缩后写入的value个数
+	 */
+	long getCompressedCount();
+
+	/**
+	 * 超过阈值但压缩收益不足、按原样写入的value个数
+	 */
+	long getIncompressibleCount();
+
+	/**
+	 * 压缩前的总字节数
+	 */
+	long getBytesBeforeCompression();
+
+	/**
+	 * 压缩后的总字节数(含头部)
+	 */
+	long getBytesAfterCompression();
+
+	/**
+	 * 压缩后/压缩前，越小越好，没有压缩过时为1
+	 */
+	double getCompressionRatio();
+
+	/**
+	 * 累计压缩耗时，单位：微秒，包含压缩收益不足的value
+	 */
+	long getCompressMicros();
+
+	/**
+	 * 读取时解压的value个数
+	 */
+	long getDecompressedCount();
+
+	/**
+	 * 累计解压耗时，单位：微秒
+	 */
+	long getDecompressMicros();
+
+	void reset();
+}
@@ -1,5 +1,7 @@
 package com.sinosafe.macaw.database.connector.redis;
 
+import java.util.Properties;
+
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,11 +17,27 @@ public class RedisConfigInit {
 	
 	
 	public RedisConfigInit(String redisHost,String passWord,String timeOut){
+		this(redisHost,passWord,timeOut,null);
+	}
+	
+	/**
+	 * @param poolConfig 连接池配置，key见RedisPoolConfig，为null时使用默认配置
+	 */
+	public RedisConfigInit(String redisHost,String passWord,String timeOut,Properties poolConfig){
+		this(RedisClusterContext.DEFAULT_NAME,redisHost,passWord,timeOut,poolConfig);
+	}
+	
+	/**
+	 * 初始化指定名称的集群，通过RedisClientUtil.getInstance(name)访问，各集群的连接池和超时互相独立
+	 * @param name 集群名称，见RedisClusterContext
+	 * @param poolConfig 连接池配置，key见RedisPoolConfig，为null时使用默认配置
+	 */
+	public RedisConfigInit(String name,String redisHost,String passWord,String timeOut,Properties poolConfig){
 		if(StringUtils.isNotBlank(redisHost)){
 			int timeOutInt = timeOut!=null&&!"".equals(timeOut)?Integer.parseInt(timeOut):10000;
-			RedisPoolUtil.init(redisHost,passWord,timeOutInt);
+			RedisClusterContext.getInstance(name).init(redisHost,passWord,timeOutInt,RedisPoolConfig.fromProperties(poolConfig));
 		}else{
-			logger.error("严重错误,serious redis setting error,取得Redis properties not exist配置值不存在.");
+			logger.error("严重错误,serious redis setting error,取得Redis properties not exist配置值不存在. cluster:"+name);
 		}
 	}
 }
@@ -0,0 +1,468 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * TODO redis 计数器的本地合并写入
+ *
+ * incr/hIncrCounter只累加到本地的分段计数器中，不访问redis；后台线程每flushIntervalMillis将各计数器的增量取出，
+ * 合并为INCRBY/HINCRBY通过RedisClusterPipeline批量写入，高频计数从每次一个往返降为每个周期每个计数器一条命令。
+ *
+ * 增量的取出是原子的(getAndSet)，每一次累加恰好属于某一次刷新。确认没有执行的命令(redis返回错误、命令未发出、
+ * 连接池用尽)的增量会放回计数器在下一次刷新时重试，并计入getFailedCount()，close()在重试后仍无法写入时记录ERROR日志
+ * (包含每个计数器未写入的增量)并抛出异常。命令发出后连接中断或读超时时无法确认redis是否已执行，为避免重复计数不再重试，
+ * 该增量计入getUnknownCount()并记录ERROR日志(包含key和增量)，由业务按需核对。
+ * 集群对应的RedisClientUtil开启了近端缓存时，写入成功或结果未知的key会失效并广播。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisCounterAggregator counters = new RedisCounterAggregator(1000);
+ * counters.hIncrCounter("stat:20240101", "login", 1);
+ * ...
+ * counters.close();
+ * </pre>
+ *
+ */
+public class RedisCounterAggregator implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisCounterAggregator.class);
+
+	/** 连续多少次刷新没有增量后移除计数器，hash的计数器全部移除后再移除该hash，避免key持续变化时内存增长 */
+	static final int RETIRE_AFTER_IDLE_FLUSHES = 3;
+
+	/** close()时最多刷新的次数 */
+	static final int CLOSE_FLUSH_ATTEMPTS = 3;
+
+	private final RedisClusterContext context;
+
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+	private final ConcurrentMap<String, FieldCounters> hashCounters = new ConcurrentHashMap<String, FieldCounters>();
+
+	private final ScheduledExecutorService timer;
+
+	private final AtomicLong flushes = new AtomicLong();
+
+	private final AtomicLong written = new AtomicLong();
+
+	private final AtomicLong failures = new AtomicLong();
+
+	private final AtomicLong unknowns = new AtomicLong();
+
+	private volatile boolean closed;
+
+	/**
+	 * @param flushIntervalMillis
+	 *            刷新间隔，单位：毫秒，即计数在redis中最多延迟的时间
+	 */
+	public RedisCounterAggregator(long flushIntervalMillis) {
+		this(RedisClusterContext.getDefault(), flushIntervalMillis);
+	}
+
+	/**
+	 * @param context
+	 *            计数器所在的集群
+	 * @param flushIntervalMillis
+	 *            刷新间隔，单位：毫秒
+	 */
+	public RedisCounterAggregator(RedisClusterContext context, long flushIntervalMillis) {
+		if (flushIntervalMillis <= 0) {
+			throw new IllegalArgumentException("flushIntervalMillis must be positive");
+		}
+		this.context = context;
+		this.timer = Executors.newSingleThreadScheduledExecutor(new RedisThreadFactory("redis-counter-aggregator"));
+		this.timer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (Exception e) {
+					logger.error("RedisCounterAggregator timer flush is failed.Exception:", e);
+				}
+			}
+		}, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 对应RedisClientUtil.incr(String)
+	 */
+	public void incr(String key) {
+		incr(key, 1);
+	}
+
+	/**
+	 * 对应RedisClientUtil.incr(String, long)
+	 */
+	public void incr(String key, long num) {
+		checkOpen();
+		add(counters, key, num);
+	}
+
+	/**
+	 * 对应RedisClientUtil.decr(String)
+	 */
+	public void decr(String key) {
+		incr(key, -1);
+	}
+
+	/**
+	 * 对应RedisClientUtil.hIncrCounter(String, String, long)
+	 */
+	public void hIncrCounter(String key, String field, long i) {
+		checkOpen();
+		addHash(key, field, i);
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("RedisCounterAggregator is closed");
+		}
+	}
+
+	/**
+	 * 累加到计数器；计数器已被刷新线程移除时取回增量，重新累加到新的计数器
+	 */
+	private static void add(ConcurrentMap<String, Counter> map, String name, long delta) {
+		while (0 != delta) {
+			Counter counter = map.get(name);
+			if (null == counter) {
+				Counter created = new Counter();
+				counter = map.putIfAbsent(name, created);
+				if (null == counter) {
+					counter = created;
+				}
+			}
+			counter.add(delta);
+			if (!counter.retired) {
+				return;
+			}
+			delta = counter.drain();
+		}
+	}
+
+	/**
+	 * 累加到hash的计数器；hash已被刷新线程移除时取回增量，重新累加到新的hash
+	 */
+	private void addHash(String key, String field, long delta) {
+		while (0 != delta) {
+			FieldCounters fields = hashCounters.get(key);
+			if (null == fields) {
+				FieldCounters created = new FieldCounters();
+				fields = hashCounters.putIfAbsent(key, created);
+				if (null == fields) {
+					fields = created;
+				}
+			}
+			add(fields, field, delta);
+			if (!fields.retired) {
+				return;
+			}
+			delta = reclaim(fields, field);
+		}
+	}
+
+	/**
+	 * 从已移除的hash中取回计数器的增量；计数器已被其他线程取走时返回0，其增量由取走的线程负责
+	 */
+	private static long reclaim(FieldCounters fields, String field) {
+		Counter counter = fields.get(field);
+		if (null == counter || !fields.remove(field, counter)) {
+			return 0;
+		}
+		counter.retired = true;
+		return counter.drain();
+	}
+
+	/**
+	 * 在当前线程同步刷新所有计数器的增量
+	 *
+	 * @return 写入redis的计数器个数
+	 * @throws JedisException
+	 *             有计数器写入失败时抛出第一个失败原因，确认未执行的增量已放回计数器，结果未知的增量已丢弃
+	 */
+	public synchronized int flush() {
+		List<RedisBatchCommand<Long>> commands = new ArrayList<RedisBatchCommand<Long>>();
+		List<Pending> pending = new ArrayList<Pending>();
+		collect(counters, null, commands, pending);
+		for (Map.Entry<String, FieldCounters> entry : hashCounters.entrySet()) {
+			String key = entry.getKey();
+			FieldCounters fields = entry.getValue();
+			collect(fields, key, commands, pending);
+			if (!fields.isEmpty() || !hashCounters.remove(key, fields)) {
+				continue;
+			}
+			// 先标记再检查一次，标记前写入线程放入的计数器在这里取回，标记后的由写入线程自己取回
+			fields.retired = true;
+			for (String field : fields.keySet()) {
+				addHash(key, field, reclaim(fields, field));
+			}
+		}
+		if (commands.isEmpty()) {
+			return 0;
+		}
+		flushes.incrementAndGet();
+		List<Object> replies;
+		JedisCluster cluster = context.getJedisCluster();
+		try {
+			// 只在按slot分组时抛出异常，此时命令还没有发出
+			replies = RedisClusterPipeline.execute(cluster, commands);
+		} catch (RuntimeException e) {
+			for (Pending restore : pending) {
+				restore.requeue();
+			}
+			failures.addAndGet(commands.size());
+			throw e;
+		}
+		RedisNearCache nearCache = RedisClientUtil.nearCacheOf(context);
+		JedisException error = null;
+		int count = 0;
+		for (int i = 0; i < replies.size(); i++) {
+			Object reply = replies.get(i);
+			if (reply instanceof JedisException) {
+				if (null == error) {
+					error = (JedisException) reply;
+				}
+				if (notExecuted((JedisException) reply)) {
+					pending.get(i).requeue();
+					failures.incrementAndGet();
+					logger.warn("RedisCounterAggregator.flush() {} 写入失败，增量保留到下次刷新:{}", pending.get(i), reply);
+					continue;
+				}
+				unknowns.incrementAndGet();
+				logger.error("RedisCounterAggregator.flush() {} 写入结果未知，可能已执行，增量不再重试:{}", pending.get(i), reply);
+			} else {
+				count++;
+			}
+			if (null != nearCache) {
+				nearCache.publishInvalidation(cluster, pending.get(i).key());
+			}
+		}
+		written.addAndGet(count);
+		if (null != error) {
+			throw error;
+		}
+		return count;
+	}
+
+	/**
+	 * 确认命令没有在redis上执行：redis返回错误(包括重定向次数用完)、命令未发出或连接池用尽
+	 */
+	static boolean notExecuted(JedisException e) {
+		return e instanceof JedisDataException || e instanceof RedisClusterPipeline.NotSentException
+				|| RedisPoolExhaustedException.isExhausted(e);
+	}
+
+	/**
+	 * 取出一组计数器的增量并生成命令，连续空闲的计数器从map中移除
+	 */
+	private void collect(ConcurrentMap<String, Counter> map, String hashKey,
+			List<RedisBatchCommand<Long>> commands, List<Pending> pending) {
+		for (Map.Entry<String, Counter> entry : map.entrySet()) {
+			String name = entry.getKey();
+			Counter counter = entry.getValue();
+			long delta = counter.drain();
+			if (0 == delta) {
+				if (++counter.idleFlushes < RETIRE_AFTER_IDLE_FLUSHES || !map.remove(name, counter)) {
+					continue;
+				}
+				// 先标记再取一次，标记前的累加在这里取到，标记后的累加由写入线程自己取回
+				counter.retired = true;
+				delta = counter.drain();
+				if (0 == delta) {
+					continue;
+				}
+			} else {
+				counter.idleFlushes = 0;
+			}
+			commands.add(null == hashKey ? RedisBatchCommand.incrBy(name, delta)
+					: RedisBatchCommand.hincrBy(hashKey, name, delta));
+			pending.add(new Pending(hashKey, name, delta));
+		}
+	}
+
+	/**
+	 * 停止定时刷新并写入剩余的增量，多次重试仍失败时抛出异常
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		timer.shutdown();
+		try {
+			timer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		RuntimeException error = null;
+		for (int attempt = 0; attempt < CLOSE_FLUSH_ATTEMPTS; attempt++) {
+			try {
+				flush();
+				return;
+			} catch (RuntimeException e) {
+				error = e;
+			}
+		}
+		logger.error("RedisCounterAggregator.close() 增量写入失败，以下计数未写入redis:{}", describePending());
+		throw error;
+	}
+
+	private synchronized String describePending() {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+			builder.append(' ').append(entry.getKey()).append('=').append(entry.getValue().sum());
+		}
+		for (Map.Entry<String, FieldCounters> entry : hashCounters.entrySet()) {
+			for (Map.Entry<String, Counter> field : entry.getValue().entrySet()) {
+				builder.append(' ').append(entry.getKey()).append('.').append(field.getKey()).append('=')
+						.append(field.getValue().sum());
+			}
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * 执行过的刷新次数(有增量时)
+	 */
+	public long getFlushCount() {
+		return flushes.get();
+	}
+
+	/**
+	 * 写入成功的INCRBY/HINCRBY命令数
+	 */
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	/**
+	 * 写入失败、增量被放回的命令数
+	 */
+	public long getFailedCount() {
+		return failures.get();
+	}
+
+	/**
+	 * 命令发出后连接异常、无法确认是否已执行而丢弃增量的命令数
+	 */
+	public long getUnknownCount() {
+		return unknowns.get();
+	}
+
+	/**
+	 * 一次刷新中取出的增量，写入失败时放回计数器
+	 */
+	private final class Pending {
+
+		final String hashKey;
+
+		final String name;
+
+		final long delta;
+
+		Pending(String hashKey, String name, long delta) {
+			this.hashKey = hashKey;
+			this.name = name;
+			this.delta = delta;
+		}
+
+		/**
+		 * 写入的redis键
+		 */
+		String key() {
+			return null == hashKey ? name : hashKey;
+		}
+
+		void requeue() {
+			if (null == hashKey) {
+				add(counters, name, delta);
+			} else {
+				addHash(hashKey, name, delta);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return (null == hashKey ? "key:" + name : "key:" + hashKey + " field:" + name) + " delta:" + delta;
+		}
+	}
+
+	/**
+	 * 一个hash的field计数器，刷新线程移除空的hash后标记为retired，写入线程据此把增量转移到新的hash
+	 */
+	@SuppressWarnings("serial")
+	static final class FieldCounters extends ConcurrentHashMap<String, Counter> {
+
+		volatile boolean retired;
+	}
+
+	/**
+	 * 分段计数器：每个线程按id散列到不同的槽，槽之间间隔一个缓存行，避免热点计数器上的CAS竞争
+	 */
+	static final class Counter {
+
+		private static final int STRIPES = stripes();
+
+		/** 8个long = 64字节 */
+		private static final int SPACING = 8;
+
+		private final AtomicLongArray cells = new AtomicLongArray(STRIPES * SPACING);
+
+		volatile boolean retired;
+
+		/** 只由刷新线程访问 */
+		int idleFlushes;
+
+		private static int stripes() {
+			int stripes = 1;
+			while (stripes < Runtime.getRuntime().availableProcessors() && stripes < 64) {
+				stripes <<= 1;
+			}
+			return stripes;
+		}
+
+		void add(long delta) {
+			long id = Thread.currentThread().getId();
+			int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+			cells.getAndAdd(((hash >>> 16) & (STRIPES - 1)) * SPACING, delta);
+		}
+
+		/**
+		 * 原子的取出并清零各槽，不会丢失并发的累加
+		 */
+		long drain() {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				sum += cells.getAndSet(i * SPACING, 0);
+			}
+			return sum;
+		}
+
+		long sum() {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				sum += cells.get(i * SPACING);
+			}
+			return sum;
+		}
+	}
+}
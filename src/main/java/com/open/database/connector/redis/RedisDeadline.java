@@ -0,0 +1,68 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TODO 单次调用的截止时间，通过RedisClientUtil.withDeadline()作用于当前线程的redis访问
+ *
+ * 截止时间是绝对时间点(System.nanoTime)，可以在入口处按请求的总预算创建后传给下游方法或其他线程，
+ * 各层共用同一个预算，而不是每层各自重新计时。
+ *
+ * <pre>
+ * RedisDeadline deadline = RedisDeadline.afterMillis(50);
+ * String value = util.withDeadline(deadline, () -&gt; util.get(key));
+ * </pre>
+ *
+ */
+public final class RedisDeadline {
+
+	private final long deadlineNanos;
+
+	private RedisDeadline(long deadlineNanos) {
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	/**
+	 * 从现在起timeout之后截止
+	 */
+	public static RedisDeadline after(long timeout, TimeUnit unit) {
+		if (timeout < 0) {
+			throw new IllegalArgumentException("timeout must not be negative");
+		}
+		return new RedisDeadline(System.nanoTime() + unit.toNanos(timeout));
+	}
+
+	/**
+	 * 从现在起timeoutMillis毫秒之后截止
+	 */
+	public static RedisDeadline afterMillis(long timeoutMillis) {
+		return after(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 剩余时间，已截止时为0
+	 */
+	public long remaining(TimeUnit unit) {
+		return unit.convert(remainingNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	public long remainingNanos() {
+		return Math.max(0, deadlineNanos - System.nanoTime());
+	}
+
+	public boolean isExpired() {
+		return deadlineNanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * 两个截止时间中较早的一个
+	 */
+	public RedisDeadline earlier(RedisDeadline other) {
+		return null == other || deadlineNanos - other.deadlineNanos <= 0 ? this : other;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisDeadline [remainingMicros=" + remaining(TimeUnit.MICROSECONDS) + "]";
+	}
+}
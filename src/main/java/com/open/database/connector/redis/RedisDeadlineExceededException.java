@@ -0,0 +1,18 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * TODO 在RedisClientUtil.withDeadline()指定的截止时间内没有得到redis的响应
+ *
+ * 继承JedisConnectionException，原有按连接异常处理的调用方不受影响。命令可能已经发送，写命令是否生效不确定。
+ *
+ */
+public class RedisDeadlineExceededException extends JedisConnectionException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RedisDeadlineExceededException(String message) {
+		super(message);
+	}
+}
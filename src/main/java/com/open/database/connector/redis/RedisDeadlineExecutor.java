@@ -0,0 +1,109 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * TODO 带截止时间的redis调用和对冲读取使用的执行器
+ *
+ * Jedis的socket超时是连接级别的，无法按调用设置，因此有截止时间的调用在执行器线程上访问redis，调用线程最多等到截止时间。
+ * 超时后调用线程立即返回，执行器线程上的命令继续执行到完成或socket超时，期间仍占用一个连接。
+ * JDK 21及以上使用虚拟线程，低版本JDK使用有界线程池。
+ *
+ */
+final class RedisDeadlineExecutor {
+
+	/** 线程池模式的最大线程数 */
+	static final int MAX_THREADS = 256;
+
+	private RedisDeadlineExecutor() {
+	}
+
+	/**
+	 * 首次使用时创建
+	 */
+	private static final class Holder {
+
+		static final ExecutorService EXECUTOR = create();
+
+		private static ExecutorService create() {
+			ExecutorService virtual = AsyncRedisClient.newVirtualThreadExecutor();
+			if (null != virtual) {
+				return virtual;
+			}
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(MAX_THREADS * 16), new RedisThreadFactory("redis-deadline"),
+					new ThreadPoolExecutor.AbortPolicy());
+			executor.allowCoreThreadTimeOut(true);
+			return executor;
+		}
+	}
+
+	/**
+	 * 在截止时间内执行call，截止时间已过时不再发送命令
+	 *
+	 * @throws RedisDeadlineExceededException
+	 *             截止时间内没有完成
+	 */
+	static <T> T execute(Supplier<T> call, RedisDeadline deadline) {
+		if (deadline.isExpired()) {
+			throw new RedisDeadlineExceededException("Deadline exceeded before the redis call was sent");
+		}
+		return await(submit(call), deadline);
+	}
+
+	/**
+	 * 在执行器线程上执行call
+	 */
+	static <T> CompletableFuture<T> submit(Supplier<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		try {
+			Holder.EXECUTOR.execute(() -> {
+				try {
+					future.complete(call.get());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			throw new JedisConnectionException("Too many redis calls with deadline in progress", e);
+		}
+		return future;
+	}
+
+	/**
+	 * 等待结果，deadline为null时一直等待，call抛出的RuntimeException原样抛出
+	 *
+	 * @throws RedisDeadlineExceededException
+	 *             截止时间内没有完成
+	 */
+	static <T> T await(CompletableFuture<T> future, RedisDeadline deadline) {
+		try {
+			return null == deadline ? future.get() : future.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			throw new RedisDeadlineExceededException("Redis call did not complete within the deadline");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new JedisException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JedisException("Interrupted while waiting for redis", e);
+		}
+	}
+}
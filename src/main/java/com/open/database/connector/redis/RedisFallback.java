@@ -0,0 +1,27 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO 读命令被RedisCircuitBreaker拒绝时的降级结果，通过RedisCircuitBreaker.setFallback()按命令注册
+ *
+ * <pre>
+ * breaker.setFallback("get", (key, field, cause) -&gt; localDefaults.get(key));
+ * </pre>
+ *
+ * @param <T>
+ *            与RedisClientUtil对应方法的返回值类型一致
+ */
+public interface RedisFallback<T> {
+
+	/**
+	 * 返回替代结果，抛出异常时调用方收到该异常；降级结果不写入近端缓存
+	 *
+	 * @param key
+	 *            redis键
+	 * @param field
+	 *            getRedisMapValue、hexists的hash字段，其他命令为null
+	 * @param cause
+	 *            拒绝原因
+	 * @return 替代结果
+	 */
+	T fallback(String key, String field, RedisCallRejectedException cause);
+}
@@ -0,0 +1,115 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TODO Count-Min Sketch 频率估计
+ *
+ * 固定内存估计key的访问频率，计数达到sampleSize后所有计数减半，使频率随时间衰减。
+ * 线程安全，计数使用CAS更新，多个线程可以不加锁并发记录；减半与并发的记录交错时个别计数可能相差一次。
+ *
+ */
+class RedisFrequencySketch {
+
+	private static final int DEPTH = 4;
+
+	private static final int[] SEEDS = { 0x97cb3127, 0xb5f6cf0f, 0x85ebca6b, 0xc2b2ae35 };
+
+	private final AtomicIntegerArray table;
+
+	private final int mask;
+
+	private final int maxCount;
+
+	private final long sampleSize;
+
+	private final AtomicLong additions = new AtomicLong();
+
+	/**
+	 * @param expectedKeys
+	 *            预计需要区分的key数量，决定sketch宽度
+	 * @param maxCount
+	 *            单个计数的上限
+	 */
+	RedisFrequencySketch(int expectedKeys, int maxCount) {
+		int width = Integer.highestOneBit(Math.max(16, expectedKeys) - 1) << 1;
+		this.table = new AtomicIntegerArray(width * DEPTH);
+		this.mask = width - 1;
+		this.maxCount = maxCount;
+		this.sampleSize = 10L * Math.max(16, expectedKeys);
+	}
+
+	/**
+	 * 记录一次访问，返回记录后的估计频率
+	 */
+	int increment(Object key) {
+		int hash = spread(key.hashCode());
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			min = Math.min(min, incrementAt(indexOf(hash, i)));
+		}
+		long count = additions.incrementAndGet();
+		// 只有把计数从count改为一半的线程执行减半，并发到达sampleSize时不会重复减半
+		if (count >= sampleSize && additions.compareAndSet(count, count >>> 1)) {
+			halve();
+		}
+		return min;
+	}
+
+	private int incrementAt(int index) {
+		while (true) {
+			int count = table.get(index);
+			if (count >= maxCount) {
+				return count;
+			}
+			if (table.compareAndSet(index, count, count + 1)) {
+				return count + 1;
+			}
+		}
+	}
+
+	/**
+	 * 估计频率
+	 */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < DEPTH; i++) {
+			min = Math.min(min, table.get(indexOf(hash, i)));
+		}
+		return min;
+	}
+
+	private void halve() {
+		for (int i = 0; i < table.length(); i++) {
+			int count;
+			do {
+				count = table.get(i);
+			} while (!table.compareAndSet(i, count, count >>> 1));
+		}
+	}
+
+	/**
+	 * 清空所有计数
+	 */
+	void clear() {
+		for (int i = 0; i < table.length(); i++) {
+			table.set(i, 0);
+		}
+		additions.set(0);
+	}
+
+	private int indexOf(int hash, int depth) {
+		int h = (hash ^ SEEDS[depth]) * SEEDS[(depth + 1) & 3];
+		h ^= h >>> 16;
+		return depth * (mask + 1) + (h & mask);
+	}
+
+	private static int spread(int hash) {
+		hash ^= hash >>> 17;
+		hash *= 0xed5ad4bb;
+		hash ^= hash >>> 11;
+		return hash;
+	}
+}
@@ -0,0 +1,361 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * TODO 对冲读取(hedged read)，降低读请求的长尾延迟
+ *
+ * 读请求在执行器线程上发出后，如果超过对冲延迟仍未返回，再向另一个节点发出同样的读取，取先成功返回的结果：
+ * 原请求读master时对冲请求读replica，原请求按读策略读replica时对冲请求读master。
+ * 对冲延迟按命令统计，取上一个windowSeconds窗口内读取耗时的percentile分位(不低于minDelayMicros)，
+ * 窗口内样本不足时不对冲；每个窗口内对冲请求数不超过读请求数的maxHedgePercent%，避免节点整体变慢时成倍放大负载。
+ * 先返回的结果被采用，另一个请求不会取消，会继续执行完成。
+ * 开始对冲后每个读请求都要提交到执行器线程、调用线程等待结果，比直接读取多一次线程切换(通常为数十微秒)，
+ * 只适合长尾延迟远大于此的场景；执行器已满拒绝提交时，没有截止时间的读取在调用线程直接执行，不对冲。
+ *
+ * 需要同时开启replica读路由(RedisClientUtil.setReplicaRouter)，对冲到replica的读取可能读到落后不超过
+ * replica路由延迟阈值的数据；用withReadPreference(RedisReadPreference.MASTER, ...)显式读master的请求不对冲。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisClientUtil.getInstance().setReplicaRouter(new RedisReplicaRouter(RedisReadPreference.MASTER));
+ * RedisClientUtil.getInstance().setHedgedReads(new RedisHedgedReads());
+ * </pre>
+ *
+ */
+public class RedisHedgedReads implements RedisHedgedReadsMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisHedgedReads.class);
+
+	/** JMX注册名 */
+	public static final String OBJECT_NAME = "com.sinosafe.macaw.database.connector.redis:type=RedisHedgedReads";
+
+	public static final double DEFAULT_PERCENTILE = 95;
+
+	public static final long DEFAULT_MIN_DELAY_MICROS = 500;
+
+	public static final int DEFAULT_MAX_HEDGE_PERCENT = 10;
+
+	public static final int DEFAULT_WINDOW_SECONDS = 10;
+
+	/** 窗口内至少有多少个样本才计算对冲延迟 */
+	static final int MIN_SAMPLES = 100;
+
+	private volatile double percentile = DEFAULT_PERCENTILE;
+
+	private volatile long minDelayMicros = DEFAULT_MIN_DELAY_MICROS;
+
+	private volatile int maxHedgePercent = DEFAULT_MAX_HEDGE_PERCENT;
+
+	private volatile int windowSeconds = DEFAULT_WINDOW_SECONDS;
+
+	private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<String, Window>();
+
+	private final LongAdder requests = new LongAdder();
+
+	private final LongAdder hedges = new LongAdder();
+
+	private final LongAdder hedgeWins = new LongAdder();
+
+	private ObjectName registeredName;
+
+	/**
+	 * 注册JMX
+	 */
+	public synchronized void start() {
+		start(RedisClusterContext.getDefault());
+	}
+
+	/**
+	 * 以context集群的命名空间注册JMX，非默认集群的注册名追加",cluster=名称"
+	 */
+	public synchronized void start(RedisClusterContext context) {
+		try {
+			ObjectName name = new ObjectName(context.objectName(OBJECT_NAME));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (Exception e) {
+			logger.warn("RedisHedgedReads 注册JMX失败。", e);
+		}
+	}
+
+	/**
+	 * 注销JMX
+	 */
+	@Override
+	public synchronized void close() {
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisHedgedReads 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+	}
+
+	/**
+	 * 执行读取，超过对冲延迟未返回时执行hedge，返回先成功的结果；两者都失败时抛出primary的异常
+	 *
+	 * @param command
+	 *            命令名称，按命令统计对冲延迟
+	 * @param primary
+	 *            原请求
+	 * @param hedge
+	 *            对冲请求
+	 * @param deadline
+	 *            截止时间，null表示不限
+	 * @return 读取结果
+	 */
+	<T> T execute(String command, Supplier<T> primary, Supplier<T> hedge, RedisDeadline deadline) {
+		Window window = window(command);
+		window.rotateIfDue(System.currentTimeMillis());
+		window.requests.increment();
+		requests.increment();
+		Supplier<T> timed = () -> {
+			long start = System.nanoTime();
+			try {
+				return primary.get();
+			} finally {
+				window.histogram.record(Math.min((System.nanoTime() - start) / 1000, RedisLatencyHistogram.MAX_VALUE));
+			}
+		};
+		long delayMicros = window.delayMicros;
+		if (delayMicros < 0) {
+			return null == deadline ? timed.get() : RedisDeadlineExecutor.execute(timed, deadline);
+		}
+		if (null != deadline && deadline.isExpired()) {
+			throw new RedisDeadlineExceededException("Deadline exceeded before the redis call was sent");
+		}
+		CompletableFuture<T> first;
+		try {
+			first = RedisDeadlineExecutor.submit(timed);
+		} catch (JedisConnectionException e) {
+			// 执行器已满：与不对冲时一样，没有截止时间的读取在当前线程执行，有截止时间的读取无法保证截止时间，直接失败
+			if (null != deadline) {
+				throw e;
+			}
+			return timed.get();
+		}
+		long wait = TimeUnit.MICROSECONDS.toNanos(delayMicros);
+		if (null != deadline) {
+			wait = Math.min(wait, deadline.remainingNanos());
+		}
+		try {
+			first.get(wait, TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			return hedge(window, first, hedge, deadline);
+		} catch (ExecutionException e) {
+			// 由await抛出原异常
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JedisException("Interrupted while waiting for redis", e);
+		}
+		return RedisDeadlineExecutor.await(first, null);
+	}
+
+	private <T> T hedge(Window window, CompletableFuture<T> first, Supplier<T> hedge, RedisDeadline deadline) {
+		if (null != deadline && deadline.isExpired()) {
+			throw new RedisDeadlineExceededException("Redis call did not complete within the deadline");
+		}
+		if (window.hedges.sum() * 100 >= window.requests.sum() * maxHedgePercent) {
+			return RedisDeadlineExecutor.await(first, deadline);
+		}
+		CompletableFuture<T> second;
+		try {
+			second = RedisDeadlineExecutor.submit(hedge);
+		} catch (JedisConnectionException e) {
+			return RedisDeadlineExecutor.await(first, deadline);
+		}
+		window.hedges.increment();
+		hedges.increment();
+		CompletableFuture<T> winner = new CompletableFuture<T>();
+		AtomicInteger failed = new AtomicInteger();
+		AtomicReference<Throwable> primaryError = new AtomicReference<Throwable>();
+		first.whenComplete((value, error) -> {
+			if (null == error) {
+				winner.complete(value);
+			} else {
+				primaryError.set(error);
+				if (2 == failed.incrementAndGet()) {
+					winner.completeExceptionally(error);
+				}
+			}
+		});
+		second.whenComplete((value, error) -> {
+			if (null == error) {
+				if (winner.complete(value)) {
+					hedgeWins.increment();
+				}
+			} else if (2 == failed.incrementAndGet()) {
+				winner.completeExceptionally(primaryError.get());
+			}
+		});
+		return RedisDeadlineExecutor.await(winner, deadline);
+	}
+
+	private Window window(String command) {
+		Window window = windows.get(command);
+		if (null == window) {
+			Window created = new Window();
+			window = windows.putIfAbsent(command, created);
+			if (null == window) {
+				window = created;
+			}
+		}
+		return window;
+	}
+
+	@Override
+	public double getPercentile() {
+		return percentile;
+	}
+
+	@Override
+	public void setPercentile(double percentile) {
+		if (percentile <= 0 || percentile >= 100) {
+			throw new IllegalArgumentException("percentile must be in (0, 100)");
+		}
+		this.percentile = percentile;
+	}
+
+	@Override
+	public long getMinDelayMicros() {
+		return minDelayMicros;
+	}
+
+	@Override
+	public void setMinDelayMicros(long minDelayMicros) {
+		if (minDelayMicros < 0) {
+			throw new IllegalArgumentException("minDelayMicros must not be negative");
+		}
+		this.minDelayMicros = minDelayMicros;
+	}
+
+	@Override
+	public int getMaxHedgePercent() {
+		return maxHedgePercent;
+	}
+
+	@Override
+	public void setMaxHedgePercent(int maxHedgePercent) {
+		if (maxHedgePercent < 0 || maxHedgePercent > 100) {
+			throw new IllegalArgumentException("maxHedgePercent must be in [0, 100]");
+		}
+		this.maxHedgePercent = maxHedgePercent;
+	}
+
+	@Override
+	public int getWindowSeconds() {
+		return windowSeconds;
+	}
+
+	@Override
+	public void setWindowSeconds(int windowSeconds) {
+		if (windowSeconds <= 0) {
+			throw new IllegalArgumentException("windowSeconds must be positive");
+		}
+		this.windowSeconds = windowSeconds;
+	}
+
+	@Override
+	public Map<String, Long> getHedgeDelays() {
+		Map<String, Long> delays = new TreeMap<String, Long>();
+		for (Map.Entry<String, Window> entry : windows.entrySet()) {
+			delays.put(entry.getKey(), entry.getValue().delayMicros);
+		}
+		return delays;
+	}
+
+	@Override
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	@Override
+	public long getHedgeCount() {
+		return hedges.sum();
+	}
+
+	@Override
+	public long getHedgeWinCount() {
+		return hedgeWins.sum();
+	}
+
+	/**
+	 * 清零计数，不影响已计算的对冲延迟
+	 */
+	@Override
+	public void reset() {
+		requests.reset();
+		hedges.reset();
+		hedgeWins.reset();
+	}
+
+	/**
+	 * 一个命令的耗时分布和对冲比例
+	 */
+	private final class Window {
+
+		final RedisLatencyHistogram histogram = new RedisLatencyHistogram();
+
+		final LongAdder requests = new LongAdder();
+
+		final LongAdder hedges = new LongAdder();
+
+		final AtomicBoolean rotating = new AtomicBoolean();
+
+		/** 上一个窗口计算的对冲延迟，-1表示样本不足 */
+		volatile long delayMicros = -1;
+
+		volatile long rotateAt = System.currentTimeMillis() + windowSeconds * 1000L;
+
+		/**
+		 * 窗口结束时按本窗口的耗时分布更新对冲延迟，并开始新窗口
+		 */
+		void rotateIfDue(long now) {
+			if (now < rotateAt || !rotating.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				RedisLatencyHistogram.Snapshot snapshot = histogram.snapshot();
+				histogram.reset();
+				delayMicros = snapshot.getCount() < MIN_SAMPLES ? -1
+						: Math.max(minDelayMicros, snapshot.getValueAtPercentile(percentile));
+				requests.reset();
+				hedges.reset();
+				rotateAt = now + windowSeconds * 1000L;
+			} finally {
+				rotating.set(false);
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.Map;
+
+/**
+ * TODO 对冲读取的JMX接口，注册名为RedisHedgedReads.OBJECT_NAME
+ *
+ */
+public interface RedisHedgedReadsMXBean {
+
+	/**
+	 * 按该分位的读取耗时作为对冲延迟，默认95
+	 */
+	double getPercentile();
+
+	void setPercentile(double percentile);
+
+	/**
+	 * 对冲延迟的下限，单位：微秒
+	 */
+	long getMinDelayMicros();
+
+	void setMinDelayMicros(long minDelayMicros);
+
+	/**
+	 * 对冲请求数最多占读请求数的百分比，限制额外负载
+	 */
+	int getMaxHedgePercent();
+
+	void setMaxHedgePercent(int maxHedgePercent);
+
+	/**
+	 * 统计耗时分位和对冲比例的窗口，单位：秒
+	 */
+	int getWindowSeconds();
+
+	void setWindowSeconds(int windowSeconds);
+
+	/**
+	 * 各命令当前的对冲延迟，单位：微秒，-1表示样本不足暂不对冲
+	 */
+	Map<String, Long> getHedgeDelays();
+
+	long getRequestCount();
+
+	/**
+	 * 发出的对冲请求数
+	 */
+	long getHedgeCount();
+
+	/**
+	 * 对冲请求先于原请求返回的次数
+	 */
+	long getHedgeWinCount();
+
+	void reset();
+}
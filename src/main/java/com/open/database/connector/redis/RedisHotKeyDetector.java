@@ -0,0 +1,393 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.JedisCluster;
+
+/**
+ * TODO 热点key、热点slot和大key的在线检测
+ *
+ * 作为RedisCommandListener注册到RedisCommandTracer，每条带key的命令计入Count-Min Sketch(RedisFrequencySketch)和
+ * 按slot的计数，估计频率最高的topK个key保存在固定大小的数组中；计数随时间衰减(每sampleSize次减半)，反映的是近期的热点。
+ * RedisClientUtil在mget、getRedisMaps中通过recordKeys()逐个上报批量读取的key，
+ * 在get、getRedisMap、lrange、setMapOnRedis中通过recordSize()上报value大小，保留最大的topK个key。
+ *
+ * 内存固定(sketch + 16384个slot计数 + 2 * topK个条目)，每条命令只做常数次哈希和原子计数，不丢弃样本；
+ * 只有新key进入热点数组或大key数组时才加锁，已在数组中的热点key和低于数组下限的key不加锁，可以在生产环境常开。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisClientUtil.getInstance().setHotKeyDetector(new RedisHotKeyDetector());
+ * ...
+ * List&lt;RedisKeyStats&gt; hotKeys = RedisClientUtil.getInstance().getHotKeyDetector().getHotKeys();
+ * </pre>
+ *
+ */
+public class RedisHotKeyDetector implements RedisCommandListener, RedisHotKeyDetectorMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisHotKeyDetector.class);
+
+	/** JMX注册名 */
+	public static final String OBJECT_NAME = "com.sinosafe.macaw.database.connector.redis:type=RedisHotKeyDetector";
+
+	public static final int DEFAULT_TOP_K = 20;
+
+	public static final int DEFAULT_EXPECTED_KEYS = 10000;
+
+	private static final Comparator<RedisKeyStats> BY_COUNT = Comparator.comparingLong(RedisKeyStats::getCount)
+			.reversed();
+
+	private static final Comparator<RedisKeyStats> BY_SIZE = Comparator.comparingLong(RedisKeyStats::getSize)
+			.reversed();
+
+	private final int topK;
+
+	private final long sampleSize;
+
+	/** 只在替换热点数组、大key数组的条目和reset时持有 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final RedisFrequencySketch sketch;
+
+	private final AtomicIntegerArray slotCounts = new AtomicIntegerArray(JedisCluster.HASHSLOTS);
+
+	private final AtomicReferenceArray<String> hotKeys;
+
+	private final AtomicReferenceArray<String> hotCommands;
+
+	/** 热点数组中最小的估计次数，数组未满时为0，估计次数不超过它的key不加锁直接跳过 */
+	private volatile int hotFloor;
+
+	private final String[] bigKeys;
+
+	private final long[] bigSizes;
+
+	private final String[] bigCommands;
+
+	private final AtomicLong additions = new AtomicLong();
+
+	/** 大key数组中最小的大小，数组未满时为0 */
+	private volatile long bigFloor;
+
+	private final LongAdder sampled = new LongAdder();
+
+	/** 统计的集群名称 */
+	private volatile String cluster = RedisClusterContext.DEFAULT_NAME;
+
+	private ObjectName registeredName;
+
+	public RedisHotKeyDetector() {
+		this(DEFAULT_TOP_K, DEFAULT_EXPECTED_KEYS);
+	}
+
+	/**
+	 * @param topK
+	 *            保留的热点key和大key个数
+	 * @param expectedKeys
+	 *            预计活跃的key数量，决定sketch宽度和衰减周期(10倍)
+	 */
+	public RedisHotKeyDetector(int topK, int expectedKeys) {
+		if (topK <= 0) {
+			throw new IllegalArgumentException("topK must be positive");
+		}
+		this.topK = topK;
+		this.sketch = new RedisFrequencySketch(expectedKeys, Integer.MAX_VALUE);
+		this.sampleSize = 10L * Math.max(16, expectedKeys);
+		this.hotKeys = new AtomicReferenceArray<String>(topK);
+		this.hotCommands = new AtomicReferenceArray<String>(topK);
+		this.bigKeys = new String[topK];
+		this.bigSizes = new long[topK];
+		this.bigCommands = new String[topK];
+	}
+
+	/**
+	 * 注册到RedisCommandTracer并注册JMX，统计默认集群的命令
+	 */
+	public synchronized void start() {
+		start(RedisClusterContext.getDefault());
+	}
+
+	/**
+	 * 注册到RedisCommandTracer并注册JMX，统计context集群的命令，由RedisClientUtil.setHotKeyDetector调用
+	 */
+	public synchronized void start(RedisClusterContext context) {
+		if (null != registeredName) {
+			return;
+		}
+		this.cluster = context.getName();
+		RedisCommandTracer.addListener(this);
+		try {
+			ObjectName name = new ObjectName(context.objectName(OBJECT_NAME));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (Exception e) {
+			logger.warn("RedisHotKeyDetector 注册JMX失败。", e);
+		}
+	}
+
+	/**
+	 * 从RedisCommandTracer移除并注销JMX
+	 */
+	@Override
+	public synchronized void close() {
+		RedisCommandTracer.removeListener(this);
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisHotKeyDetector 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+	}
+
+	@Override
+	public void onCommand(String cluster, String command, String key, long elapsedNanos, Throwable error) {
+		if (this.cluster.equals(cluster)) {
+			onCommand(command, key, elapsedNanos, error);
+		}
+	}
+
+	@Override
+	public void onCommand(String command, String key, long elapsedNanos, Throwable error) {
+		if (null == key || null != error) {
+			return;
+		}
+		record(command, key);
+	}
+
+	/**
+	 * 记录批量读取(mget、getRedisMaps)中的每个key，由RedisClientUtil在命令成功后调用
+	 */
+	public void recordKeys(String command, Collection<String> keys) {
+		for (String key : keys) {
+			if (null != key) {
+				record(command, key);
+			}
+		}
+	}
+
+	private void record(String command, String key) {
+		int count = sketch.increment(key);
+		slotCounts.incrementAndGet(RedisClusterRouter.getSlot(key));
+		offerHot(key, count, command);
+		long total = additions.incrementAndGet();
+		// 与sketch同时减半，slot计数和热点数组下限同步衰减
+		if (total >= sampleSize && additions.compareAndSet(total, total >>> 1)) {
+			for (int i = 0; i < slotCounts.length(); i++) {
+				int slotCount;
+				do {
+					slotCount = slotCounts.get(i);
+				} while (!slotCounts.compareAndSet(i, slotCount, slotCount >>> 1));
+			}
+			hotFloor >>>= 1;
+		}
+		sampled.increment();
+	}
+
+	/**
+	 * 更新热点key数组：已在数组中时只更新命令名称，否则加锁替换估计次数最小且小于count的条目
+	 */
+	private void offerHot(String key, int count, String command) {
+		if (count <= hotFloor) {
+			return;
+		}
+		for (int i = 0; i < topK; i++) {
+			if (key.equals(hotKeys.get(i))) {
+				hotCommands.set(i, command);
+				return;
+			}
+		}
+		lock.lock();
+		try {
+			int min = -1;
+			int minCount = Integer.MAX_VALUE;
+			for (int i = 0; i < topK; i++) {
+				String hotKey = hotKeys.get(i);
+				if (key.equals(hotKey)) {
+					hotCommands.set(i, command);
+					return;
+				}
+				// 按sketch的当前估计比较，数组中的次数不需要随访问更新
+				int hotCount = null == hotKey ? 0 : sketch.frequency(hotKey);
+				if (hotCount < minCount) {
+					min = i;
+					minCount = hotCount;
+				}
+			}
+			if (count > minCount) {
+				hotKeys.set(min, key);
+				hotCommands.set(min, command);
+				updateHotFloor();
+			} else {
+				hotFloor = minCount;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void updateHotFloor() {
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < topK; i++) {
+			String hotKey = hotKeys.get(i);
+			min = Math.min(min, null == hotKey ? 0 : sketch.frequency(hotKey));
+		}
+		hotFloor = min;
+	}
+
+	/**
+	 * 上报观测到的value大小，同一个key保留观测到的最大值
+	 *
+	 * @param command
+	 *            命令名称
+	 * @param key
+	 *            redis键
+	 * @param size
+	 *            字符串为字节数，hash、列表为元素个数
+	 */
+	public void recordSize(String command, String key, long size) {
+		// 绝大多数value都进不了大key数组，不加锁直接跳过
+		if (null == key || size <= bigFloor) {
+			return;
+		}
+		lock.lock();
+		try {
+			int min = 0;
+			for (int i = 0; i < topK; i++) {
+				if (key.equals(bigKeys[i])) {
+					if (size > bigSizes[i]) {
+						bigSizes[i] = size;
+						bigCommands[i] = command;
+						updateBigFloor();
+					}
+					return;
+				}
+				if (bigSizes[i] < bigSizes[min]) {
+					min = i;
+				}
+			}
+			if (size > bigSizes[min]) {
+				bigKeys[min] = key;
+				bigSizes[min] = size;
+				bigCommands[min] = command;
+				updateBigFloor();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void updateBigFloor() {
+		long min = Long.MAX_VALUE;
+		for (long size : bigSizes) {
+			min = Math.min(min, size);
+		}
+		bigFloor = min;
+	}
+
+	@Override
+	public List<RedisKeyStats> getHotKeys() {
+		List<RedisKeyStats> stats = new ArrayList<RedisKeyStats>(topK);
+		for (int i = 0; i < topK; i++) {
+			String hotKey = hotKeys.get(i);
+			if (null != hotKey) {
+				int count = sketch.frequency(hotKey);
+				if (count > 0) {
+					stats.add(new RedisKeyStats(hotKey, RedisClusterRouter.getSlot(hotKey), count, 0,
+							hotCommands.get(i)));
+				}
+			}
+		}
+		stats.sort(BY_COUNT);
+		return stats;
+	}
+
+	@Override
+	public List<RedisKeyStats> getHotSlots() {
+		List<RedisKeyStats> stats = new ArrayList<RedisKeyStats>(topK + 1);
+		for (int slot = 0; slot < slotCounts.length(); slot++) {
+			int count = slotCounts.get(slot);
+			if (0 == count) {
+				continue;
+			}
+			if (stats.size() < topK || count > stats.get(stats.size() - 1).getCount()) {
+				stats.add(new RedisKeyStats(null, slot, count, 0, null));
+				stats.sort(BY_COUNT);
+				if (stats.size() > topK) {
+					stats.remove(stats.size() - 1);
+				}
+			}
+		}
+		return stats;
+	}
+
+	@Override
+	public List<RedisKeyStats> getBigKeys() {
+		List<RedisKeyStats> stats = new ArrayList<RedisKeyStats>(topK);
+		lock.lock();
+		try {
+			for (int i = 0; i < topK; i++) {
+				if (null != bigKeys[i]) {
+					stats.add(new RedisKeyStats(bigKeys[i], RedisClusterRouter.getSlot(bigKeys[i]), 0, bigSizes[i],
+							bigCommands[i]));
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		stats.sort(BY_SIZE);
+		return stats;
+	}
+
+	@Override
+	public long getSampledCount() {
+		return sampled.sum();
+	}
+
+	@Override
+	public void reset() {
+		lock.lock();
+		try {
+			sketch.clear();
+			additions.set(0);
+			hotFloor = 0;
+			bigFloor = 0;
+			for (int i = 0; i < slotCounts.length(); i++) {
+				slotCounts.set(i, 0);
+			}
+			for (int i = 0; i < topK; i++) {
+				hotKeys.set(i, null);
+				hotCommands.set(i, null);
+			}
+			Arrays.fill(bigKeys, null);
+			Arrays.fill(bigSizes, 0);
+			Arrays.fill(bigCommands, null);
+		} finally {
+			lock.unlock();
+		}
+		sampled.reset();
+	}
+}
@@ -0,0 +1,32 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.List;
+
+/**
+ * TODO 热点key和大key检测的JMX接口，注册名为RedisHotKeyDetector.OBJECT_NAME
+ *
+ */
+public interface RedisHotKeyDetectorMXBean {
+
+	/**
+	 * 访问频率最高的key，按估计次数降序
+	 */
+	List<RedisKeyStats> getHotKeys();
+
+	/**
+	 * 访问频率最高的slot，按次数降序
+	 */
+	List<RedisKeyStats> getHotSlots();
+
+	/**
+	 * 观测到的最大的key，按大小降序
+	 */
+	List<RedisKeyStats> getBigKeys();
+
+	/**
+	 * 已记录的命令数
+	 */
+	long getSampledCount();
+
+	void reset();
+}
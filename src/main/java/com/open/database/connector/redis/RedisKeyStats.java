@@ -0,0 +1,69 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * TODO 热点key、大key和热点slot的统计快照
+ *
+ * 同时作为JMX MXBean的返回类型；slot统计的key为null。
+ *
+ */
+public class RedisKeyStats {
+
+	private final String key;
+
+	private final int slot;
+
+	private final long count;
+
+	private final long size;
+
+	private final String command;
+
+	@ConstructorProperties({ "key", "slot", "count", "size", "command" })
+	public RedisKeyStats(String key, int slot, long count, long size, String command) {
+		this.key = key;
+		this.slot = slot;
+		this.count = count;
+		this.size = size;
+		this.command = command;
+	}
+
+	/**
+	 * redis键，slot统计时为null
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	/**
+	 * 估计的访问次数(随时间衰减)，大key统计时为0
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 观测到的最大大小：字符串为字节数，hash、列表为元素个数；热点统计时为0
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * 最近一次访问或观测到该大小的命令
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisKeyStats [key=" + key + ", slot=" + slot + ", count=" + count + ", size=" + size + ", command="
+				+ command + "]";
+	}
+}
@@ -0,0 +1,153 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TODO 无锁的对数线性延迟直方图，单位：微秒
+ *
+ * 与HdrHistogram的分桶方式相同：每个2的幂区间内再等分为SUB_BUCKET_COUNT个桶，相对误差不超过1/SUB_BUCKET_COUNT(约3%)，
+ * 64us以内精确到1us，最大可记录2^37-1us(MAX_VALUE，约38小时)。记录只做一次数组下标计算和一次原子自增，不加锁、不分配对象。
+ *
+ */
+public final class RedisLatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	private static final int MAX_SHIFT = 31;
+
+	/** 可记录的最大值，超过的按该值记录 */
+	public static final long MAX_VALUE = ((long) (2 * SUB_BUCKET_COUNT) << MAX_SHIFT) - 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray((MAX_SHIFT + 2) * SUB_BUCKET_COUNT);
+
+	private final LongAdder total = new LongAdder();
+
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * 记录一次耗时
+	 *
+	 * @param micros
+	 *            耗时，单位：微秒
+	 */
+	public void record(long micros) {
+		long value = micros < 0 ? 0 : Math.min(micros, MAX_VALUE);
+		counts.incrementAndGet(indexOf(value));
+		total.increment();
+		sum.add(value);
+	}
+
+	/**
+	 * 清空所有计数
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++) {
+			counts.set(i, 0);
+		}
+		total.reset();
+		sum.reset();
+	}
+
+	/**
+	 * 生成快照，快照之后的记录不影响快照结果
+	 */
+	public Snapshot snapshot() {
+		long[] copy = new long[counts.length()];
+		long count = 0;
+		for (int i = 0; i < copy.length; i++) {
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+		return new Snapshot(copy, count, sum.sum());
+	}
+
+	static int indexOf(long value) {
+		int shift = 63 - Long.numberOfLeadingZeros(value | SUB_BUCKET_COUNT) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+	}
+
+	static long highestValueAt(int index) {
+		int shift = Math.max(0, (index >>> SUB_BUCKET_BITS) - 1);
+		long sub = index - ((long) shift << SUB_BUCKET_BITS);
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * 直方图快照
+	 */
+	public static final class Snapshot {
+
+		private final long[] counts;
+
+		private final long count;
+
+		private final long sum;
+
+		Snapshot(long[] counts, long count, long sum) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+		}
+
+		/**
+		 * 记录总次数
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * 平均耗时，单位：微秒
+		 */
+		public double getMean() {
+			return 0 == count ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * 最大耗时(所在桶的上界)，单位：微秒
+		 */
+		public long getMax() {
+			for (int i = counts.length - 1; i >= 0; i--) {
+				if (counts[i] > 0) {
+					return highestValueAt(i);
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * 百分位耗时(所在桶的上界)，单位：微秒
+		 *
+		 * @param percentile
+		 *            百分位，例如99.9
+		 */
+		public long getValueAtPercentile(double percentile) {
+			if (0 == count) {
+				return 0;
+			}
+			long target = Math.max(1, (long) Math.ceil(count * Math.min(100.0, percentile) / 100.0));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= target) {
+					return highestValueAt(i);
+				}
+			}
+			return getMax();
+		}
+
+		/**
+		 * 与另一个快照合并，返回新的快照
+		 */
+		public Snapshot merge(Snapshot other) {
+			long[] merged = counts.clone();
+			for (int i = 0; i < merged.length; i++) {
+				merged[i] += other.counts[i];
+			}
+			return new Snapshot(merged, count + other.count, sum + other.sum);
+		}
+	}
+}
@@ -0,0 +1,646 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * TODO redis 进程内近端缓存(L1)
+ *
+ * 缓存get、getRedisMap、getRedisMapValue的结果，按条目数和估算字节数双重限制大小：
+ * 新条目先进入窗口LRU，窗口溢出时与主区LRU淘汰候选比较访问频率(TinyLFU)，频率更高者留下。
+ * 过期时间按key的通配符规则配置，写操作通过redis pub/sub广播失效消息，各实例收到后删除本地条目；
+ * 订阅连接断开期间可能丢失失效消息，重连后整体清空缓存。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisNearCache nearCache = new RedisNearCache(10000, 64L * 1024 * 1024, 60);
+ * nearCache.addTtlRule("config:*", 300).addTtlRule("session:*", 0);
+ * RedisClientUtil.getInstance().setNearCache(nearCache);
+ * </pre>
+ *
+ */
+public class RedisNearCache implements Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisNearCache.class);
+
+	/** 默认的失效广播频道 */
+	public static final String DEFAULT_CHANNEL = "redis-utils:near-cache:invalidate";
+
+	/** 未命中标识，与缓存的null值区分 */
+	static final Object MISS = new Object();
+
+	/** 单个条目的固定开销估算，单位：字节 */
+	private static final int ENTRY_OVERHEAD = 96;
+
+	/** 失效版本号的分段数，必须为2的幂 */
+	private static final int VERSION_STRIPES = 1024;
+
+	private final int maxEntries;
+
+	private final long maxBytes;
+
+	private final int defaultTtlSeconds;
+
+	private final String channel;
+
+	private final List<TtlRule> ttlRules = new CopyOnWriteArrayList<TtlRule>();
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final LinkedHashMap<String, Entry> window = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private final LinkedHashMap<String, Entry> main = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private final int windowMaxEntries;
+
+	private final RedisFrequencySketch sketch;
+
+	private long weightedBytes;
+
+	/** 按key分段的失效版本号，回源期间同一分段发生失效时放弃写入缓存，避免写入旧值 */
+	private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	private volatile Thread subscriber;
+
+	private volatile InvalidationListener listener;
+
+	private volatile boolean closed;
+
+	/**
+	 * @param maxEntries
+	 *            最大条目数，至少为2(窗口和主区各至少一个条目)
+	 * @param maxBytes
+	 *            最大估算字节数
+	 * @param defaultTtlSeconds
+	 *            未匹配任何规则的key的本地过期时间，单位：秒，小于等于0表示不缓存
+	 */
+	public RedisNearCache(int maxEntries, long maxBytes, int defaultTtlSeconds) {
+		this(maxEntries, maxBytes, defaultTtlSeconds, DEFAULT_CHANNEL);
+	}
+
+	/**
+	 * @param maxEntries
+	 *            最大条目数，至少为2(窗口和主区各至少一个条目)
+	 * @param maxBytes
+	 *            最大估算字节数
+	 * @param defaultTtlSeconds
+	 *            未匹配任何规则的key的本地过期时间，单位：秒，小于等于0表示不缓存
+	 * @param channel
+	 *            失效广播频道
+	 */
+	public RedisNearCache(int maxEntries, long maxBytes, int defaultTtlSeconds, String channel) {
+		if (maxEntries < 2 || maxBytes <= 0) {
+			throw new IllegalArgumentException("maxEntries must be at least 2 and maxBytes must be positive");
+		}
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+		this.defaultTtlSeconds = defaultTtlSeconds;
+		this.channel = channel;
+		this.windowMaxEntries = Math.max(1, maxEntries / 100);
+		this.sketch = new RedisFrequencySketch(maxEntries, 15);
+	}
+
+	/**
+	 * 增加过期时间规则，按添加顺序匹配，第一个匹配的规则生效。
+	 *
+	 * @param keyPattern
+	 *            key的通配符，支持*和?
+	 * @param ttlSeconds
+	 *            本地过期时间，单位：秒，小于等于0表示匹配的key不缓存
+	 * @return
+	 */
+	public RedisNearCache addTtlRule(String keyPattern, int ttlSeconds) {
+		ttlRules.add(new TtlRule(keyPattern, ttlSeconds));
+		return this;
+	}
+
+	/**
+	 * 启动失效消息订阅线程，断线后自动重连
+	 *
+	 * @param cluster
+	 *            cluster 连接实例
+	 */
+	public synchronized void start(final JedisCluster cluster) {
+		if (null != subscriber) {
+			return;
+		}
+		Thread thread = new RedisThreadFactory("redis-near-cache-subscriber").newThread(new Runnable() {
+			@Override
+			public void run() {
+				subscribe(cluster);
+			}
+		});
+		subscriber = thread;
+		thread.start();
+	}
+
+	/**
+	 * 停止订阅并清空缓存
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		InvalidationListener current = listener;
+		if (null != current && current.isSubscribed()) {
+			current.unsubscribe();
+		}
+		if (null != subscriber) {
+			subscriber.interrupt();
+			subscriber = null;
+		}
+		clear();
+	}
+
+	/**
+	 * 本地失效并广播给其他实例
+	 *
+	 * @param cluster
+	 *            cluster 连接实例
+	 * @param key
+	 *            被修改的redis键
+	 */
+	public void publishInvalidation(JedisCluster cluster, String key) {
+		invalidate(key);
+		try {
+			cluster.publish(channel, key);
+		} catch (Exception e) {
+			logger.warn("RedisNearCache.publishInvalidation() key:{} 广播失效消息失败。", key, e);
+		}
+	}
+
+	/**
+	 * 本地失效
+	 *
+	 * @param key
+	 */
+	public void invalidate(String key) {
+		versions.incrementAndGet(stripe(key));
+		lock.lock();
+		try {
+			Entry entry = window.remove(key);
+			if (null == entry) {
+				entry = main.remove(key);
+			}
+			if (null != entry) {
+				weightedBytes -= entry.weight;
+				invalidationCount.incrementAndGet();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 清空缓存
+	 */
+	public void clear() {
+		for (int i = 0; i < VERSION_STRIPES; i++) {
+			versions.incrementAndGet(i);
+		}
+		lock.lock();
+		try {
+			window.clear();
+			main.clear();
+			weightedBytes = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * key所在分段的当前失效版本号，回源前获取，写入缓存时传入
+	 */
+	long version(String key) {
+		return versions.get(stripe(key));
+	}
+
+	/**
+	 * 获取字符串值，未命中返回MISS
+	 */
+	Object getString(String key) {
+		lock.lock();
+		try {
+			Entry entry = lookup(key);
+			if (null != entry && entry.hasValue) {
+				hitCount.incrementAndGet();
+				return entry.value;
+			}
+		} finally {
+			lock.unlock();
+		}
+		missCount.incrementAndGet();
+		return MISS;
+	}
+
+	void putString(String key, String value, long loadVersion) {
+		long ttlMillis = ttlMillis(key);
+		if (ttlMillis <= 0) {
+			return;
+		}
+		lock.lock();
+		try {
+			if (loadVersion != versions.get(stripe(key))) {
+				return;
+			}
+			Entry entry = new Entry(key);
+			entry.hasValue = true;
+			entry.value = value;
+			store(entry, ttlMillis);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 获取整个hash的副本，未命中返回null
+	 */
+	Map<String, String> getHash(String key) {
+		lock.lock();
+		try {
+			Entry entry = lookup(key);
+			if (null != entry && null != entry.hash) {
+				hitCount.incrementAndGet();
+				return new HashMap<String, String>(entry.hash);
+			}
+		} finally {
+			lock.unlock();
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	void putHash(String key, Map<String, String> hash, long loadVersion) {
+		long ttlMillis = ttlMillis(key);
+		if (ttlMillis <= 0 || null == hash) {
+			return;
+		}
+		lock.lock();
+		try {
+			if (loadVersion != versions.get(stripe(key))) {
+				return;
+			}
+			Entry entry = new Entry(key);
+			entry.hash = new HashMap<String, String>(hash);
+			store(entry, ttlMillis);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 获取hash中单个field的值，已缓存整个hash时直接从中读取，未命中返回MISS
+	 */
+	Object getField(String key, String field) {
+		lock.lock();
+		try {
+			Entry entry = lookup(key);
+			if (null != entry) {
+				if (null != entry.hash) {
+					hitCount.incrementAndGet();
+					return entry.hash.get(field);
+				}
+				if (null != entry.fields && entry.fields.containsKey(field)) {
+					hitCount.incrementAndGet();
+					return entry.fields.get(field);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		missCount.incrementAndGet();
+		return MISS;
+	}
+
+	void putField(String key, String field, String value, long loadVersion) {
+		long ttlMillis = ttlMillis(key);
+		if (ttlMillis <= 0) {
+			return;
+		}
+		lock.lock();
+		try {
+			if (loadVersion != versions.get(stripe(key))) {
+				return;
+			}
+			Entry entry = window.get(key);
+			if (null == entry) {
+				entry = main.get(key);
+			}
+			if (null != entry && null == entry.hash && entry.expireAt > System.currentTimeMillis()) {
+				// 在已有条目上追加field，保留原有的过期时间
+				if (null == entry.fields) {
+					entry.fields = new HashMap<String, String>();
+				}
+				entry.fields.put(field, value);
+				long weight = entry.weigh();
+				weightedBytes += weight - entry.weight;
+				entry.weight = weight;
+				evictToBytes();
+				return;
+			}
+			entry = new Entry(key);
+			entry.fields = new HashMap<String, String>();
+			entry.fields.put(field, value);
+			store(entry, ttlMillis);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 命中次数
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * 未命中次数
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * 因容量淘汰或未被准入的次数
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * 因写操作失效的次数
+	 */
+	public long getInvalidationCount() {
+		return invalidationCount.get();
+	}
+
+	/**
+	 * 命中率
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+		return 0 == total ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * 当前条目数
+	 */
+	public int getSize() {
+		lock.lock();
+		try {
+			return window.size() + main.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 当前估算字节数
+	 */
+	public long getWeightedBytes() {
+		lock.lock();
+		try {
+			return weightedBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public String getChannel() {
+		return channel;
+	}
+
+	/**
+	 * 查找未过期的条目并记录访问频率，需持有锁
+	 */
+	private Entry lookup(String key) {
+		sketch.increment(key);
+		Entry entry = window.get(key);
+		if (null == entry) {
+			entry = main.get(key);
+		}
+		if (null != entry && entry.expireAt <= System.currentTimeMillis()) {
+			remove(entry);
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * 写入或替换条目，需持有锁
+	 */
+	private void store(Entry entry, long ttlMillis) {
+		entry.expireAt = System.currentTimeMillis() + ttlMillis;
+		entry.weight = entry.weigh();
+		Entry old = main.get(entry.key);
+		if (null != old) {
+			main.put(entry.key, entry);
+		} else {
+			old = window.put(entry.key, entry);
+		}
+		if (null != old) {
+			weightedBytes -= old.weight;
+		}
+		weightedBytes += entry.weight;
+		if (window.size() > windowMaxEntries) {
+			Iterator<Entry> iterator = window.values().iterator();
+			Entry candidate = iterator.next();
+			iterator.remove();
+			admit(candidate);
+		}
+		evictToBytes();
+	}
+
+	/**
+	 * 窗口淘汰的条目进入主区：主区已满时与主区LRU淘汰候选比较频率，频率高者留下
+	 */
+	private void admit(Entry candidate) {
+		if (main.size() < maxEntries - windowMaxEntries) {
+			main.put(candidate.key, candidate);
+			return;
+		}
+		Iterator<Entry> iterator = main.values().iterator();
+		Entry victim = iterator.next();
+		if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+			iterator.remove();
+			weightedBytes -= victim.weight;
+			main.put(candidate.key, candidate);
+		} else {
+			weightedBytes -= candidate.weight;
+		}
+		evictionCount.incrementAndGet();
+	}
+
+	private static int stripe(String key) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & (VERSION_STRIPES - 1);
+	}
+
+	private void evictToBytes() {
+		while (weightedBytes > maxBytes && (!main.isEmpty() || !window.isEmpty())) {
+			Map<String, Entry> region = main.isEmpty() ? window : main;
+			Iterator<Entry> iterator = region.values().iterator();
+			Entry victim = iterator.next();
+			iterator.remove();
+			weightedBytes -= victim.weight;
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	private void remove(Entry entry) {
+		if (null != window.remove(entry.key) || null != main.remove(entry.key)) {
+			weightedBytes -= entry.weight;
+		}
+	}
+
+	private long ttlMillis(String key) {
+		for (TtlRule rule : ttlRules) {
+			if (rule.pattern.matcher(key).matches()) {
+				return TimeUnit.SECONDS.toMillis(rule.ttlSeconds);
+			}
+		}
+		return TimeUnit.SECONDS.toMillis(defaultTtlSeconds);
+	}
+
+	private void subscribe(JedisCluster cluster) {
+		long backoff = 100;
+		while (!closed) {
+			InvalidationListener current = new InvalidationListener();
+			listener = current;
+			try {
+				cluster.subscribe(current, channel);
+			} catch (Exception e) {
+				if (closed) {
+					break;
+				}
+				logger.warn("RedisNearCache 订阅失效频道:{} 断开，{}ms后重连。", channel, backoff, e);
+			}
+			// 断线期间可能丢失失效消息，整体清空
+			clear();
+			try {
+				Thread.sleep(backoff);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			backoff = Math.min(backoff * 2, 10000);
+		}
+	}
+
+	private class InvalidationListener extends JedisPubSub {
+
+		@Override
+		public void onMessage(String channel, String message) {
+			invalidate(message);
+		}
+
+		@Override
+		public void onSubscribe(String channel, int subscribedChannels) {
+			logger.info("RedisNearCache 已订阅失效频道:{}", channel);
+			clear();
+		}
+	}
+
+	/**
+	 * 缓存条目，同一个redis键的字符串值、整个hash或部分field共用一个条目，失效时一起删除
+	 */
+	private static class Entry {
+
+		private final String key;
+
+		private boolean hasValue;
+
+		private String value;
+
+		private Map<String, String> hash;
+
+		private Map<String, String> fields;
+
+		private long expireAt;
+
+		private long weight;
+
+		Entry(String key) {
+			this.key = key;
+		}
+
+		long weigh() {
+			long size = ENTRY_OVERHEAD + sizeOf(key);
+			size += sizeOf(value);
+			size += sizeOf(hash);
+			size += sizeOf(fields);
+			return size;
+		}
+
+		private static long sizeOf(String value) {
+			return null == value ? 0 : 40 + 2L * value.length();
+		}
+
+		private static long sizeOf(Map<String, String> map) {
+			if (null == map) {
+				return 0;
+			}
+			long size = 48;
+			for (Map.Entry<String, String> entry : map.entrySet()) {
+				size += 32 + sizeOf(entry.getKey()) + sizeOf(entry.getValue());
+			}
+			return size;
+		}
+	}
+
+	private static class TtlRule {
+
+		private final Pattern pattern;
+
+		private final int ttlSeconds;
+
+		TtlRule(String keyPattern, int ttlSeconds) {
+			StringBuilder regex = new StringBuilder();
+			for (String part : keyPattern.split("((?<=[*?])|(?=[*?]))")) {
+				if ("*".equals(part)) {
+					regex.append(".*");
+				} else if ("?".equals(part)) {
+					regex.append('.');
+				} else if (!part.isEmpty()) {
+					regex.append(Pattern.quote(part));
+				}
+			}
+			this.pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+			this.ttlSeconds = ttlSeconds;
+		}
+	}
+}
@@ -0,0 +1,255 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.Properties;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+
+/**
+ * TODO redis 每个节点连接池的配置
+ *
+ * 默认不在借出、归还时PING校验连接，而是由后台线程定期校验空闲连接；借连接最多等待maxWaitMillis，
+ * 超时抛出RedisPoolExhaustedException。开启adaptive后由RedisPoolManager根据实际并发在[minIdle, maxIdle]之间调整空闲连接数。
+ *
+ * 可通过Properties配置，key与属性名一致，例如：
+ *
+ * <pre>
+ * maxTotal=64
+ * maxWaitMillis=2000
+ * adaptive=true
+ * </pre>
+ *
+ */
+public class RedisPoolConfig {
+
+	/** 每个节点最大连接数 */
+	private int maxTotal = 64;
+
+	/** 空闲连接数上限，自适应调整时的上界 */
+	private int maxIdle = 64;
+
+	/** 空闲连接数下限，自适应调整时的下界 */
+	private int minIdle = 4;
+
+	/** 连接用尽时借连接的最大等待时间，单位：毫秒，必须大于0 */
+	private long maxWaitMillis = 2000;
+
+	/** 后台校验空闲连接、回收多余连接的间隔，单位：毫秒 */
+	private long validationIntervalMillis = 30000;
+
+	/** 超过minIdle的空闲连接空闲多久后回收，单位：毫秒 */
+	private long idleTimeoutMillis = 60000;
+
+	private boolean testOnBorrow = false;
+
+	private boolean testOnReturn = false;
+
+	/** 是否根据并发自适应调整空闲连接数 */
+	private boolean adaptive = true;
+
+	/** 自适应采样间隔，单位：毫秒 */
+	private long adaptiveIntervalMillis = 1000;
+
+	/** 取最近多少次采样的并发峰值 */
+	private int adaptiveWindow = 60;
+
+	/** 空闲连接数 = 并发峰值 * (1 + headroom) */
+	private double adaptiveHeadroom = 0.5;
+
+	/** 启动时每个master节点预先建立的连接数，0表示不预热，超过maxIdle时按maxIdle */
+	private int warmupConnections = 4;
+
+	/** init等待预热完成的最长时间，超时后预热在后台继续，单位：毫秒 */
+	private long warmupTimeoutMillis = 10000;
+
+	/**
+	 * 从Properties读取配置，未配置的项使用默认值
+	 */
+	public static RedisPoolConfig fromProperties(Properties properties) {
+		RedisPoolConfig config = new RedisPoolConfig();
+		if (null == properties) {
+			return config;
+		}
+		config.setMaxTotal(getInt(properties, "maxTotal", config.maxTotal));
+		config.setMaxIdle(getInt(properties, "maxIdle", config.maxIdle));
+		config.setMinIdle(getInt(properties, "minIdle", config.minIdle));
+		config.setMaxWaitMillis(getLong(properties, "maxWaitMillis", config.maxWaitMillis));
+		config.setValidationIntervalMillis(
+				getLong(properties, "validationIntervalMillis", config.validationIntervalMillis));
+		config.setIdleTimeoutMillis(getLong(properties, "idleTimeoutMillis", config.idleTimeoutMillis));
+		config.setTestOnBorrow(getBoolean(properties, "testOnBorrow", config.testOnBorrow));
+		config.setTestOnReturn(getBoolean(properties, "testOnReturn", config.testOnReturn));
+		config.setAdaptive(getBoolean(properties, "adaptive", config.adaptive));
+		config.setAdaptiveIntervalMillis(getLong(properties, "adaptiveIntervalMillis", config.adaptiveIntervalMillis));
+		config.setAdaptiveWindow(getInt(properties, "adaptiveWindow", config.adaptiveWindow));
+		config.setAdaptiveHeadroom(Double.parseDouble(
+				properties.getProperty("adaptiveHeadroom", String.valueOf(config.adaptiveHeadroom)).trim()));
+		config.setWarmupConnections(getInt(properties, "warmupConnections", config.warmupConnections));
+		config.setWarmupTimeoutMillis(getLong(properties, "warmupTimeoutMillis", config.warmupTimeoutMillis));
+		return config;
+	}
+
+	private static int getInt(Properties properties, String name, int defaultValue) {
+		String value = properties.getProperty(name);
+		return null == value || value.trim().isEmpty() ? defaultValue : Integer.parseInt(value.trim());
+	}
+
+	private static long getLong(Properties properties, String name, long defaultValue) {
+		String value = properties.getProperty(name);
+		return null == value || value.trim().isEmpty() ? defaultValue : Long.parseLong(value.trim());
+	}
+
+	private static boolean getBoolean(Properties properties, String name, boolean defaultValue) {
+		String value = properties.getProperty(name);
+		return null == value || value.trim().isEmpty() ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+
+	/**
+	 * 转换为commons-pool2的连接池配置
+	 */
+	public GenericObjectPoolConfig toJedisPoolConfig() {
+		GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+		config.setMaxTotal(maxTotal);
+		config.setMaxIdle(maxIdle);
+		// 开启自适应时从下界开始，由RedisPoolManager按并发调大
+		config.setMinIdle(minIdle);
+		config.setBlockWhenExhausted(true);
+		config.setMaxWaitMillis(maxWaitMillis);
+		config.setTestOnBorrow(testOnBorrow);
+		config.setTestOnReturn(testOnReturn);
+		// 后台定期校验全部空闲连接，回收空闲超过idleTimeoutMillis且超出minIdle的连接，并补足minIdle
+		config.setTestWhileIdle(true);
+		config.setTimeBetweenEvictionRunsMillis(validationIntervalMillis);
+		config.setNumTestsPerEvictionRun(-1);
+		config.setSoftMinEvictableIdleTimeMillis(idleTimeoutMillis);
+		config.setMinEvictableIdleTimeMillis(-1);
+		return config;
+	}
+
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	public void setMaxTotal(int maxTotal) {
+		if (maxTotal <= 0) {
+			throw new IllegalArgumentException("maxTotal must be positive");
+		}
+		this.maxTotal = maxTotal;
+	}
+
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	public void setMinIdle(int minIdle) {
+		this.minIdle = minIdle;
+	}
+
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	public void setMaxWaitMillis(long maxWaitMillis) {
+		if (maxWaitMillis <= 0) {
+			throw new IllegalArgumentException("maxWaitMillis must be positive, unbounded waits are not allowed");
+		}
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	public long getValidationIntervalMillis() {
+		return validationIntervalMillis;
+	}
+
+	public void setValidationIntervalMillis(long validationIntervalMillis) {
+		this.validationIntervalMillis = validationIntervalMillis;
+	}
+
+	public long getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public boolean isTestOnBorrow() {
+		return testOnBorrow;
+	}
+
+	public void setTestOnBorrow(boolean testOnBorrow) {
+		this.testOnBorrow = testOnBorrow;
+	}
+
+	public boolean isTestOnReturn() {
+		return testOnReturn;
+	}
+
+	public void setTestOnReturn(boolean testOnReturn) {
+		this.testOnReturn = testOnReturn;
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	public long getAdaptiveIntervalMillis() {
+		return adaptiveIntervalMillis;
+	}
+
+	public void setAdaptiveIntervalMillis(long adaptiveIntervalMillis) {
+		this.adaptiveIntervalMillis = adaptiveIntervalMillis;
+	}
+
+	public int getAdaptiveWindow() {
+		return adaptiveWindow;
+	}
+
+	public void setAdaptiveWindow(int adaptiveWindow) {
+		this.adaptiveWindow = adaptiveWindow;
+	}
+
+	public double getAdaptiveHeadroom() {
+		return adaptiveHeadroom;
+	}
+
+	public void setAdaptiveHeadroom(double adaptiveHeadroom) {
+		this.adaptiveHeadroom = adaptiveHeadroom;
+	}
+
+	public int getWarmupConnections() {
+		return warmupConnections;
+	}
+
+	public void setWarmupConnections(int warmupConnections) {
+		this.warmupConnections = warmupConnections;
+	}
+
+	public long getWarmupTimeoutMillis() {
+		return warmupTimeoutMillis;
+	}
+
+	public void setWarmupTimeoutMillis(long warmupTimeoutMillis) {
+		this.warmupTimeoutMillis = warmupTimeoutMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisPoolConfig [maxTotal=" + maxTotal + ", maxIdle=" + maxIdle + ", minIdle=" + minIdle
+				+ ", maxWaitMillis=" + maxWaitMillis + ", validationIntervalMillis=" + validationIntervalMillis
+				+ ", idleTimeoutMillis=" + idleTimeoutMillis + ", testOnBorrow=" + testOnBorrow + ", testOnReturn="
+				+ testOnReturn + ", adaptive=" + adaptive + ", adaptiveIntervalMillis=" + adaptiveIntervalMillis
+				+ ", adaptiveWindow=" + adaptiveWindow + ", adaptiveHeadroom=" + adaptiveHeadroom + ", warmupConnections=" + warmupConnections
+				+ ", warmupTimeoutMillis=" + warmupTimeoutMillis + "]";
+	}
+}
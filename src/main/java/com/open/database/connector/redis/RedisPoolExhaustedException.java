@@ -0,0 +1,59 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.NoSuchElementException;
+
+import redis.clients.jedis.exceptions.JedisException;
+
+/**
+ * TODO 连接池用尽：在maxWaitMillis内没有借到连接
+ *
+ * 继承JedisException，与Jedis对连接池用尽抛出的异常类型一致：原有捕获JedisException的调用方不受影响，
+ * 也不会被按JedisConnectionException处理的逻辑(pipeline重试、replica摘除)误认为节点连接失败。
+ *
+ */
+public class RedisPoolExhaustedException extends JedisException {
+
+	private static final long serialVersionUID = 1L;
+
+	public RedisPoolExhaustedException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	/**
+	 * 异常由连接池用尽引起时转换为RedisPoolExhaustedException并计数，否则原样返回
+	 */
+	public static RuntimeException translate(RuntimeException e) {
+		return translate(e, RedisPoolUtil.getPoolManager());
+	}
+
+	/**
+	 * 同translate(e)，计入manager所属集群的连接池用尽次数
+	 */
+	static RuntimeException translate(RuntimeException e, RedisPoolManager manager) {
+		if (e instanceof RedisPoolExhaustedException || !isExhausted(e)) {
+			return e;
+		}
+		long maxWaitMillis = -1;
+		if (null != manager) {
+			manager.onExhausted();
+			maxWaitMillis = manager.getConfig().getMaxWaitMillis();
+		}
+		return new RedisPoolExhaustedException(
+				"Could not get a redis connection within maxWaitMillis=" + maxWaitMillis + ", pool exhausted", e);
+	}
+
+	/**
+	 * commons-pool2在等待超时后抛出NoSuchElementException，Jedis将其包装为JedisException
+	 */
+	static boolean isExhausted(Throwable e) {
+		for (Throwable cause = e; null != cause; cause = cause.getCause()) {
+			if (cause instanceof NoSuchElementException) {
+				return true;
+			}
+			if (cause == cause.getCause()) {
+				break;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,252 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.Pool;
+
+/**
+ * TODO redis 各节点连接池的自适应管理和统计
+ *
+ * 后台线程每adaptiveIntervalMillis采样一次各节点连接池的借出数和等待数，取最近adaptiveWindow次采样的峰值作为并发需求，
+ * 将minIdle调整为 峰值 * (1 + adaptiveHeadroom)，并限制在配置的[minIdle, maxIdle]之间：并发上升时提前建好连接，
+ * 避免请求线程同步建连；并发下降后多余的空闲连接由连接池的后台回收在idleTimeoutMillis后关闭。
+ *
+ * 由RedisClusterContext.init创建和关闭，统计通过JMX(OBJECT_NAME)或getPoolStats()获取。
+ *
+ */
+public class RedisPoolManager implements RedisPoolManagerMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisPoolManager.class);
+
+	/** JMX注册名 */
+	public static final String OBJECT_NAME = "com.sinosafe.macaw.database.connector.redis:type=RedisPoolManager";
+
+	private static final Field INTERNAL_POOL_FIELD;
+
+	static {
+		try {
+			INTERNAL_POOL_FIELD = Pool.class.getDeclaredField("internalPool");
+			INTERNAL_POOL_FIELD.setAccessible(true);
+		} catch (Exception e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private final JedisCluster cluster;
+
+	private final RedisPoolConfig config;
+
+	private final String objectName;
+
+	private final ConcurrentMap<String, NodeDemand> demands = new ConcurrentHashMap<String, NodeDemand>();
+
+	private final LongAdder exhausted = new LongAdder();
+
+	private ScheduledExecutorService sampler;
+
+	private ObjectName registeredName;
+
+	public RedisPoolManager(JedisCluster cluster, RedisPoolConfig config) {
+		this(cluster, config, OBJECT_NAME);
+	}
+
+	/**
+	 * @param objectName
+	 *            JMX注册名，见RedisClusterContext.objectName
+	 */
+	RedisPoolManager(JedisCluster cluster, RedisPoolConfig config, String objectName) {
+		this.cluster = cluster;
+		this.config = config;
+		this.objectName = objectName;
+	}
+
+	/**
+	 * 启动自适应采样(配置开启时)并注册JMX
+	 */
+	public synchronized void start() {
+		if (config.isAdaptive() && null == sampler) {
+			sampler = Executors.newSingleThreadScheduledExecutor(new RedisThreadFactory("redis-pool-manager"));
+			sampler.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						adjust();
+					} catch (Exception e) {
+						logger.warn("RedisPoolManager 调整连接池失败。", e);
+					}
+				}
+			}, config.getAdaptiveIntervalMillis(), config.getAdaptiveIntervalMillis(), TimeUnit.MILLISECONDS);
+		}
+		if (null == registeredName) {
+			try {
+				ObjectName name = new ObjectName(objectName);
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				if (server.isRegistered(name)) {
+					server.unregisterMBean(name);
+				}
+				server.registerMBean(this, name);
+				registeredName = name;
+			} catch (Exception e) {
+				logger.warn("RedisPoolManager 注册JMX失败，仅可通过getPoolStats()获取统计。", e);
+			}
+		}
+	}
+
+	/**
+	 * 停止采样并注销JMX，不关闭连接池
+	 */
+	@Override
+	public synchronized void close() {
+		if (null != sampler) {
+			sampler.shutdownNow();
+			sampler = null;
+		}
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisPoolManager 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+	}
+
+	/**
+	 * 采样一次并调整各节点的minIdle
+	 */
+	void adjust() {
+		Map<String, JedisPool> nodes = RedisClusterRouter.getClusterInfoCache(cluster).getNodes();
+		demands.keySet().retainAll(nodes.keySet());
+		for (Map.Entry<String, JedisPool> entry : nodes.entrySet()) {
+			GenericObjectPool<Jedis> pool = getInternalPool(entry.getValue());
+			NodeDemand demand = getDemand(entry.getKey(), pool);
+			int peak = demand.sample(pool.getNumActive() + pool.getNumWaiters());
+			int target = (int) Math.ceil(peak * (1 + config.getAdaptiveHeadroom()));
+			int upper = Math.min(config.getMaxIdle(), pool.getMaxTotal());
+			target = Math.max(Math.min(config.getMinIdle(), upper), Math.min(upper, target));
+			int current = pool.getMinIdle();
+			if (target == current) {
+				continue;
+			}
+			pool.setMinIdle(target);
+			logger.debug("RedisPoolManager 节点:{} 并发峰值:{} minIdle {} -> {}", entry.getKey(), peak, current, target);
+			if (target > current) {
+				try {
+					// 提前补足空闲连接，不等待下一次后台回收
+					pool.preparePool();
+				} catch (Exception e) {
+					logger.warn("RedisPoolManager 节点:{} 预建连接失败。", entry.getKey(), e);
+				}
+			}
+		}
+	}
+
+	private NodeDemand getDemand(String node, GenericObjectPool<Jedis> pool) {
+		NodeDemand demand = demands.get(node);
+		// 节点重建后连接池实例会变化，重新统计
+		if (null == demand || demand.pool != pool) {
+			demand = new NodeDemand(pool, config.getAdaptiveWindow());
+			demands.put(node, demand);
+		}
+		return demand;
+	}
+
+	@SuppressWarnings("unchecked")
+	static GenericObjectPool<Jedis> getInternalPool(JedisPool pool) {
+		try {
+			return (GenericObjectPool<Jedis>) INTERNAL_POOL_FIELD.get(pool);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	void onExhausted() {
+		exhausted.increment();
+	}
+
+	public RedisPoolConfig getConfig() {
+		return config;
+	}
+
+	@Override
+	public List<RedisPoolStats> getPoolStats() {
+		Map<String, JedisPool> nodes = RedisClusterRouter.getClusterInfoCache(cluster).getNodes();
+		List<RedisPoolStats> stats = new ArrayList<RedisPoolStats>(nodes.size());
+		for (Map.Entry<String, JedisPool> entry : nodes.entrySet()) {
+			GenericObjectPool<Jedis> pool = getInternalPool(entry.getValue());
+			NodeDemand demand = demands.get(entry.getKey());
+			int peak = null == demand || demand.pool != pool ? 0 : demand.peak();
+			stats.add(new RedisPoolStats(entry.getKey(), pool.getNumActive(), pool.getNumIdle(), pool.getNumWaiters(),
+					pool.getMaxTotal(), pool.getMinIdle(), pool.getMaxIdle(), peak, pool.getMeanBorrowWaitTimeMillis(),
+					pool.getMaxBorrowWaitTimeMillis(), pool.getCreatedCount(), pool.getDestroyedCount()));
+		}
+		Collections.sort(stats, (a, b) -> a.getNode().compareTo(b.getNode()));
+		return stats;
+	}
+
+	@Override
+	public long getExhaustedCount() {
+		return exhausted.sum();
+	}
+
+	@Override
+	public String getConfiguration() {
+		return config.toString();
+	}
+
+	/**
+	 * 单个节点最近window次采样的并发需求，只由采样线程写入
+	 */
+	private static final class NodeDemand {
+
+		private final GenericObjectPool<Jedis> pool;
+
+		private final int[] samples;
+
+		private int index;
+
+		private volatile int peak;
+
+		NodeDemand(GenericObjectPool<Jedis> pool, int window) {
+			this.pool = pool;
+			this.samples = new int[Math.max(1, window)];
+		}
+
+		int sample(int demand) {
+			samples[index] = demand;
+			index = (index + 1) % samples.length;
+			int max = 0;
+			for (int value : samples) {
+				max = Math.max(max, value);
+			}
+			peak = max;
+			return max;
+		}
+
+		int peak() {
+			return peak;
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.List;
+
+/**
+ * TODO redis 连接池管理的JMX接口，注册名为RedisPoolManager.OBJECT_NAME
+ *
+ */
+public interface RedisPoolManagerMXBean {
+
+	/**
+	 * 每个节点连接池的统计快照
+	 */
+	List<RedisPoolStats> getPoolStats();
+
+	/**
+	 * 累计连接池用尽(借连接超时)次数
+	 */
+	long getExhaustedCount();
+
+	/**
+	 * 当前生效的配置
+	 */
+	String getConfiguration();
+}
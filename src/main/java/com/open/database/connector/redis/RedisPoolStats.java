@@ -0,0 +1,132 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * TODO 单个节点连接池的统计快照
+ *
+ * 同时作为JMX MXBean的返回类型。
+ *
+ */
+public class RedisPoolStats {
+
+	private final String node;
+
+	private final int active;
+
+	private final int idle;
+
+	private final int waiters;
+
+	private final int maxTotal;
+
+	private final int minIdle;
+
+	private final int maxIdle;
+
+	private final int peakDemand;
+
+	private final long meanBorrowWaitMillis;
+
+	private final long maxBorrowWaitMillis;
+
+	private final long createdCount;
+
+	private final long destroyedCount;
+
+	@ConstructorProperties({ "node", "active", "idle", "waiters", "maxTotal", "minIdle", "maxIdle", "peakDemand",
+			"meanBorrowWaitMillis", "maxBorrowWaitMillis", "createdCount", "destroyedCount" })
+	public RedisPoolStats(String node, int active, int idle, int waiters, int maxTotal, int minIdle, int maxIdle,
+			int peakDemand, long meanBorrowWaitMillis, long maxBorrowWaitMillis, long createdCount,
+			long destroyedCount) {
+		this.node = node;
+		this.active = active;
+		this.idle = idle;
+		this.waiters = waiters;
+		this.maxTotal = maxTotal;
+		this.minIdle = minIdle;
+		this.maxIdle = maxIdle;
+		this.peakDemand = peakDemand;
+		this.meanBorrowWaitMillis = meanBorrowWaitMillis;
+		this.maxBorrowWaitMillis = maxBorrowWaitMillis;
+		this.createdCount = createdCount;
+		this.destroyedCount = destroyedCount;
+	}
+
+	/**
+	 * 节点 host:port
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	/**
+	 * 已借出的连接数
+	 */
+	public int getActive() {
+		return active;
+	}
+
+	/**
+	 * 空闲连接数
+	 */
+	public int getIdle() {
+		return idle;
+	}
+
+	/**
+	 * 正在等待连接的线程数
+	 */
+	public int getWaiters() {
+		return waiters;
+	}
+
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * 当前(自适应调整后)的最小空闲连接数
+	 */
+	public int getMinIdle() {
+		return minIdle;
+	}
+
+	/**
+	 * 当前(自适应调整后)的最大空闲连接数
+	 */
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * 采样窗口内借出和等待连接数之和的峰值
+	 */
+	public int getPeakDemand() {
+		return peakDemand;
+	}
+
+	public long getMeanBorrowWaitMillis() {
+		return meanBorrowWaitMillis;
+	}
+
+	public long getMaxBorrowWaitMillis() {
+		return maxBorrowWaitMillis;
+	}
+
+	public long getCreatedCount() {
+		return createdCount;
+	}
+
+	public long getDestroyedCount() {
+		return destroyedCount;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisPoolStats [node=" + node + ", active=" + active + ", idle=" + idle + ", waiters=" + waiters
+				+ ", maxTotal=" + maxTotal + ", minIdle=" + minIdle + ", maxIdle=" + maxIdle + ", peakDemand="
+				+ peakDemand + ", meanBorrowWaitMillis=" + meanBorrowWaitMillis + ", maxBorrowWaitMillis="
+				+ maxBorrowWaitMillis + ", createdCount=" + createdCount + ", destroyedCount=" + destroyedCount + "]";
+	}
+}
@@ -0,0 +1,195 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * TODO redis 启动时的种子节点探测和连接池预热
+ *
+ * JedisCluster按顺序逐个尝试种子节点，不可达的节点每个都要等待一次连接超时；这里先并行探测所有种子节点的TCP连接，
+ * 可达的节点排在前面。拓扑建立后并行为每个master节点预先建立并PING校验connections个连接，
+ * 归还后作为空闲连接留在池中，首批请求不再需要建立连接。
+ *
+ */
+class RedisPoolWarmer {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisPoolWarmer.class);
+
+	private RedisPoolWarmer() {
+	}
+
+	/**
+	 * 并行探测种子节点，返回可达节点在前的有序集合；全部不可达时按原顺序返回，由JedisCluster报告错误
+	 *
+	 * @param seeds
+	 *            种子节点
+	 * @param timeoutMillis
+	 *            连接超时
+	 * @param reachable
+	 *            输出参数，可达的节点
+	 * @return
+	 */
+	static Set<HostAndPort> probeSeeds(Set<HostAndPort> seeds, int timeoutMillis, final Set<HostAndPort> reachable) {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(seeds.size(), 16)),
+				new RedisThreadFactory("redis-startup"));
+		final CountDownLatch latch = new CountDownLatch(seeds.size());
+		final Set<HostAndPort> alive = Collections.synchronizedSet(new LinkedHashSet<HostAndPort>());
+		for (final HostAndPort seed : seeds) {
+			executor.execute(() -> {
+				try (Socket socket = new Socket()) {
+					socket.connect(new InetSocketAddress(seed.getHost(), seed.getPort()), timeoutMillis);
+					alive.add(seed);
+				} catch (IOException e) {
+					logger.warn("RedisPoolWarmer.probeSeeds() 种子节点:{} 不可达:{}", seed, e.toString());
+				} finally {
+					latch.countDown();
+				}
+			});
+		}
+		try {
+			latch.await(timeoutMillis + 1000L, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		Set<HostAndPort> ordered = new LinkedHashSet<HostAndPort>();
+		synchronized (alive) {
+			reachable.addAll(alive);
+			ordered.addAll(alive);
+		}
+		ordered.addAll(seeds);
+		return ordered;
+	}
+
+	/**
+	 * 并行预热所有master节点的连接池
+	 *
+	 * @param cluster
+	 * @param connections
+	 *            每个节点预先建立的连接数
+	 * @param timeoutMillis
+	 *            最长等待时间，超时后预热在后台继续，完成时回调onDone
+	 * @param onDone
+	 *            全部节点预热完成(成功或失败)后的回调，参数为预热结果
+	 * @return 是否在timeoutMillis内完成，以及各节点的结果
+	 */
+	static Result warm(JedisCluster cluster, final int connections, long timeoutMillis, final Consumer<Result> onDone) {
+		long start = System.nanoTime();
+		final Result result = new Result();
+		List<JedisPool> masters = RedisClusterRouter.getMasterPools(cluster);
+		Map<String, JedisPool> nodes = RedisClusterRouter.getClusterInfoCache(cluster).getNodes();
+		result.nodes = masters.size();
+		if (connections <= 0 || masters.isEmpty()) {
+			result.finished = true;
+			onDone.accept(result);
+			return result;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(masters.size(), 32),
+				new RedisThreadFactory("redis-startup"));
+		final CountDownLatch latch = new CountDownLatch(masters.size());
+		final AtomicInteger remaining = new AtomicInteger(masters.size());
+		for (final JedisPool pool : masters) {
+			final String name = nameOf(nodes, pool);
+			executor.execute(() -> {
+				try {
+					int created = warmPool(pool, connections);
+					result.warmed.addAndGet(created);
+					if (0 == created) {
+						result.unreachable.incrementAndGet();
+					}
+					if (created < connections) {
+						result.failed.addAndGet(connections - created);
+						logger.warn("RedisPoolWarmer.warm() 节点:{} 只预热了{}/{}个连接。", name, created, connections);
+					}
+				} finally {
+					// 先回调再countDown，init返回时已完成的预热一定已经回调
+					if (0 == remaining.decrementAndGet()) {
+						executor.shutdown();
+						onDone.accept(result);
+					}
+					latch.countDown();
+				}
+			});
+		}
+		try {
+			result.finished = latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		result.elapsedMillis = (System.nanoTime() - start) / 1000000;
+		return result;
+	}
+
+	/**
+	 * 借出connections个连接并逐个PING后全部归还
+	 *
+	 * @return 成功建立的连接数
+	 */
+	private static int warmPool(JedisPool pool, int connections) {
+		List<Jedis> borrowed = new ArrayList<Jedis>(connections);
+		try {
+			for (int i = 0; i < connections; i++) {
+				Jedis jedis = pool.getResource();
+				borrowed.add(jedis);
+				jedis.ping();
+			}
+		} catch (RuntimeException e) {
+			logger.warn("RedisPoolWarmer.warmPool() is failed. Exception:", e);
+		} finally {
+			for (Jedis jedis : borrowed) {
+				jedis.close();
+			}
+		}
+		return borrowed.size();
+	}
+
+	private static String nameOf(Map<String, JedisPool> nodes, JedisPool pool) {
+		for (Map.Entry<String, JedisPool> entry : nodes.entrySet()) {
+			if (entry.getValue() == pool) {
+				return entry.getKey();
+			}
+		}
+		return RedisCommandMetrics.UNKNOWN_NODE;
+	}
+
+	/**
+	 * 预热结果
+	 */
+	static final class Result {
+
+		int nodes;
+
+		final AtomicInteger warmed = new AtomicInteger();
+
+		final AtomicInteger failed = new AtomicInteger();
+
+		/** 一个连接都没有建立成功的master节点数 */
+		final AtomicInteger unreachable = new AtomicInteger();
+
+		volatile boolean finished;
+
+		long elapsedMillis;
+	}
+}
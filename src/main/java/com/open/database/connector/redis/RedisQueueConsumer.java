@@ -0,0 +1,570 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+
+/**
+ * TODO 基于redis列表的可靠队列消费者
+ *
+ * 生产者沿用RedisClientUtil.lpush写入队列，消费者从右边取出，先进先出。与brpop相比：
+ * <ul>
+ * <li>使用连接到队列所在节点的独立连接池(concurrency + 1个连接)，阻塞等待不占用业务请求的连接池</li>
+ * <li>concurrency个工作线程，每次通过QUEUE_POP脚本取出最多batchSize条，一次往返取多条</li>
+ * <li>取出的消息原子地登记到处理中hash并记录截止时间，处理器正常返回后批量确认，抛出异常或Error时放回队列；
+ * 进程在确认前退出或处理超过visibilityTimeoutMillis时，由任一消费者实例的回收任务重新入队，消息不会丢失</li>
+ * <li>一批消息的处理时间每超过可见性超时的一半，通过QUEUE_TOUCH(ZADD XX)把批次中尚未确认的消息的截止时间延长一个可见性超时，
+ * 已处理待确认和排在批次后面的消息不会因为处理慢而被回收重复投递；已被回收重新入队的消息跳过不再处理</li>
+ * <li>队列为空时用BRPOPLPUSH阻塞等待最多blockSeconds，到达的消息先进入暂存列表，下一次取消息时优先取出</li>
+ * </ul>
+ * 处理中hash、截止时间zset、暂存列表和id序列与队列使用相同的hashtag，在同一个slot中。
+ * 截止时间使用消费者本机时钟，多个实例之间的时钟偏差会相应提前或推迟超时回收。
+ * 默认消费默认集群的队列，其他集群使用RedisQueueConsumer(RedisClusterContext, String, RedisQueueHandler)。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisQueueConsumer consumer = new RedisQueueConsumer("order-queue", message -&gt; process(message.getBody()));
+ * consumer.setConcurrency(8);
+ * consumer.start();
+ * ...
+ * consumer.close();
+ * </pre>
+ *
+ */
+public class RedisQueueConsumer implements RedisQueueConsumerMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisQueueConsumer.class);
+
+	/** JMX注册名前缀，后接ObjectName.quote(队列名) */
+	public static final String OBJECT_NAME_PREFIX = "com.sinosafe.macaw.database.connector.redis:type=RedisQueueConsumer,queue=";
+
+	public static final int DEFAULT_CONCURRENCY = 4;
+
+	public static final int DEFAULT_BATCH_SIZE = 10;
+
+	public static final long DEFAULT_VISIBILITY_TIMEOUT_MILLIS = 60000;
+
+	public static final int DEFAULT_BLOCK_SECONDS = 1;
+
+	/** 每次回收的最多条数 */
+	private static final int REQUEUE_LIMIT = 1000;
+
+	/** 访问redis失败后的等待时间，单位：毫秒 */
+	private static final long ERROR_BACKOFF_MILLIS = 1000;
+
+	private final RedisClusterContext context;
+
+	private final String queue;
+
+	private final RedisQueueHandler handler;
+
+	/** 队列、暂存列表、处理中hash、截止时间zset、id序列 */
+	private final List<String> keys;
+
+	private int concurrency = DEFAULT_CONCURRENCY;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private long visibilityTimeoutMillis = DEFAULT_VISIBILITY_TIMEOUT_MILLIS;
+
+	private int blockSeconds = DEFAULT_BLOCK_SECONDS;
+
+	private volatile boolean running;
+
+	private volatile HostAndPort node;
+
+	private volatile JedisPool pool;
+
+	private ExecutorService workers;
+
+	private ScheduledExecutorService reaper;
+
+	private ObjectName registeredName;
+
+	private final LongAdder consumed = new LongAdder();
+
+	private final LongAdder acked = new LongAdder();
+
+	private final LongAdder nacked = new LongAdder();
+
+	private final LongAdder requeued = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private final RedisThroughputCounter throughput = new RedisThroughputCounter();
+
+	private final RedisLatencyHistogram processing = new RedisLatencyHistogram();
+
+	/**
+	 * @param queue
+	 *            队列的redis键
+	 * @param handler
+	 *            消息处理器
+	 */
+	public RedisQueueConsumer(String queue, RedisQueueHandler handler) {
+		this(RedisClusterContext.getDefault(), queue, handler);
+	}
+
+	/**
+	 * @param context
+	 *            队列所在的集群
+	 * @param queue
+	 *            队列的redis键
+	 * @param handler
+	 *            消息处理器
+	 */
+	public RedisQueueConsumer(RedisClusterContext context, String queue, RedisQueueHandler handler) {
+		this.context = context;
+		if (null == queue || queue.isEmpty() || null == handler) {
+			throw new IllegalArgumentException("queue and handler must not be empty");
+		}
+		this.queue = queue;
+		this.handler = handler;
+		this.keys = Collections.unmodifiableList(Arrays.asList(queue, queueKey(queue, "staging"),
+				queueKey(queue, "inflight"), queueKey(queue, "deadlines"), queueKey(queue, "seq")));
+		for (String key : keys) {
+			if (RedisClusterRouter.getSlot(key) != RedisClusterRouter.getSlot(queue)) {
+				throw new IllegalArgumentException("queue " + queue + " has an unsupported hashtag");
+			}
+		}
+	}
+
+	/**
+	 * 队列的辅助键：队列名带hashtag时直接加后缀，否则以队列名作为hashtag，保证与队列在同一个slot
+	 */
+	static String queueKey(String queue, String suffix) {
+		int start = queue.indexOf('{');
+		int end = start < 0 ? -1 : queue.indexOf('}', start + 1);
+		return (end > start + 1 ? queue : "{" + queue + "}") + ":" + suffix;
+	}
+
+	/**
+	 * 连接队列所在节点，启动工作线程和超时回收任务并注册JMX
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		JedisCluster cluster = context.getJedisCluster();
+		node = RedisClusterRouter.getKeyNode(cluster, queue);
+		pool = createPool(node);
+		running = true;
+		workers = Executors.newFixedThreadPool(concurrency, new RedisThreadFactory("redis-queue-" + queue));
+		for (int i = 0; i < concurrency; i++) {
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					work();
+				}
+			});
+		}
+		long interval = Math.max(100, Math.min(visibilityTimeoutMillis / 2, 5000));
+		reaper = Executors.newSingleThreadScheduledExecutor(new RedisThreadFactory("redis-queue-reaper"));
+		reaper.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				requeueExpired();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+		try {
+			ObjectName name = new ObjectName(context.objectName(OBJECT_NAME_PREFIX + ObjectName.quote(queue)));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (Exception e) {
+			logger.warn("RedisQueueConsumer 注册JMX失败。", e);
+		}
+		logger.info("RedisQueueConsumer queue:{} 开始消费，节点:{}，并发:{}，批量:{}。", queue, node, concurrency, batchSize);
+	}
+
+	/**
+	 * 停止取消息，等待正在处理的批次完成并确认后关闭连接池；未处理的消息放回队列
+	 */
+	@Override
+	public synchronized void close() {
+		if (!running) {
+			return;
+		}
+		running = false;
+		workers.shutdown();
+		try {
+			if (!workers.awaitTermination(blockSeconds * 1000L + context.getTimeout() + 1000, TimeUnit.MILLISECONDS)) {
+				logger.warn("RedisQueueConsumer queue:{} 等待工作线程结束超时，未确认的消息将在超时后重新入队。", queue);
+				workers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		reaper.shutdownNow();
+		pool.close();
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisQueueConsumer 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+	}
+
+	private void work() {
+		while (running) {
+			try {
+				long deadline = System.currentTimeMillis() + visibilityTimeoutMillis;
+				List<RedisQueueMessage> batch = pop(deadline);
+				if (batch.isEmpty()) {
+					await();
+				} else {
+					process(batch, deadline);
+				}
+			} catch (JedisRedirectionException e) {
+				// slot已迁移或发生故障转移
+				relocate(e.getTargetNode());
+			} catch (JedisException e) {
+				if (!running) {
+					return;
+				}
+				errors.increment();
+				logger.warn("RedisQueueConsumer queue:{} 访问redis失败，{}ms后重试。{}", queue, ERROR_BACKOFF_MILLIS,
+						e.toString());
+				try {
+					Thread.sleep(ERROR_BACKOFF_MILLIS);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				relocate(null);
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<RedisQueueMessage> pop(long deadline) {
+		List<String> reply;
+		try (Jedis jedis = pool.getResource()) {
+			reply = (List<String>) RedisScriptRegistry.evalsha(jedis, RedisScriptRegistry.QUEUE_POP, keys,
+					Arrays.asList(String.valueOf(batchSize), String.valueOf(deadline)));
+		}
+		List<RedisQueueMessage> batch = new ArrayList<RedisQueueMessage>(reply.size() / 2);
+		for (int i = 0; i + 1 < reply.size(); i += 2) {
+			batch.add(new RedisQueueMessage(queue, reply.get(i), reply.get(i + 1)));
+		}
+		return batch;
+	}
+
+	/**
+	 * 队列为空时阻塞等待，到达的消息移入暂存列表
+	 */
+	private void await() {
+		try (Jedis jedis = pool.getResource()) {
+			jedis.brpoplpush(queue, keys.get(1), blockSeconds);
+		}
+	}
+
+	/**
+	 * @param deadline
+	 *            取出时登记的处理截止时间
+	 */
+	private void process(List<RedisQueueMessage> batch, long deadline) {
+		List<String> ackIds = new ArrayList<String>(batch.size());
+		List<String> nackIds = new ArrayList<String>();
+		Set<String> reaped = Collections.emptySet();
+		for (int i = 0; i < batch.size(); i++) {
+			RedisQueueMessage message = batch.get(i);
+			if (!running) {
+				// 正在关闭，未处理的消息放回队列
+				nackIds.add(message.getId());
+				continue;
+			}
+			if (System.currentTimeMillis() > deadline - visibilityTimeoutMillis / 2) {
+				long extended = System.currentTimeMillis() + visibilityTimeoutMillis;
+				Set<String> expired = touch(batch, extended);
+				if (null != expired) {
+					reaped = expired;
+					deadline = extended;
+				}
+			}
+			if (reaped.contains(message.getId())) {
+				// 已超时被回收重新入队，由下一次取出的消费者处理
+				continue;
+			}
+			long start = System.nanoTime();
+			try {
+				handler.handle(message);
+				ackIds.add(message.getId());
+			} catch (Exception e) {
+				nackIds.add(message.getId());
+				logger.warn("RedisQueueConsumer queue:{} 消息:{} 处理失败，放回队列。", queue, message.getId(), e);
+			} catch (Error e) {
+				// Error不能结束工作线程，否则该线程停止消费且没有任何日志
+				nackIds.add(message.getId());
+				logger.error("RedisQueueConsumer queue:{} 消息:{} 处理时发生错误，放回队列。", queue, message.getId(), e);
+			}
+			processing.record(Math.min((System.nanoTime() - start) / 1000, RedisLatencyHistogram.MAX_VALUE));
+			throughput.increment();
+			consumed.increment();
+		}
+		try (Jedis jedis = pool.getResource()) {
+			if (!ackIds.isEmpty()) {
+				acked.add((Long) RedisScriptRegistry.evalsha(jedis, RedisScriptRegistry.QUEUE_ACK, keys, ackIds));
+			}
+			if (!nackIds.isEmpty()) {
+				nacked.add((Long) RedisScriptRegistry.evalsha(jedis, RedisScriptRegistry.QUEUE_NACK, keys, nackIds));
+			}
+		}
+	}
+
+	/**
+	 * 把批次中消息的截止时间延长到deadline，批次结束时才统一确认，已处理的消息也需要延长
+	 *
+	 * @return 已超时被回收重新入队的消息id；访问redis失败时返回null，消息仍按原截止时间处理
+	 */
+	@SuppressWarnings("unchecked")
+	private Set<String> touch(List<RedisQueueMessage> batch, long deadline) {
+		List<String> args = new ArrayList<String>(batch.size() + 1);
+		args.add(String.valueOf(deadline));
+		for (RedisQueueMessage message : batch) {
+			args.add(message.getId());
+		}
+		List<String> touched;
+		try (Jedis jedis = pool.getResource()) {
+			touched = (List<String>) RedisScriptRegistry.evalsha(jedis, RedisScriptRegistry.QUEUE_TOUCH, keys, args);
+		} catch (JedisException e) {
+			errors.increment();
+			logger.warn("RedisQueueConsumer queue:{} 延长处理截止时间失败。{}", queue, e.toString());
+			return null;
+		}
+		Set<String> expired = new HashSet<String>(args.subList(1, args.size()));
+		expired.removeAll(touched);
+		if (!expired.isEmpty()) {
+			logger.warn("RedisQueueConsumer queue:{} {}条消息已超时重新入队。", queue, expired.size());
+		}
+		return expired;
+	}
+
+	/**
+	 * 把超过截止时间的消息重新入队
+	 */
+	void requeueExpired() {
+		try (Jedis jedis = pool.getResource()) {
+			long count;
+			do {
+				count = (Long) RedisScriptRegistry.evalsha(jedis, RedisScriptRegistry.QUEUE_REQUEUE_EXPIRED, keys,
+						Arrays.asList(String.valueOf(System.currentTimeMillis()), String.valueOf(REQUEUE_LIMIT)));
+				requeued.add(count);
+				if (count > 0) {
+					logger.warn("RedisQueueConsumer queue:{} {}条消息处理超时，重新入队。", queue, count);
+				}
+			} while (REQUEUE_LIMIT == count && running);
+		} catch (JedisRedirectionException e) {
+			relocate(e.getTargetNode());
+		} catch (JedisException e) {
+			errors.increment();
+			logger.warn("RedisQueueConsumer queue:{} 回收超时消息失败。{}", queue, e.toString());
+		}
+	}
+
+	/**
+	 * 队列所在节点变化时重建连接池
+	 *
+	 * @param target
+	 *            重定向的目标节点，为null时刷新slot缓存后重新查找
+	 */
+	private synchronized void relocate(HostAndPort target) {
+		if (!running) {
+			return;
+		}
+		HostAndPort current = target;
+		if (null == current) {
+			try {
+				JedisCluster cluster = context.getJedisCluster();
+				RedisClusterRouter.renewSlotCache(cluster);
+				current = RedisClusterRouter.getKeyNode(cluster, queue);
+			} catch (JedisException e) {
+				logger.debug("RedisQueueConsumer 查找队列所在节点失败。", e);
+				return;
+			}
+		}
+		if (current.equals(node)) {
+			return;
+		}
+		logger.info("RedisQueueConsumer queue:{} 所在节点由{}变为{}。", queue, node, current);
+		JedisPool old = pool;
+		node = current;
+		pool = createPool(current);
+		old.close();
+	}
+
+	private JedisPool createPool(HostAndPort address) {
+		GenericObjectPoolConfig config = new GenericObjectPoolConfig();
+		config.setMaxTotal(concurrency + 1);
+		config.setMaxIdle(concurrency + 1);
+		config.setMinIdle(0);
+		config.setMaxWaitMillis(context.getTimeout() + 1000L);
+		return new JedisPool(config, address.getHost(), address.getPort(), context.getTimeout(),
+				context.getPassword());
+	}
+
+	/**
+	 * 工作线程数，start()之前设置
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency <= 0) {
+			throw new IllegalArgumentException("concurrency must be positive");
+		}
+		this.concurrency = concurrency;
+	}
+
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * 每次取出的最多条数
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive");
+		}
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * 可见性超时：消息在该时间内未确认则重新入队，批次处理每超过一半时间延长一次，应大于单条消息处理时间的两倍，单位：毫秒
+	 */
+	public void setVisibilityTimeoutMillis(long visibilityTimeoutMillis) {
+		if (visibilityTimeoutMillis <= 0) {
+			throw new IllegalArgumentException("visibilityTimeoutMillis must be positive");
+		}
+		this.visibilityTimeoutMillis = visibilityTimeoutMillis;
+	}
+
+	public long getVisibilityTimeoutMillis() {
+		return visibilityTimeoutMillis;
+	}
+
+	/**
+	 * 队列为空时每次阻塞等待的时长，也是close()等待工作线程退出的最长时间，单位：秒
+	 */
+	public void setBlockSeconds(int blockSeconds) {
+		if (blockSeconds <= 0) {
+			throw new IllegalArgumentException("blockSeconds must be positive");
+		}
+		this.blockSeconds = blockSeconds;
+	}
+
+	public int getBlockSeconds() {
+		return blockSeconds;
+	}
+
+	@Override
+	public String getQueue() {
+		return queue;
+	}
+
+	@Override
+	public long getBacklog() {
+		JedisCluster cluster = context.getJedisCluster();
+		return cluster.llen(queue) + cluster.llen(keys.get(1));
+	}
+
+	@Override
+	public long getInFlightCount() {
+		return context.getJedisCluster().hlen(keys.get(2));
+	}
+
+	@Override
+	public long getConsumedCount() {
+		return consumed.sum();
+	}
+
+	@Override
+	public long getAckedCount() {
+		return acked.sum();
+	}
+
+	@Override
+	public long getNackedCount() {
+		return nacked.sum();
+	}
+
+	@Override
+	public long getRequeuedCount() {
+		return requeued.sum();
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	@Override
+	public double getThroughput() {
+		return throughput.getRate(10);
+	}
+
+	@Override
+	public double getProcessingMeanMicros() {
+		return processing.snapshot().getMean();
+	}
+
+	@Override
+	public long getProcessingP99Micros() {
+		return processing.snapshot().getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getProcessingMaxMicros() {
+		return processing.snapshot().getMax();
+	}
+
+	@Override
+	public void reset() {
+		consumed.reset();
+		acked.reset();
+		nacked.reset();
+		requeued.reset();
+		errors.reset();
+		throughput.reset();
+		processing.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "RedisQueueConsumer [queue=" + queue + ", node=" + node + ", consumed=" + consumed.sum() + ", acked="
+				+ acked.sum() + ", nacked=" + nacked.sum() + ", requeued=" + requeued.sum() + "]";
+	}
+}
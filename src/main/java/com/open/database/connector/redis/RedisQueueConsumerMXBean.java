@@ -0,0 +1,58 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO 可靠队列消费者的JMX接口，注册名为RedisQueueConsumer.OBJECT_NAME_PREFIX + 队列名
+ *
+ */
+public interface RedisQueueConsumerMXBean {
+
+	String getQueue();
+
+	/**
+	 * 等待消费的消息数(队列和暂存列表的LLEN)
+	 */
+	long getBacklog();
+
+	/**
+	 * 已取出未确认的消息数(所有消费者实例)
+	 */
+	long getInFlightCount();
+
+	/**
+	 * 本实例处理的消息数
+	 */
+	long getConsumedCount();
+
+	long getAckedCount();
+
+	long getNackedCount();
+
+	/**
+	 * 超过可见性超时后重新入队的消息数(本实例回收的)
+	 */
+	long getRequeuedCount();
+
+	/**
+	 * 访问redis失败的次数
+	 */
+	long getErrorCount();
+
+	/**
+	 * 最近10秒平均每秒处理的消息数
+	 */
+	double getThroughput();
+
+	/**
+	 * 处理耗时的平均值，单位：微秒
+	 */
+	double getProcessingMeanMicros();
+
+	/**
+	 * 处理耗时的99分位，单位：微秒
+	 */
+	long getProcessingP99Micros();
+
+	long getProcessingMaxMicros();
+
+	void reset();
+}
@@ -0,0 +1,17 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO 可靠队列的消息处理器，见RedisQueueConsumer
+ *
+ */
+public interface RedisQueueHandler {
+
+	/**
+	 * 处理一条消息：正常返回时确认(ack)并删除，抛出异常时拒绝(nack)并放回队列等待重新投递。
+	 * 同一条消息可能被投递多次(处理超过可见性超时、确认前进程退出)，处理逻辑需要幂等。
+	 *
+	 * @param message
+	 *            消息
+	 */
+	void handle(RedisQueueMessage message) throws Exception;
+}
@@ -0,0 +1,45 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO 可靠队列中取出的一条消息
+ *
+ * id在每次投递时重新分配，同一条消息超时或拒绝后再次投递时id不同。
+ *
+ */
+public class RedisQueueMessage {
+
+	private final String queue;
+
+	private final String id;
+
+	private final String body;
+
+	RedisQueueMessage(String queue, String id, String body) {
+		this.queue = queue;
+		this.id = id;
+		this.body = body;
+	}
+
+	public String getQueue() {
+		return queue;
+	}
+
+	/**
+	 * 本次投递的id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * 生产者写入队列的内容
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisQueueMessage [queue=" + queue + ", id=" + id + ", body=" + body + "]";
+	}
+}
@@ -0,0 +1,17 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO 读请求的节点选择策略，见RedisReplicaRouter
+ *
+ */
+public enum RedisReadPreference {
+
+	/** 只读master，读到的一定是最新写入的数据 */
+	MASTER,
+
+	/** 优先读复制延迟在范围内的replica，没有可用replica时读master */
+	REPLICA_PREFERRED,
+
+	/** 读master和可用replica中测得延迟最低的节点 */
+	NEAREST
+}
@@ -0,0 +1,116 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * TODO 按字段顺序(schema)编码的对象编解码器
+ *
+ * 只写字段个数和各字段的值，不写字段名和类型，体积通常只有JSON的几分之一，编解码也不需要反射。
+ *
+ * <pre>
+ * RedisRecordCodec&lt;User&gt; codec = RedisRecordCodec.builder(User::new)
+ * 		.field(User::getId, User::setId, RedisCodecs.LONG)
+ * 		.field(User::getName, User::setName, RedisCodecs.STRING)
+ * 		.build();
+ * </pre>
+ *
+ * 兼容性：新增字段只能追加在最后。读到的字段少于schema时其余字段保持构造后的默认值，多于schema时忽略多出的字段，
+ * 因此新旧版本可以同时读写同一个key；但字段增减后的记录不能再嵌套在其他编解码器中间使用。
+ *
+ * @param <T>
+ *            对象类型
+ */
+public final class RedisRecordCodec<T> implements RedisCodec<T> {
+
+	private final Supplier<T> factory;
+
+	private final List<Field<T, ?>> fields;
+
+	private RedisRecordCodec(Supplier<T> factory, List<Field<T, ?>> fields) {
+		this.factory = factory;
+		this.fields = fields;
+	}
+
+	public static <T> Builder<T> builder(Supplier<T> factory) {
+		return new Builder<T>(factory);
+	}
+
+	@Override
+	public void encode(T value, RedisCodecOutput out) {
+		out.writeVarLong(fields.size());
+		for (Field<T, ?> field : fields) {
+			field.encode(value, out);
+		}
+	}
+
+	@Override
+	public T decode(RedisCodecInput in) {
+		long count = in.readVarLong();
+		T value = factory.get();
+		int known = (int) Math.min(count, fields.size());
+		for (int i = 0; i < known; i++) {
+			fields.get(i).decode(value, in);
+		}
+		if (count > fields.size()) {
+			// 新版本追加的字段，当前版本不认识，直接跳过剩余内容
+			in.skip(in.remaining());
+		}
+		return value;
+	}
+
+	private static final class Field<T, V> {
+
+		private final Function<T, V> getter;
+
+		private final BiConsumer<T, V> setter;
+
+		private final RedisCodec<V> codec;
+
+		Field(Function<T, V> getter, BiConsumer<T, V> setter, RedisCodec<V> codec) {
+			this.getter = getter;
+			this.setter = setter;
+			this.codec = codec;
+		}
+
+		void encode(T record, RedisCodecOutput out) {
+			codec.encode(getter.apply(record), out);
+		}
+
+		void decode(T record, RedisCodecInput in) {
+			setter.accept(record, codec.decode(in));
+		}
+	}
+
+	public static final class Builder<T> {
+
+		private final Supplier<T> factory;
+
+		private final List<Field<T, ?>> fields = new ArrayList<Field<T, ?>>();
+
+		private Builder(Supplier<T> factory) {
+			this.factory = factory;
+		}
+
+		/**
+		 * 追加一个字段，编码顺序即添加顺序
+		 *
+		 * @param getter
+		 * @param setter
+		 * @param codec
+		 *            字段编解码器，字段可能为null时使用RedisCodecs.nullable()包装(STRING本身支持null)
+		 * @return
+		 */
+		public <V> Builder<T> field(Function<T, V> getter, BiConsumer<T, V> setter, RedisCodec<V> codec) {
+			fields.add(new Field<T, V>(getter, setter, codec));
+			return this;
+		}
+
+		public RedisRecordCodec<T> build() {
+			return new RedisRecordCodec<T>(factory, new ArrayList<Field<T, ?>>(fields));
+		}
+	}
+}
@@ -0,0 +1,661 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * TODO redis cluster 读请求的replica路由
+ *
+ * JedisCluster只访问master，replica处于空闲状态。开启后RedisClientUtil的get、getRedisMap、getRedisMapValue、exists、ttl、
+ * llen、lrange按读策略(RedisReadPreference)选择节点：replica使用单独的连接池，连接建立时执行READONLY。
+ *
+ * 后台每refreshIntervalMillis通过CLUSTER SLOTS刷新master与replica的对应关系，在master上执行INFO replication取得
+ * 每个replica落后的复制偏移量和确认延迟，并PING各节点测量延迟；复制延迟超过maxLagOffset或maxLagSeconds、
+ * 或无法取得延迟的replica不参与路由，因此读到的数据最多落后约maxLagSeconds + refreshIntervalMillis。
+ * replica读取出现连接异常或重定向(slot已迁移)时本次改读master，并在下次刷新前不再使用该replica。
+ *
+ * 写入后需要立即读到自己写入的数据时，用RedisClientUtil.withReadPreference(RedisReadPreference.MASTER, ...)
+ * 包住这次读取。
+ *
+ * 使用方法：
+ *
+ * <pre>
+ * RedisClientUtil.getInstance().setReplicaRouter(new RedisReplicaRouter(RedisReadPreference.REPLICA_PREFERRED));
+ * </pre>
+ *
+ */
+public class RedisReplicaRouter implements RedisReplicaRouterMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisReplicaRouter.class);
+
+	/** JMX注册名 */
+	public static final String OBJECT_NAME = "com.sinosafe.macaw.database.connector.redis:type=RedisReplicaRouter";
+
+	public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 1000;
+
+	public static final long DEFAULT_MAX_LAG_OFFSET = 1024 * 1024;
+
+	public static final long DEFAULT_MAX_LAG_SECONDS = 2;
+
+	private final long refreshIntervalMillis;
+
+	private volatile RedisReadPreference readPreference;
+
+	private volatile long maxLagOffset = DEFAULT_MAX_LAG_OFFSET;
+
+	private volatile long maxLagSeconds = DEFAULT_MAX_LAG_SECONDS;
+
+	private volatile JedisCluster cluster;
+
+	/** replica连接池使用集群的超时、密码和连接池配置 */
+	private volatile RedisClusterContext context;
+
+	/** 每个slot的master和replica，首次刷新前为null */
+	private volatile Shard[] shards;
+
+	/** master和replica节点，key为host:port */
+	private final ConcurrentMap<String, Node> nodes = new ConcurrentHashMap<String, Node>();
+
+	private final AtomicBoolean refreshPending = new AtomicBoolean();
+
+	private final LongAdder replicaReads = new LongAdder();
+
+	private final LongAdder masterReads = new LongAdder();
+
+	private final LongAdder fallbacks = new LongAdder();
+
+	private ScheduledExecutorService monitor;
+
+	private ObjectName registeredName;
+
+	public RedisReplicaRouter(RedisReadPreference readPreference) {
+		this(readPreference, DEFAULT_REFRESH_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * @param readPreference
+	 *            默认的读策略
+	 * @param refreshIntervalMillis
+	 *            刷新拓扑、复制延迟和节点延迟的间隔，单位：毫秒
+	 */
+	public RedisReplicaRouter(RedisReadPreference readPreference, long refreshIntervalMillis) {
+		if (null == readPreference) {
+			throw new IllegalArgumentException("readPreference must not be null");
+		}
+		if (refreshIntervalMillis <= 0) {
+			throw new IllegalArgumentException("refreshIntervalMillis must be positive");
+		}
+		this.readPreference = readPreference;
+		this.refreshIntervalMillis = refreshIntervalMillis;
+	}
+
+	/**
+	 * 刷新一次拓扑后启动后台刷新并注册JMX，由RedisClientUtil.setReplicaRouter调用
+	 */
+	public synchronized void start(RedisClusterContext context) {
+		if (null != monitor) {
+			return;
+		}
+		this.context = context;
+		this.cluster = context.getJedisCluster();
+		refreshQuietly();
+		monitor = Executors.newSingleThreadScheduledExecutor(new RedisThreadFactory("redis-replica-monitor"));
+		monitor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				refreshQuietly();
+			}
+		}, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+		try {
+			ObjectName name = new ObjectName(context.objectName(OBJECT_NAME));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (Exception e) {
+			logger.warn("RedisReplicaRouter 注册JMX失败。", e);
+		}
+	}
+
+	/**
+	 * 停止后台刷新、注销JMX并关闭replica连接池，之后所有读请求读master
+	 */
+	@Override
+	public synchronized void close() {
+		if (null != monitor) {
+			monitor.shutdownNow();
+			monitor = null;
+		}
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisReplicaRouter 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+		cluster = null;
+		shards = null;
+		for (Node node : nodes.values()) {
+			node.close();
+		}
+		nodes.clear();
+	}
+
+	/**
+	 * 按读策略执行读请求
+	 *
+	 * @param preference
+	 *            读策略
+	 * @param key
+	 *            redis键，决定slot
+	 * @param replicaRead
+	 *            在replica连接上执行的读取
+	 * @param masterRead
+	 *            读master，选中master或replica读取失败时执行
+	 * @return 读取结果
+	 */
+	<T> T execute(RedisReadPreference preference, String key, Function<Jedis, T> replicaRead,
+			Supplier<T> masterRead) {
+		Node replica = select(preference, key);
+		if (null == replica) {
+			masterReads.increment();
+			return masterRead.get();
+		}
+		Jedis jedis = null;
+		try {
+			jedis = replica.pool.getResource();
+			T value = replicaRead.apply(jedis);
+			replica.reads.increment();
+			replicaReads.increment();
+			return value;
+		} catch (JedisRedirectionException e) {
+			// slot已迁移，刷新拓扑前改读master
+			replica.available = false;
+			scheduleRefresh();
+		} catch (JedisConnectionException e) {
+			if (replica.available) {
+				logger.warn("RedisReplicaRouter replica:{} 连接失败，下次刷新前改读master。{}", replica.name, e.toString());
+			}
+			replica.available = false;
+		} catch (JedisException e) {
+			// replica连接池用尽
+			if (null != jedis) {
+				throw e;
+			}
+		} finally {
+			if (null != jedis) {
+				jedis.close();
+			}
+		}
+		fallbacks.increment();
+		return masterRead.get();
+	}
+
+	/**
+	 * 选择执行读请求的replica，返回null表示读master
+	 */
+	private Node select(RedisReadPreference preference, String key) {
+		Shard[] current = shards;
+		if (RedisReadPreference.MASTER == preference || null == current) {
+			return null;
+		}
+		Shard shard = current[RedisClusterRouter.getSlot(key)];
+		if (null == shard || 0 == shard.replicas.length) {
+			return null;
+		}
+		Node[] replicas = shard.replicas;
+		if (RedisReadPreference.NEAREST == preference) {
+			Node nearest = null;
+			double latency = shard.master.latencyMicros < 0 ? Double.MAX_VALUE : shard.master.latencyMicros;
+			for (Node replica : replicas) {
+				if (replica.available && replica.latencyMicros < latency) {
+					nearest = replica;
+					latency = replica.latencyMicros;
+				}
+			}
+			return nearest;
+		}
+		int start = replicas.length > 1 ? ThreadLocalRandom.current().nextInt(replicas.length) : 0;
+		for (int i = 0; i < replicas.length; i++) {
+			Node replica = replicas[(start + i) % replicas.length];
+			if (replica.available) {
+				return replica;
+			}
+		}
+		return null;
+	}
+
+	private void scheduleRefresh() {
+		ScheduledExecutorService current = monitor;
+		if (null != current && refreshPending.compareAndSet(false, true)) {
+			try {
+				current.execute(new Runnable() {
+					@Override
+					public void run() {
+						refreshQuietly();
+					}
+				});
+			} catch (RuntimeException e) {
+				refreshPending.set(false);
+			}
+		}
+	}
+
+	private void refreshQuietly() {
+		refreshPending.set(false);
+		try {
+			refresh();
+		} catch (RuntimeException e) {
+			logger.warn("RedisReplicaRouter 刷新replica状态失败。", e);
+		}
+	}
+
+	/**
+	 * 刷新拓扑、复制延迟和节点延迟，与close()互斥
+	 */
+	@SuppressWarnings("unchecked")
+	synchronized void refresh() {
+		JedisCluster current = cluster;
+		if (null == current) {
+			return;
+		}
+		List<Object> ranges = null;
+		for (JedisPool pool : RedisClusterRouter.getMasterPools(current)) {
+			try (Jedis jedis = pool.getResource()) {
+				ranges = jedis.clusterSlots();
+				break;
+			} catch (JedisException e) {
+				logger.debug("RedisReplicaRouter CLUSTER SLOTS失败，尝试下一个节点。", e);
+			}
+		}
+		if (null == ranges) {
+			return;
+		}
+		Shard[] next = new Shard[JedisCluster.HASHSLOTS];
+		Map<String, Shard> byMaster = new HashMap<String, Shard>();
+		Set<String> seen = new HashSet<String>();
+		for (Object item : ranges) {
+			List<Object> range = (List<Object>) item;
+			if (range.size() < 3) {
+				continue;
+			}
+			Node master = node(current, (List<Object>) range.get(2), null);
+			seen.add(master.name);
+			Shard shard = byMaster.get(master.name);
+			if (null == shard) {
+				Node[] replicas = new Node[range.size() - 3];
+				for (int i = 3; i < range.size(); i++) {
+					replicas[i - 3] = node(current, (List<Object>) range.get(i), master.name);
+					seen.add(replicas[i - 3].name);
+				}
+				shard = new Shard(master, replicas);
+				byMaster.put(master.name, shard);
+			}
+			int end = ((Long) range.get(1)).intValue();
+			for (int slot = ((Long) range.get(0)).intValue(); slot <= end; slot++) {
+				next[slot] = shard;
+			}
+		}
+		for (Shard shard : byMaster.values()) {
+			measure(shard);
+		}
+		shards = next;
+		for (Node node : nodes.values()) {
+			if (!seen.contains(node.name) && nodes.remove(node.name, node)) {
+				node.close();
+			}
+		}
+	}
+
+	/**
+	 * 取得或创建节点；replica创建单独的READONLY连接池，master使用JedisCluster的连接池
+	 */
+	private Node node(JedisCluster current, List<Object> info, String master) {
+		HostAndPort address = new HostAndPort(SafeEncoder.encode((byte[]) info.get(0)),
+				((Long) info.get(1)).intValue());
+		String name = address.toString();
+		Node node = nodes.get(name);
+		if (null != node && (null == master ? null == node.master : master.equals(node.master))) {
+			return node;
+		}
+		// 新节点或角色发生变化(故障转移)
+		JedisPool pool = null == master ? RedisClusterRouter.getNodePool(current, address) : readOnlyPool(address);
+		Node created = new Node(name, master, pool);
+		nodes.put(name, created);
+		if (null != node) {
+			node.close();
+		}
+		return created;
+	}
+
+	/**
+	 * 在master上取得各replica的复制延迟，PING测量master和replica的延迟
+	 */
+	private void measure(Shard shard) {
+		String info = null;
+		try (Jedis jedis = shard.master.pool.getResource()) {
+			long start = System.nanoTime();
+			jedis.ping();
+			shard.master.sample(System.nanoTime() - start);
+			info = jedis.info("replication");
+		} catch (JedisException e) {
+			shard.master.latencyMicros = Double.MAX_VALUE;
+			logger.debug("RedisReplicaRouter master:{} 状态获取失败。", shard.master.name, e);
+		}
+		Map<String, long[]> lags = parseReplication(info);
+		long lagOffsetLimit = maxLagOffset;
+		long lagSecondsLimit = maxLagSeconds;
+		for (Node replica : shard.replicas) {
+			long[] lag = lags.get(replica.name);
+			replica.lagOffset = null == lag ? -1 : lag[0];
+			replica.lagSeconds = null == lag ? -1 : lag[1];
+			boolean reachable;
+			try (Jedis jedis = replica.pool.getResource()) {
+				long start = System.nanoTime();
+				jedis.ping();
+				replica.sample(System.nanoTime() - start);
+				reachable = true;
+			} catch (JedisException e) {
+				reachable = false;
+				logger.debug("RedisReplicaRouter replica:{} PING失败。", replica.name, e);
+			}
+			boolean available = reachable && null != lag && lag[0] <= lagOffsetLimit && lag[1] <= lagSecondsLimit;
+			if (available != replica.available) {
+				logger.info("RedisReplicaRouter replica:{} {}，复制延迟:{}字节/{}秒。", replica.name,
+						available ? "恢复读路由" : "停止读路由", replica.lagOffset, replica.lagSeconds);
+			}
+			replica.available = available;
+		}
+	}
+
+	/**
+	 * 解析INFO replication，返回 replica host:port -> {落后的偏移量, 确认延迟秒数}，只包含state=online的replica
+	 */
+	static Map<String, long[]> parseReplication(String info) {
+		Map<String, long[]> lags = new HashMap<String, long[]>();
+		if (null == info) {
+			return lags;
+		}
+		long masterOffset = -1;
+		List<Map<String, String>> slaves = new ArrayList<Map<String, String>>();
+		for (String line : info.split("\r?\n")) {
+			if (line.startsWith("master_repl_offset:")) {
+				masterOffset = Long.parseLong(line.substring("master_repl_offset:".length()).trim());
+			} else if (line.startsWith("slave") && line.indexOf(":ip=") > 0) {
+				Map<String, String> fields = new HashMap<String, String>();
+				for (String field : line.substring(line.indexOf(':') + 1).split(",")) {
+					int eq = field.indexOf('=');
+					if (eq > 0) {
+						fields.put(field.substring(0, eq), field.substring(eq + 1).trim());
+					}
+				}
+				slaves.add(fields);
+			}
+		}
+		if (masterOffset < 0) {
+			return lags;
+		}
+		for (Map<String, String> fields : slaves) {
+			if (!"online".equals(fields.get("state")) || null == fields.get("offset")) {
+				continue;
+			}
+			long offset = Long.parseLong(fields.get("offset"));
+			long lag = null == fields.get("lag") ? 0 : Long.parseLong(fields.get("lag"));
+			lags.put(fields.get("ip") + ":" + fields.get("port"), new long[] { Math.max(0, masterOffset - offset), lag });
+		}
+		return lags;
+	}
+
+	private JedisPool readOnlyPool(HostAndPort address) {
+		RedisClusterContext current = context;
+		RedisPoolConfig config = current.getPoolConfig();
+		JedisPool pool = new JedisPool();
+		pool.initPool((null == config ? new RedisPoolConfig() : config).toJedisPoolConfig(),
+				new ReadOnlyFactory(address, current.getTimeout(), current.getPassword()));
+		return pool;
+	}
+
+	@Override
+	public String getReadPreference() {
+		return readPreference.name();
+	}
+
+	@Override
+	public void setReadPreference(String readPreference) {
+		setPreference(RedisReadPreference.valueOf(readPreference.trim().toUpperCase()));
+	}
+
+	public RedisReadPreference getPreference() {
+		return readPreference;
+	}
+
+	public void setPreference(RedisReadPreference readPreference) {
+		if (null == readPreference) {
+			throw new IllegalArgumentException("readPreference must not be null");
+		}
+		this.readPreference = readPreference;
+	}
+
+	@Override
+	public long getMaxLagOffset() {
+		return maxLagOffset;
+	}
+
+	@Override
+	public void setMaxLagOffset(long maxLagOffset) {
+		this.maxLagOffset = maxLagOffset;
+	}
+
+	@Override
+	public long getMaxLagSeconds() {
+		return maxLagSeconds;
+	}
+
+	@Override
+	public void setMaxLagSeconds(long maxLagSeconds) {
+		this.maxLagSeconds = maxLagSeconds;
+	}
+
+	@Override
+	public List<RedisReplicaStats> getReplicas() {
+		List<RedisReplicaStats> stats = new ArrayList<RedisReplicaStats>();
+		for (Node node : nodes.values()) {
+			if (null != node.master) {
+				stats.add(new RedisReplicaStats(node.name, node.master, node.lagOffset, node.lagSeconds,
+						(long) Math.min(node.latencyMicros, Long.MAX_VALUE), node.available, node.reads.sum()));
+			}
+		}
+		return stats;
+	}
+
+	@Override
+	public long getReplicaReadCount() {
+		return replicaReads.sum();
+	}
+
+	@Override
+	public long getMasterReadCount() {
+		return masterReads.sum();
+	}
+
+	@Override
+	public long getFallbackCount() {
+		return fallbacks.sum();
+	}
+
+	@Override
+	public void reset() {
+		replicaReads.reset();
+		masterReads.reset();
+		fallbacks.reset();
+		for (Node node : nodes.values()) {
+			node.reads.reset();
+		}
+	}
+
+	/**
+	 * slot所属的master和它的replica
+	 */
+	private static final class Shard {
+
+		final Node master;
+
+		final Node[] replicas;
+
+		Shard(Node master, Node[] replicas) {
+			this.master = master;
+			this.replicas = replicas;
+		}
+	}
+
+	/**
+	 * 节点及其测量结果
+	 */
+	private static final class Node {
+
+		final String name;
+
+		/** replica所属的master，master节点为null */
+		final String master;
+
+		final JedisPool pool;
+
+		final LongAdder reads = new LongAdder();
+
+		/** PING延迟的滑动平均，单位：微秒，未测量时为-1 */
+		volatile double latencyMicros = -1;
+
+		volatile long lagOffset = -1;
+
+		volatile long lagSeconds = -1;
+
+		volatile boolean available;
+
+		Node(String name, String master, JedisPool pool) {
+			this.name = name;
+			this.master = master;
+			this.pool = pool;
+		}
+
+		void sample(long nanos) {
+			double micros = nanos / 1000.0;
+			double current = latencyMicros;
+			latencyMicros = current < 0 || Double.MAX_VALUE == current ? micros : current * 0.7 + micros * 0.3;
+		}
+
+		/**
+		 * 关闭replica连接池，master的连接池属于JedisCluster，不关闭
+		 */
+		void close() {
+			available = false;
+			if (null != master) {
+				pool.close();
+			}
+		}
+	}
+
+	/**
+	 * replica连接的工厂：建立连接后认证并执行READONLY
+	 */
+	private static final class ReadOnlyFactory implements PooledObjectFactory<Jedis> {
+
+		private final HostAndPort address;
+
+		private final int timeout;
+
+		private final String password;
+
+		ReadOnlyFactory(HostAndPort address, int timeout, String password) {
+			this.address = address;
+			this.timeout = timeout;
+			this.password = password;
+		}
+
+		@Override
+		public PooledObject<Jedis> makeObject() throws Exception {
+			Jedis jedis = new Jedis(address.getHost(), address.getPort(), timeout, timeout);
+			try {
+				jedis.connect();
+				if (null != password) {
+					jedis.auth(password);
+				}
+				jedis.readonly();
+			} catch (JedisException e) {
+				jedis.close();
+				throw e;
+			}
+			return new DefaultPooledObject<Jedis>(jedis);
+		}
+
+		@Override
+		public void destroyObject(PooledObject<Jedis> p) throws Exception {
+			Jedis jedis = p.getObject();
+			if (jedis.isConnected()) {
+				try {
+					jedis.quit();
+				} catch (Exception e) {
+					// ignore
+				}
+				try {
+					jedis.disconnect();
+				} catch (Exception e) {
+					// ignore
+				}
+			}
+		}
+
+		@Override
+		public boolean validateObject(PooledObject<Jedis> p) {
+			try {
+				return "PONG".equals(p.getObject().ping());
+			} catch (Exception e) {
+				return false;
+			}
+		}
+
+		@Override
+		public void activateObject(PooledObject<Jedis> p) throws Exception {
+		}
+
+		@Override
+		public void passivateObject(PooledObject<Jedis> p) throws Exception {
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.List;
+
+/**
+ * TODO replica读路由的JMX接口，注册名为RedisReplicaRouter.OBJECT_NAME
+ *
+ */
+public interface RedisReplicaRouterMXBean {
+
+	/**
+	 * 默认的读策略：MASTER、REPLICA_PREFERRED、NEAREST
+	 */
+	String getReadPreference();
+
+	void setReadPreference(String readPreference);
+
+	/**
+	 * 允许的最大复制偏移量差(字节)，超过时不再读该replica
+	 */
+	long getMaxLagOffset();
+
+	void setMaxLagOffset(long maxLagOffset);
+
+	/**
+	 * 允许的最大确认延迟(秒)，超过时不再读该replica
+	 */
+	long getMaxLagSeconds();
+
+	void setMaxLagSeconds(long maxLagSeconds);
+
+	/**
+	 * 所有replica的复制延迟和可用状态
+	 */
+	List<RedisReplicaStats> getReplicas();
+
+	/**
+	 * 由replica执行的读请求数
+	 */
+	long getReplicaReadCount();
+
+	/**
+	 * 由master执行的读请求数(策略为MASTER、没有可用replica或master延迟最低)
+	 */
+	long getMasterReadCount();
+
+	/**
+	 * replica读取失败后改读master的次数
+	 */
+	long getFallbackCount();
+
+	void reset();
+}
@@ -0,0 +1,94 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * TODO replica节点的复制延迟和可用状态快照
+ *
+ * 同时作为JMX MXBean的返回类型。
+ *
+ */
+public class RedisReplicaStats {
+
+	private final String node;
+
+	private final String master;
+
+	private final long lagOffset;
+
+	private final long lagSeconds;
+
+	private final long latencyMicros;
+
+	private final boolean available;
+
+	private final long readCount;
+
+	@ConstructorProperties({ "node", "master", "lagOffset", "lagSeconds", "latencyMicros", "available", "readCount" })
+	public RedisReplicaStats(String node, String master, long lagOffset, long lagSeconds, long latencyMicros,
+			boolean available, long readCount) {
+		this.node = node;
+		this.master = master;
+		this.lagOffset = lagOffset;
+		this.lagSeconds = lagSeconds;
+		this.latencyMicros = latencyMicros;
+		this.available = available;
+		this.readCount = readCount;
+	}
+
+	/**
+	 * replica节点 host:port
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	/**
+	 * 所属master节点 host:port
+	 */
+	public String getMaster() {
+		return master;
+	}
+
+	/**
+	 * 落后master的复制偏移量(字节)，未取得时为-1
+	 */
+	public long getLagOffset() {
+		return lagOffset;
+	}
+
+	/**
+	 * master上记录的距replica上次确认的秒数，未取得时为-1
+	 */
+	public long getLagSeconds() {
+		return lagSeconds;
+	}
+
+	/**
+	 * PING延迟的滑动平均，单位：微秒
+	 */
+	public long getLatencyMicros() {
+		return latencyMicros;
+	}
+
+	/**
+	 * 是否参与读请求路由：连接正常且复制延迟在范围内
+	 */
+	public boolean isAvailable() {
+		return available;
+	}
+
+	/**
+	 * 由该replica执行的读请求数
+	 */
+	public long getReadCount() {
+		return readCount;
+	}
+
+	@Override
+	public String toString() {
+		return "RedisReplicaStats [node=" + node + ", master=" + master + ", lagOffset=" + lagOffset + ", lagSeconds="
+				+ lagSeconds + ", latencyMicros=" + latencyMicros + ", available=" + available + ", readCount="
+				+ readCount + "]";
+	}
+}
@@ -0,0 +1,96 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+/**
+ * TODO 按页懒加载的redis迭代器
+ *
+ * 每次只向redis请求一页(HSCAN/SSCAN的COUNT或LRANGE的一段)，当前页遍历完才请求下一页，内存占用与页大小成正比，
+ * 单次命令在redis上的耗时也只与页大小有关，不会像HGETALL/整段LRANGE那样长时间阻塞节点。
+ *
+ * 迭代过程中结构被修改时与redis的SCAN语义一致：迭代期间一直存在的元素至少返回一次，可能重复返回(rehash)，
+ * 迭代期间新增或删除的元素不保证是否返回；按页LRANGE在列表头部插入或删除元素时会导致元素重复或跳过。
+ *
+ * 迭代器不是线程安全的，每次遍历需要重新获取。
+ *
+ * @param <T>
+ *            元素类型
+ */
+public class RedisScanIterator<T> implements Iterator<T> {
+
+	/** 默认页大小 */
+	public static final int DEFAULT_PAGE_SIZE = 100;
+
+	/** 页大小上限，避免误传过大的值时退化为一次性加载 */
+	public static final int MAX_PAGE_SIZE = 10000;
+
+	private final Function<String, ScanResult<T>> pager;
+
+	private String cursor = ScanParams.SCAN_POINTER_START;
+
+	private Iterator<T> page = Collections.<T> emptyList().iterator();
+
+	private boolean finished;
+
+	private long pages;
+
+	/**
+	 * @param pager
+	 *            按游标获取一页，返回下一页的游标和本页元素，游标为"0"时表示结束
+	 */
+	RedisScanIterator(Function<String, ScanResult<T>> pager) {
+		this.pager = pager;
+	}
+
+	static int checkPageSize(int pageSize) {
+		if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+		}
+		return pageSize;
+	}
+
+	@Override
+	public boolean hasNext() {
+		// SCAN允许返回空页，需要继续请求直到游标回到0
+		while (!page.hasNext() && !finished) {
+			ScanResult<T> result = pager.apply(cursor);
+			cursor = result.getStringCursor();
+			finished = ScanParams.SCAN_POINTER_START.equals(cursor);
+			page = result.getResult().iterator();
+			pages++;
+		}
+		return page.hasNext();
+	}
+
+	@Override
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		return page.next();
+	}
+
+	/**
+	 * 以顺序Stream的方式遍历，同样按页懒加载
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false);
+	}
+
+	/**
+	 * 已请求的页数
+	 */
+	public long getPageCount() {
+		return pages;
+	}
+}
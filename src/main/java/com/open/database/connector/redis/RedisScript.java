@@ -0,0 +1,66 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * TODO redis Lua脚本定义，在本地计算好SHA1，执行时优先使用EVALSHA只发送摘要
+ *
+ */
+public final class RedisScript {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final String name;
+
+	private final String source;
+
+	private final String sha1;
+
+	RedisScript(String name, String source) {
+		this.name = name;
+		this.source = source;
+		this.sha1 = sha1(source);
+	}
+
+	/**
+	 * 脚本名称，用于日志和注册表查找
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * 脚本源码，NOSCRIPT时用于重新加载
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * 脚本源码的SHA1摘要，与SCRIPT LOAD的返回值一致
+	 */
+	public String getSha1() {
+		return sha1;
+	}
+
+	private static String sha1(String source) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+			char[] chars = new char[digest.length * 2];
+			for (int i = 0; i < digest.length; i++) {
+				chars[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+				chars[i * 2 + 1] = HEX[digest[i] & 0xF];
+			}
+			return new String(chars);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + "(" + sha1 + ")";
+	}
+}
@@ -0,0 +1,301 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * TODO redis Lua脚本注册表
+ *
+ * 统一管理工具类使用的Lua脚本，执行时先发送EVALSHA，节点返回NOSCRIPT（节点重启、故障切换或SCRIPT FLUSH后）
+ * 时自动在该key所属节点上SCRIPT LOAD后重试，调用方无需关心脚本是否已加载。
+ *
+ */
+public class RedisScriptRegistry {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisScriptRegistry.class);
+
+	private static final ConcurrentMap<String, RedisScript> scripts = new ConcurrentHashMap<String, RedisScript>();
+
+	/**
+	 * 写入hash并设置超时时间，一次往返且原子执行，避免hmset成功后expire前进程退出导致key永不过期。
+	 * KEYS[1]：redis键，ARGV[1]：超时时间（秒），ARGV[2..]：field、value交替。
+	 * 分段调用HMSET，避免field过多时unpack超出Lua栈大小。
+	 */
+	public static final RedisScript HMSET_EXPIRE = register("hmsetExpire",
+			"local key = KEYS[1]\n"
+			+ "for i = 2, #ARGV, 2000 do\n"
+			+ "  redis.call('HMSET', key, unpack(ARGV, i, math.min(i + 1999, #ARGV)))\n"
+			+ "end\n"
+			+ "redis.call('EXPIRE', key, ARGV[1])\n"
+			+ "return 'OK'");
+
+	/**
+	 * 从列表右边取出N个元素并依次放回左边，返回取出的元素(先取出的在前)，列表长度不足N时不做修改并返回nil。
+	 * 整个轮转在服务端原子执行，并发调用拿到的批次互不重叠，进程中途退出也不会丢失元素。
+	 * KEYS[1]：列表键，ARGV[1]：元素个数。
+	 */
+	public static final RedisScript ROTATE_TAIL = register("rotateTail",
+			"local key = KEYS[1]\n"
+			+ "local n = tonumber(ARGV[1])\n"
+			+ "if redis.call('LLEN', key) < n then\n"
+			+ "  return false\n"
+			+ "end\n"
+			+ "local items = {}\n"
+			+ "for i = 1, n do\n"
+			+ "  items[i] = redis.call('RPOPLPUSH', key, key)\n"
+			+ "end\n"
+			+ "return items");
+
+	/**
+	 * 值等于ARGV[1]时删除key，返回删除的个数，用于释放分布式锁时只删除自己持有的锁。
+	 * KEYS[1]：锁的键，ARGV[1]：加锁时写入的令牌。
+	 */
+	public static final RedisScript COMPARE_AND_DELETE = register("compareAndDelete",
+			"if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+			+ "  return redis.call('DEL', KEYS[1])\n"
+			+ "end\n"
+			+ "return 0");
+
+	/**
+	 * 可靠队列取消息：优先从暂存列表、再从队列右边取出最多N条，每条分配递增id后放入处理中hash并记录处理截止时间，
+	 * 返回id、消息交替的列表。取出和登记在服务端原子执行，消费者在处理中退出时消息仍在处理中hash里，超时后重新入队。
+	 * KEYS[1]：队列，KEYS[2]：暂存列表，KEYS[3]：处理中hash(id -> 消息)，KEYS[4]：截止时间zset(id -> 毫秒)，KEYS[5]：id序列；
+	 * ARGV[1]：最多取出的条数，ARGV[2]：处理截止时间(毫秒)。
+	 */
+	public static final RedisScript QUEUE_POP = register("queuePop",
+			"local n = tonumber(ARGV[1])\n"
+			+ "local result = {}\n"
+			+ "for i = 1, n do\n"
+			+ "  local message = redis.call('RPOP', KEYS[2])\n"
+			+ "  if not message then\n"
+			+ "    message = redis.call('RPOP', KEYS[1])\n"
+			+ "  end\n"
+			+ "  if not message then\n"
+			+ "    break\n"
+			+ "  end\n"
+			+ "  local id = tostring(redis.call('INCR', KEYS[5]))\n"
+			+ "  redis.call('HSET', KEYS[3], id, message)\n"
+			+ "  redis.call('ZADD', KEYS[4], ARGV[2], id)\n"
+			+ "  result[#result + 1] = id\n"
+			+ "  result[#result + 1] = message\n"
+			+ "end\n"
+			+ "return result");
+
+	/**
+	 * 可靠队列确认：从处理中hash和截止时间zset删除ARGV中的id，返回实际删除的条数(已超时重新入队的id不计)。
+	 * KEYS与QUEUE_POP相同，ARGV：消息id。
+	 */
+	public static final RedisScript QUEUE_ACK = register("queueAck",
+			"local acked = 0\n"
+			+ "for i = 1, #ARGV do\n"
+			+ "  redis.call('ZREM', KEYS[4], ARGV[i])\n"
+			+ "  acked = acked + redis.call('HDEL', KEYS[3], ARGV[i])\n"
+			+ "end\n"
+			+ "return acked");
+
+	/**
+	 * 可靠队列拒绝：把ARGV中id对应的消息放回队列左边(排在已有消息之后，避免处理失败的消息反复占用消费者)，返回放回的条数。
+	 * KEYS与QUEUE_POP相同，ARGV：消息id。
+	 */
+	public static final RedisScript QUEUE_NACK = register("queueNack",
+			"local requeued = 0\n"
+			+ "for i = 1, #ARGV do\n"
+			+ "  local message = redis.call('HGET', KEYS[3], ARGV[i])\n"
+			+ "  redis.call('ZREM', KEYS[4], ARGV[i])\n"
+			+ "  if message then\n"
+			+ "    redis.call('HDEL', KEYS[3], ARGV[i])\n"
+			+ "    redis.call('LPUSH', KEYS[1], message)\n"
+			+ "    requeued = requeued + 1\n"
+			+ "  end\n"
+			+ "end\n"
+			+ "return requeued");
+
+	/**
+	 * 可靠队列延长处理截止时间：只更新仍在处理中的id(ZADD XX)，已超时回收的id不会重新登记，返回更新了的id。
+	 * KEYS与QUEUE_POP相同，ARGV[1]：新的处理截止时间(毫秒)，ARGV[2..]：消息id。
+	 */
+	public static final RedisScript QUEUE_TOUCH = register("queueTouch",
+			"local touched = {}\n"
+			+ "for i = 2, #ARGV do\n"
+			+ "  if redis.call('ZADD', KEYS[4], 'XX', 'CH', ARGV[1], ARGV[i]) == 1 then\n"
+			+ "    touched[#touched + 1] = ARGV[i]\n"
+			+ "  end\n"
+			+ "end\n"
+			+ "return touched");
+
+	/**
+	 * 可靠队列超时回收：截止时间早于ARGV[1]的消息(最多ARGV[2]条)放回队列右边优先重新投递，返回回收的条数。
+	 * KEYS与QUEUE_POP相同，ARGV[1]：当前时间(毫秒)，ARGV[2]：最多回收的条数。
+	 */
+	public static final RedisScript QUEUE_REQUEUE_EXPIRED = register("queueRequeueExpired",
+			"local ids = redis.call('ZRANGEBYSCORE', KEYS[4], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))\n"
+			+ "for i = 1, #ids do\n"
+			+ "  local message = redis.call('HGET', KEYS[3], ids[i])\n"
+			+ "  redis.call('ZREM', KEYS[4], ids[i])\n"
+			+ "  if message then\n"
+			+ "    redis.call('HDEL', KEYS[3], ids[i])\n"
+			+ "    redis.call('RPUSH', KEYS[1], message)\n"
+			+ "  end\n"
+			+ "end\n"
+			+ "return #ids");
+
+	private RedisScriptRegistry() {
+	}
+
+	/**
+	 * 注册脚本，同名脚本已存在时返回已注册的脚本
+	 *
+	 * @param name
+	 *            脚本名称
+	 * @param source
+	 *            Lua源码
+	 * @return 脚本定义
+	 */
+	public static RedisScript register(String name, String source) {
+		RedisScript script = new RedisScript(name, source);
+		RedisScript exist = scripts.putIfAbsent(name, script);
+		if (null != exist) {
+			if (!exist.getSource().equals(source)) {
+				throw new IllegalArgumentException("RedisScript " + name + " is already registered with another source");
+			}
+			return exist;
+		}
+		return script;
+	}
+
+	/**
+	 * 根据名称获取已注册的脚本
+	 */
+	public static RedisScript getScript(String name) {
+		return scripts.get(name);
+	}
+
+	/**
+	 * 所有已注册的脚本
+	 */
+	public static Collection<RedisScript> getScripts() {
+		return Collections.unmodifiableCollection(scripts.values());
+	}
+
+	/**
+	 * 在cluster上执行脚本，脚本按keys中第一个key路由，NOSCRIPT时在该节点加载后重试。
+	 *
+	 * @param cluster
+	 *            cluster 连接实例
+	 * @param script
+	 *            脚本
+	 * @param keys
+	 *            脚本使用的key，必须在同一个slot中
+	 * @param args
+	 *            脚本参数
+	 * @return 脚本返回值
+	 */
+	public static Object evalsha(JedisCluster cluster, RedisScript script, List<String> keys, List<String> args) {
+		try {
+			return cluster.evalsha(script.getSha1(), keys, args);
+		} catch (JedisNoScriptException e) {
+			logger.info("RedisScriptRegistry.evalsha() script:{} 未加载，重新加载。", script);
+			cluster.scriptLoad(script.getSource(), keys.get(0));
+			return cluster.evalsha(script.getSha1(), keys, args);
+		}
+	}
+
+	/**
+	 * 二进制参数的evalsha，脚本按key路由，NOSCRIPT时在该节点加载后重试。
+	 *
+	 * @param cluster
+	 *            cluster 连接实例
+	 * @param script
+	 *            脚本
+	 * @param key
+	 *            脚本使用的key
+	 * @param args
+	 *            脚本参数
+	 * @return 脚本返回值，状态回复和字符串回复为byte[]
+	 */
+	public static Object evalsha(JedisCluster cluster, RedisScript script, byte[] key, List<byte[]> args) {
+		List<byte[]> keys = Collections.singletonList(key);
+		byte[] sha1 = SafeEncoder.encode(script.getSha1());
+		try {
+			return cluster.evalsha(sha1, keys, args);
+		} catch (JedisNoScriptException e) {
+			logger.info("RedisScriptRegistry.evalsha() script:{} 未加载，重新加载。", script);
+			cluster.scriptLoad(SafeEncoder.encode(script.getSource()), key);
+			return cluster.evalsha(sha1, keys, args);
+		}
+	}
+
+	/**
+	 * 在单个节点连接上执行脚本，NOSCRIPT时加载后重试。
+	 *
+	 * @param jedis
+	 *            节点连接
+	 * @param script
+	 *            脚本
+	 * @param keys
+	 *            脚本使用的key
+	 * @param args
+	 *            脚本参数
+	 * @return 脚本返回值
+	 */
+	public static Object evalsha(Jedis jedis, RedisScript script, List<String> keys, List<String> args) {
+		try {
+			return jedis.evalsha(script.getSha1(), keys, args);
+		} catch (JedisNoScriptException e) {
+			logger.info("RedisScriptRegistry.evalsha() script:{} 未加载，重新加载。", script);
+			jedis.scriptLoad(script.getSource());
+			return jedis.evalsha(script.getSha1(), keys, args);
+		}
+	}
+
+	/**
+	 * 组装HMSET_EXPIRE脚本的参数
+	 *
+	 * @param seconds
+	 *            超时时间，单位：秒
+	 * @param hash
+	 *            需要写入的field和value
+	 * @return 脚本参数
+	 */
+	public static List<String> hmsetExpireArgs(int seconds, Map<String, String> hash) {
+		List<String> args = new ArrayList<String>(hash.size() * 2 + 1);
+		args.add(String.valueOf(seconds));
+		for (Map.Entry<String, String> entry : hash.entrySet()) {
+			args.add(entry.getKey());
+			args.add(entry.getValue());
+		}
+		return args;
+	}
+
+	/**
+	 * 组装HMSET_EXPIRE脚本的二进制参数
+	 *
+	 * @param seconds
+	 *            超时时间，单位：秒
+	 * @param hash
+	 *            需要写入的field和value
+	 * @return 脚本参数
+	 */
+	public static List<byte[]> hmsetExpireBinaryArgs(int seconds, Map<byte[], byte[]> hash) {
+		List<byte[]> args = new ArrayList<byte[]>(hash.size() * 2 + 1);
+		args.add(SafeEncoder.encode(String.valueOf(seconds)));
+		for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+			args.add(entry.getKey());
+			args.add(entry.getValue());
+		}
+		return args;
+	}
+}
@@ -0,0 +1,230 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * TODO 相同读请求的合并(single-flight)
+ *
+ * 同一时刻对同一(命令, key, 参数)的并发读请求只有第一个线程访问redis，其余线程等待并共享它的结果(或异常)，
+ * 热点key的突发读取从N次网络请求降为1次。请求完成后立即移除，之后到达的读请求会重新访问redis，
+ * 因此不会像缓存那样返回过期数据：合并的请求返回的是它到达之后才返回的redis结果。
+ *
+ * 通过RedisClientUtil.setSingleFlight()开启，合并get、getRedisMap、getRedisMapValue。
+ * 等待的线程按自己的截止时间(withDeadline)等待；发起读取的线程超过它自己的截止时间时不把超时共享给等待的线程，
+ * 等待的线程重新发起读取。
+ *
+ */
+public class RedisSingleFlight implements RedisSingleFlightMXBean, Closeable {
+
+	private static final Logger logger = LoggerFactory.getLogger(RedisSingleFlight.class);
+
+	/** JMX注册名 */
+	public static final String OBJECT_NAME = "com.sinosafe.macaw.database.connector.redis:type=RedisSingleFlight";
+
+	/** 发起读取的线程超过截止时间，等待的线程需要重新读取 */
+	private static final Object RETRY = new Object();
+
+	private final ConcurrentMap<Call, CompletableFuture<Object>> calls = new ConcurrentHashMap<Call, CompletableFuture<Object>>();
+
+	private final LongAdder executed = new LongAdder();
+
+	private final LongAdder coalesced = new LongAdder();
+
+	private ObjectName registeredName;
+
+	/**
+	 * 注册JMX
+	 */
+	public synchronized void start() {
+		start(RedisClusterContext.getDefault());
+	}
+
+	/**
+	 * 以context集群的命名空间注册JMX，非默认集群的注册名追加",cluster=名称"
+	 */
+	public synchronized void start(RedisClusterContext context) {
+		if (null != registeredName) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName(context.objectName(OBJECT_NAME));
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+			registeredName = name;
+		} catch (Exception e) {
+			logger.warn("RedisSingleFlight 注册JMX失败。", e);
+		}
+	}
+
+	/**
+	 * 注销JMX
+	 */
+	@Override
+	public synchronized void close() {
+		if (null != registeredName) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			} catch (Exception e) {
+				logger.warn("RedisSingleFlight 注销JMX失败。", e);
+			}
+			registeredName = null;
+		}
+	}
+
+	/**
+	 * 执行读请求，已有相同的请求进行中时等待并共享其结果
+	 *
+	 * @param command
+	 *            命令名
+	 * @param key
+	 *            redis键
+	 * @param arg
+	 *            其他参数，例如hash的field，没有时为null
+	 * @param loader
+	 *            实际访问redis的读取
+	 * @param copier
+	 *            结果是可变对象时，为每个等待的线程复制一份，不可变对象传null
+	 * @return 读取结果
+	 */
+	public <T> T execute(String command, String key, String arg, Supplier<T> loader, UnaryOperator<T> copier) {
+		return execute(command, key, arg, loader, copier, null);
+	}
+
+	/**
+	 * 同execute(command, key, arg, loader, copier)，等待其他线程的读取时最多等到deadline
+	 *
+	 * @param deadline
+	 *            当前线程的截止时间，null表示不限
+	 * @throws RedisDeadlineExceededException
+	 *             截止时间内没有得到结果
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T execute(String command, String key, String arg, Supplier<T> loader, UnaryOperator<T> copier,
+			RedisDeadline deadline) {
+		Call call = new Call(command, key, arg);
+		while (true) {
+			CompletableFuture<Object> future = new CompletableFuture<Object>();
+			CompletableFuture<Object> inFlight = calls.putIfAbsent(call, future);
+			if (null == inFlight) {
+				return load(call, future, loader);
+			}
+			coalesced.increment();
+			Object value = RedisDeadlineExecutor.await(inFlight, deadline);
+			if (RETRY != value) {
+				return null == copier || null == value ? (T) value : copier.apply((T) value);
+			}
+		}
+	}
+
+	private <T> T load(Call call, CompletableFuture<Object> future, Supplier<T> loader) {
+		executed.increment();
+		try {
+			T value = loader.get();
+			// 先移除再完成，完成之后到达的请求一定会重新读取
+			calls.remove(call, future);
+			future.complete(value);
+			return value;
+		} catch (RedisDeadlineExceededException e) {
+			// 截止时间只属于当前线程，等待的线程按各自的截止时间重新读取
+			calls.remove(call, future);
+			future.complete(RETRY);
+			throw e;
+		} catch (RuntimeException e) {
+			calls.remove(call, future);
+			future.completeExceptionally(e);
+			throw e;
+		} catch (Error e) {
+			calls.remove(call, future);
+			future.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	@Override
+	public long getExecutedCount() {
+		return executed.sum();
+	}
+
+	@Override
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	@Override
+	public double getCoalescedRatio() {
+		long hits = coalesced.sum();
+		long total = executed.sum() + hits;
+		return 0 == total ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public int getInFlightCount() {
+		return calls.size();
+	}
+
+	@Override
+	public void reset() {
+		executed.reset();
+		coalesced.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "RedisSingleFlight [executed=" + executed.sum() + ", coalesced=" + coalesced.sum() + "]";
+	}
+
+	/**
+	 * 请求标识：命令、key、参数
+	 */
+	private static final class Call {
+
+		private final String command;
+
+		private final String key;
+
+		private final String arg;
+
+		private final int hash;
+
+		Call(String command, String key, String arg) {
+			this.command = command;
+			this.key = key;
+			this.arg = arg;
+			this.hash = (command.hashCode() * 31 + key.hashCode()) * 31 + (null == arg ? 0 : arg.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Call)) {
+				return false;
+			}
+			Call other = (Call) obj;
+			return hash == other.hash && command.equals(other.command) && key.equals(other.key)
+					&& (null == arg ? null == other.arg : arg.equals(other.arg));
+		}
+	}
+}
@@ -0,0 +1,30 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+/**
+ * TODO 读请求合并统计的JMX接口，注册名为RedisSingleFlight.OBJECT_NAME
+ *
+ */
+public interface RedisSingleFlightMXBean {
+
+	/**
+	 * 实际发往redis的读请求数
+	 */
+	long getExecutedCount();
+
+	/**
+	 * 合并到进行中请求、没有访问redis的读请求数
+	 */
+	long getCoalescedCount();
+
+	/**
+	 * 合并比例：coalesced / (executed + coalesced)
+	 */
+	double getCoalescedRatio();
+
+	/**
+	 * 当前进行中的请求数
+	 */
+	int getInFlightCount();
+
+	void reset();
+}
@@ -0,0 +1,26 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TODO redis 工具内部线程池使用的线程工厂，统一命名并设置为守护线程，不阻止应用退出
+ *
+ */
+class RedisThreadFactory implements ThreadFactory {
+
+	private final String name;
+
+	private final AtomicInteger index = new AtomicInteger();
+
+	RedisThreadFactory(String name) {
+		this.name = name;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread thread = new Thread(r, name + "-" + index.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
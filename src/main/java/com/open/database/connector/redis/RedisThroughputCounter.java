@@ -0,0 +1,92 @@
+package com.sinosafe.macaw.database.connector.redis;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TODO 按秒滚动的吞吐量计数器
+ *
+ * 环形保存最近WINDOW_SECONDS秒每秒的计数，过期的槽位在下一次写入时重置，用于计算最近N秒的平均每秒请求数。
+ *
+ */
+class RedisThroughputCounter {
+
+	static final int WINDOW_SECONDS = 60;
+
+	private final AtomicLongArray counts = new AtomicLongArray(WINDOW_SECONDS);
+
+	private final AtomicLongArray seconds = new AtomicLongArray(WINDOW_SECONDS);
+
+	private final LongAdder total = new LongAdder();
+
+	void increment() {
+		increment(currentSecond());
+	}
+
+	void increment(long second) {
+		int index = (int) (second % WINDOW_SECONDS);
+		long slotSecond = seconds.get(index);
+		if (slotSecond != second) {
+			// 槽位属于更早的一秒，由抢到CAS的线程清零
+			if (slotSecond < second && seconds.compareAndSet(index, slotSecond, second)) {
+				counts.set(index, 0);
+			}
+		}
+		counts.incrementAndGet(index);
+		total.increment();
+	}
+
+	/**
+	 * 累计总数
+	 */
+	long getTotal() {
+		return total.sum();
+	}
+
+	/**
+	 * 最近windowSeconds个完整秒的平均每秒次数，不包含当前这一秒
+	 */
+	double getRate(int windowSeconds) {
+		return getRate(windowSeconds, currentSecond());
+	}
+
+	double getRate(int windowSeconds, long now) {
+		int window = Math.max(1, Math.min(windowSeconds, WINDOW_SECONDS - 1));
+		long sum = 0;
+		for (int i = 0; i < WINDOW_SECONDS; i++) {
+			long second = seconds.get(i);
+			if (second < now && second >= now - window) {
+				sum += counts.get(i);
+			}
+		}
+		return (double) sum / window;
+	}
+
+	/**
+	 * 最近windowSeconds秒的次数，包含当前这一秒
+	 */
+	long getCount(int windowSeconds) {
+		long now = currentSecond();
+		int window = Math.max(1, Math.min(windowSeconds, WINDOW_SECONDS - 1));
+		long sum = 0;
+		for (int i = 0; i < WINDOW_SECONDS; i++) {
+			long second = seconds.get(i);
+			if (second <= now && second > now - window) {
+				sum += counts.get(i);
+			}
+		}
+		return sum;
+	}
+
+	void reset() {
+		for (int i = 0; i < WINDOW_SECONDS; i++) {
+			counts.set(i, 0);
+			seconds.set(i, 0);
+		}
+		total.reset();
+	}
+
+	private static long currentSecond() {
+		return System.currentTimeMillis() / 1000;
+	}
+}